@@ -0,0 +1,179 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.comp2024.profiling.TimingReport;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compiles a batch of files, each one as an independent compilation, on a work-stealing pool.
+ * Results are returned in the same order as the input files, regardless of the number of threads.
+ */
+public class BatchCompiler {
+
+    public static class FileResult {
+        private final File file;
+        private final CompilationResult result;
+        private final Exception exception;
+        private final long wallTimeNanos;
+
+        private FileResult(File file, CompilationResult result, Exception exception, long wallTimeNanos) {
+            this.file = file;
+            this.result = result;
+            this.exception = exception;
+            this.wallTimeNanos = wallTimeNanos;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * Result of the compilation, or null if it threw an exception.
+         */
+        public CompilationResult getResult() {
+            return result;
+        }
+
+        /**
+         * Exception thrown by the compilation, or null if it completed.
+         */
+        public Exception getException() {
+            return exception;
+        }
+
+        public long getWallTimeNanos() {
+            return wallTimeNanos;
+        }
+
+        public boolean hasErrors() {
+            return exception != null || result.hasErrors();
+        }
+    }
+
+    public static class BatchResult {
+        private final List<FileResult> fileResults;
+        private final long wallTimeNanos;
+        private final int jobs;
+        private final Optional<String> cacheStats;
+
+        private BatchResult(List<FileResult> fileResults, long wallTimeNanos, int jobs, Optional<String> cacheStats) {
+            this.fileResults = fileResults;
+            this.wallTimeNanos = wallTimeNanos;
+            this.jobs = jobs;
+            this.cacheStats = cacheStats;
+        }
+
+        public List<FileResult> getFileResults() {
+            return fileResults;
+        }
+
+        public long getWallTimeNanos() {
+            return wallTimeNanos;
+        }
+
+        /**
+         * Per-file wall time and overall throughput of the batch.
+         */
+        public String getSummary() {
+            StringBuilder summary = new StringBuilder();
+
+            summary.append("Per-file wall time:\n");
+            for (var result : fileResults) {
+                summary.append(String.format("%10.2f ms  %-6s %s%n",
+                        result.getWallTimeNanos() / 1e6,
+                        result.hasErrors() ? "ERROR" : "ok",
+                        result.getFile().getPath()));
+            }
+
+            long failed = fileResults.stream().filter(FileResult::hasErrors).count();
+            double seconds = wallTimeNanos / 1e9;
+            summary.append(String.format("Compiled %d files (%d with errors) in %.2f s using %d thread(s): %.2f files/sec%n",
+                    fileResults.size(), failed, seconds, jobs, seconds > 0 ? fileResults.size() / seconds : 0.0));
+            cacheStats.ifPresent(stats -> summary.append(stats).append("\n"));
+
+            return summary.toString();
+        }
+
+        /**
+         * Writes the timings of every compilation in the batch, if timing was enabled in the config.
+         */
+        public void writeTimingReport(Map<String, String> config) {
+            var timingReport = CompilerConfig.getTimingReport(config);
+            if (timingReport.isEmpty()) {
+                return;
+            }
+
+            var timings = fileResults.stream()
+                    .map(FileResult::getResult)
+                    .filter(Objects::nonNull)
+                    .flatMap(result -> result.getTimings().stream())
+                    .toList();
+            TimingReport.write(timingReport.get(), timings);
+            System.out.println("Timing report written to " + timingReport.get());
+        }
+    }
+
+    private final CompilationPipeline pipeline;
+    private final Map<String, String> config;
+    private final int jobs;
+
+    public BatchCompiler(Map<String, String> config, int jobs) {
+        if (jobs < 1) {
+            throw new IllegalArgumentException("Number of jobs must be at least 1, got " + jobs);
+        }
+        this.pipeline = CompilationPipeline.fromConfig(config);
+        this.config = config;
+        this.jobs = jobs;
+    }
+
+    public BatchResult compile(List<File> files) {
+        List<Callable<FileResult>> tasks = files.stream()
+                .map(file -> (Callable<FileResult>) () -> compileFile(file))
+                .toList();
+
+        long start = System.nanoTime();
+        List<FileResult> results = new ArrayList<>();
+        ExecutorService pool = Executors.newWorkStealingPool(jobs);
+        try {
+            for (Future<FileResult> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch compilation was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Unexpected failure in batch compilation", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return new BatchResult(results, System.nanoTime() - start, jobs, pipeline.getCache().map(CompilationCache::getStats));
+    }
+
+    private FileResult compileFile(File file) {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> fileConfig = new HashMap<>(config);
+            if (!CompilerConfig.putFile(fileConfig, file.getPath())) {
+                throw new RuntimeException("File name " + file + " is not a file");
+            }
+            var result = pipeline.compile(SpecsIo.read(file), fileConfig);
+            return new FileResult(file, result, null, System.nanoTime() - start);
+        } catch (Exception e) {
+            return new FileResult(file, null, e, System.nanoTime() - start);
+        }
+    }
+}
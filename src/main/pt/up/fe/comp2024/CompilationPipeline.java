@@ -0,0 +1,116 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
+import pt.up.fe.comp2024.backend.JasminBackendImpl;
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
+import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
+import pt.up.fe.comp2024.utils.ReportUtils;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Runs a Java-- source through every stage of the compiler: parsing, semantic analysis, optimization and OLLIR
+ * generation, and Jasmin generation. Execution stops at the first stage that reports an error.
+ * <p>
+ * The stages keep no state between compilations, so the same pipeline (and its already loaded and warmed-up stages)
+ * can be reused, including from several threads.
+ * <p>
+ * If a {@link CompilationCache} is given, results found in it are returned without running any stage, and the results
+ * of new compilations are stored in it.
+ */
+public class CompilationPipeline {
+    private final JmmParserImpl parser = new JmmParserImpl();
+    private final JmmAnalysisImpl analysis = new JmmAnalysisImpl();
+    private final JmmOptimizationImpl optimization = new JmmOptimizationImpl();
+    private final JasminBackendImpl backend = new JasminBackendImpl();
+    private final CompilationCache cache;
+
+    public CompilationPipeline() {
+        this(null);
+    }
+
+    public CompilationPipeline(CompilationCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Creates a pipeline that uses the default compilation cache, unless the config asks to bypass it.
+     */
+    public static CompilationPipeline fromConfig(Map<String, String> config) {
+        if (CompilerConfig.getBypassCache(config)) {
+            return new CompilationPipeline();
+        }
+        return new CompilationPipeline(new CompilationCache());
+    }
+
+    public Optional<CompilationCache> getCache() {
+        return Optional.ofNullable(cache);
+    }
+
+    public CompilationResult compile(String code, Map<String, String> config) {
+        if (CompilerConfig.getTimingReport(config).isEmpty()) {
+            return compileCached(code, config);
+        }
+
+        var profiler = PhaseProfiler.start(CompilerConfig.getInputFile(config).map(File::getPath).orElse("<input>"));
+        try {
+            var result = compileCached(code, config);
+            result.setTimings(profiler.stop());
+            return result;
+        } finally {
+            profiler.stop();
+        }
+    }
+
+    private CompilationResult compileCached(String code, Map<String, String> config) {
+        if (cache == null || CompilerConfig.getBypassCache(config)) {
+            return compileStages(code, config);
+        }
+
+        var cachedResult = PhaseProfiler.time("cacheLookup", () -> cache.get(code, config));
+        if (cachedResult.isPresent()) {
+            return cachedResult.get();
+        }
+
+        var result = compileStages(code, config);
+        PhaseProfiler.time("cacheStore", () -> cache.put(code, config, result));
+        return result;
+    }
+
+    private CompilationResult compileStages(String code, Map<String, String> config) {
+        var result = new CompilationResult();
+
+        // Parsing stage
+        var parserResult = PhaseProfiler.time("parse", () -> parser.parse(code, config));
+        result.setParserResult(parserResult);
+        if (ReportUtils.anyError(parserResult.getReports())) {
+            return result;
+        }
+
+        // Semantic Analysis stage
+        var semanticsResult = PhaseProfiler.time("analysis", () -> analysis.semanticAnalysis(parserResult));
+        result.setSemanticsResult(semanticsResult);
+        if (ReportUtils.anyError(semanticsResult.getReports())) {
+            return result;
+        }
+
+        // Optimization stage
+        var optimizedSemanticsResult = PhaseProfiler.time("astOptimization", () -> optimization.optimize(semanticsResult));
+        var generatedOllirResult = PhaseProfiler.time("toOllir", () -> optimization.toOllir(optimizedSemanticsResult));
+        var ollirResult = PhaseProfiler.time("ollirOptimization", () -> optimization.optimize(generatedOllirResult));
+        result.setOllirResult(ollirResult);
+        if (ReportUtils.anyError(ollirResult.getReports())) {
+            return result;
+        }
+
+        // Code generation stage
+        var jasminResult = PhaseProfiler.time("backend", () -> backend.toJasmin(ollirResult));
+        result.setJasminResult(jasminResult);
+
+        return result;
+    }
+}
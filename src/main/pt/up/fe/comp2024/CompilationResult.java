@@ -0,0 +1,130 @@
+package pt.up.fe.comp2024;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
+import pt.up.fe.comp2024.utils.ReportUtils;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Results of running a file through the compiler pipeline.
+ * Stages after the first one that reported an error are not executed, so their results are empty.
+ * <p>
+ * Results restored from a {@link pt.up.fe.comp2024.cache.CompilationCache} only have the AST, the OLLIR code and the
+ * Jasmin code, since no stage was executed.
+ */
+public class CompilationResult {
+    private JmmParserResult parserResult;
+    private JmmSemanticsResult semanticsResult;
+    private OllirResult ollirResult;
+    private JasminResult jasminResult;
+
+    private boolean cacheHit = false;
+    private JmmNode cachedRootNode;
+    private String cachedOllirCode;
+
+    private PhaseProfiler.FileTimings timings;
+
+    public static CompilationResult fromCache(JmmNode rootNode, String ollirCode, JasminResult jasminResult) {
+        var result = new CompilationResult();
+        result.cacheHit = true;
+        result.cachedRootNode = rootNode;
+        result.cachedOllirCode = ollirCode;
+        result.jasminResult = jasminResult;
+        return result;
+    }
+
+    void setParserResult(JmmParserResult parserResult) {
+        this.parserResult = parserResult;
+    }
+
+    void setSemanticsResult(JmmSemanticsResult semanticsResult) {
+        this.semanticsResult = semanticsResult;
+    }
+
+    void setOllirResult(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    void setJasminResult(JasminResult jasminResult) {
+        this.jasminResult = jasminResult;
+    }
+
+    public Optional<JmmParserResult> getParserResult() {
+        return Optional.ofNullable(parserResult);
+    }
+
+    public Optional<JmmSemanticsResult> getSemanticsResult() {
+        return Optional.ofNullable(semanticsResult);
+    }
+
+    public Optional<OllirResult> getOllirResult() {
+        return Optional.ofNullable(ollirResult);
+    }
+
+    public Optional<JasminResult> getJasminResult() {
+        return Optional.ofNullable(jasminResult);
+    }
+
+    void setTimings(PhaseProfiler.FileTimings timings) {
+        this.timings = timings;
+    }
+
+    /**
+     * Timings of each phase, if the compilation was profiled.
+     */
+    public Optional<PhaseProfiler.FileTimings> getTimings() {
+        return Optional.ofNullable(timings);
+    }
+
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
+    public Optional<JmmNode> getRootNode() {
+        if (cacheHit) {
+            return Optional.ofNullable(cachedRootNode);
+        }
+        return getParserResult().map(JmmParserResult::getRootNode);
+    }
+
+    public Optional<String> getOllirCode() {
+        if (cacheHit) {
+            return Optional.ofNullable(cachedOllirCode);
+        }
+        return getOllirResult().map(OllirResult::getOllirCode);
+    }
+
+    public Optional<String> getJasminCode() {
+        return getJasminResult().map(JasminResult::getJasminCode);
+    }
+
+    /**
+     * Returns the reports of the last stage that was executed, which already include the reports of the previous ones.
+     */
+    public List<Report> getReports() {
+        if (jasminResult != null) {
+            return jasminResult.getReports();
+        }
+        if (ollirResult != null) {
+            return ollirResult.getReports();
+        }
+        if (semanticsResult != null) {
+            return semanticsResult.getReports();
+        }
+        if (parserResult != null) {
+            return parserResult.getReports();
+        }
+        return List.of();
+    }
+
+    public boolean hasErrors() {
+        return ReportUtils.anyError(getReports());
+    }
+}
@@ -4,12 +4,32 @@ import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class CompilerConfig {
 
     private static final String INPUT_FILE = "inputFile";
     private static final String OPTIMIZE = "optimize";
     private static final String REGISTER = "registerAllocation";
+    private static final String JOBS = "jobs";
+    private static final String SERVER = "server";
+    private static final String CLIENT = "client";
+    private static final String BYPASS_CACHE = "bypassCache";
+    private static final String TIMING = "timing";
+    private static final String DEFAULT_TIMING_REPORT = "jmm-timing.json";
+    private static final String ALLOCATOR = "allocator";
+    private static final String OLLIR = "ollir";
+    private static final String BACKEND = "backend";
+    private static final String RUN = "run";
+
+    public static final String ALLOCATOR_GRAPH = "graph";
+    public static final String ALLOCATOR_LINEAR = "linear";
+    public static final String OLLIR_BUILDER = "builder";
+    public static final String OLLIR_TEXT = "text";
+    public static final String BACKEND_JASMIN = "jasmin";
+    public static final String BACKEND_CLASS_FILE = "classfile";
+    public static final String RUN_IN_PROCESS = "inprocess";
+    public static final String RUN_FORK = "fork";
 
 
     static Map<String, String> shortToLong = new HashMap<>();
@@ -18,8 +38,17 @@ public class CompilerConfig {
         shortToLong.put("i", CompilerConfig.INPUT_FILE);
         shortToLong.put("o", CompilerConfig.OPTIMIZE);
         shortToLong.put("r", CompilerConfig.REGISTER);
+        shortToLong.put("j", CompilerConfig.JOBS);
+        shortToLong.put("s", CompilerConfig.SERVER);
+        shortToLong.put("c", CompilerConfig.CLIENT);
+        shortToLong.put("b", CompilerConfig.BYPASS_CACHE);
+        shortToLong.put("t", CompilerConfig.TIMING);
     }
 
+    // options that only have a long form ('--name=value')
+    static Set<String> longOnly = Set.of(CompilerConfig.ALLOCATOR, CompilerConfig.OLLIR,
+            CompilerConfig.BACKEND, CompilerConfig.RUN);
+
 
     public static Optional<File> getInputFile(Map<String, String> config) {
         var inputFile = config.get(INPUT_FILE);
@@ -41,6 +70,91 @@ public class CompilerConfig {
     }
 
 
+    public static int getJobs(Map<String, String> config) {
+        return Integer.parseInt(config.getOrDefault(JOBS, "1"));
+    }
+
+    /**
+     * Port of the compile server to start, if the compiler should run as a server.
+     */
+    public static Optional<Integer> getServerPort(Map<String, String> config) {
+        return Optional.ofNullable(config.get(SERVER)).map(Integer::parseInt);
+    }
+
+    /**
+     * Port of the compile server that requests should be forwarded to, if the compiler should run as a client.
+     */
+    public static Optional<Integer> getClientPort(Map<String, String> config) {
+        return Optional.ofNullable(config.get(CLIENT)).map(Integer::parseInt);
+    }
+
+    public static boolean getBypassCache(Map<String, String> config) {
+        return Boolean.parseBoolean(config.getOrDefault(BYPASS_CACHE, "false"));
+    }
+
+    /**
+     * File where the timings of each compilation phase should be written, if timing is enabled.
+     * Using '-t' without a value writes them to the default report file.
+     */
+    public static Optional<File> getTimingReport(Map<String, String> config) {
+        var timing = config.getOrDefault(TIMING, "false");
+        return switch (timing) {
+            case "false" -> Optional.empty();
+            case "true" -> Optional.of(new File(DEFAULT_TIMING_REPORT));
+            default -> Optional.of(new File(timing));
+        };
+    }
+
+    /**
+     * Register allocator used by '-r': graph coloring (default) or linear scan.
+     */
+    public static String getAllocator(Map<String, String> config) {
+        var allocator = config.getOrDefault(ALLOCATOR, ALLOCATOR_GRAPH);
+        if (!allocator.equals(ALLOCATOR_GRAPH) && !allocator.equals(ALLOCATOR_LINEAR)) {
+            throw new RuntimeException("Option '--allocator' expects '" + ALLOCATOR_GRAPH + "' or '" + ALLOCATOR_LINEAR + "'");
+        }
+        return allocator;
+    }
+
+    /**
+     * How the OLLIR class is created: built directly from the AST (default) or generated as text and parsed.
+     */
+    public static String getOllir(Map<String, String> config) {
+        var ollir = config.getOrDefault(OLLIR, OLLIR_BUILDER);
+        if (!ollir.equals(OLLIR_BUILDER) && !ollir.equals(OLLIR_TEXT)) {
+            throw new RuntimeException("Option '--ollir' expects '" + OLLIR_BUILDER + "' or '" + OLLIR_TEXT + "'");
+        }
+        return ollir;
+    }
+
+    /**
+     * How the class file is created: from Jasmin code (default) or written directly from the OLLIR class.
+     */
+    public static String getBackend(Map<String, String> config) {
+        var backend = config.getOrDefault(BACKEND, BACKEND_JASMIN);
+        if (!backend.equals(BACKEND_JASMIN) && !backend.equals(BACKEND_CLASS_FILE)) {
+            throw new RuntimeException("Option '--backend' expects '" + BACKEND_JASMIN + "' or '" + BACKEND_CLASS_FILE + "'");
+        }
+        return backend;
+    }
+
+    /**
+     * How compiled programs are run: in a new 'java' process (default), which isolates them, or in the current JVM,
+     * which is faster but cannot contain programs that call System.exit or never stop.
+     */
+    public static String getRun(Map<String, String> config) {
+        var run = config.getOrDefault(RUN, RUN_FORK);
+        if (!run.equals(RUN_IN_PROCESS) && !run.equals(RUN_FORK)) {
+            throw new RuntimeException("Option '--run' expects '" + RUN_IN_PROCESS + "' or '" + RUN_FORK + "'");
+        }
+        return run;
+    }
+
+    public static void removeClientPort(Map<String, String> config) {
+        config.remove(CLIENT);
+    }
+
+
     public static Map<String, String> getDefault() {
 
         var config = new HashMap<String, String>();
@@ -80,6 +194,16 @@ public class CompilerConfig {
                 throw new RuntimeException("Arguments should start with '-'");
             }
 
+            if (arg.startsWith("--")) {
+                int equalSign = arg.indexOf('=');
+                String longOption = equalSign < 0 ? arg.substring(2) : arg.substring(2, equalSign);
+                if (!longOnly.contains(longOption)) {
+                    throw new RuntimeException("Unrecognized option '--" + longOption + "'");
+                }
+                config.put(longOption, equalSign < 0 ? "true" : arg.substring(equalSign + 1));
+                continue;
+            }
+
             String shortOption = arg.substring(1, 2);
             if (!isShortOpt(shortOption)) {
                 throw new RuntimeException("Unrecognized option '-" + shortOption + "'");
@@ -97,23 +221,38 @@ public class CompilerConfig {
             config.put(getLongOpt(shortOption), value);
         }
 
+        // the server receives its input files with each request, and a client without one only asks for statistics
+        boolean inputIsOptional = config.containsKey(SERVER) || config.containsKey(CLIENT);
         if (!config.containsKey(INPUT_FILE)) {
 
-            throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
-        }
+            if (!inputIsOptional) {
+                throw new RuntimeException("Expected an input file, use '-i=<PATH_TO_FILE>'");
+            }
+        } else {
 
-        // make sure we save the absolute path of the input file
-        var inputFile = new File(config.get(INPUT_FILE));
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("Could not find input file '" + inputFile + "'");
-        }
+            // make sure we save the absolute path of the input file (or of the input directory, for batch compilation)
+            var inputFile = new File(config.get(INPUT_FILE));
+            if (!inputFile.isFile() && !inputFile.isDirectory()) {
+                throw new RuntimeException("Could not find input file '" + inputFile + "'");
+            }
 
-        var absolutePath = inputFile.getAbsolutePath();
-        config.put(INPUT_FILE, absolutePath);
+            var absolutePath = inputFile.getAbsolutePath();
+            config.put(INPUT_FILE, absolutePath);
+        }
 
         // Verify if values are valid
         getOptimize(config);
         getRegisterAllocation(config);
+        getBypassCache(config);
+        if (getJobs(config) < 1) {
+            throw new RuntimeException("Option '-j' expects a positive number of jobs");
+        }
+        getServerPort(config);
+        getClientPort(config);
+        getAllocator(config);
+        getOllir(config);
+        getBackend(config);
+        getRun(config);
 
         return config;
     }
@@ -10,85 +10,63 @@ import pt.up.fe.comp2024.analysis.JmmAnalysisImpl;
 import pt.up.fe.comp2024.backend.JasminBackendImpl;
 import pt.up.fe.comp2024.optimization.JmmOptimizationImpl;
 import pt.up.fe.comp2024.parser.JmmParserImpl;
+import pt.up.fe.comp2024.profiling.TimingReport;
+import pt.up.fe.comp2024.server.CompileClient;
+import pt.up.fe.comp2024.server.CompileServer;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsSystem;
 
 import java.io.File;
+import java.io.PrintStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 public class Launcher {
-    private static void testFile(String fileName) {
-        var config = CompilerConfig.getDefault();
-        if (!CompilerConfig.putFile(config, fileName)) {
-            throw new RuntimeException("File name " + fileName + " is not a file");
-        }
-        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("File name " + fileName + " is not a file");
-        }
-        String code = SpecsIo.read(inputFile);
-
-        // Parsing stage
-        JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
-        TestUtils.noErrors(parserResult.getReports());
-
-        // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
-        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
-        try {
-            if (fileName.contains("error")) {
-                TestUtils.mustFail(semanticsResult.getReports());
-            } else {
-                TestUtils.noErrors(semanticsResult.getReports());
-            }
-        }
-        catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Error in file " + fileName);
-            throw e;
-        }
-
-        // print the contents of the symbol table (e.g. imports, ...)
-        var symbolTable = semanticsResult.getSymbolTable();
-        System.out.println(symbolTable);
+    public static void testAllFiles() {
+        testAllFiles(new File("input/"), CompilerConfig.getDefault());
+    }
 
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-//        TestUtils.noErrors(ollirResult.getReports());
+    public static void testAllFiles(File directory, Map<String, String> config) {
+        File[] files = directory.listFiles(File::isFile);
+        assert files != null;
+        Arrays.sort(files);
 
-        // Print OLLIR code
-        System.out.println(ollirResult.getOllirCode());
+        var batch = new BatchCompiler(config, CompilerConfig.getJobs(config)).compile(Arrays.asList(files));
 
-        // Code generation stage
-//        JasminBackendImpl jasminGen = new JasminBackendImpl();
-//        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-//        TestUtils.noErrors(jasminResult.getReports());
+        for (var fileResult : batch.getFileResults()) {
+            String fileName = fileResult.getFile().getName();
+            System.out.println(fileName);
+            System.out.println("-------------------- " + fileName + ":\n");
 
-        // Print Jasmin code
-//        System.out.println(jasminResult.getJasminCode());
-//        jasminResult.run();
-    }
+            if (fileResult.getException() != null) {
+                System.out.println("Error in file " + fileName + ": " + fileResult.getException().getMessage());
+            } else {
+                var result = fileResult.getResult();
+                boolean mustFail = fileName.contains("error");
+                if (mustFail != result.hasErrors()) {
+                    System.out.println(result.getReports());
+                    System.out.println("Error in file " + fileName);
+                }
+
+                // print the contents of the symbol table (e.g. imports, ...)
+                result.getSemanticsResult().ifPresent(semanticsResult -> System.out.println(semanticsResult.getSymbolTable()));
+
+                // Print OLLIR code
+                result.getOllirCode().ifPresent(System.out::println);
+            }
 
-    public static void testAllFiles(){
-        File directoryPath = new File("input/");
-        String[] files = directoryPath.list();
-        assert files != null;
-        for (String file : files) {
-            System.out.println(file);
-            System.out.println("-------------------- " + file + ":\n");
-            testFile("input/" + file);
             System.out.println("-------------------- done\n");
         }
+
+        System.out.print(batch.getSummary());
+        batch.writeTimingReport(config);
     }
 
     public static void main(String[] args) {
         SpecsSystem.programStandardInit();
 
-        if(args.length == 0){
+        if (args.length == 0) {
             testAllFiles();
             return;
         }
@@ -97,45 +75,66 @@ public class Launcher {
 
         Map<String, String> config = CompilerConfig.parseArgs(args);
 
+        // Compile server and client modes
+        var serverPort = CompilerConfig.getServerPort(config);
+        if (serverPort.isPresent()) {
+            new CompileServer(serverPort.get(), CompilationPipeline.fromConfig(config)).run();
+            return;
+        }
+        var clientPort = CompilerConfig.getClientPort(config);
+        if (clientPort.isPresent()) {
+            System.exit(CompileClient.forward(clientPort.get(), config, System.out));
+        }
+
         var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
+        if (inputFile.isDirectory()) {
+            testAllFiles(inputFile, config);
+            return;
+        }
         if (!inputFile.isFile()) {
             throw new RuntimeException("Option '-i' expects a path to an existing input file, got '" + args[0] + "'.");
         }
+
+        var pipeline = CompilationPipeline.fromConfig(config);
+        boolean success = compile(pipeline, config, System.out);
+        pipeline.getCache().ifPresent(cache -> System.out.println(cache.getStats()));
+        if (!success) {
+            throw new RuntimeException("Compilation of '" + inputFile + "' failed");
+        }
+    }
+
+    /**
+     * Compiles the input file of the given config, printing the results of each stage.
+     *
+     * @return true if the compilation had no errors
+     */
+    public static boolean compile(CompilationPipeline pipeline, Map<String, String> config, PrintStream out) {
+        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
         String code = SpecsIo.read(inputFile);
 
-        // Parsing stage
-        JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
-        TestUtils.noErrors(parserResult.getReports());
+        var result = pipeline.compile(code, config);
 
         // Print AST
-        System.out.println(parserResult.getRootNode().toTree());
+        result.getRootNode().ifPresent(rootNode -> out.println(rootNode.toTree()));
 
-        // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
-        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
-        System.out.println(semanticsResult.getReports());
-        TestUtils.noErrors(semanticsResult.getReports());
+        out.println(result.getReports());
 
         // print the contents of the symbol table (e.g. imports, ...)
-        var symbolTable = semanticsResult.getSymbolTable();
-        System.out.println(symbolTable);
-
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
+        result.getSemanticsResult().ifPresent(semanticsResult -> out.println(semanticsResult.getSymbolTable()));
 
         // Print OLLIR code
-        System.out.println(ollirResult.getOllirCode());
-
-        // Code generation stage
-//        JasminBackendImpl jasminGen = new JasminBackendImpl();
-//        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-//        TestUtils.noErrors(jasminResult.getReports());
+        result.getOllirCode().ifPresent(out::println);
 
         // Print Jasmin code
-//        System.out.println(jasminResult.getJasminCode());
-//         jasminResult.run();
+        result.getJasminCode().ifPresent(out::println);
+
+        // Write timing report
+        var timingReport = CompilerConfig.getTimingReport(config);
+        if (timingReport.isPresent() && result.getTimings().isPresent()) {
+            TimingReport.write(timingReport.get(), List.of(result.getTimings().get()));
+            out.println("Timing report written to " + timingReport.get());
+        }
+
+        return !result.hasErrors();
     }
 }
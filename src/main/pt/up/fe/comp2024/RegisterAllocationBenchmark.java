@@ -0,0 +1,128 @@
+package pt.up.fe.comp2024;
+
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.optimization.ollir.RegisterAllocation;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Compares the register allocators on the same inputs: time spent in register allocation and resulting locals.
+ * Takes the same options as the launcher (the input defaults to the 'input/' folder and '-r' to 0).
+ */
+public class RegisterAllocationBenchmark {
+    private static final List<String> ALLOCATORS = List.of(CompilerConfig.ALLOCATOR_GRAPH, CompilerConfig.ALLOCATOR_LINEAR);
+    private static final int REPETITIONS = 5;
+
+    private record Measure(double millis, int locals) {
+    }
+
+    public static void main(String[] args) {
+        boolean hasInput = Arrays.stream(args).anyMatch(arg -> arg.startsWith("-i"));
+        String[] allArgs = hasInput ? args : Stream.concat(Stream.of("-i=input/"), Arrays.stream(args)).toArray(String[]::new);
+        Map<String, String> config = CompilerConfig.parseArgs(allArgs);
+        int numReg = CompilerConfig.getRegisterAllocation(config) < 0 ? 0 : CompilerConfig.getRegisterAllocation(config);
+
+        File input = CompilerConfig.getInputFile(config).orElseThrow();
+        File[] fileList = input.isDirectory() ? input.listFiles(File::isFile) : new File[]{input};
+        assert fileList != null;
+        Arrays.sort(fileList);
+
+        // generate the OLLIR of each file once, without register allocation
+        var ollirConfig = new HashMap<>(config);
+        ollirConfig.put("registerAllocation", "-1");
+        // the code is parsed again for each measure, so it must be the generated code and not a printed class
+        ollirConfig.put("ollir", CompilerConfig.OLLIR_TEXT);
+        var pipeline = new CompilationPipeline();
+        Map<File, String> ollirCodes = new LinkedHashMap<>();
+        for (File file : fileList) {
+            try {
+                var result = pipeline.compile(SpecsIo.read(file), ollirConfig);
+                if (!result.hasErrors() && result.getOllirResult().isPresent()) {
+                    ollirCodes.put(file, result.getOllirResult().get().getOllirCode());
+                }
+            } catch (RuntimeException e) {
+                System.out.println("Skipping " + file.getName() + ": " + e.getMessage());
+            }
+        }
+
+        // the allocators print their decisions, which would only add noise here
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Map<String, Map<File, Measure>> measures = new LinkedHashMap<>();
+        try {
+            for (String allocator : ALLOCATORS) {
+                var allocatorConfig = new HashMap<>(config);
+                allocatorConfig.put("allocator", allocator);
+                Map<File, Measure> allocatorMeasures = new LinkedHashMap<>();
+                for (var entry : ollirCodes.entrySet()) {
+                    allocatorMeasures.put(entry.getKey(), measure(entry.getValue(), allocatorConfig, numReg));
+                }
+                measures.put(allocator, allocatorMeasures);
+            }
+        } finally {
+            System.setOut(out);
+        }
+
+        System.out.printf("%-40s", "file");
+        for (String allocator : ALLOCATORS) {
+            System.out.printf("%14s%14s", allocator + " ms", allocator + " locals");
+        }
+        System.out.println();
+
+        Map<String, double[]> totals = new LinkedHashMap<>();
+        for (File file : ollirCodes.keySet()) {
+            System.out.printf("%-40s", file.getName());
+            for (String allocator : ALLOCATORS) {
+                Measure measure = measures.get(allocator).get(file);
+                double[] total = totals.computeIfAbsent(allocator, a -> new double[2]);
+                total[0] += measure.millis();
+                total[1] += measure.locals();
+                System.out.printf("%14.3f%14d", measure.millis(), measure.locals());
+            }
+            System.out.println();
+        }
+        System.out.printf("%-40s", "TOTAL (" + ollirCodes.size() + " files, -r=" + numReg + ")");
+        for (double[] total : totals.values()) {
+            System.out.printf("%14.3f%14d", total[0], (int) total[1]);
+        }
+        System.out.println();
+    }
+
+    /**
+     * Best time of a few runs (each on a freshly parsed OLLIR class) and the sum of the locals of every method.
+     */
+    private static Measure measure(String ollirCode, Map<String, String> config, int numReg) {
+        double bestMillis = Double.MAX_VALUE;
+        int locals = 0;
+        for (int i = 0; i < REPETITIONS; i++) {
+            var ollirResult = new OllirResult(ollirCode, config);
+
+            long start = System.nanoTime();
+            new RegisterAllocation(ollirResult, numReg).apply();
+            bestMillis = Math.min(bestMillis, (System.nanoTime() - start) / 1e6);
+
+            locals = 0;
+            for (Method method : ollirResult.getOllirClass().getMethods()) {
+                locals += getLocals(method);
+            }
+        }
+        return new Measure(bestMillis, locals);
+    }
+
+    /**
+     * Same value the backend writes in '.limit locals'.
+     */
+    private static int getLocals(Method method) {
+        int maxReg = 0;
+        for (var var : method.getVarTable().values()) {
+            maxReg = Math.max(maxReg, var.getVirtualReg());
+        }
+        return maxReg + 1;
+    }
+}
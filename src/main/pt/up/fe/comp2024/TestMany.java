@@ -18,79 +18,50 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public class TestMany {
-    private static void testFile(String fileName) {
-        var config = CompilerConfig.getDefault();
+    public static void main(String[] args) {
+        // same options as the launcher; the input defaults to the 'input/' folder
+        boolean hasInput = Arrays.stream(args).anyMatch(arg -> arg.startsWith("-i"));
+        String[] allArgs = hasInput ? args : Stream.concat(Stream.of("-i=input/"), Arrays.stream(args)).toArray(String[]::new);
+        Map<String, String> config = CompilerConfig.parseArgs(allArgs);
 
-        if (!CompilerConfig.putFile(config, fileName)) {
-            throw new RuntimeException("File name " + fileName + " is not a file");
-        }
+        File[] fileList = CompilerConfig.getInputFile(config).orElseThrow().listFiles(File::isFile);
+        assert fileList != null;
+        Arrays.sort(fileList);
 
-        var inputFile = CompilerConfig.getInputFile(config).orElseThrow();
-        if (!inputFile.isFile()) {
-            throw new RuntimeException("File name " + fileName + " is not a file");
-        }
+        var batch = new BatchCompiler(config, CompilerConfig.getJobs(config)).compile(Arrays.asList(fileList));
 
-        String code = SpecsIo.read(inputFile);
-
-        // Parsing stage
-        JmmParserImpl parser = new JmmParserImpl();
-        JmmParserResult parserResult = parser.parse(code, config);
-        TestUtils.noErrors(parserResult.getReports());
+        List<String> errors = new ArrayList<>();
+        for (var fileResult : batch.getFileResults()) {
+            String fileName = fileResult.getFile().getName();
+            System.out.println("Testing file " + fileName);
 
-        // Semantic Analysis stage
-        JmmAnalysisImpl sema = new JmmAnalysisImpl();
-        JmmSemanticsResult semanticsResult = sema.semanticAnalysis(parserResult);
-        try {
-            if (fileName.contains("error")) {
-                TestUtils.mustFail(semanticsResult.getReports());
+            if (fileResult.getException() != null) {
+                System.out.println("Error testing file " + fileName + ": " + fileResult.getException().getMessage());
+                errors.add(fileName);
             } else {
-                TestUtils.noErrors(semanticsResult.getReports());
-            }
-        } catch (Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println("Error in file " + fileName);
-            return;
-        }
-
-        // print the contents of the symbol table (e.g. imports, ...)
-        var symbolTable = semanticsResult.getSymbolTable();
-        System.out.println(symbolTable);
+                var result = fileResult.getResult();
+                if (fileName.contains("error") != result.hasErrors()) {
+                    System.out.println(result.getReports());
+                    System.out.println("Error in file " + fileName);
+                    errors.add(fileName);
+                }
 
-        // Optimization stage
-        JmmOptimizationImpl ollirGen = new JmmOptimizationImpl();
-        OllirResult ollirResult = ollirGen.toOllir(semanticsResult);
-        TestUtils.noErrors(ollirResult.getReports());
+                // print the contents of the symbol table (e.g. imports, ...)
+                result.getSemanticsResult().ifPresent(semanticsResult -> System.out.println(semanticsResult.getSymbolTable()));
 
-        // Print OLLIR code
-        System.out.println(ollirResult.getOllirCode());
-
-        // Code generation stage
-//        JasminBackendImpl jasminGen = new JasminBackendImpl();
-//        JasminResult jasminResult = jasminGen.toJasmin(ollirResult);
-//        TestUtils.noErrors(jasminResult.getReports());
-
-        // Print Jasmin code
-//        System.out.println(jasminResult.getJasminCode());
-    }
-
-    public static void main(String[] args) {
-        File[] fileList = new File("input/").listFiles();
-        List<String> errors = new ArrayList<>();
-        for (File file : fileList) {
-            String fileName = file.getName();
-            System.out.println("Testing file " + fileName);
-            try{
-                testFile("input/" + fileName);
-            } catch (Exception e) {
-                System.out.println("Error testing file " + fileName + ": " + e.getMessage());
-                errors.add(fileName);
+                // Print OLLIR code
+                result.getOllirCode().ifPresent(System.out::println);
             }
             System.out.print("\n--------------------\n");
         }
 
         System.out.println("ERRORS:");
         for (String s : errors) System.out.println(s);
+
+        System.out.print(batch.getSummary());
+        batch.writeTimingReport(config);
     }
 }
@@ -8,7 +8,10 @@ import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.ast.NodeUtils;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.BiFunction;
 
 /**
  *
@@ -17,6 +20,9 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
 
     private List<Report> reports;
 
+    // kinds that have a visit, filled by buildVisitor, which runs before the fields of this class are initialized
+    private Set<String> visitedKinds;
+
     public AnalysisVisitor() {
         reports = new ArrayList<>();
         setDefaultValue(() -> null);
@@ -30,6 +36,29 @@ public abstract class AnalysisVisitor extends PreorderJmmVisitor<SymbolTable, Vo
         return reports;
     }
 
+    @Override
+    public void addVisit(String kind, BiFunction<JmmNode, SymbolTable, Void> method) {
+        if (visitedKinds == null) {
+            visitedKinds = new HashSet<>();
+        }
+        visitedKinds.add(kind);
+        super.addVisit(kind, method);
+    }
+
+    /**
+     * @return true if the pass has a visit for nodes of the kind of the given node, or of one of its super kinds
+     */
+    boolean visits(JmmNode node) {
+        return visitedKinds != null && node.getHierarchy().stream().anyMatch(visitedKinds::contains);
+    }
+
+    /**
+     * Visits the given node, but not its children, as {@link FusedAnalysis} visits them itself.
+     */
+    void visitNode(JmmNode node, SymbolTable table) {
+        getVisit(node).apply(node, table);
+    }
+
 
     @Override
     public List<Report> analyze(JmmNode root, SymbolTable table) {
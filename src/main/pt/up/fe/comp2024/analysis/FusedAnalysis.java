@@ -0,0 +1,96 @@
+package pt.up.fe.comp2024.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs several analysis passes in a single preorder traversal of the AST, instead of one traversal per pass. Each node
+ * is given, in the order the passes were registered, to the passes that have a visit for its kind.
+ * <p>
+ * The reports are the same as running the passes one after the other: those of each pass come in the order of the
+ * passes, and a pass that throws stops receiving nodes and is reported with an error, while the other passes go on.
+ * Each pass is still profiled as a phase of its own.
+ */
+public class FusedAnalysis implements AnalysisPass {
+
+    private final List<AnalysisVisitor> passes;
+
+    // passes interested in each kind of node, in registration order
+    private final Map<String, List<PassRun>> passesByKind = new HashMap<>();
+
+    private List<PassRun> runs;
+
+    public FusedAnalysis(List<AnalysisVisitor> passes) {
+        this.passes = passes;
+    }
+
+    @Override
+    public List<Report> analyze(JmmNode root, SymbolTable table) {
+        runs = new ArrayList<>();
+        for (var pass : passes) {
+            runs.add(new PassRun(pass, PhaseProfiler.interleaved(pass.getClass().getSimpleName())));
+        }
+        passesByKind.clear();
+
+        visit(root, table);
+
+        List<Report> reports = new ArrayList<>();
+        for (var run : runs) {
+            run.timing.end();
+
+            if (run.failure == null) {
+                reports.addAll(run.pass.getReports());
+            } else {
+                reports.add(Report.newError(Stage.SEMANTIC,
+                        -1,
+                        -1,
+                        "Problem while executing analysis pass '" + run.pass.getClass() + "'",
+                        run.failure)
+                );
+            }
+        }
+
+        return reports;
+    }
+
+    private void visit(JmmNode node, SymbolTable table) {
+        var interested = passesByKind.computeIfAbsent(node.getKind(), kind -> runs.stream()
+                .filter(run -> run.pass.visits(node))
+                .toList());
+
+        for (var run : interested) {
+            if (run.failure != null) {
+                continue;
+            }
+
+            try {
+                run.timing.time(() -> run.pass.visitNode(node, table));
+            } catch (Exception e) {
+                run.failure = e;
+            }
+        }
+
+        for (var child : node.getChildren()) {
+            visit(child, table);
+        }
+    }
+
+    private static class PassRun {
+        private final AnalysisVisitor pass;
+        private final PhaseProfiler.Interleaved timing;
+        private Exception failure;
+
+        PassRun(AnalysisVisitor pass, PhaseProfiler.Interleaved timing) {
+            this.pass = pass;
+            this.timing = timing;
+        }
+    }
+}
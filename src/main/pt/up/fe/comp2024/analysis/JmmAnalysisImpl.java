@@ -6,20 +6,23 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
-import pt.up.fe.comp.jmm.report.Stage;
 import pt.up.fe.comp2024.analysis.passes.*;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
 import pt.up.fe.comp2024.symboltable.JmmSymbolTableBuilder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Supplier;
 
 public class JmmAnalysisImpl implements JmmAnalysis {
 
 
-    private final List<AnalysisPass> analysisPasses;
+    // passes keep state while visiting, so fresh instances are created for each analysis;
+    // this lets the same JmmAnalysisImpl be reused across (and concurrently by) several compilations
+    private final List<Supplier<AnalysisVisitor>> analysisPasses;
 
     public JmmAnalysisImpl() {
-        this.analysisPasses = List.of(new UndeclaredVariable(), new BinExprTypes(), new BoolExpr(), new Arrays(), new AssignType(), new ThisExpr(), new VarArgs(), new Methods());
+        this.analysisPasses = List.of(TypeAttribution::new, UndeclaredVariable::new, BinExprTypes::new, BoolExpr::new, Arrays::new, AssignType::new, ThisExpr::new, VarArgs::new, Methods::new);
     }
 
     @Override
@@ -28,22 +31,11 @@ public class JmmAnalysisImpl implements JmmAnalysis {
         JmmNode rootNode = parserResult.getRootNode();
 
         List<Report> reports = new ArrayList<>();
-        SymbolTable table = JmmSymbolTableBuilder.build(rootNode, reports);
-
-        // Visit all nodes in the AST
-        for (var analysisPass : analysisPasses) {
-            try {
-                var passReports = analysisPass.analyze(rootNode, table);
-                reports.addAll(passReports);
-            } catch (Exception e) {
-                reports.add(Report.newError(Stage.SEMANTIC,
-                        -1,
-                        -1,
-                        "Problem while executing analysis pass '" + analysisPass.getClass() + "'",
-                        e)
-                );
-            }
-        }
+        SymbolTable table = PhaseProfiler.time("symbolTable", () -> JmmSymbolTableBuilder.build(rootNode, reports));
+
+        // Visit all nodes in the AST, once for all the passes
+        var passes = analysisPasses.stream().map(Supplier::get).toList();
+        reports.addAll(new FusedAnalysis(passes).analyze(rootNode, table));
 
         return new JmmSemanticsResult(parserResult, table, reports);
     }
@@ -0,0 +1,47 @@
+package pt.up.fe.comp2024.analysis.passes;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.analysis.AnalysisVisitor;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import java.util.ArrayList;
+
+/**
+ * Computes the type of every expression, so that the other passes and the OLLIR generation find it in the
+ * {@link pt.up.fe.comp2024.ast.ExprTypes} of the table. It reports nothing: the errors found while computing a type
+ * are reported by the passes that check it, which is why types with errors are not kept.
+ */
+public class TypeAttribution extends AnalysisVisitor {
+    private String currentMethod;
+
+    @Override
+    protected void buildVisitor() {
+        addVisit(Kind.METHOD_DECL, this::visitMethodDecl);
+
+        for (var kind : new Kind[]{Kind.BINARY_EXPR, Kind.ID_LITERAL_EXPR, Kind.INT_LITERAL_EXPR, Kind.ARRAY_INDEX_EXPR,
+                Kind.MEMBER_ACCESS_EXPR, Kind.THIS_EXPR, Kind.NEW_OBJ_EXPR, Kind.METHOD_CALL_EXPR, Kind.NEW_ARRAY_EXPR,
+                Kind.ARRAY_DECL_EXPR, Kind.BOOLEAN_LITERAL_EXPR, Kind.PAREN_EXPR, Kind.NOT_EXPR}) {
+            addVisit(kind, this::visitExpr);
+        }
+    }
+
+    private Void visitMethodDecl(JmmNode method, SymbolTable table) {
+        currentMethod = method.get("name");
+        return null;
+    }
+
+    private Void visitExpr(JmmNode expr, SymbolTable table) {
+        if (currentMethod == null) {
+            return null;
+        }
+
+        try {
+            TypeUtils.getExprType(expr, table, currentMethod, new ArrayList<>());
+        } catch (RuntimeException e) {
+            // the passes that check this expression will fail on it as well
+        }
+        return null;
+    }
+}
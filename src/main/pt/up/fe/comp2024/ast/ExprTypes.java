@@ -0,0 +1,71 @@
+package pt.up.fe.comp2024.ast;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.symboltable.JmmSymbolTable;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Side table with the {@link Type} of the expressions of an AST, so that {@link TypeUtils#getExprType} computes the
+ * type of each expression only once. It belongs to the symbol table of the AST, and nodes are kept by identity.
+ * <p>
+ * Computing a type may also report errors, which must not be lost when the type is reused. A type is "checked" when
+ * it was computed with a list of reports without errors and added nothing to it: computing it again would report
+ * nothing, so it can be given to every caller. Other types are only given to callers that do not want reports.
+ * <p>
+ * Rewrites of the AST must call {@link #invalidate(JmmNode)} for the node they put in the tree, since the types of
+ * its ancestors depend on it.
+ */
+public class ExprTypes {
+    // for symbol tables without a side table, keeps nothing
+    private static final ExprTypes NONE = new ExprTypes(false);
+
+    record Entry(String method, Type type, boolean checked) {
+    }
+
+    private final boolean enabled;
+    private final Map<JmmNode, Entry> types = new IdentityHashMap<>();
+
+    private ExprTypes(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public ExprTypes() {
+        this(true);
+    }
+
+    public static ExprTypes of(SymbolTable table) {
+        return table instanceof JmmSymbolTable jmmTable ? jmmTable.getExprTypes() : NONE;
+    }
+
+    /**
+     * @param checked if the caller wants the reports of the expression, in which case only checked types are returned
+     * @return the type of the expression in the given method, or null if it is not known
+     */
+    Entry get(JmmNode expr, String method, boolean checked) {
+        var entry = types.get(expr);
+        if (entry == null || !Objects.equals(entry.method(), method) || checked && !entry.checked()) {
+            return null;
+        }
+        return entry;
+    }
+
+    void put(JmmNode expr, String method, Type type, boolean checked) {
+        if (enabled) {
+            types.put(expr, new Entry(method, type, checked));
+        }
+    }
+
+    /**
+     * Forgets the types of the given node and of its ancestors, after the node was put in the place of another.
+     */
+    public void invalidate(JmmNode node) {
+        for (var current = node; current != null; current = current.getParent()) {
+            types.remove(current);
+        }
+    }
+}
@@ -12,7 +12,6 @@ import pt.up.fe.comp2024.utils.ReportUtils;
 import java.util.List;
 
 public class TypeUtils {
-    private static boolean mainIsStatic = false;
     private static final String INT_TYPE_NAME = "int";
     private static final String BOOLEAN_TYPE_NAME = "boolean";
     private static final String VOID_TYPE_NAME = "void";
@@ -53,17 +52,29 @@ public class TypeUtils {
     public static String getStringTypeName() {
         return STRING_TYPE_NAME;
     }
-    public static void setMainIsStatic(boolean isStatic) {
-        mainIsStatic = isStatic;
-    }
     /**
-     * Gets the {@link Type} of an arbitrary expression.
+     * Gets the {@link Type} of an arbitrary expression. Types are kept in the {@link ExprTypes} of the table, and are
+     * only computed again if that could add reports.
      *
      * @param expr
      * @param table
      * @return
      */
     public static Type getExprType(JmmNode expr, SymbolTable table, String currentMethod, List<Report> reports) {
+        var exprTypes = ExprTypes.of(table);
+        var known = exprTypes.get(expr, currentMethod, reports != null);
+        if (known != null) {
+            return known.type();
+        }
+
+        int reportCount = reports == null ? 0 : reports.size();
+        boolean noErrors = reports != null && !ReportUtils.anyError(reports);
+        var type = computeExprType(expr, table, currentMethod, reports);
+        exprTypes.put(expr, currentMethod, type, noErrors && reports.size() == reportCount);
+        return type;
+    }
+
+    private static Type computeExprType(JmmNode expr, SymbolTable table, String currentMethod, List<Report> reports) {
         var kind = Kind.fromString(expr.getKind());
         return switch (kind) {
             case BINARY_EXPR -> getBinExprType(expr, table, currentMethod, reports);
@@ -324,7 +335,7 @@ public class TypeUtils {
         if (SymbolTableUtils.isParam(id, currentMethod, table)) {
             return SymbolTableUtils.getParam(id, currentMethod, table).getType();
         }
-        if (SymbolTableUtils.isField(id, table) && !(currentMethod.equals("main") && mainIsStatic)) {
+        if (SymbolTableUtils.isField(id, table) && !(currentMethod.equals("main") && SymbolTableUtils.isMainStatic(table))) {
             return SymbolTableUtils.getField(id, table).getType();
         }
 
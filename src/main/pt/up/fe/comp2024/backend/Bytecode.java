@@ -0,0 +1,556 @@
+package pt.up.fe.comp2024.backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Code of one method, as a list of JVM instructions and labels.
+ * <p>
+ * Besides encoding the instructions, {@link #assemble} follows every path through the code, tracking the types of
+ * the locals and of the operand stack, to find the maximum stack size and the StackMapTable frames the verifier
+ * needs at each branch target. Code no path reaches is replaced by nops and an athrow, as the verifier would
+ * otherwise need a frame for it that no path could justify.
+ */
+class Bytecode {
+
+    static final int NOP = 0x00;
+    static final int ICONST_M1 = 0x02;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ILOAD_0 = 0x1a;
+    static final int ALOAD_0 = 0x2a;
+    static final int IALOAD = 0x2e;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int ISTORE_0 = 0x3b;
+    static final int ASTORE_0 = 0x4b;
+    static final int IASTORE = 0x4f;
+    static final int POP = 0x57;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7a;
+    static final int IUSHR = 0x7c;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int NEW = 0xbb;
+    static final int NEWARRAY = 0xbc;
+    static final int ARRAYLENGTH = 0xbe;
+    static final int ATHROW = 0xbf;
+    static final int WIDE = 0xc4;
+
+    private static final int T_INT = 10;
+
+    /**
+     * Type of a local or stack slot, as the verifier sees it.
+     *
+     * @param tag       verification type tag of the StackMapTable
+     * @param className internal name of the class, for objects
+     * @param offset    offset of the 'new' that created the value, for uninitialized objects
+     */
+    record VerificationType(int tag, String className, int offset) {
+        static final int TOP_TAG = 0;
+        static final int INTEGER_TAG = 1;
+        static final int UNINITIALIZED_THIS_TAG = 6;
+        static final int OBJECT_TAG = 7;
+        static final int UNINITIALIZED_TAG = 8;
+
+        static final VerificationType TOP = new VerificationType(TOP_TAG, null, 0);
+        static final VerificationType INTEGER = new VerificationType(INTEGER_TAG, null, 0);
+        static final VerificationType UNINITIALIZED_THIS = new VerificationType(UNINITIALIZED_THIS_TAG, null, 0);
+
+        static VerificationType object(String internalName) {
+            return new VerificationType(OBJECT_TAG, internalName, 0);
+        }
+
+        boolean isUninitialized() {
+            return tag == UNINITIALIZED_TAG || tag == UNINITIALIZED_THIS_TAG;
+        }
+    }
+
+    /**
+     * One instruction. Loads and stores keep the register in the operand, branches their target label, and
+     * the other instructions their stack effect: how many values they pop and the type of the value they push.
+     */
+    private record Insn(int opcode, int operand, int extra, String label, int pops, VerificationType push) {
+    }
+
+    private final List<Insn> insns = new ArrayList<>();
+    private final Map<String, Integer> labels = new HashMap<>();     // label -> index of the next instruction
+
+    private int[] offsets;
+    private int maxStack;
+    private int maxLocals;
+    private byte[] code;
+    private byte[] stackMapTable;
+    private int numFrames;
+
+    void label(String label) {
+        if (labels.putIfAbsent(label, insns.size()) != null) {
+            throw new RuntimeException("Label '" + label + "' is defined twice");
+        }
+    }
+
+    void iconst(int value, ConstantPool constantPool) {
+        if (value >= -1 && value <= 5) {
+            add(ICONST_M1 + value + 1, 0, 0, VerificationType.INTEGER);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            add(BIPUSH, value, 0, VerificationType.INTEGER);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            add(SIPUSH, value, 0, VerificationType.INTEGER);
+        } else {
+            int index = constantPool.integer(value);
+            add(index <= 0xFF ? LDC : LDC_W, index, 0, VerificationType.INTEGER);
+        }
+    }
+
+    /**
+     * Loads a local. Integers and booleans use iload, everything else aload.
+     */
+    void load(boolean isInteger, int reg) {
+        insns.add(new Insn(isInteger ? ILOAD : ALOAD, reg, 0, null, 0, null));
+    }
+
+    /**
+     * Stores into a local, which from then on has the type of the stored value. Integers and booleans use istore,
+     * everything else astore.
+     */
+    void store(boolean isInteger, int reg) {
+        insns.add(new Insn(isInteger ? ISTORE : ASTORE, reg, 0, null, 1, null));
+    }
+
+    void iinc(int reg, int value) {
+        insns.add(new Insn(IINC, reg, value, null, 0, null));
+    }
+
+    /**
+     * An instruction with no operands, that pops the given number of values and pushes one of the given type
+     * (or nothing, if it is null).
+     */
+    void op(int opcode, int pops, VerificationType push) {
+        add(opcode, 0, pops, push);
+    }
+
+    void branch(int opcode, String label) {
+        int pops = opcode == GOTO ? 0 : opcode >= IF_ICMPEQ ? 2 : 1;
+        insns.add(new Insn(opcode, 0, 0, label, pops, null));
+    }
+
+    void newObject(int classIndex) {
+        // the pushed type depends on the offset of the instruction, which is only known when assembling
+        add(NEW, classIndex, 0, null);
+    }
+
+    void newIntArray() {
+        add(NEWARRAY, T_INT, 1, VerificationType.object("[I"));
+    }
+
+    /**
+     * Calls a method. The pops include the object the method is called on. Calling a constructor initializes
+     * that object.
+     */
+    void invoke(int opcode, int methodIndex, int pops, VerificationType returnType, String initializedClass) {
+        insns.add(new Insn(opcode, methodIndex, 0, initializedClass, pops, returnType));
+    }
+
+    void field(int opcode, int fieldIndex, VerificationType type) {
+        if (opcode == GETFIELD) add(GETFIELD, fieldIndex, 1, type);
+        else add(PUTFIELD, fieldIndex, 2, null);
+    }
+
+    private void add(int opcode, int operand, int pops, VerificationType push) {
+        insns.add(new Insn(opcode, operand, 0, null, pops, push));
+    }
+
+    /**
+     * Encodes the code and computes its frames.
+     *
+     * @param initialLocals types of the locals when the method starts (this and the parameters)
+     * @param thisClass     internal name of the class, which "this" has after the super constructor runs
+     */
+    void assemble(ConstantPool constantPool, List<VerificationType> initialLocals, int numLocals, String thisClass) {
+        int registers = numLocals;
+        for (Insn insn : insns) {
+            if (isLocalAccess(insn.opcode)) registers = Math.max(registers, insn.operand + 1);
+        }
+        maxLocals = Math.max(registers, initialLocals.size());
+
+        computeOffsets();
+
+        Frame initial = new Frame(maxLocals);
+        for (int i = 0; i < initialLocals.size(); i++) initial.locals[i] = initialLocals.get(i);
+
+        Frame[] frames = computeFrames(initial, thisClass);
+
+        // frames are needed where a jump lands and where unreachable code starts
+        Set<Integer> frameIndexes = new TreeSet<>();
+        for (Insn insn : insns) {
+            if (insn.label != null && isBranch(insn.opcode)) {
+                int target = labels.get(insn.label);
+                if (target < insns.size()) frameIndexes.add(target);
+            }
+        }
+        for (int i = 0; i < insns.size(); i++) {
+            if (frames[i] == null && (i == 0 || frames[i - 1] != null)) {
+                frameIndexes.add(i);
+                maxStack = Math.max(maxStack, 1);
+            }
+        }
+
+        code = encode(constantPool, frames);
+        stackMapTable = encodeFrames(constantPool, frameIndexes, frames, initial);
+    }
+
+    int getMaxStack() {
+        return maxStack;
+    }
+
+    int getMaxLocals() {
+        return maxLocals;
+    }
+
+    byte[] getCode() {
+        return code;
+    }
+
+    /**
+     * @return the StackMapTable attribute, without its name and length
+     */
+    byte[] getStackMapTable() {
+        return stackMapTable;
+    }
+
+    int getNumFrames() {
+        return numFrames;
+    }
+
+    private void computeOffsets() {
+        offsets = new int[insns.size() + 1];
+        int offset = 0;
+        for (int i = 0; i < insns.size(); i++) {
+            offsets[i] = offset;
+            offset += size(insns.get(i));
+        }
+        offsets[insns.size()] = offset;
+        if (offset > 0xFFFF) {
+            throw new RuntimeException("Method code is larger than 64KB");
+        }
+    }
+
+    private static int size(Insn insn) {
+        return switch (insn.opcode) {
+            case ILOAD, ALOAD, ISTORE, ASTORE -> insn.operand <= 3 ? 1 : insn.operand <= 0xFF ? 2 : 4;
+            case IINC -> insn.operand <= 0xFF && insn.extra >= Byte.MIN_VALUE && insn.extra <= Byte.MAX_VALUE ? 3 : 6;
+            case BIPUSH, LDC, NEWARRAY -> 2;
+            case SIPUSH, LDC_W, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, NEW -> 3;
+            default -> isBranch(insn.opcode) ? 3 : 1;
+        };
+    }
+
+    private static boolean isBranch(int opcode) {
+        return opcode >= IFEQ && opcode <= GOTO;
+    }
+
+    private static boolean isLocalAccess(int opcode) {
+        return opcode == ILOAD || opcode == ALOAD || opcode == ISTORE || opcode == ASTORE || opcode == IINC;
+    }
+
+    private static boolean endsFlow(int opcode) {
+        return opcode == GOTO || opcode == IRETURN || opcode == ARETURN || opcode == RETURN || opcode == ATHROW;
+    }
+
+    private static final class Frame {
+        final VerificationType[] locals;
+        final List<VerificationType> stack;
+
+        Frame(int numLocals) {
+            locals = new VerificationType[numLocals];
+            Arrays.fill(locals, VerificationType.TOP);
+            stack = new ArrayList<>();
+        }
+
+        Frame(Frame other) {
+            locals = other.locals.clone();
+            stack = new ArrayList<>(other.stack);
+        }
+
+        /**
+         * Merges the other frame into this one. Locals that differ become unusable.
+         *
+         * @return whether this frame changed
+         */
+        boolean merge(Frame other, int index) {
+            if (stack.size() != other.stack.size()) {
+                throw new RuntimeException("Stack sizes " + stack.size() + " and " + other.stack.size()
+                        + " meet at instruction " + index);
+            }
+            boolean changed = false;
+            for (int i = 0; i < locals.length; i++) {
+                if (!locals[i].equals(other.locals[i]) && locals[i] != VerificationType.TOP) {
+                    locals[i] = VerificationType.TOP;
+                    changed = true;
+                }
+            }
+            for (int i = 0; i < stack.size(); i++) {
+                if (!stack.get(i).equals(other.stack.get(i))) {
+                    throw new RuntimeException("Stack types " + stack.get(i) + " and " + other.stack.get(i)
+                            + " meet at instruction " + index);
+                }
+            }
+            return changed;
+        }
+    }
+
+    /**
+     * @return the frame before each instruction, or null for the instructions no path reaches
+     */
+    private Frame[] computeFrames(Frame initial, String thisClass) {
+        Frame[] frames = new Frame[insns.size()];
+        if (insns.isEmpty()) return frames;
+
+        Deque<Integer> worklist = new ArrayDeque<>();
+        frames[0] = initial;
+        worklist.add(0);
+        maxStack = 0;
+
+        while (!worklist.isEmpty()) {
+            int index = worklist.poll();
+            Insn insn = insns.get(index);
+            Frame frame = new Frame(frames[index]);
+            execute(insn, index, frame, thisClass);
+            maxStack = Math.max(maxStack, frame.stack.size());
+
+            List<Integer> successors = new ArrayList<>();
+            if (!endsFlow(insn.opcode) && index + 1 < insns.size()) successors.add(index + 1);
+            if (isBranch(insn.opcode)) {
+                Integer target = labels.get(insn.label);
+                if (target == null || target >= insns.size()) {
+                    throw new RuntimeException("Jump to undefined label '" + insn.label + "'");
+                }
+                successors.add(target);
+            }
+
+            for (int successor : successors) {
+                if (frames[successor] == null) {
+                    frames[successor] = new Frame(frame);
+                    worklist.add(successor);
+                } else if (frames[successor].merge(frame, successor)) {
+                    worklist.add(successor);
+                }
+            }
+        }
+        return frames;
+    }
+
+    private void execute(Insn insn, int index, Frame frame, String thisClass) {
+        var stack = frame.stack;
+        switch (insn.opcode) {
+            case ILOAD -> stack.add(VerificationType.INTEGER);
+            case ALOAD -> stack.add(frame.locals[insn.operand]);
+            case ISTORE, ASTORE -> frame.locals[insn.operand] = pop(stack, index);
+            case IINC -> {
+            }
+            case NEW -> stack.add(new VerificationType(VerificationType.UNINITIALIZED_TAG, null, offsets[index]));
+            case INVOKESPECIAL -> {
+                VerificationType receiver = null;
+                for (int i = 0; i < insn.pops; i++) receiver = pop(stack, index);
+                if (insn.label != null && receiver != null && receiver.isUninitialized()) {
+                    var initialized = VerificationType.object(
+                            receiver.tag() == VerificationType.UNINITIALIZED_THIS_TAG ? thisClass : insn.label);
+                    for (int i = 0; i < frame.locals.length; i++) {
+                        if (frame.locals[i].equals(receiver)) frame.locals[i] = initialized;
+                    }
+                    for (int i = 0; i < stack.size(); i++) {
+                        if (stack.get(i).equals(receiver)) stack.set(i, initialized);
+                    }
+                }
+                if (insn.push != null) stack.add(insn.push);
+            }
+            default -> {
+                for (int i = 0; i < insn.pops; i++) pop(stack, index);
+                if (insn.push != null) stack.add(insn.push);
+            }
+        }
+    }
+
+    private static VerificationType pop(List<VerificationType> stack, int index) {
+        if (stack.isEmpty()) {
+            throw new RuntimeException("Stack underflow at instruction " + index);
+        }
+        return stack.remove(stack.size() - 1);
+    }
+
+    private byte[] encode(ConstantPool constantPool, Frame[] frames) {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        try {
+            for (int i = 0; i < insns.size(); i++) {
+                if (frames[i] == null) {
+                    // unreachable code keeps its size, so the offsets do not change
+                    int end = i;
+                    while (end < insns.size() && frames[end] == null) end++;
+                    int length = offsets[end] - offsets[i];
+                    for (int b = 0; b < length - 1; b++) out.writeByte(NOP);
+                    out.writeByte(ATHROW);
+                    i = end - 1;
+                    continue;
+                }
+                encode(insns.get(i), offsets[i], out);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void encode(Insn insn, int offset, DataOutputStream out) throws IOException {
+        switch (insn.opcode) {
+            case ILOAD, ALOAD, ISTORE, ASTORE -> {
+                int shortForm = switch (insn.opcode) {
+                    case ILOAD -> ILOAD_0;
+                    case ALOAD -> ALOAD_0;
+                    case ISTORE -> ISTORE_0;
+                    default -> ASTORE_0;
+                };
+                if (insn.operand <= 3) {
+                    out.writeByte(shortForm + insn.operand);
+                } else if (insn.operand <= 0xFF) {
+                    out.writeByte(insn.opcode);
+                    out.writeByte(insn.operand);
+                } else {
+                    out.writeByte(WIDE);
+                    out.writeByte(insn.opcode);
+                    out.writeShort(insn.operand);
+                }
+            }
+            case IINC -> {
+                if (size(insn) == 3) {
+                    out.writeByte(IINC);
+                    out.writeByte(insn.operand);
+                    out.writeByte(insn.extra);
+                } else {
+                    out.writeByte(WIDE);
+                    out.writeByte(IINC);
+                    out.writeShort(insn.operand);
+                    out.writeShort(insn.extra);
+                }
+            }
+            case BIPUSH, NEWARRAY, LDC -> {
+                out.writeByte(insn.opcode);
+                out.writeByte(insn.operand);
+            }
+            case SIPUSH, LDC_W, GETFIELD, PUTFIELD, INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, NEW -> {
+                out.writeByte(insn.opcode);
+                out.writeShort(insn.operand);
+            }
+            default -> {
+                out.writeByte(insn.opcode);
+                if (isBranch(insn.opcode)) {
+                    int jump = offsets[labels.get(insn.label)] - offset;
+                    if (jump < Short.MIN_VALUE || jump > Short.MAX_VALUE) {
+                        throw new RuntimeException("Jump to '" + insn.label + "' is too long");
+                    }
+                    out.writeShort(jump);
+                }
+            }
+        }
+    }
+
+    private byte[] encodeFrames(ConstantPool constantPool, Set<Integer> frameIndexes, Frame[] frames, Frame initial) {
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        numFrames = 0;
+        try {
+            int previousOffset = -1;
+            List<VerificationType> previousLocals = trimmedLocals(initial);
+            for (int index : frameIndexes) {
+                int offset = offsets[index];
+                int delta = offset - previousOffset - 1;
+
+                List<VerificationType> locals;
+                List<VerificationType> stack;
+                if (frames[index] == null) {
+                    // unreachable code only throws what is on the stack
+                    locals = List.of();
+                    stack = List.of(VerificationType.object("java/lang/Throwable"));
+                } else {
+                    locals = trimmedLocals(frames[index]);
+                    stack = frames[index].stack;
+                }
+
+                if (locals.equals(previousLocals) && stack.isEmpty()) {
+                    if (delta < 64) {
+                        out.writeByte(delta);                       // same_frame
+                    } else {
+                        out.writeByte(251);                         // same_frame_extended
+                        out.writeShort(delta);
+                    }
+                } else {
+                    out.writeByte(255);                             // full_frame
+                    out.writeShort(delta);
+                    out.writeShort(locals.size());
+                    for (var type : locals) writeType(type, constantPool, out);
+                    out.writeShort(stack.size());
+                    for (var type : stack) writeType(type, constantPool, out);
+                }
+
+                previousOffset = offset;
+                previousLocals = locals;
+                numFrames++;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return the locals of the frame, without the unusable ones at the end, which the frame can leave out
+     */
+    private static List<VerificationType> trimmedLocals(Frame frame) {
+        int size = frame.locals.length;
+        while (size > 0 && frame.locals[size - 1] == VerificationType.TOP) size--;
+        return Arrays.asList(frame.locals).subList(0, size);
+    }
+
+    private static void writeType(VerificationType type, ConstantPool constantPool, DataOutputStream out)
+            throws IOException {
+        out.writeByte(type.tag());
+        if (type.tag() == VerificationType.OBJECT_TAG) {
+            out.writeShort(constantPool.classRef(type.className()));
+        } else if (type.tag() == VerificationType.UNINITIALIZED_TAG) {
+            out.writeShort(type.offset());
+        }
+    }
+}
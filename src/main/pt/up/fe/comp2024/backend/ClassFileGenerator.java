@@ -0,0 +1,695 @@
+package pt.up.fe.comp2024.backend;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.exceptions.NotImplementedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static pt.up.fe.comp2024.backend.Bytecode.*;
+
+/**
+ * Generates the class file of an OllirResult directly, without going through Jasmin code.
+ * <p>
+ * Selects the same instructions as {@link JasminGenerator}, which serves as its reference, and computes the maximum
+ * stack size, the number of locals and the StackMapTable frames itself, so the class is accepted by the verifier of
+ * current JVMs. One ClassFileGenerator instance per OllirResult.
+ */
+public class ClassFileGenerator {
+
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 61;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private final OllirResult ollirResult;
+
+    private final List<Report> reports;
+
+    private byte[] bytes;
+
+    private ConstantPool constantPool;
+    private ClassUnit currentClass;
+    private Method currentMethod;
+    private Bytecode code;
+    private Map<String, String> importTable;
+
+    private int numLessThan = 0;
+
+    private Instruction nextInstructionIsIncrement;
+    private boolean ignoreInst = false;
+
+    // number of times each variable appears in the current method (definitions and uses)
+    private Map<String, Integer> operandOccurrences;
+
+    public ClassFileGenerator(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.reports = new ArrayList<>();
+    }
+
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    /**
+     * @return the contents of the class file
+     */
+    public byte[] build() {
+
+        // This way, build is idempotent
+        if (bytes == null) {
+            createImportTable(ollirResult.getOllirClass().getImports());
+            try {
+                bytes = generateClassUnit(ollirResult.getOllirClass());
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write class file", e);
+            }
+        }
+
+        return bytes;
+    }
+
+    // "org.Class1" -> <"Class1","org/Class1">, as in JasminGenerator
+    private void createImportTable(List<String> imports) {
+        importTable = new HashMap<>();
+        for (String imp : imports) {
+            String[] parts = imp.split("\\.");
+            importTable.put(parts[parts.length - 1], imp.replace(".", "/"));
+        }
+    }
+
+    private String getImportedClass(String className) {
+        return importTable.getOrDefault(className, className);
+    }
+
+    private byte[] generateClassUnit(ClassUnit classUnit) throws IOException {
+        currentClass = classUnit;
+        constantPool = new ConstantPool();
+
+        // the constant pool goes before the rest of the class, but is only complete after generating it
+        var body = new ByteArrayOutputStream();
+        var out = new DataOutputStream(body);
+
+        String superClass = classUnit.getSuperClass() != null ?
+                getImportedClass(classUnit.getSuperClass()) : "java/lang/Object";
+
+        out.writeShort(ACC_SUPER);
+        out.writeShort(constantPool.classRef(classUnit.getClassName()));
+        out.writeShort(constantPool.classRef(superClass));
+        out.writeShort(0);    // interfaces
+
+        out.writeShort(classUnit.getNumFields());
+        for (var field : classUnit.getFields()) {
+            generateField(field, out);
+        }
+
+        // constructors are not generated from the OLLIR, the class has the default one if it does not extend another
+        var methods = classUnit.getMethods().stream().filter(method -> !method.isConstructMethod()).toList();
+        boolean hasDefaultConstructor = classUnit.getSuperClass() == null;
+        out.writeShort(methods.size() + (hasDefaultConstructor ? 1 : 0));
+        if (hasDefaultConstructor) {
+            generateDefaultConstructor(out);
+        }
+        for (var method : methods) {
+            generateMethod(method, out);
+        }
+
+        out.writeShort(0);    // attributes
+
+        var classFile = new ByteArrayOutputStream();
+        var classOut = new DataOutputStream(classFile);
+        classOut.writeInt(MAGIC);
+        classOut.writeShort(0);
+        classOut.writeShort(MAJOR_VERSION);
+        constantPool.writeTo(classOut);
+        body.writeTo(classOut);
+
+        currentClass = null;
+
+        return classFile.toByteArray();
+    }
+
+    private static int getAccessFlags(AccessModifier modifier) {
+        return switch (modifier) {
+            case PUBLIC -> ACC_PUBLIC;
+            case PRIVATE -> ACC_PRIVATE;
+            case PROTECTED -> ACC_PROTECTED;
+            case DEFAULT -> 0;
+        };
+    }
+
+    private void generateField(Field field, DataOutputStream out) throws IOException {
+        // fields without a modifier are public, as in JasminGenerator
+        int access = field.getFieldAccessModifier() != AccessModifier.DEFAULT ?
+                getAccessFlags(field.getFieldAccessModifier()) : ACC_PUBLIC;
+        if (field.isStaticField()) access |= ACC_STATIC;
+        if (field.isFinalField()) access |= ACC_FINAL;
+
+        out.writeShort(access);
+        out.writeShort(constantPool.utf8(field.getFieldName()));
+        out.writeShort(constantPool.utf8(getDescriptor(field.getFieldType())));
+
+        if (field.isInitialized()) {
+            out.writeShort(1);
+            out.writeShort(constantPool.utf8("ConstantValue"));
+            out.writeInt(2);
+            out.writeShort(constantPool.integer(field.getInitialValue()));
+        } else {
+            out.writeShort(0);
+        }
+    }
+
+    private void generateDefaultConstructor(DataOutputStream out) throws IOException {
+        code = new Bytecode();
+        code.load(false, 0);
+        code.invoke(INVOKESPECIAL, constantPool.methodRef("java/lang/Object", "<init>", "()V"), 1, null,
+                "java/lang/Object");
+        code.op(RETURN, 0, null);
+
+        writeMethod(ACC_PUBLIC, "<init>", "()V", List.of(VerificationType.UNINITIALIZED_THIS), 1, out);
+    }
+
+    private void generateMethod(Method method, DataOutputStream out) throws IOException {
+        currentMethod = method;
+        operandOccurrences = countOperandOccurrences(method);
+        code = new Bytecode();
+
+        Map<Instruction, List<String>> methodLabels = new HashMap<>();
+        for (var label : method.getLabels().entrySet()) {
+            methodLabels.computeIfAbsent(label.getValue(), inst -> new ArrayList<>()).add(label.getKey());
+        }
+
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            var inst = instructions.get(i);
+            nextInstructionIsIncrement = i < instructions.size() - 1 ? instructions.get(i + 1) : null;
+
+            if (ignoreInst) {
+                ignoreInst = false;
+                continue;
+            }
+
+            for (String label : methodLabels.getOrDefault(inst, List.of())) {
+                code.label(label);
+            }
+            generateInstruction(inst);
+
+            // the value of an instruction used as a statement is discarded
+            if (leavesValue(inst)) {
+                code.op(POP, 1, null);
+            }
+        }
+
+        int access = getAccessFlags(method.getMethodAccessModifier());
+        if (method.isStaticMethod()) access |= ACC_STATIC;
+
+        var descriptor = new StringBuilder("(");
+        for (var param : method.getParams()) {
+            descriptor.append(getDescriptor(param.getType()));
+        }
+        descriptor.append(")").append(getDescriptor(method.getReturnType()));
+
+        int maxReg = 0;
+        for (var var : method.getVarTable().values()) {
+            maxReg = Math.max(maxReg, var.getVirtualReg());
+        }
+
+        writeMethod(access, method.getMethodName(), descriptor.toString(), getInitialLocals(method), maxReg + 1, out);
+
+        currentMethod = null;
+    }
+
+    /**
+     * Types of the locals when the method starts: the object it was called on, if not static, and its parameters.
+     */
+    private List<VerificationType> getInitialLocals(Method method) {
+        List<VerificationType> locals = new ArrayList<>();
+        if (!method.isStaticMethod()) {
+            setLocal(locals, 0, VerificationType.object(currentClass.getClassName()));
+        }
+        for (var param : method.getParams()) {
+            var descriptor = method.getVarTable().get(((Operand) param).getName());
+            int reg = descriptor != null ? descriptor.getVirtualReg() : locals.size();
+            setLocal(locals, reg, getVerificationType(param.getType()));
+        }
+        return locals;
+    }
+
+    private static void setLocal(List<VerificationType> locals, int reg, VerificationType type) {
+        while (locals.size() <= reg) locals.add(VerificationType.TOP);
+        locals.set(reg, type);
+    }
+
+    private void writeMethod(int access, String name, String descriptor, List<VerificationType> initialLocals,
+                             int numLocals, DataOutputStream out) throws IOException {
+        code.assemble(constantPool, initialLocals, numLocals, currentClass.getClassName());
+        byte[] bytecode = code.getCode();
+        byte[] stackMapTable = code.getStackMapTable();
+        boolean hasFrames = code.getNumFrames() > 0;
+
+        out.writeShort(access);
+        out.writeShort(constantPool.utf8(name));
+        out.writeShort(constantPool.utf8(descriptor));
+        out.writeShort(1);    // attributes
+
+        int codeLength = 12 + bytecode.length + (hasFrames ? 8 + stackMapTable.length : 0);
+        out.writeShort(constantPool.utf8("Code"));
+        out.writeInt(codeLength);
+        out.writeShort(code.getMaxStack());
+        out.writeShort(code.getMaxLocals());
+        out.writeInt(bytecode.length);
+        out.write(bytecode);
+        out.writeShort(0);    // exception table
+        out.writeShort(hasFrames ? 1 : 0);
+        if (hasFrames) {
+            out.writeShort(constantPool.utf8("StackMapTable"));
+            out.writeInt(2 + stackMapTable.length);
+            out.writeShort(code.getNumFrames());
+            out.write(stackMapTable);
+        }
+
+        code = null;
+    }
+
+    private static boolean leavesValue(Instruction inst) {
+        if (inst instanceof CallInstruction call) {
+            return call.getReturnType().getTypeOfElement() != ElementType.VOID;
+        }
+        return inst instanceof SingleOpInstruction || inst instanceof BinaryOpInstruction ||
+                inst instanceof UnaryOpInstruction || inst instanceof GetFieldInstruction;
+    }
+
+    private void generateInstruction(Instruction inst) {
+        if (inst instanceof AssignInstruction assign) generateAssign(assign);
+        else if (inst instanceof SingleOpInstruction singleOp) generateElement(singleOp.getSingleOperand());
+        else if (inst instanceof BinaryOpInstruction binaryOp) generateBinaryOp(binaryOp);
+        else if (inst instanceof UnaryOpInstruction unaryOp) generateUnaryOp(unaryOp);
+        else if (inst instanceof ReturnInstruction returnInst) generateReturn(returnInst);
+        else if (inst instanceof CallInstruction call) generateCall(call);
+        else if (inst instanceof PutFieldInstruction putField) generatePutField(putField);
+        else if (inst instanceof GetFieldInstruction getField) generateGetField(getField);
+        else if (inst instanceof CondBranchInstruction condBranch) generateCondBranch(condBranch);
+        else if (inst instanceof GotoInstruction gotoInst) code.branch(GOTO, gotoInst.getLabel());
+        else throw new NotImplementedException(inst.getClass());
+    }
+
+    private void generateElement(Element element) {
+        if (element instanceof LiteralElement literal) generateLiteral(literal);
+        else if (element instanceof Operand operand) generateOperand(operand);
+        else throw new NotImplementedException(element.getClass());
+    }
+
+    private int getReg(Operand operand) {
+        int reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
+        if (reg < 0) {
+            throw new RuntimeException("Variable '" + operand.getName() + "' has no register");
+        }
+        return reg;
+    }
+
+    private void generateAssign(AssignInstruction assign) {
+        if (!(assign.getDest() instanceof Operand operand)) {
+            throw new NotImplementedException(assign.getDest().getClass());
+        }
+
+        if (generateIncrementOrDecrement(assign)) return;
+        if (fuseCompareAndBranch(assign)) return;
+
+        int reg = getReg(operand);
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            code.load(false, reg);
+            generateElement(arrayOperand.getIndexOperands().get(0));
+            generateInstruction(assign.getRhs());
+            code.op(IASTORE, 3, null);
+            return;
+        }
+
+        generateInstruction(assign.getRhs());
+
+        var assignType = assign.getTypeOfAssign().getTypeOfElement();
+        boolean isInteger = (assignType == ElementType.INT32 || assignType == ElementType.BOOLEAN) &&
+                !(operand.getType() instanceof ArrayType);
+        code.store(isInteger, reg);
+    }
+
+    // x := x + n and x := n + x become iinc, also when the sum goes through a temporary only copied to x
+    private boolean generateIncrementOrDecrement(AssignInstruction assign) {
+        if (!(assign.getRhs() instanceof BinaryOpInstruction)) return false;
+
+        Operand dest = (Operand) assign.getDest();
+        if (generateIncrementOrDecrement(assign, dest)) return true;
+
+        if (nextInstructionIsIncrement instanceof AssignInstruction nextAssign) {
+            Operand possibleDest = (Operand) nextAssign.getDest();
+            if (dest.getName().startsWith("tmp") &&
+                    nextAssign.getRhs() instanceof SingleOpInstruction rhs &&
+                    rhs.getSingleOperand() instanceof Operand op &&
+                    op.getName().equals(dest.getName()) &&
+                    !(possibleDest instanceof ArrayOperand) &&
+                    !currentMethod.getLabels().containsValue(nextAssign) &&
+                    operandOccurrences.getOrDefault(dest.getName(), 0) == 2 &&
+                    generateIncrementOrDecrement(assign, possibleDest)) {
+                // the increment already stores into the next destination, so the copy is skipped
+                ignoreInst = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean generateIncrementOrDecrement(AssignInstruction assign, Operand dest) {
+        BinaryOpInstruction rhs = (BinaryOpInstruction) assign.getRhs();
+        Element left = rhs.getLeftOperand();
+        Element right = rhs.getRightOperand();
+        OperationType operation = rhs.getOperation().getOpType();
+
+        int numberToInc;
+        if (right.isLiteral() && left instanceof Operand leftOperand && isSameLocal(dest, leftOperand))
+            numberToInc = Integer.parseInt(((LiteralElement) right).getLiteral());
+        // only x := n + x, since n - x is not x - n
+        else if (operation == OperationType.ADD && left.isLiteral() && right instanceof Operand rightOperand
+                && isSameLocal(dest, rightOperand))
+            numberToInc = Integer.parseInt(((LiteralElement) left).getLiteral());
+        else
+            return false;
+
+        if (operation == OperationType.SUB)
+            numberToInc = -numberToInc;
+        else if (operation != OperationType.ADD)
+            return false;
+
+        if (numberToInc < -128 || numberToInc > 127) return false;
+
+        code.iinc(getReg(dest), numberToInc);
+        return true;
+    }
+
+    // same variable, or variables that the register allocator placed in the same register
+    private boolean isSameLocal(Operand dest, Operand operand) {
+        if (operand instanceof ArrayOperand) return false;
+        if (dest.getName().equals(operand.getName())) return true;
+
+        var destDescriptor = currentMethod.getVarTable().get(dest.getName());
+        var operandDescriptor = currentMethod.getVarTable().get(operand.getName());
+        return destDescriptor != null && operandDescriptor != null &&
+                destDescriptor.getScope() != VarScope.FIELD && operandDescriptor.getScope() != VarScope.FIELD &&
+                destDescriptor.getVirtualReg() == operandDescriptor.getVirtualReg();
+    }
+
+    private void generateLiteral(LiteralElement literal) {
+        int value;
+        try {
+            value = Integer.parseInt(literal.getLiteral());
+        } catch (NumberFormatException e) {
+            throw new NotImplementedException("Literal " + literal.getLiteral());
+        }
+        code.iconst(value, constantPool);
+    }
+
+    private void generateOperand(Operand operand) {
+        int reg = getReg(operand);
+        if (operand instanceof ArrayOperand arrayOperand) {
+            code.load(false, reg);
+            generateElement(arrayOperand.getIndexOperands().get(0));
+            code.op(IALOAD, 2, VerificationType.INTEGER);
+        } else {
+            var type = operand.getType().getTypeOfElement();
+            code.load(type == ElementType.INT32 || type == ElementType.BOOLEAN, reg);
+        }
+    }
+
+    private void generateBinaryOp(BinaryOpInstruction binaryOp) {
+        if (getComparison(binaryOp.getOperation().getOpType()) != null) {
+            generateRelationalOp(binaryOp);
+            return;
+        }
+
+        generateElement(binaryOp.getLeftOperand());
+        generateElement(binaryOp.getRightOperand());
+
+        int opcode = switch (binaryOp.getOperation().getOpType()) {
+            case ADD -> IADD;
+            case MUL -> IMUL;
+            case SUB -> ISUB;
+            case DIV -> IDIV;
+            case AND, ANDB -> IAND;
+            case OR, ORB -> IOR;
+            case XOR -> IXOR;
+            case SHL -> ISHL;
+            case SHR -> ISHR;
+            case SHRR -> IUSHR;
+            default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
+        };
+        code.op(opcode, 2, VerificationType.INTEGER);
+    }
+
+    // boolean value of a comparison: branch on it and push 0 or 1
+    private void generateRelationalOp(BinaryOpInstruction binaryOp) {
+        int id = ++numLessThan;
+        generateCompare(binaryOp, "cmpTrue" + id);
+        code.iconst(0, constantPool);
+        code.branch(GOTO, "cmpEnd" + id);
+        code.label("cmpTrue" + id);
+        code.iconst(1, constantPool);
+        code.label("cmpEnd" + id);
+    }
+
+    // if<cond> opcode of a comparison, or null if the operation is not a comparison
+    private static Integer getComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH -> IFLT;
+            case GTH -> IFGT;
+            case EQ -> IFEQ;
+            case NEQ -> IFNE;
+            case LTE -> IFLE;
+            case GTE -> IFGE;
+            default -> null;
+        };
+    }
+
+    // condition that holds when the operands are swapped (a < b is b > a)
+    private static int swapComparison(int comparison) {
+        return switch (comparison) {
+            case IFLT -> IFGT;
+            case IFGT -> IFLT;
+            case IFLE -> IFGE;
+            case IFGE -> IFLE;
+            default -> comparison;
+        };
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && literal.getLiteral().equals("0");
+    }
+
+    // jump to the label if the comparison holds, using the single operand form when comparing with 0
+    private void generateCompare(BinaryOpInstruction binaryOp, String label) {
+        int comparison = getComparison(binaryOp.getOperation().getOpType());
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+
+        if (isZero(right)) {
+            generateElement(left);
+            code.branch(comparison, label);
+        } else if (isZero(left)) {
+            generateElement(right);
+            code.branch(swapComparison(comparison), label);
+        } else {
+            generateElement(left);
+            generateElement(right);
+            code.branch(comparison - IFEQ + IF_ICMPEQ, label);
+        }
+    }
+
+    // tmp := a < b; if (tmp) goto L; becomes a single compare-and-branch when the branch is the only use of tmp
+    private boolean fuseCompareAndBranch(AssignInstruction assign) {
+        if (!(assign.getRhs() instanceof BinaryOpInstruction binaryOp) ||
+                getComparison(binaryOp.getOperation().getOpType()) == null)
+            return false;
+        if (!(nextInstructionIsIncrement instanceof CondBranchInstruction branch) ||
+                !(branch.getCondition() instanceof SingleOpInstruction condition) ||
+                !(condition.getSingleOperand() instanceof Operand conditionOperand) ||
+                conditionOperand instanceof ArrayOperand)
+            return false;
+
+        Operand dest = (Operand) assign.getDest();
+        if (dest instanceof ArrayOperand || !dest.getName().equals(conditionOperand.getName()))
+            return false;
+        // a label on the branch means it can be reached without going through the assignment
+        if (currentMethod.getLabels().containsValue(branch))
+            return false;
+        if (operandOccurrences.getOrDefault(dest.getName(), 0) != 2)
+            return false;
+
+        ignoreInst = true;
+        generateCompare(binaryOp, branch.getLabel());
+        return true;
+    }
+
+    private static Map<String, Integer> countOperandOccurrences(Method method) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (var inst : method.getInstructions()) {
+            inst.getDescendantsAndSelfStream()
+                    .filter(node -> node instanceof Operand)
+                    .forEach(node -> occurrences.merge(((Operand) node).getName(), 1, Integer::sum));
+        }
+        return occurrences;
+    }
+
+    private void generateUnaryOp(UnaryOpInstruction unaryOp) {
+        var opType = unaryOp.getOperation().getOpType();
+        if (opType != OperationType.NOT && opType != OperationType.NOTB) {
+            throw new NotImplementedException(opType);
+        }
+        generateElement(unaryOp.getOperand());
+        code.iconst(1, constantPool);
+        code.op(IXOR, 2, VerificationType.INTEGER);
+    }
+
+    private void generateReturn(ReturnInstruction returnInst) {
+        var operand = returnInst.getOperand();
+        if (operand == null) {
+            code.op(RETURN, 0, null);
+            return;
+        }
+
+        generateElement(operand);
+        var type = operand.getType().getTypeOfElement();
+        code.op(type == ElementType.INT32 || type == ElementType.BOOLEAN ? IRETURN : ARETURN, 1, null);
+    }
+
+    private void generateCall(CallInstruction call) {
+        if (call.getInvocationType() == CallType.NEW) {
+            if (call.getReturnType() instanceof ClassType classType) {
+                code.newObject(constantPool.classRef(getImportedClass(classType.getName())));
+            } else if (call.getReturnType() instanceof ArrayType) {
+                generateElement(call.getArguments().get(0));
+                code.newIntArray();
+            } else {
+                throw new RuntimeException("Cannot instanciate new " + call.getReturnType());
+            }
+            return;
+        }
+
+        if (call.getInvocationType() == CallType.arraylength) {
+            generateElement(call.getCaller());
+            code.op(ARRAYLENGTH, 1, VerificationType.INTEGER);
+            return;
+        }
+
+        int pops = 0;
+        if (call.getInvocationType() != CallType.invokestatic) {
+            generateElement(call.getCaller());
+            pops++;
+        }
+
+        var descriptor = new StringBuilder("(");
+        for (var arg : call.getArguments()) {
+            generateElement(arg);
+            descriptor.append(getDescriptor(arg.getType()));
+            pops++;
+        }
+        descriptor.append(")").append(getDescriptor(call.getReturnType()));
+
+        if (!(call.getMethodName() instanceof LiteralElement callMethodName) ||
+                callMethodName.getType().getTypeOfElement() != ElementType.STRING)
+            throw new RuntimeException("Call Method Name must be a STRING literal");
+        String methodName = callMethodName.getLiteral().substring(1, callMethodName.getLiteral().length() - 1);
+
+        String className;
+        if (call.getInvocationType() == CallType.invokestatic)
+            className = getImportedClass(((Operand) call.getCaller()).getName());
+        else
+            className = getImportedClass(((ClassType) call.getCaller().getType()).getName());
+
+        int opcode = switch (call.getInvocationType()) {
+            case invokestatic -> INVOKESTATIC;
+            case invokevirtual -> INVOKEVIRTUAL;
+            case invokespecial -> INVOKESPECIAL;
+            default -> throw new NotImplementedException(call.getInvocationType());
+        };
+
+        code.invoke(opcode, constantPool.methodRef(className, methodName, descriptor.toString()), pops,
+                getVerificationType(call.getReturnType()), methodName.equals("<init>") ? className : null);
+    }
+
+    private void generatePutField(PutFieldInstruction putField) {
+        generateElement(putField.getObject());
+        generateElement(putField.getValue());
+
+        var field = putField.getField();
+        code.field(PUTFIELD, constantPool.fieldRef(currentClass.getClassName(), field.getName(),
+                getDescriptor(field.getType())), null);
+    }
+
+    private void generateGetField(GetFieldInstruction getField) {
+        generateElement(getField.getObject());
+
+        var field = getField.getField();
+        code.field(GETFIELD, constantPool.fieldRef(currentClass.getClassName(), field.getName(),
+                getDescriptor(field.getType())), getVerificationType(field.getType()));
+    }
+
+    private void generateCondBranch(CondBranchInstruction instruction) {
+        // comparisons jump directly, without materializing the boolean
+        if (instruction.getCondition() instanceof BinaryOpInstruction binaryOp &&
+                getComparison(binaryOp.getOperation().getOpType()) != null) {
+            generateCompare(binaryOp, instruction.getLabel());
+            return;
+        }
+
+        // a negated condition jumps when the operand is false, instead of computing the negation
+        if (instruction.getCondition() instanceof UnaryOpInstruction unaryOp &&
+                (unaryOp.getOperation().getOpType() == OperationType.NOT ||
+                        unaryOp.getOperation().getOpType() == OperationType.NOTB)) {
+            generateElement(unaryOp.getOperand());
+            code.branch(IFEQ, instruction.getLabel());
+            return;
+        }
+
+        generateInstruction(instruction.getCondition());
+        code.branch(IFNE, instruction.getLabel());
+    }
+
+    /**
+     * Descriptor of a type, the same as in Jasmin code.
+     */
+    private String getDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case BOOLEAN -> "Z";
+            case INT32 -> "I";
+            case VOID -> "V";
+            case STRING -> "Ljava/lang/String;";
+            case OBJECTREF -> "L" + getImportedClass(((ClassType) type).getName()) + ";";
+            case CLASS -> "Ljava/lang/Class;";
+            case ARRAYREF -> "[" + getDescriptor(((ArrayType) type).getElementType());
+            default -> throw new NotImplementedException(type.getTypeOfElement());
+        };
+    }
+
+    /**
+     * Type of a value as the verifier sees it, or null for void.
+     */
+    private VerificationType getVerificationType(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case BOOLEAN, INT32 -> VerificationType.INTEGER;
+            case VOID -> null;
+            case THIS -> VerificationType.object(currentClass.getClassName());
+            case ARRAYREF -> VerificationType.object(getDescriptor(type));
+            default -> {
+                String descriptor = getDescriptor(type);
+                yield VerificationType.object(descriptor.substring(1, descriptor.length() - 1));
+            }
+        };
+    }
+}
@@ -0,0 +1,53 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of the class file backend. It has no Jasmin code: compiling it only writes the class file it already has,
+ * so running it works the same as for Jasmin code.
+ */
+public class ClassFileResult extends RunnableJasminResult {
+
+    private final byte[] classFile;
+
+    public ClassFileResult(OllirResult ollirResult, byte[] classFile, List<Report> reports) {
+        super(ollirResult, "", reports);
+        this.classFile = classFile;
+    }
+
+    public ClassFileResult(String className, byte[] classFile, List<Report> reports, Map<String, String> config) {
+        super(className, "", reports, config);
+        this.classFile = classFile;
+    }
+
+    public byte[] getClassFile() {
+        return classFile;
+    }
+
+    /**
+     * Writes the class file, instead of assembling Jasmin code.
+     *
+     * @param outputDir the folder where the class file will written
+     * @return a reference to the .class file
+     */
+    @Override
+    public File compile(File outputDir) {
+        File file = new File(outputDir, getClassName() + ".class");
+        SpecsIo.mkdir(outputDir);
+        try {
+            Files.write(file.toPath(), classFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write class file '" + file + "'", e);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,267 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
+
+import java.io.*;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs a compiled program inside the current JVM, instead of starting a new 'java' process for it.
+ * <p>
+ * The class and the classpath (e.g. the libs-jmm runtime) are loaded by a class loader of their own for each run, so
+ * runs do not share static state and the classes of the compiler are not visible to the program. The standard streams
+ * are replaced while the program runs, which is why only one program runs at a time. The output is returned as
+ * {@link pt.up.fe.comp.jmm.jasmin.JasminResult#runWithFullOutput} would return it.
+ * <p>
+ * System.setOut, setErr and setIn change the streams of the whole JVM, not only of the thread of the program: while it
+ * runs, whatever other threads print (e.g. the compile server answering another request) is captured as output of the
+ * program, and their reads of System.in take its input.
+ * <p>
+ * It is only used when asked for ('--run=inprocess'), since it cannot contain every program: one that calls
+ * System.exit stops the whole JVM, and on JVMs that cannot stop threads one that never ends keeps running after the
+ * timeout.
+ */
+public class InProcessRunner {
+
+    public static final long DEFAULT_TIMEOUT_MS = 5_000;
+
+    // the standard streams are global, so runs cannot overlap
+    private static final Object LOCK = new Object();
+
+    private static final String NL = System.lineSeparator();
+
+    /**
+     * Runs the main method of the class in the given class file.
+     *
+     * @param classFile the .class file of the program, next to any other class it needs
+     * @param args      arguments for the program
+     * @param classpath additional paths for the classpath
+     * @param input     input to give to the program, line by line, or null
+     * @param timeoutMs time after which the program is stopped, which then returns -1
+     */
+    public static ProcessOutputAsString run(File classFile, List<String> args, List<String> classpath, String input,
+                                            long timeoutMs) {
+        var className = SpecsIo.removeExtension(classFile.getName());
+
+        var urls = new ArrayList<URL>();
+        try {
+            urls.add(classFile.getAbsoluteFile().getParentFile().toURI().toURL());
+            for (var element : classpath) {
+                // relative paths are relative to the working dir, as for the 'java' process
+                var path = new File(element);
+                if (!path.isAbsolute()) path = new File(SpecsIo.getWorkingDir(), element);
+                urls.add(path.toURI().toURL());
+            }
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Invalid classpath for running '" + className + "'", e);
+        }
+
+        synchronized (LOCK) {
+            var stdout = new ByteArrayOutputStream();
+            var stderr = new ByteArrayOutputStream();
+
+            PrintStream originalOut = System.out;
+            PrintStream originalErr = System.err;
+            InputStream originalIn = System.in;
+
+            var out = new PrintStream(stdout, true);
+            var err = new PrintStream(stderr, true);
+            int[] returnValue = {0};
+
+            try (var loader = new URLClassLoader(urls.toArray(URL[]::new), ClassLoader.getPlatformClassLoader())) {
+                var thread = new Thread(() -> returnValue[0] = runMain(loader, className, args, err), "main");
+                thread.setDaemon(true);
+
+                System.setOut(out);
+                System.setErr(err);
+                System.setIn(new LineInputStream(input));
+                try {
+                    thread.start();
+                    thread.join(timeoutMs);
+                    if (thread.isAlive()) {
+                        stop(thread);
+                        returnValue[0] = -1;
+                    }
+                } finally {
+                    System.setOut(originalOut);
+                    System.setErr(originalErr);
+                    System.setIn(originalIn);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while running '" + className + "'", e);
+            }
+
+            // same format as the output of a process: every line ends with a line separator
+            var output = toLines(stdout);
+            var error = toLines(stderr);
+            originalOut.print(output);
+            originalErr.print(error);
+
+            return new ProcessOutputAsString(returnValue[0], output, error);
+        }
+    }
+
+    public static ProcessOutputAsString run(File classFile, List<String> args, List<String> classpath, String input) {
+        return run(classFile, args, classpath, input, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Calls main and reports errors the way the java launcher does.
+     *
+     * @return the exit code the java launcher would return
+     */
+    private static int runMain(ClassLoader loader, String className, List<String> args, PrintStream err) {
+        Class<?> mainClass;
+        try {
+            mainClass = Class.forName(className, false, loader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            err.println("Error: Could not find or load main class " + className);
+            err.println("Caused by: " + e);
+            return 1;
+        }
+
+        java.lang.reflect.Method main;
+        try {
+            // initializing the class verifies it
+            Class.forName(className, true, loader);
+            main = mainClass.getMethod("main", String[].class);
+            if (!Modifier.isStatic(main.getModifiers())) {
+                throw new NoSuchMethodException("main");
+            }
+            // the java launcher also runs classes that are not public
+            main.setAccessible(true);
+        } catch (ClassNotFoundException | LinkageError e) {
+            err.println("Error: Unable to initialize main class " + className);
+            err.println("Caused by: " + e);
+            return 1;
+        } catch (NoSuchMethodException e) {
+            err.println("Error: Main method not found in class " + className + ", please define the main method as:");
+            err.println("   public static void main(String[] args)");
+            err.println("or a JavaFX application class must extend javafx.application.Application");
+            return 1;
+        }
+
+        try {
+            main.invoke(null, (Object) args.toArray(String[]::new));
+            return 0;
+        } catch (InvocationTargetException e) {
+            var cause = e.getCause();
+            if (cause instanceof ThreadDeath) {
+                throw (ThreadDeath) cause;
+            }
+            removeReflectionFrames(cause);
+            err.print("Exception in thread \"main\" ");
+            cause.printStackTrace(err);
+            return 1;
+        } catch (IllegalAccessException e) {
+            err.println("Error: Could not run main of class " + className);
+            err.println("Caused by: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Leaves only the frames of the program in the stack traces, as if it had been called by the java launcher.
+     */
+    private static void removeReflectionFrames(Throwable throwable) {
+        for (var current = throwable; current != null; current = current.getCause()) {
+            var frames = current.getStackTrace();
+            int end = 0;
+            while (end < frames.length && !frames[end].getClassName().startsWith("jdk.internal.reflect.") &&
+                    !frames[end].getClassName().startsWith("java.lang.reflect.")) {
+                end++;
+            }
+            current.setStackTrace(Arrays.copyOf(frames, end));
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void stop(Thread thread) throws InterruptedException {
+        thread.interrupt();
+        thread.join(100);
+        if (!thread.isAlive()) {
+            return;
+        }
+
+        // a program stuck in a loop does not check for interrupts
+        try {
+            thread.stop();
+            thread.join(100);
+        } catch (UnsupportedOperationException e) {
+            // newer JVMs cannot stop threads, the daemon thread is left running
+        }
+    }
+
+    private static String toLines(ByteArrayOutputStream bytes) {
+        var text = bytes.toString(Charset.defaultCharset());
+        var lines = new StringBuilder();
+        try (var reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.append(line).append(NL);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lines.toString();
+    }
+
+    /**
+     * Gives the input one line per read, like someone typing it would. Readers that are created for each read (as in
+     * the io class of libs-jmm) would otherwise buffer all the input at once and lose what they do not use.
+     */
+    private static class LineInputStream extends InputStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        LineInputStream(String input) {
+            var text = input == null ? "" : input;
+            if (!text.isEmpty() && !text.endsWith("\n")) {
+                text += "\n";
+            }
+            bytes = text.getBytes(Charset.defaultCharset());
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (position >= bytes.length) {
+                return -1;
+            }
+
+            int count = 0;
+            while (count < length && position < bytes.length) {
+                byte b = bytes[position++];
+                buffer[offset + count++] = b;
+                if (b == '\n') {
+                    break;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+    }
+}
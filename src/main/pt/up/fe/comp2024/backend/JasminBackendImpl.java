@@ -3,16 +3,25 @@ package pt.up.fe.comp2024.backend;
 import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
 
 public class JasminBackendImpl implements JasminBackend {
 
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
 
+        if (CompilerConfig.getBackend(ollirResult.getConfig()).equals(CompilerConfig.BACKEND_CLASS_FILE)) {
+            var classFileGenerator = new ClassFileGenerator(ollirResult);
+            var classFile = PhaseProfiler.time("classFileGeneration", classFileGenerator::build);
+
+            return new ClassFileResult(ollirResult, classFile, classFileGenerator.getReports());
+        }
+
         var jasminGenerator = new JasminGenerator(ollirResult);
-        var jasminCode = jasminGenerator.build();
+        var jasminCode = PhaseProfiler.time("jasminGeneration", jasminGenerator::build);
 
-        return new JasminResult(ollirResult, jasminCode, jasminGenerator.getReports());
+        return new RunnableJasminResult(ollirResult, jasminCode, jasminGenerator.getReports());
     }
 
 }
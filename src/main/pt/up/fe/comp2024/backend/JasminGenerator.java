@@ -52,6 +52,9 @@ public class JasminGenerator {
     private Instruction nextInstructionIsIncrement;
     private boolean ignoreInst = false;
 
+    // number of times each variable appears in the current method (definitions and uses)
+    private Map<String, Integer> operandOccurrences;
+
     public JasminGenerator(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
 
@@ -81,20 +84,15 @@ public class JasminGenerator {
         return reports;
     }
 
-    // start of the import table, for each line in code, if it starts with import, add it to the import table
-    // Exmple: "import org.Class1;" -> <"Class1","org/Class1">
-    public void createImportTable(String code){
+    // start of the import table, for each import of the class, add it to the import table
+    // Exmple: "org.Class1" -> <"Class1","org/Class1">
+    public void createImportTable(List<String> imports){
         importTable = new HashMap<>();
-        String[] lines = code.split("\n");
-        for (String line : lines) {
-            if (line.startsWith("import")) {
-                String[] parts = line.split(" ");
-                String[] parts2 = parts[1].split(";");
-                String[] parts3 = parts2[0].split("\\.");
-                String className = parts3[parts3.length-1];
-                String path = parts2[0].replace(".", "/");
-                importTable.put(className, path);
-            }
+        for (String imp : imports) {
+            String[] parts = imp.split("\\.");
+            String className = parts[parts.length-1];
+            String path = imp.replace(".", "/");
+            importTable.put(className, path);
         }
     }
 
@@ -109,7 +107,7 @@ public class JasminGenerator {
 
         // This way, build is idempotent
         if (code == null) {
-            createImportTable(ollirResult.getOllirCode());
+            createImportTable(ollirResult.getOllirClass().getImports());
             code = generators.apply(ollirResult.getOllirClass());
             //  -------------------
             if(this.showCode) throw new RuntimeException(code);
@@ -204,6 +202,7 @@ public class JasminGenerator {
         // set method
         currentMethod = method;
         maxStackSize = 0;
+        operandOccurrences = countOperandOccurrences(method);
 
         var code = new StringBuilder();
         var codeTemp = new StringBuilder();
@@ -314,6 +313,10 @@ public class JasminGenerator {
         if(incrementOrDecrement != null)
             return incrementOrDecrement;
 
+        String compareAndBranch = fuseCompareAndBranch(assign);
+        if(compareAndBranch != null)
+            return compareAndBranch;
+
         // get register
         var reg = currentMethod.getVarTable().get(operand.getName()).getVirtualReg();
 
@@ -363,10 +366,16 @@ public class JasminGenerator {
                 if(originalDest.getName().startsWith("tmp") &&
                         nextAssign.getRhs() instanceof SingleOpInstruction rhs &&
                         rhs.getSingleOperand() instanceof Operand op &&
-                        op.getName().equals(originalDest.getName())){
+                        op.getName().equals(originalDest.getName()) &&
+                        !(possibleDest instanceof ArrayOperand) &&
+                        !currentMethod.getLabels().containsValue(nextAssign) &&
+                        operandOccurrences.getOrDefault(originalDest.getName(), 0) == 2){
                     ret = verifyIncrementOrDecrementAux(assign, possibleDest);
-                    if(ret != null)
+                    if(ret != null) {
+                        // the increment already stores into the next destination, so the copy is skipped
+                        ignoreInst = true;
                         return ret;
+                    }
                 }
             }
         }
@@ -394,11 +403,13 @@ public class JasminGenerator {
 
         int numberToInc;
 
-        if(right.isLiteral() && left instanceof Operand && dest.getName().equals(((Operand) left).getName())) {
+        if(right.isLiteral() && left instanceof Operand && isSameLocal(dest, (Operand) left)) {
             //if(true) throw new NotImplementedException("Increment and Decrement not implemented");
             numberToInc = Integer.parseInt(((LiteralElement) right).getLiteral());
         }
-        else if (left.isLiteral() && right instanceof Operand && dest.getName().equals(((Operand) right).getName()))
+        // only x := n + x, since n - x is not x - n
+        else if (operation == OperationType.ADD && left.isLiteral() && right instanceof Operand
+                && isSameLocal(dest, (Operand) right))
             numberToInc = Integer.parseInt(((LiteralElement) left).getLiteral());
         else
             return null;
@@ -417,6 +428,20 @@ public class JasminGenerator {
     }
 
 
+    // same variable, or variables that the register allocator placed in the same register
+    private boolean isSameLocal(Operand dest, Operand operand) {
+        if(operand instanceof ArrayOperand)
+            return false;
+        if(dest.getName().equals(operand.getName()))
+            return true;
+
+        var destDescriptor = currentMethod.getVarTable().get(dest.getName());
+        var operandDescriptor = currentMethod.getVarTable().get(operand.getName());
+        return destDescriptor != null && operandDescriptor != null &&
+                destDescriptor.getScope() != VarScope.FIELD && operandDescriptor.getScope() != VarScope.FIELD &&
+                destDescriptor.getVirtualReg() == operandDescriptor.getVirtualReg();
+    }
+
     private String generateSingleOp(SingleOpInstruction singleOp) {
         return generators.apply(singleOp.getSingleOperand());
     }
@@ -473,6 +498,9 @@ public class JasminGenerator {
     }
 
     private String generateBinaryOp(BinaryOpInstruction binaryOp) {
+        if(getComparison(binaryOp.getOperation().getOpType()) != null)
+            return generateRelationalOp(binaryOp);
+
         var code = new StringBuilder();
 
         // load values on the left and on the right
@@ -493,48 +521,6 @@ public class JasminGenerator {
             case SHL -> "ishl";
             case SHR -> "ishr";
             case SHRR -> "iushr";
-            case LTH -> "isub" + NL +
-                        "iflt lessBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endLessBranch" + Integer.toString(numLessThan) + NL +
-                        "lessBranch" + Integer.toString(numLessThan) + ":" + NL +
-                        "iconst_1" + NL +
-                        "endLessBranch" + Integer.toString(numLessThan) + ":";
-            case GTH -> "isub" + NL +
-                        "ifgt greaterBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endGreaterBranch" + Integer.toString(numLessThan) + NL +
-                        "greaterBranch" + Integer.toString(numLessThan) + ":" + NL +
-                        "iconst_1" + NL +
-                        "endGreaterBranch" + Integer.toString(numLessThan) + ":";
-            case EQ -> "isub" + NL +
-                       "ifeq equalBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endEqualBranch" + Integer.toString(numLessThan) + NL +
-                        "equalBranch" + Integer.toString(numLessThan) + ":" + NL +
-                        "iconst_1" + NL +
-                        "endEqualBranch" + Integer.toString(numLessThan) + ":";
-            case NEQ -> "isub" + NL +
-                        "ifne notEqualBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endNotEqualBranch" + Integer.toString(numLessThan) + NL +
-                        "notEqualBranch" + Integer.toString(numLessThan) + ":" + NL +
-                       "iconst_1" + NL +
-                        "endNotEqualBranch:";
-            case LTE -> "isub" + NL +
-                        "ifle lessEqualBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endLessEqualBranch" + Integer.toString(numLessThan) + NL +
-                        "lessEqualBranch" + Integer.toString(numLessThan) + ":" + NL +
-                        "iconst_1" + NL +
-                        "endLessEqualBranch" + Integer.toString(numLessThan) + ":";
-            case GTE -> "isub" + NL +
-                        "ifge greaterEqualBranch" + Integer.toString(++numLessThan) + NL +
-                        "iconst_0" + NL +
-                        "goto endGreaterEqualBranch" + Integer.toString(numLessThan) + NL +
-                        "greaterEqualBranch" + Integer.toString(numLessThan) + ":" + NL +
-                        "iconst_1" + NL +
-                        "endGreaterEqualBranch" + Integer.toString(numLessThan) + ":";
             default -> throw new NotImplementedException(binaryOp.getOperation().getOpType());
         };
 
@@ -546,6 +532,108 @@ public class JasminGenerator {
         return code.toString();
     }
 
+    // boolean value of a comparison: branch on it and push 0 or 1
+    private String generateRelationalOp(BinaryOpInstruction binaryOp) {
+        int id = ++numLessThan;
+        var code = new StringBuilder();
+
+        code.append(generateCompare(binaryOp, "cmpTrue" + id));
+        code.append("iconst_0").append(NL);
+        code.append("goto cmpEnd").append(id).append(NL);
+        code.append("cmpTrue").append(id).append(":").append(NL);
+        code.append("iconst_1").append(NL);
+        code.append("cmpEnd").append(id).append(":").append(NL);
+
+        increaseStackSize();
+        return code.toString();
+    }
+
+    // condition suffix of the if<cond>/if_icmp<cond> instructions, or null if the operation is not a comparison
+    private static String getComparison(OperationType opType) {
+        return switch (opType) {
+            case LTH -> "lt";
+            case GTH -> "gt";
+            case EQ -> "eq";
+            case NEQ -> "ne";
+            case LTE -> "le";
+            case GTE -> "ge";
+            default -> null;
+        };
+    }
+
+    // condition that holds when the operands are swapped (a < b is b > a)
+    private static String swapComparison(String comparison) {
+        return switch (comparison) {
+            case "lt" -> "gt";
+            case "gt" -> "lt";
+            case "le" -> "ge";
+            case "ge" -> "le";
+            default -> comparison;
+        };
+    }
+
+    private static boolean isZero(Element element) {
+        return element instanceof LiteralElement literal && literal.getLiteral().equals("0");
+    }
+
+    // jump to the label if the comparison holds, using the single operand form when comparing with 0
+    private String generateCompare(BinaryOpInstruction binaryOp, String label) {
+        var code = new StringBuilder();
+        String comparison = getComparison(binaryOp.getOperation().getOpType());
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+
+        if(isZero(right)) {
+            code.append(generators.apply(left));
+            code.append("if").append(comparison).append(" ").append(label).append(NL);
+            stackSize--;
+        } else if(isZero(left)) {
+            code.append(generators.apply(right));
+            code.append("if").append(swapComparison(comparison)).append(" ").append(label).append(NL);
+            stackSize--;
+        } else {
+            code.append(generators.apply(left));
+            code.append(generators.apply(right));
+            code.append("if_icmp").append(comparison).append(" ").append(label).append(NL);
+            stackSize -= 2;
+        }
+        return code.toString();
+    }
+
+    // tmp := a < b; if (tmp) goto L; becomes a single compare-and-branch when the branch is the only use of tmp
+    private String fuseCompareAndBranch(AssignInstruction assign) {
+        if(!(assign.getRhs() instanceof BinaryOpInstruction binaryOp) ||
+                getComparison(binaryOp.getOperation().getOpType()) == null)
+            return null;
+        if(!(nextInstructionIsIncrement instanceof CondBranchInstruction branch) ||
+                !(branch.getCondition() instanceof SingleOpInstruction condition) ||
+                !(condition.getSingleOperand() instanceof Operand conditionOperand) ||
+                conditionOperand instanceof ArrayOperand)
+            return null;
+
+        Operand dest = (Operand) assign.getDest();
+        if(dest instanceof ArrayOperand || !dest.getName().equals(conditionOperand.getName()))
+            return null;
+        // a label on the branch means it can be reached without going through the assignment
+        if(currentMethod.getLabels().containsValue(branch))
+            return null;
+        if(operandOccurrences.getOrDefault(dest.getName(), 0) != 2)
+            return null;
+
+        ignoreInst = true;
+        return generateCompare(binaryOp, branch.getLabel());
+    }
+
+    private static Map<String, Integer> countOperandOccurrences(Method method) {
+        Map<String, Integer> occurrences = new HashMap<>();
+        for (var inst : method.getInstructions()) {
+            inst.getDescendantsAndSelfStream()
+                    .filter(node -> node instanceof Operand)
+                    .forEach(node -> occurrences.merge(((Operand) node).getName(), 1, Integer::sum));
+        }
+        return occurrences;
+    }
+
     private String generateUnaryOp(UnaryOpInstruction unaryOp) {
         var code = new StringBuilder();
         if(unaryOp.getOperation().getOpType() == OperationType.NOT ||
@@ -711,6 +799,21 @@ public class JasminGenerator {
     private String generateCondBranch(CondBranchInstruction instruction) {
         var code = new StringBuilder();
 
+        // comparisons jump directly, without materializing the boolean
+        if(instruction.getCondition() instanceof BinaryOpInstruction binaryOp &&
+                getComparison(binaryOp.getOperation().getOpType()) != null)
+            return generateCompare(binaryOp, instruction.getLabel());
+
+        // a negated condition jumps when the operand is false, instead of computing the negation
+        if(instruction.getCondition() instanceof UnaryOpInstruction unaryOp &&
+                (unaryOp.getOperation().getOpType() == OperationType.NOT ||
+                unaryOp.getOperation().getOpType() == OperationType.NOTB)) {
+            code.append(generators.apply(unaryOp.getOperand()));
+            code.append("ifeq ").append(instruction.getLabel()).append(NL);
+            stackSize--;
+            return code.toString();
+        }
+
         // load values on the left and on the right
         code.append(generators.apply(instruction.getCondition()));
 
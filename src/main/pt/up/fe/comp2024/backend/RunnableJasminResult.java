@@ -0,0 +1,35 @@
+package pt.up.fe.comp2024.backend;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.specs.util.system.ProcessOutputAsString;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JasminResult whose program runs in the current JVM, with {@link InProcessRunner}, when the config asks for it
+ * ('--run=inprocess'), instead of in a new process. Every run method of JasminResult goes through here.
+ */
+public class RunnableJasminResult extends JasminResult {
+
+    public RunnableJasminResult(OllirResult ollirResult, String jasminCode, List<Report> reports) {
+        super(ollirResult, jasminCode, reports);
+    }
+
+    public RunnableJasminResult(String className, String jasminCode, List<Report> reports, Map<String, String> config) {
+        super(className, jasminCode, reports, config);
+    }
+
+    @Override
+    public ProcessOutputAsString runWithFullOutput(List<String> args, List<String> classpath, String input) {
+        if (!CompilerConfig.getRun(getConfig()).equals(CompilerConfig.RUN_IN_PROCESS)) {
+            return super.runWithFullOutput(args, classpath, input);
+        }
+
+        var classFile = compile();
+        return InProcessRunner.run(classFile, args, classpath, input);
+    }
+}
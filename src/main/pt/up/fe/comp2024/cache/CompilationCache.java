@@ -0,0 +1,260 @@
+package pt.up.fe.comp2024.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.JmmSerializer;
+import pt.up.fe.comp2024.CompilationResult;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+import pt.up.fe.comp2024.backend.RunnableJasminResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * On-disk cache of compilation results, addressed by the hash of the source code and of the config keys that change
+ * the generated code.
+ * <p>
+ * Each entry stores the serialized AST, the OLLIR code and the Jasmin code (or the class file) of a compilation without
+ * errors. When the total size of the entries goes over the limit, the least recently used ones are evicted.
+ * <p>
+ * The key also has a fingerprint of the classes of the compiler, so entries made by another build of the compiler are
+ * never used. Only the index of the entries is shared between threads, the entries are read and written outside of
+ * its lock.
+ */
+public class CompilationCache {
+    // bump when the format of the entries changes
+    private static final String FORMAT_VERSION = "1";
+    private static final String ENTRY_EXTENSION = ".json";
+
+    /**
+     * Config keys that affect the generated code, and so are part of the key of an entry.
+     */
+    private static final List<String> KEY_CONFIG = List.of("optimize", "registerAllocation", "allocator", "ollir",
+            "backend");
+
+    public static final File DEFAULT_DIRECTORY = new File(".jmm-cache");
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final File directory;
+    private final long maxBytes;
+    private final Gson gson;
+
+    // guards the index below; no file is read or written while holding it
+    private final Object lock = new Object();
+
+    // entries in least to most recently used order, with their size in bytes
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private int hits = 0;
+    private int misses = 0;
+
+    public CompilationCache() {
+        this(DEFAULT_DIRECTORY, DEFAULT_MAX_BYTES);
+    }
+
+    public CompilationCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.gson = new GsonBuilder()
+                .registerTypeHierarchyAdapter(JmmNode.class, new JmmSerializer())
+                .create();
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new UncheckedIOException(new IOException("Could not create cache directory '" + directory + "'"));
+        }
+        loadEntries();
+    }
+
+    /**
+     * Registers the entries already on disk, using the last modification time of each one as its last use.
+     */
+    private void loadEntries() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(ENTRY_EXTENSION));
+        if (files == null) {
+            return;
+        }
+
+        List<File> sortedFiles = new ArrayList<>(List.of(files));
+        sortedFiles.sort((file1, file2) -> Long.compare(file1.lastModified(), file2.lastModified()));
+        for (var file : sortedFiles) {
+            String key = file.getName().substring(0, file.getName().length() - ENTRY_EXTENSION.length());
+            entries.put(key, file.length());
+            totalBytes += file.length();
+        }
+    }
+
+    public static String getKey(String code, Map<String, String> config) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+            digest.update(CompilerFingerprint.VALUE.getBytes(StandardCharsets.UTF_8));
+            for (var configKey : KEY_CONFIG) {
+                digest.update(("\0" + configKey + "=" + config.getOrDefault(configKey, "")).getBytes(StandardCharsets.UTF_8));
+            }
+            digest.update((byte) 0);
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(directory, key + ENTRY_EXTENSION);
+    }
+
+    public Optional<CompilationResult> get(String code, Map<String, String> config) {
+        String key = getKey(code, config);
+        File entryFile = getEntryFile(key);
+
+        synchronized (lock) {
+            // also marks the entry as the most recently used
+            if (entries.get(key) == null) {
+                misses++;
+                return Optional.empty();
+            }
+        }
+
+        try {
+            var entry = gson.fromJson(Files.readString(entryFile.toPath()), JsonObject.class);
+
+            JmmNode rootNode = JmmNodeImpl.fromJson(entry.get("ast").toString());
+            String ollirCode = entry.get("ollir").getAsString();
+            String className = entry.get("className").getAsString();
+            var jasminResult = entry.has("classFile") ?
+                    new ClassFileResult(className, Base64.getDecoder().decode(entry.get("classFile").getAsString()),
+                            Collections.emptyList(), config) :
+                    new RunnableJasminResult(className, entry.get("jasmin").getAsString(), Collections.emptyList(),
+                            config);
+
+            // the modification time keeps the recency of the entry between runs
+            entryFile.setLastModified(System.currentTimeMillis());
+            synchronized (lock) {
+                hits++;
+            }
+            return Optional.of(CompilationResult.fromCache(rootNode, ollirCode, jasminResult));
+        } catch (IOException | JsonParseException | IllegalStateException | IllegalArgumentException |
+                 NullPointerException e) {
+            // missing or corrupted entry, drop it and compile again
+            synchronized (lock) {
+                Long size = entries.remove(key);
+                if (size != null) {
+                    totalBytes -= size;
+                }
+                misses++;
+            }
+            entryFile.delete();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores the result of a compilation. Results with errors, or without Jasmin code, are not stored.
+     */
+    public void put(String code, Map<String, String> config, CompilationResult result) {
+        if (result.hasErrors() || result.getJasminResult().isEmpty() || result.getRootNode().isEmpty()) {
+            return;
+        }
+
+        var entry = new JsonObject();
+        entry.addProperty("className", result.getJasminResult().get().getClassName());
+        entry.add("ast", gson.toJsonTree(result.getRootNode().get(), JmmNode.class));
+        entry.addProperty("ollir", result.getOllirCode().orElse(""));
+        entry.addProperty("jasmin", result.getJasminCode().orElse(""));
+        if (result.getJasminResult().get() instanceof ClassFileResult classFileResult) {
+            entry.addProperty("classFile", Base64.getEncoder().encodeToString(classFileResult.getClassFile()));
+        }
+        byte[] bytes = gson.toJson(entry).getBytes(StandardCharsets.UTF_8);
+
+        String key = getKey(code, config);
+        try {
+            // write to a temporary file first, so other processes never read a partial entry
+            Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, getEntryFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // the cache is only an optimization, failing to store an entry is not an error
+            return;
+        }
+
+        List<String> evicted = new ArrayList<>();
+        synchronized (lock) {
+            Long previousSize = entries.put(key, (long) bytes.length);
+            totalBytes += bytes.length - (previousSize == null ? 0 : previousSize);
+
+            var iterator = entries.entrySet().iterator();
+            while (totalBytes > maxBytes && iterator.hasNext()) {
+                var leastRecentlyUsed = iterator.next();
+                evicted.add(leastRecentlyUsed.getKey());
+                totalBytes -= leastRecentlyUsed.getValue();
+                iterator.remove();
+            }
+        }
+        for (var evictedKey : evicted) {
+            getEntryFile(evictedKey).delete();
+        }
+    }
+
+    public String getStats() {
+        synchronized (lock) {
+            return String.format("Compilation cache: %d hits, %d misses, %d entries, %d/%d bytes",
+                    hits, misses, entries.size(), totalBytes, maxBytes);
+        }
+    }
+
+    /**
+     * Hash of the classes of the compiler (its jar, or the folder of its classes), computed once.
+     */
+    private static class CompilerFingerprint {
+        static final String VALUE = compute();
+
+        private static String compute() {
+            try {
+                var location = CompilationCache.class.getProtectionDomain().getCodeSource().getLocation();
+                Path path = Path.of(location.toURI());
+
+                var digest = MessageDigest.getInstance("SHA-256");
+                List<Path> files;
+                if (Files.isDirectory(path)) {
+                    try (var paths = Files.walk(path)) {
+                        files = paths.filter(Files::isRegularFile).sorted().toList();
+                    }
+                } else {
+                    files = List.of(path);
+                }
+                for (var file : files) {
+                    digest.update(path.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    try (InputStream input = Files.newInputStream(file)) {
+                        digest.update(input.readAllBytes());
+                    }
+                }
+                return HexFormat.of().formatHex(digest.digest());
+            } catch (Exception e) {
+                // without knowing the build, entries can only be used by the process that made them
+                return UUID.randomUUID().toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OLLIR result whose ClassUnit was built directly from the AST, by {@link OllirBuilderVisitor}.
+ * <p>
+ * OllirResult can only be created from OLLIR code, which it parses, so this one hands it a placeholder class and
+ * answers every getter itself. The code is only written when it is asked for, from the class as it is at that
+ * moment, so after the OLLIR optimizations it shows the optimized code.
+ */
+public class BuiltOllirResult extends OllirResult {
+
+    private static final String PLACEHOLDER_CODE = "Placeholder {}";
+
+    private final ClassUnit ollirClass;
+    private final SymbolTable symbolTable;
+    private final List<Report> reports;
+    private final Map<String, String> config;
+
+    public BuiltOllirResult(JmmSemanticsResult semanticsResult, ClassUnit ollirClass) {
+        super(PLACEHOLDER_CODE, semanticsResult.getConfig());
+        this.ollirClass = ollirClass;
+        this.symbolTable = semanticsResult.getSymbolTable();
+        this.reports = new ArrayList<>(semanticsResult.getReports());
+        this.config = semanticsResult.getConfig();
+    }
+
+    @Override
+    public String getOllirCode() {
+        return new OllirPrinter(ollirClass).print();
+    }
+
+    @Override
+    public ClassUnit getOllirClass() {
+        return ollirClass;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return config;
+    }
+}
@@ -0,0 +1,63 @@
+package pt.up.fe.comp2024.optimization;
+
+/**
+ * Per-compilation state used while generating OLLIR, such as the counters for fresh temporaries and labels.
+ * <p>
+ * Each compilation owns its own context, so several files can be compiled concurrently and still produce the
+ * same code they would produce when compiled alone.
+ */
+public class CompilationContext {
+    private int tempNumber = -1;
+    private int ifThenNumber = -1;
+    private int ifEndNumber = -1;
+    private int whileCondNumber = -1;
+    private int whileBodyNumber = -1;
+    private int andEndNumber = -1;
+    private int varArgsNumber = -1;
+
+    public String getTemp() {
+
+        return getTemp("tmp");
+    }
+
+    public String getTemp(String prefix) {
+
+        return prefix + getNextTempNum();
+    }
+
+    public int getNextTempNum() {
+
+        tempNumber += 1;
+        return tempNumber;
+    }
+
+    public String getIfThen() {
+        ifThenNumber++;
+        return "if_then_" + ifThenNumber;
+    }
+
+    public String getIfEnd() {
+        ifEndNumber++;
+        return "if_end_" + ifEndNumber;
+    }
+
+    public String getWhileCond() {
+        whileCondNumber++;
+        return "while_cond_" + whileCondNumber;
+    }
+
+    public String getWhileBody() {
+        whileBodyNumber++;
+        return "while_body_" + whileBodyNumber;
+    }
+
+    public String getAndEnd() {
+        andEndNumber++;
+        return "and_end_" + andEndNumber;
+    }
+
+    public String getVarArgsArray() {
+        varArgsNumber++;
+        return "__varargs_array_" + varArgsNumber;
+    }
+}
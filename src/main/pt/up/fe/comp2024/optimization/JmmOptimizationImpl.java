@@ -3,42 +3,129 @@ package pt.up.fe.comp2024.optimization;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp2024.optimization.ast.ConstantFolding;
-import pt.up.fe.comp2024.optimization.ast.ConstantPropagation;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.optimization.ast.AlgebraicSimplification;
+import pt.up.fe.comp2024.optimization.ast.ConstantOptimizer;
+import pt.up.fe.comp2024.optimization.ast.DeadBranchElimination;
+import pt.up.fe.comp2024.optimization.ollir.CopyPropagation;
 import pt.up.fe.comp2024.optimization.ollir.RegisterAllocation;
+import pt.up.fe.comp2024.optimization.ollir.GlobalValueNumbering;
+import pt.up.fe.comp2024.optimization.ollir.Inlining;
+import pt.up.fe.comp2024.optimization.ollir.LoopInvariantCodeMotion;
+import pt.up.fe.comp2024.optimization.ollir.SparseConditionalConstantPropagation;
+import pt.up.fe.comp2024.optimization.ollir.StrengthReduction;
+import pt.up.fe.comp2024.optimization.ollir.TailRecursionElimination;
+import pt.up.fe.comp2024.optimization.ollir.UnreachableCodeElimination;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
+import pt.up.fe.comp2024.utils.ReportUtils;
 
 import java.util.Collections;
 
 public class JmmOptimizationImpl implements JmmOptimization {
     @Override
     public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
-        var constantFolding = new ConstantFolding();
-        var constantPropagation = new ConstantPropagation();
-
         var optimizationsEnabled = semanticsResult.getConfig().getOrDefault("optimize", "false");
         if (optimizationsEnabled.equals("false")) {
             return semanticsResult;
         }
 
-        boolean iterationHasModifications;
-        do {
-            iterationHasModifications = constantPropagation.visit(semanticsResult.getRootNode(), semanticsResult.getSymbolTable());
-            iterationHasModifications |= constantFolding.visit(semanticsResult.getRootNode(), null);
-        } while (iterationHasModifications);
+        // propagation and folding feed each other through a worklist, so a single run reaches the fixpoint
+        var constantOptimizer = new ConstantOptimizer(semanticsResult.getSymbolTable());
+        PhaseProfiler.time("ConstantPropagation", () -> constantOptimizer.optimize(semanticsResult.getRootNode()));
+
+        semanticsResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, semanticsResult.getRootNode(),
+                "Constant propagation: " + constantOptimizer.getReplacements() + " replacements, "
+                        + constantOptimizer.getNodesWalked() + " nodes walked, "
+                        + constantOptimizer.getNodesRevisited() + " nodes revisited"));
+
+        var algebraicSimplification = new AlgebraicSimplification(semanticsResult.getSymbolTable());
+        PhaseProfiler.time("AlgebraicSimplification", () -> algebraicSimplification.apply(semanticsResult.getRootNode()));
+        semanticsResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, semanticsResult.getRootNode(),
+                "Algebraic simplification: " + algebraicSimplification.getSimplifications() + " expressions simplified"));
+
+        var deadBranchElimination = new DeadBranchElimination();
+        PhaseProfiler.time("DeadBranchElimination", () -> deadBranchElimination.apply(semanticsResult.getRootNode()));
+        semanticsResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, semanticsResult.getRootNode(),
+                "Dead branch elimination: " + deadBranchElimination.getStatementsRemoved() + " statements removed"));
 
         return semanticsResult;
     }
     @Override
     public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
 
+        if (CompilerConfig.getOllir(semanticsResult.getConfig()).equals(CompilerConfig.OLLIR_BUILDER)) {
+            // the ClassUnit is built as the AST is visited, the code is only written if someone asks for it
+            var builder = new OllirBuilderVisitor(semanticsResult.getSymbolTable(), new CompilationContext());
+            var ollirClass = PhaseProfiler.time("ollirGeneration", () -> builder.build(semanticsResult.getRootNode()));
+            return new BuiltOllirResult(semanticsResult, ollirClass);
+        }
+
         var visitor = new OllirGeneratorVisitor(semanticsResult.getSymbolTable());
-        var ollirCode = visitor.visit(semanticsResult.getRootNode());
+        var ollirCode = PhaseProfiler.time("ollirGeneration", () -> visitor.visit(semanticsResult.getRootNode()));
 
-        return new OllirResult(semanticsResult, ollirCode, Collections.emptyList());
+        // OllirResult parses the generated code into a ClassUnit
+        return PhaseProfiler.time("ollirParsing", () -> new OllirResult(semanticsResult, ollirCode, Collections.emptyList()));
     }
 
     @Override
     public OllirResult optimize(OllirResult ollirResult) {
+        if (CompilerConfig.getOptimize(ollirResult.getConfig())) {
+            var tailRecursionElimination = new TailRecursionElimination(ollirResult);
+            PhaseProfiler.time("tailRecursionElimination", tailRecursionElimination::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Tail recursion elimination: " + tailRecursionElimination.getTailCallsEliminated()
+                            + " tail calls turned into jumps"));
+
+            var inlining = new Inlining(ollirResult);
+            PhaseProfiler.time("inlining", inlining::apply);
+            for (var inlined : inlining.getInlined().entrySet()) {
+                ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                        "Inlined " + inlined.getKey() + " (" + inlined.getValue()
+                                + (inlined.getValue() == 1 ? " call)" : " calls)")));
+            }
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Inlining: " + inlining.getInlinedCalls() + " calls inlined"));
+
+            var sccp = new SparseConditionalConstantPropagation(ollirResult);
+            PhaseProfiler.time("constantPropagation", sccp::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Sparse conditional constant propagation: " + sccp.getLiteralsPropagated() + " literals propagated, "
+                            + sccp.getBranchesFolded() + " branches folded, "
+                            + sccp.getInstructionsRemoved() + " instructions removed"));
+
+            var strengthReduction = new StrengthReduction(ollirResult);
+            PhaseProfiler.time("strengthReduction", strengthReduction::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Strength reduction: " + strengthReduction.getSimplifications() + " operations simplified, "
+                            + strengthReduction.getShifts() + " turned into shifts"));
+
+            var unreachableCodeElimination = new UnreachableCodeElimination(ollirResult);
+            PhaseProfiler.time("unreachableCodeElimination", unreachableCodeElimination::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Unreachable code elimination: " + unreachableCodeElimination.getInstructionsRemoved()
+                            + " instructions and " + unreachableCodeElimination.getLabelsRemoved() + " labels removed"));
+
+            var globalValueNumbering = new GlobalValueNumbering(ollirResult);
+            PhaseProfiler.time("globalValueNumbering", globalValueNumbering::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Global value numbering: " + globalValueNumbering.getExpressionsReused() + " expressions reused"));
+
+            var loopInvariantCodeMotion = new LoopInvariantCodeMotion(ollirResult);
+            PhaseProfiler.time("loopInvariantCodeMotion", loopInvariantCodeMotion::apply);
+            ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                    "Loop-invariant code motion: " + loopInvariantCodeMotion.getInstructionsHoisted()
+                            + " instructions hoisted out of " + loopInvariantCodeMotion.getLoopsChanged() + " loops"));
+
+            var copyPropagation = new CopyPropagation(ollirResult);
+            PhaseProfiler.time("copyPropagation", copyPropagation::apply);
+            for (var count : copyPropagation.getInstructionCounts().entrySet()) {
+                ollirResult.getReports().add(ReportUtils.buildLogReport(Stage.OPTIMIZATION, null,
+                        "Copy propagation in " + count.getKey() + ": " + count.getValue()[0] + " -> "
+                                + count.getValue()[1] + " instructions"));
+            }
+        }
+
         int registerNumberOption = Integer.parseInt(ollirResult.getConfig().getOrDefault("registerAllocation", "-1"));
 
         if (registerNumberOption == -1) {
@@ -48,6 +135,6 @@ public class JmmOptimizationImpl implements JmmOptimization {
         // registerNumberOption == 0 -> as few local registers as possible
         // else limit local registers to registerNumberOption: this can result in an abort if the number of registers is not enough
         RegisterAllocation ra = new RegisterAllocation(ollirResult, registerNumberOption);
-        return ra.apply();
+        return PhaseProfiler.time("registerAllocation", ra::apply);
     }
 }
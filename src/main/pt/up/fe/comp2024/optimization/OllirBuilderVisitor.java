@@ -0,0 +1,350 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.ast.NodeUtils;
+import pt.up.fe.comp2024.ast.TypeUtils;
+import pt.up.fe.comp2024.symboltable.SymbolTableUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Builds the OLLIR IR of a program directly, without going through OLLIR text and the OLLIR parser.
+ * <p>
+ * Produces the same class the parser would produce from the code of {@link OllirGeneratorVisitor}, given the
+ * same {@link CompilationContext}. Statements return their instructions, declarations are added to the class
+ * as they are visited.
+ */
+public class OllirBuilderVisitor extends AJmmVisitor<Void, OllirCode> {
+
+    private final SymbolTable table;
+    private final CompilationContext context;
+
+    private final OllirExprBuilderVisitor exprVisitor;
+
+    private ClassUnit classUnit;
+
+    public OllirBuilderVisitor(SymbolTable table, CompilationContext context) {
+        this.table = table;
+        this.context = context;
+        exprVisitor = new OllirExprBuilderVisitor(table, context);
+    }
+
+    /**
+     * Builds the class of the program, with the variable tables of its methods already filled.
+     */
+    public ClassUnit build(JmmNode root) {
+        classUnit = new ClassUnit();
+        visit(root);
+        classUnit.buildVarTables();
+        return classUnit;
+    }
+
+    @Override
+    protected void buildVisitor() {
+
+        addVisit(PROGRAM, this::visitProgram);
+        addVisit(IMPORT_DECL, this::visitImportDecl);
+        addVisit(CLASS_DECL, this::visitClassDecl);
+        addVisit(VAR_DECL, this::visitVarDecl);
+        addVisit(MAIN_METHOD, this::visitMainMethodDecl);
+        addVisit(OTHER_METHOD, this::visitOtherMethodDecl);
+        addVisit(STMT_GROUP, this::visitStmtGroup);
+        addVisit(IF_STMT, this::visitIfStmt);
+        addVisit(WHILE_STMT, this::visitWhileStmt);
+        addVisit(EXPR_STMT, this::visitExprStmt);
+        addVisit(ASSIGN_STMT, this::visitAssignStmt);
+        addVisit(ARRAY_ASSIGN_STMT, this::visitArrayAssignStmt);
+
+        setDefaultVisit(this::defaultVisit);
+    }
+
+    private OllirCode visitProgram(JmmNode node, Void unused) {
+        node.getChildren().forEach(this::visit);
+        return new OllirCode();
+    }
+
+    private OllirCode visitImportDecl(JmmNode node, Void unused) {
+        // Compound imports come from the tree as a string that contains a list of strings
+        // i.e. "import a.b.c;" comes as "[a, b, c]"
+        String id = node.get("id");
+        String[] contents = id.substring(1, id.length() - 1).split(", ");
+        classUnit.addImport(String.join(".", contents));
+
+        return new OllirCode();
+    }
+
+    private OllirCode visitClassDecl(JmmNode node, Void unused) {
+        classUnit.setClassName(table.getClassName());
+        if (node.hasAttribute("extended_name"))
+            classUnit.setSuperClass(node.get("extended_name"));
+
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        classUnit.addMethod(buildConstructor());
+        return new OllirCode();
+    }
+
+    private OllirCode visitVarDecl(JmmNode node, Void unused) {
+        Kind parentKind = fromString(node.getParent().getKind());
+        if (parentKind == MAIN_METHOD || parentKind == OTHER_METHOD) return new OllirCode();
+
+        Field field = new Field();
+        field.setFieldAccessModifier(AccessModifier.PUBLIC);
+        field.setFieldName(node.get("name"));
+        field.setFieldType(toIrType(node.getChild(0)));
+        classUnit.addField(field);
+
+        return new OllirCode();
+    }
+
+    /**
+     * The type of a type node, which names the class itself for other classes.
+     */
+    private static Type toIrType(JmmNode typeNode) {
+        if (OTHER_CLASSES.check(typeNode)) return OptUtils.toIrType(typeNode.get("name"), false);
+        return OptUtils.toIrType(typeNode);
+    }
+
+    private OllirCode visitMainMethodDecl(JmmNode node, Void unused) {
+        Method method = new Method(classUnit);
+        method.setMethodAccessModifier(AccessModifier.PUBLIC);
+        method.setStaticMethod();
+
+        Operand param = new Operand(node.get("parameterName"), OptUtils.toIrType(node.get("paramType"), true));
+        param.setParamId(0);
+        method.addParam(param);
+
+        method.setReturnType(OptUtils.toIrType(TypeUtils.getVoidType()));
+        method.setMethodName("main");
+
+        // children stmts
+        OllirCode code = new OllirCode();
+        for (int i = 0; i < node.getNumChildren(); i++)
+            code.append(visit(node.getJmmChild(i)));
+
+        ReturnInstruction ret = new ReturnInstruction();
+        ret.setReturnType(OptUtils.toIrType(TypeUtils.getVoidType()));
+        code.add(ret);
+
+        code.addTo(method);
+        classUnit.addMethod(method);
+
+        return new OllirCode();
+    }
+
+    private OllirCode visitOtherMethodDecl(JmmNode node, Void unused) {
+        Method method = new Method(classUnit);
+        if (NodeUtils.getBooleanAttribute(node, "isPublic", "false"))
+            method.setMethodAccessModifier(AccessModifier.PUBLIC);
+
+        // params, numbered after "this"
+        List<JmmNode> params = node.getChildren(PARAM);
+        for (int i = 0; i < params.size(); i++) {
+            Operand param = new Operand(params.get(i).get("name"), toIrType(params.get(i).getJmmChild(0)));
+            param.setParamId(i + 1);
+            method.addParam(param);
+        }
+
+        method.setReturnType(toIrType(node.getJmmChild(0)));
+        method.setMethodName(node.get("name"));
+
+        // rest of its children stmts
+        OllirCode code = new OllirCode();
+        int afterParams = params.size() + 1;
+        for (int i = afterParams; i < node.getNumChildren() - 1; i++)
+            code.append(visit(node.getJmmChild(i)));
+        code.append(returnStmt(node.getChildren().get(node.getNumChildren() - 1)));
+
+        code.addTo(method);
+        classUnit.addMethod(method);
+
+        return new OllirCode();
+    }
+
+    private OllirCode visitStmtGroup(JmmNode node, Void unused) {
+        OllirCode code = new OllirCode();
+
+        for (JmmNode stmt : node.getChildren())
+            code.append(visit(stmt));
+
+        return code;
+    }
+
+    private OllirCode visitIfStmt(JmmNode node, Void unused) {
+        OllirCode code = new OllirCode();
+
+        String ifThen = context.getIfThen();
+        String ifEnd = context.getIfEnd();
+
+        code.append(exprVisitor.visitCondition(node.getJmmChild(0), true, ifThen));
+
+        OllirCode thenBody = visit(node.getJmmChild(1));
+        OllirCode elseBody = visit(node.getJmmChild(2));
+
+        code.append(elseBody);
+        code.add(new GotoInstruction(ifEnd));
+
+        code.addLabel(ifThen);
+        code.append(thenBody);
+
+        code.addLabel(ifEnd);
+
+        return code;
+    }
+
+    private OllirCode visitWhileStmt(JmmNode node, Void unused) {
+        OllirCode code = new OllirCode();
+
+        String whileCond = context.getWhileCond();
+        String whileBody = context.getWhileBody();
+
+        OllirCode condition = exprVisitor.visitCondition(node.getJmmChild(0), true, whileBody);
+
+        OllirCode body = visit(node.getJmmChild(1));
+
+        code.add(new GotoInstruction(whileCond));
+
+        code.addLabel(whileBody);
+        code.append(body);
+
+        code.addLabel(whileCond);
+        code.append(condition);
+
+        return code;
+    }
+
+    private OllirCode visitExprStmt(JmmNode node, Void unused) {
+        OllirExprValue res = exprVisitor.visit(node.getJmmChild(0));
+
+        // only calls are statements, the value of any other expression is not kept
+        OllirCode code = res.getComputation();
+        if (res.getStatement() != null) code.add(res.getStatement());
+
+        return code;
+    }
+
+    private OllirCode classFieldAssign(JmmNode node) {
+        OllirCode code = new OllirCode();
+
+        String id = node.get("id");
+        String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+        Type type = OptUtils.toIrType(TypeUtils.getIdType(id, node, table, methodName, null));
+
+        OllirExprValue lhs = exprVisitor.visit(node.getJmmChild(0));
+
+        code.append(lhs.getComputation());
+
+        var object = new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+        code.add(new PutFieldInstruction(object, new Operand(id, type), lhs.getElement(),
+                OptUtils.toIrType(TypeUtils.getVoidType())));
+
+        return code;
+    }
+
+    private OllirCode visitAssignStmt(JmmNode node, Void unused) {
+
+        String id = node.get("id");
+        String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+
+
+        boolean isField = true;
+
+        if (SymbolTableUtils.isLocal(id, methodName, table)) isField = false;
+        else if (SymbolTableUtils.isParam(id, methodName, table)) isField = false;
+
+        if (isField) return classFieldAssign(node);
+
+
+        OllirExprValue rhs = exprVisitor.visit(node.getJmmChild(0));
+
+        OllirCode code = new OllirCode();
+
+        // code to compute the children
+        code.append(rhs.getComputation());
+
+        Type type = OptUtils.toIrType(TypeUtils.getIdType(id, node, table, methodName, null));
+        code.add(new AssignInstruction(new Operand(id, type), type, rhs.getInstruction()));
+
+        return code;
+    }
+
+    private OllirCode returnStmt(JmmNode node) {
+
+        String methodName = node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+        var retType = table.getReturnType(methodName);
+
+        OllirCode code = new OllirCode();
+
+        exprVisitor.setVisitingReturn(retType);
+
+        OllirExprValue expr = exprVisitor.visit(node);
+
+        exprVisitor.unsetVisitingReturn();
+
+        code.append(expr.getComputation());
+
+        ReturnInstruction ret = new ReturnInstruction(expr.getElement());
+        ret.setReturnType(OptUtils.toIrType(retType));
+        code.add(ret);
+
+        return code;
+    }
+
+    private OllirCode visitArrayAssignStmt(JmmNode node, Void unused) {
+        OllirCode code = new OllirCode();
+
+        Type intType = OptUtils.toIrType(TypeUtils.getIntType());
+
+        OllirExprValue indexVisit = exprVisitor.visit(node.getJmmChild(0));
+        OllirExprValue rhsVisit = exprVisitor.visit(node.getJmmChild(1));
+
+        code.append(indexVisit.getComputation());
+        code.append(rhsVisit.getComputation());
+
+        var dest = new ArrayOperand(node.get("id"), intType, List.of(indexVisit.getElement()));
+        code.add(new AssignInstruction(dest, OptUtils.toIrType(TypeUtils.getIntType()),
+                rhsVisit.getInstruction()));
+
+        return code;
+    }
+
+    private Method buildConstructor() {
+        Method constructor = new Method(classUnit);
+        constructor.setConstructMethod();
+        constructor.setReturnType(OptUtils.toIrType(TypeUtils.getVoidType()));
+        constructor.setMethodName(table.getClassName());
+
+        var object = new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+        var superCall = new CallInstruction(CallType.invokespecial, object,
+                new LiteralElement("\"<init>\"", new Type(ElementType.STRING)), new ArrayList<>(),
+                OptUtils.toIrType(TypeUtils.getVoidType()), true);
+        constructor.addInstr(superCall);
+
+        return constructor;
+    }
+
+    /**
+     * Default visitor. Visits every child node and return empty code.
+     *
+     * @param node
+     * @param unused
+     * @return
+     */
+    private OllirCode defaultVisit(JmmNode node, Void unused) {
+
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return new OllirCode();
+    }
+}
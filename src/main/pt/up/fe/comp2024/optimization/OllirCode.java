@@ -0,0 +1,63 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sequence of OLLIR instructions and the labels between them, built directly as IR.
+ * <p>
+ * A label placed with {@link #addLabel} names the next instruction that is added, which may come from code that
+ * is appended later.
+ */
+public class OllirCode {
+    private final List<Instruction> instructions = new ArrayList<>();
+    private final Map<String, Instruction> labels = new LinkedHashMap<>();
+    private final List<String> pendingLabels = new ArrayList<>();
+
+    public OllirCode add(Instruction instruction) {
+        for (String label : pendingLabels) {
+            labels.put(label, instruction);
+        }
+        pendingLabels.clear();
+        instructions.add(instruction);
+        return this;
+    }
+
+    public OllirCode addLabel(String label) {
+        pendingLabels.add(label);
+        return this;
+    }
+
+    public OllirCode append(OllirCode code) {
+        if (!code.instructions.isEmpty()) {
+            for (String label : pendingLabels) {
+                labels.put(label, code.instructions.get(0));
+            }
+            pendingLabels.clear();
+        }
+        instructions.addAll(code.instructions);
+        labels.putAll(code.labels);
+        pendingLabels.addAll(code.pendingLabels);
+        return this;
+    }
+
+    /**
+     * Adds the instructions and their labels to the end of the method.
+     */
+    public void addTo(Method method) {
+        if (!pendingLabels.isEmpty()) {
+            throw new RuntimeException("Labels " + pendingLabels + " do not precede any instruction");
+        }
+        for (Instruction instruction : instructions) {
+            method.addInstr(instruction);
+        }
+        for (Map.Entry<String, Instruction> label : labels.entrySet()) {
+            method.addLabel(label.getKey(), label.getValue());
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.AJmmVisitor;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.TypeUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static pt.up.fe.comp2024.ast.Kind.*;
+
+/**
+ * Builds the OLLIR IR of JmmNodes that are expressions.
+ * <p>
+ * Follows {@link OllirExprGeneratorVisitor} step by step, including the order in which temporaries and labels
+ * are taken from the context, so both produce the same class. Elements are created anew for each use, as the
+ * parser does.
+ */
+public class OllirExprBuilderVisitor extends AJmmVisitor<Void, OllirExprValue> {
+
+    private final SymbolTable table;
+    private final CompilationContext context;
+
+    private boolean visitingReturn = false;
+    private pt.up.fe.comp.jmm.analysis.table.Type returnType = null;
+    private boolean visitingArgImported = false;
+    private pt.up.fe.comp.jmm.analysis.table.Type visitingArgImportedType = null;
+
+    public OllirExprBuilderVisitor(SymbolTable table, CompilationContext context) {
+        this.table = table;
+        this.context = context;
+    }
+
+    public void setVisitingReturn(pt.up.fe.comp.jmm.analysis.table.Type retType) {
+        this.visitingReturn = true;
+        this.returnType = retType;
+    }
+
+    public void unsetVisitingReturn() {
+        this.visitingReturn = false;
+        this.returnType = null;
+    }
+
+    @Override
+    protected void buildVisitor() {
+
+        addVisit(PAREN_EXPR, this::visitParenExpr);
+        addVisit(ARRAY_INDEX_EXPR, this::visitArrayIndexExpr);
+        addVisit(METHOD_CALL_EXPR, this::visitMethodCallExpr);
+        addVisit(MEMBER_ACCESS_EXPR, this::visitMemberAccessExpr);  // length
+        addVisit(NOT_EXPR, this::visitNotExpr);
+        addVisit(NEW_ARRAY_EXPR, this::visitNewArrayExpr);
+        addVisit(NEW_OBJ_EXPR, this::visitNewObjExpr);
+        addVisit(BINARY_EXPR, this::visitBinExpr);
+        addVisit(INT_LITERAL_EXPR, this::visitInteger);
+        addVisit(BOOLEAN_LITERAL_EXPR, this::visitBooleanLiteral);
+        addVisit(ID_LITERAL_EXPR, this::visitVarRef);
+        addVisit(THIS_EXPR, this::visitThisExpr);
+        addVisit(ARRAY_DECL_EXPR, this::visitArrayDeclExpr);
+
+        setDefaultVisit(this::defaultVisit);
+    }
+
+    private OllirExprValue visitInteger(JmmNode node, Void unused) {
+        return new OllirExprValue(new LiteralElement(node.get("value"), intType()));
+    }
+
+    private OllirExprValue andOptimization(JmmNode node) {
+        OllirCode computation = new OllirCode();
+
+        String temp = context.getTemp();
+        String ifThen = context.getIfThen();
+        String ifEnd = context.getIfEnd();
+
+        // the operands are only tested, the boolean is materialized once, for the value that is stored
+        computation.append(visitCondition(node, true, ifThen));
+        computation.add(assign(temp, booleanType(), new SingleOpInstruction(booleanLiteral("false"))));
+        computation.add(new GotoInstruction(ifEnd));
+
+        computation.addLabel(ifThen);
+        computation.add(assign(temp, booleanType(), new SingleOpInstruction(booleanLiteral("true"))));
+
+        computation.addLabel(ifEnd);
+
+        return new OllirExprValue(new Operand(temp, booleanType()), computation);
+    }
+
+    /**
+     * Builds a condition as jumps: the code goes to the label when the condition evaluates to jumpIf
+     * and falls through otherwise, as {@link OllirExprGeneratorVisitor#visitCondition} does.
+     */
+    public OllirCode visitCondition(JmmNode node, boolean jumpIf, String label) {
+        OllirCode code = new OllirCode();
+
+        if (PAREN_EXPR.check(node)) {
+            return visitCondition(node.getJmmChild(0), jumpIf, label);
+        }
+        if (NOT_EXPR.check(node)) {
+            return visitCondition(node.getJmmChild(0), !jumpIf, label);
+        }
+        if (BOOLEAN_LITERAL_EXPR.check(node)) {
+            boolean value = Boolean.parseBoolean(node.get("value"));
+            return value == jumpIf ? code.add(new GotoInstruction(label)) : code;
+        }
+
+        if (BINARY_EXPR.check(node) && node.get("op").equals("&&")) {
+            if (!jumpIf) {
+                // false as soon as one of the operands is false
+                code.append(visitCondition(node.getJmmChild(0), false, label));
+                code.append(visitCondition(node.getJmmChild(1), false, label));
+                return code;
+            }
+            // true only if both are, so the second test is skipped when the first one fails
+            String andEnd = context.getAndEnd();
+            code.append(visitCondition(node.getJmmChild(0), false, andEnd));
+            code.append(visitCondition(node.getJmmChild(1), true, label));
+            code.addLabel(andEnd);
+            return code;
+        }
+
+        CondBranchInstruction branch;
+        if (BINARY_EXPR.check(node) && node.get("op").equals("<")) {
+            OllirExprValue lhs = visit(node.getJmmChild(0));
+            OllirExprValue rhs = visit(node.getJmmChild(1));
+            code.append(lhs.getComputation()).append(rhs.getComputation());
+
+            var operation = new Operation(jumpIf ? OperationType.LTH : OperationType.GTE, booleanType());
+            branch = new OpCondInstruction(new BinaryOpInstruction(lhs.getElement(), operation, rhs.getElement()));
+        } else {
+            // any other boolean (variables, calls, array accesses...) is computed and then tested
+            OllirExprValue value = visit(node);
+            code.append(value.getComputation());
+
+            branch = jumpIf ? new SingleOpCondInstruction(new SingleOpInstruction(value.getElement()))
+                    : new OpCondInstruction(new UnaryOpInstruction(new Operation(OperationType.NOTB, booleanType()),
+                    value.getElement()));
+        }
+        branch.setLabel(label);
+        return code.add(branch);
+    }
+
+    private OllirExprValue visitBinExpr(JmmNode node, Void unused) {
+        if (node.get("op").equals("&&")) return andOptimization(node);
+
+        var lhs = visit(node.getJmmChild(0));
+        var rhs = visit(node.getJmmChild(1));
+
+        OllirCode computation = new OllirCode();
+
+        // code to compute the children
+        computation.append(lhs.getComputation());
+        computation.append(rhs.getComputation());
+
+        // code to compute self
+        var resType = TypeUtils.getExprType(node, table, getMethodName(node), null);
+        String temp = context.getTemp();
+
+        var operation = new Operation(toOperationType(node.get("op")), OptUtils.toIrType(resType));
+        computation.add(assign(temp, OptUtils.toIrType(resType),
+                new BinaryOpInstruction(lhs.getElement(), operation, rhs.getElement())));
+
+        return new OllirExprValue(new Operand(temp, OptUtils.toIrType(resType)), computation);
+    }
+
+    private OllirExprValue classFieldVar(JmmNode node) {
+        OllirCode computation = new OllirCode();
+
+        var type = TypeUtils.getExprType(node, table, getMethodName(node), null);
+
+        String temp = context.getTemp();
+
+        var field = new Operand(node.get("id"), OptUtils.toIrType(type));
+        computation.add(assign(temp, OptUtils.toIrType(type),
+                new GetFieldInstruction(thisCaller(), field, OptUtils.toIrType(type))));
+
+        return new OllirExprValue(new Operand(temp, OptUtils.toIrType(type)), computation);
+    }
+
+    private OllirExprValue visitVarRef(JmmNode node, Void unused) {
+
+        var id = node.get("id");
+        String methodName = getMethodName(node);
+
+        // the last kind of symbol with this name wins: local variables, then parameters, then fields
+        boolean isField = table.getFields().stream().anyMatch(symbol -> symbol.getName().equals(id));
+        if (table.getParametersTry(methodName).orElse(List.of()).stream().anyMatch(symbol -> symbol.getName().equals(id))
+                || table.getLocalVariablesTry(methodName).orElse(List.of()).stream().anyMatch(symbol -> symbol.getName().equals(id))) {
+            isField = false;
+        }
+
+        if (isField) return classFieldVar(node);
+
+        // names without a type are imported classes, which only appear as the target of static calls
+        var type = TypeUtils.getExprType(node, table, methodName, null);
+        return new OllirExprValue(new Operand(id, type != null ? OptUtils.toIrType(type) : null));
+    }
+
+    private OllirExprValue visitBooleanLiteral(JmmNode node, Void unused) {
+        return new OllirExprValue(booleanLiteral(node.get("value")));
+    }
+
+    private OllirExprValue visitCallExprDiscard(JmmNode node, Type returnType) {
+
+        OllirCode computation = new OllirCode();
+
+        OllirExprValue objectVisit = visit(node.getJmmChild(0));
+        computation.append(objectVisit.getComputation());
+
+        CallType invoke = getInvocationType(node);
+
+        List<OllirExprValue> argsResult = visitArgs(node, node.get("method"));
+
+        for (OllirExprValue argResult : argsResult)
+            computation.append(argResult.getComputation());
+
+        return OllirExprValue.ofCall(isIsolated -> invocation(invoke, objectVisit, node.get("method"), argsResult,
+                returnType, isIsolated), computation);
+    }
+
+    private OllirExprValue visitArrayIndexExpr(JmmNode node, Void unused) {
+        OllirCode computation = new OllirCode();
+
+        OllirExprValue lhs = visit(node.getJmmChild(0));
+        computation.append(lhs.getComputation());
+
+        OllirExprValue rhs = visit(node.getJmmChild(1));
+        computation.append(rhs.getComputation());
+
+        String temp = context.getTemp();
+
+        var access = new ArrayOperand(((Operand) lhs.getElement()).getName(), intType(), List.of(rhs.getElement()));
+        computation.add(assign(temp, intType(), new SingleOpInstruction(access)));
+
+        return new OllirExprValue(new Operand(temp, intType()), computation);
+    }
+
+    private OllirExprValue visitMethodCallExpr(JmmNode node, Void unused) {
+
+        OllirCode computation = new OllirCode();
+
+        OllirExprValue objectVisit = visit(node.getJmmChild(0));
+        computation.append(objectVisit.getComputation());
+
+        String callee = node.get("method");
+        Type type;
+
+        Optional<JmmNode> assignAncestor = node.getAncestor(ASSIGN_STMT);
+        if (assignAncestor.isEmpty()) assignAncestor = node.getAncestor(ARRAY_ASSIGN_STMT);
+        Optional<JmmNode> invokeAncestor = node.getAncestor(METHOD_CALL_EXPR);  // to determine if result will be discarded
+        Optional<JmmNode> notOptAncestor = node.getAncestor(NOT_EXPR);
+        Optional<JmmNode> binOptAncestor = node.getAncestor(BINARY_EXPR);
+        boolean conditionParent = node.getParent().getKind().equals(IF_STMT.toString())
+                || node.getParent().getKind().equals(WHILE_STMT.toString());
+
+        if (assignAncestor.isPresent() && invokeAncestor.isEmpty())
+            // type will be that of the lhs of the assignment expression
+            type = OptUtils.toIrType(TypeUtils.getIdType(assignAncestor.get().get("id"), node.getParent(), table,
+                    getMethodName(node), null));
+        else if (notOptAncestor.isPresent())
+            type = booleanType();
+        else if (binOptAncestor.isPresent()) {
+            String op = binOptAncestor.get().get("op");
+            if (op.equals("*") || op.equals("/") || op.equals("+") || op.equals("-"))
+                type = intType();
+            else if (op.equals("<") || op.equals("&&"))
+                type = booleanType();
+            else
+                throw new RuntimeException("Could not find the type of the call to '" + callee + "'");
+        } else if (conditionParent)
+            type = booleanType();
+        else if (table.getMethods().contains(callee)) {
+            type = OptUtils.toIrType(table.getReturnType(callee));
+            if (!visitingReturn && assignAncestor.isEmpty() && invokeAncestor.isEmpty())
+                return visitCallExprDiscard(node, type);
+        } else if (this.visitingArgImported)
+            type = OptUtils.toIrType(this.visitingArgImportedType);
+        else if (visitingReturn)
+            type = OptUtils.toIrType(returnType);
+        else type = OptUtils.toIrType(TypeUtils.getVoidType());
+
+        CallType invoke = getInvocationType(node);
+
+        List<OllirExprValue> argsResult = visitArgs(node, callee);
+
+        for (OllirExprValue argResult : argsResult)
+            computation.append(argResult.getComputation());
+
+        if (type.getTypeOfElement() == ElementType.VOID) {
+            return OllirExprValue.ofCall(isIsolated -> invocation(invoke, objectVisit, callee, argsResult, type, isIsolated),
+                    computation);
+        }
+
+        String resultTemp = context.getTemp();
+        computation.add(assign(resultTemp, type, invocation(invoke, objectVisit, callee, argsResult, type, false)));
+        return new OllirExprValue(new Operand(resultTemp, type), computation);
+    }
+
+    /**
+     * Calls on "this" and on variables are virtual, calls on any other name (an imported class) are static.
+     */
+    private CallType getInvocationType(JmmNode node) {
+        JmmNode object = node.getJmmChild(0);
+        if (!ID_LITERAL_EXPR.check(object)) {
+            return CallType.invokevirtual;
+        }
+
+        String objectName = object.get("id");
+        String caller = getMethodName(node);
+        boolean isVariable = table.getLocalVariablesTry(caller).orElse(List.of()).stream()
+                .anyMatch(symbol -> symbol.getName().equals(objectName))
+                || table.getParametersTry(caller).orElse(List.of()).stream()
+                .anyMatch(symbol -> symbol.getName().equals(objectName))
+                || table.getFields().stream().anyMatch(symbol -> symbol.getName().equals(objectName));
+        return isVariable ? CallType.invokevirtual : CallType.invokestatic;
+    }
+
+    private CallInstruction invocation(CallType invoke, OllirExprValue object, String methodName,
+                                       List<OllirExprValue> args, Type returnType, boolean isIsolated) {
+        Operand objectOperand = (Operand) object.getElement();
+        Operand caller;
+        if (invoke == CallType.invokestatic) {
+            caller = new Operand(objectOperand.getName(), new ClassType(ElementType.CLASS, table.getClassName()));
+        } else if (objectOperand.getName().equals("this")) {
+            caller = thisCaller();
+        } else {
+            caller = objectOperand;
+        }
+
+        List<Element> arguments = new ArrayList<>();
+        for (OllirExprValue arg : args) {
+            arguments.add(arg.getElement());
+        }
+        return new CallInstruction(invoke, caller, methodLiteral(methodName), arguments, returnType, isIsolated);
+    }
+
+    private OllirExprValue visitThisExpr(JmmNode node, Void unused) {
+        return new OllirExprValue(new Operand("this", new ClassType(ElementType.OBJECTREF, table.getClassName())));
+    }
+
+    private OllirExprValue visitNewArrayExpr(JmmNode node, Void unused) {
+        OllirCode computation = new OllirCode();
+
+        OllirExprValue size = visit(node.getJmmChild(0));
+        String sizeTemp = context.getTemp();
+        computation.append(size.getComputation());
+        computation.add(assign(sizeTemp, intType(), size.getInstruction()));
+
+        String arrayTemp = context.getTemp();
+        computation.add(assign(arrayTemp, intArrayType(), newArray(new Operand(sizeTemp, intType()))));
+
+        return new OllirExprValue(new Operand(arrayTemp, intArrayType()), computation);
+    }
+
+    private OllirExprValue visitNewObjExpr(JmmNode node, Void unused) {
+        OllirCode computation = new OllirCode();
+
+        String className = node.get("id");
+        String tempId = context.getTemp();
+
+        var type = OptUtils.toIrType(className, false);
+        computation.add(assign(tempId, type,
+                new CallInstruction(CallType.NEW, new Operand(className, type), new ArrayList<>(), type)));
+
+        computation.add(new CallInstruction(CallType.invokespecial, new Operand(tempId, type), methodLiteral("<init>"),
+                new ArrayList<>(), voidType(), true));
+
+        return new OllirExprValue(new Operand(tempId, type), computation);
+    }
+
+    private OllirExprValue visitParenExpr(JmmNode node, Void unused) {
+        return visit(node.getJmmChild(0));
+    }
+
+    private OllirExprValue visitMemberAccessExpr(JmmNode node, Void unused) {
+        OllirCode computation = new OllirCode();
+
+        String temp = context.getTemp();
+        OllirExprValue id = visit(node.getJmmChild(0));
+
+        computation.append(id.getComputation());
+        computation.add(assign(temp, intType(), new CallInstruction(CallType.arraylength, id.getElement(), intType())));
+
+        return new OllirExprValue(new Operand(temp, intType()), computation);
+    }
+
+    private OllirExprValue visitNotExpr(JmmNode node, Void unused) {
+
+        OllirCode computation = new OllirCode();
+
+        OllirExprValue childVisit = visit(node.getJmmChild(0));
+
+        computation.append(childVisit.getComputation());
+
+        String temp = context.getTemp();
+
+        computation.add(assign(temp, booleanType(),
+                new UnaryOpInstruction(new Operation(OperationType.NOTB, booleanType()), childVisit.getElement())));
+
+        return new OllirExprValue(new Operand(temp, booleanType()), computation);
+    }
+
+    private OllirExprValue visitArrayDeclExpr(JmmNode node, Void unused) {
+        List<OllirExprValue> elements = new ArrayList<>();
+        return buildArray(node.getNumChildren(), () -> {
+            for (int i = 0; i < node.getNumChildren(); i++) {
+                elements.add(visit(node.getChild(i)));
+            }
+            return elements;
+        });
+    }
+
+    /**
+     * Builds a new array, assigns it to a fresh varargs variable and then stores the elements in it.
+     * The elements are only visited once the array and the variable have their names.
+     */
+    private OllirExprValue buildArray(int size, java.util.function.Supplier<List<OllirExprValue>> elements) {
+        OllirCode computation = new OllirCode();
+
+        String temp = context.getTemp();
+        String varArgsArray = context.getVarArgsArray();
+
+        computation.add(assign(temp, intArrayType(), newArray(new LiteralElement(String.valueOf(size), intType()))));
+        computation.add(assign(varArgsArray, intArrayType(), new SingleOpInstruction(new Operand(temp, intArrayType()))));
+
+        int index = 0;
+        for (OllirExprValue element : elements.get()) {
+            computation.append(element.getComputation());
+
+            var dest = new ArrayOperand(varArgsArray, intType(),
+                    List.of(new LiteralElement(String.valueOf(index), intType())));
+            computation.add(new AssignInstruction(dest, intType(), element.getInstruction()));
+            index++;
+        }
+
+        return new OllirExprValue(new Operand(varArgsArray, intArrayType()), computation);
+    }
+
+    private List<OllirExprValue> visitArgs(JmmNode node, String calleeName) {
+        List<OllirExprValue> argsResult = new ArrayList<>();
+
+        if (node.getNumChildren() <= 1) return argsResult;
+
+        List<JmmNode> args = node.getJmmChild(1).getChildren();
+        List<JmmNode> params = new ArrayList<>();
+        boolean hasVarargs = false;
+
+        if (node.getAncestor(OTHER_METHOD).isPresent()) {
+            List<JmmNode> classMethods = node.getAncestor(OTHER_METHOD).get().getParent().getChildren();
+            for (JmmNode method : classMethods) {
+                if (method.get("name").equals(calleeName)) {
+                    for (JmmNode param : method.getChildren()) {
+                        if (param.getKind().equals(PARAM.toString())) {
+                            params.add(param);
+                            if (param.get("paramType").equals(VAR_ARGS.toString())) {
+                                hasVarargs = true;
+                                break;
+                            }
+                        }
+                    }
+                    break;
+                }
+            }
+        }
+
+        int thresh = !params.isEmpty() ? params.size() - 1 : args.size() - 1;
+
+        for (int i = 0; i < thresh; i++) {
+            argsResult.add(visitArg(args.get(i), calleeName, i));
+        }
+
+        if (!hasVarargs) {
+            argsResult.add(visitArg(args.get(args.size() - 1), calleeName, -1));
+            return argsResult;
+        }
+
+        List<JmmNode> varargs = args.subList(thresh, args.size());
+        argsResult.add(buildArray(varargs.size(), () -> varargs.stream().map(this::visit).toList()));
+        return argsResult;
+    }
+
+    /**
+     * Visits an argument. The type of a call to a method that is not declared in the class is that of the
+     * parameter it is passed to (the last one, if the index is negative).
+     */
+    private OllirExprValue visitArg(JmmNode arg, String calleeName, int paramIndex) {
+        if (arg.getKind().equals(METHOD_CALL_EXPR.toString()) && !table.getMethods().contains(arg.get("method"))) {
+            List<Symbol> parameters = table.getParameters(calleeName);
+            this.visitingArgImported = true;
+            this.visitingArgImportedType = parameters.get(paramIndex < 0 ? parameters.size() - 1 : paramIndex).getType();
+        }
+        OllirExprValue result = visit(arg);
+        this.visitingArgImported = false;
+        this.visitingArgImportedType = null;
+        return result;
+    }
+
+    /**
+     * Default visitor. Visits every child node and return an empty result.
+     *
+     * @param node
+     * @param unused
+     * @return
+     */
+    private OllirExprValue defaultVisit(JmmNode node, Void unused) {
+
+        for (var child : node.getChildren()) {
+            visit(child);
+        }
+
+        return OllirExprValue.empty();
+    }
+
+    private static String getMethodName(JmmNode node) {
+        return node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow();
+    }
+
+    private static OperationType toOperationType(String op) {
+        return switch (op) {
+            case "+" -> OperationType.ADD;
+            case "-" -> OperationType.SUB;
+            case "*" -> OperationType.MUL;
+            case "/" -> OperationType.DIV;
+            case "<" -> OperationType.LTH;
+            case "&&" -> OperationType.ANDB;
+            default -> throw new RuntimeException("Unknown binary operator '" + op + "'");
+        };
+    }
+
+    /**
+     * "this" as the object of a call or field access, which the parser types as the class itself.
+     */
+    private Operand thisCaller() {
+        return new Operand("this", new ClassType(ElementType.THIS, table.getClassName()));
+    }
+
+    private static AssignInstruction assign(String dest, Type type, Instruction rhs) {
+        return new AssignInstruction(new Operand(dest, type), type, rhs);
+    }
+
+    private static CallInstruction newArray(Element size) {
+        return new CallInstruction(CallType.NEW, new Operand("array", new ArrayType()), new ArrayList<>(List.of(size)),
+                intArrayType());
+    }
+
+    private static LiteralElement methodLiteral(String methodName) {
+        return new LiteralElement("\"" + methodName + "\"", new Type(ElementType.STRING));
+    }
+
+    private static LiteralElement booleanLiteral(String value) {
+        return new LiteralElement(OptUtils.toOllirBoolean(value), booleanType());
+    }
+
+    private static Type intType() {
+        return OptUtils.toIrType(TypeUtils.getIntType());
+    }
+
+    private static Type intArrayType() {
+        return OptUtils.toIrType(TypeUtils.getIntArrayType());
+    }
+
+    private static Type booleanType() {
+        return OptUtils.toIrType(TypeUtils.getBooleanType());
+    }
+
+    private static Type voidType() {
+        return OptUtils.toIrType(TypeUtils.getVoidType());
+    }
+}
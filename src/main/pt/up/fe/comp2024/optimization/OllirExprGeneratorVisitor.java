@@ -25,6 +25,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private final String GOTO = "goto";
 
     private final SymbolTable table;
+    private final CompilationContext context;
 
     private List<JmmNode> importNodes = new ArrayList<>();
     private boolean visitingReturn = false;
@@ -32,8 +33,9 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private boolean visitingArgImported = false;
     private Type visitingArgImportedType = null;
 
-    public OllirExprGeneratorVisitor(SymbolTable table) {
+    public OllirExprGeneratorVisitor(SymbolTable table, CompilationContext context) {
         this.table = table;
+        this.context = context;
     }
 
     public void appendImportNode(JmmNode node) {
@@ -81,29 +83,82 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
     private OllirExprResult andOptimization(JmmNode node) {
         StringBuilder computation = new StringBuilder();
 
-        OllirExprResult lhs = visit(node.getJmmChild(0));
-        OllirExprResult rhs = visit(node.getJmmChild(1));
-
         String booleanOllirType = OptUtils.toOllirType(TypeUtils.getBooleanType());
 
-        computation.append(lhs.getComputation()).append(rhs.getComputation());
+        String temp = context.getTemp() + booleanOllirType;
+        String ifThen = context.getIfThen();
+        String ifEnd = context.getIfEnd();
 
-        String temp = OptUtils.getTemp() + booleanOllirType;
-        String ifThen = OptUtils.getIfThen();
-        String ifEnd = OptUtils.getIfEnd();
-
-        computation.append(IF + SPACE + "(" + lhs.getCode() + ")" + SPACE + GOTO + SPACE + ifThen + END_STMT);
+        // the operands are only tested, the boolean is materialized once, for the value that is stored
+        computation.append(visitCondition(node, true, ifThen));
         computation.append(temp + SPACE + ASSIGN + booleanOllirType + SPACE + OptUtils.toOllirBoolean("false") + booleanOllirType + END_STMT);
         computation.append(GOTO + SPACE + ifEnd + END_STMT);
 
         computation.append(ifThen + ":\n");
-        computation.append(temp + SPACE + ASSIGN + booleanOllirType + SPACE + rhs.getCode() + END_STMT);
+        computation.append(temp + SPACE + ASSIGN + booleanOllirType + SPACE + OptUtils.toOllirBoolean("true") + booleanOllirType + END_STMT);
 
         computation.append(ifEnd + ":\n");
 
         return new OllirExprResult(temp, computation);
     }
 
+    /**
+     * Generates a condition as jumps: the code goes to the label when the condition evaluates to jumpIf
+     * and falls through otherwise.
+     * '&&', '!' and '<' become conditional jumps directly ('!' only swaps the outcome that jumps),
+     * so no boolean is materialized for them.
+     */
+    public String visitCondition(JmmNode node, boolean jumpIf, String label) {
+        StringBuilder code = new StringBuilder();
+
+        if (PAREN_EXPR.check(node)) {
+            return visitCondition(node.getJmmChild(0), jumpIf, label);
+        }
+        if (NOT_EXPR.check(node)) {
+            return visitCondition(node.getJmmChild(0), !jumpIf, label);
+        }
+        if (BOOLEAN_LITERAL_EXPR.check(node)) {
+            boolean value = Boolean.parseBoolean(node.get("value"));
+            return value == jumpIf ? GOTO + SPACE + label + END_STMT : "";
+        }
+
+        String booleanOllirType = OptUtils.toOllirType(TypeUtils.getBooleanType());
+
+        if (BINARY_EXPR.check(node) && node.get("op").equals("&&")) {
+            if (!jumpIf) {
+                // false as soon as one of the operands is false
+                code.append(visitCondition(node.getJmmChild(0), false, label));
+                code.append(visitCondition(node.getJmmChild(1), false, label));
+                return code.toString();
+            }
+            // true only if both are, so the second test is skipped when the first one fails
+            String andEnd = context.getAndEnd();
+            code.append(visitCondition(node.getJmmChild(0), false, andEnd));
+            code.append(visitCondition(node.getJmmChild(1), true, label));
+            code.append(andEnd + ":\n");
+            return code.toString();
+        }
+
+        if (BINARY_EXPR.check(node) && node.get("op").equals("<")) {
+            OllirExprResult lhs = visit(node.getJmmChild(0));
+            OllirExprResult rhs = visit(node.getJmmChild(1));
+            code.append(lhs.getComputation()).append(rhs.getComputation());
+
+            String op = jumpIf ? "<" : ">=";
+            code.append(IF + " (" + lhs.getCode() + SPACE + op + booleanOllirType + SPACE + rhs.getCode() + ") "
+                    + GOTO + SPACE + label + END_STMT);
+            return code.toString();
+        }
+
+        // any other boolean (variables, calls, array accesses...) is computed and then tested
+        OllirExprResult value = visit(node);
+        code.append(value.getComputation());
+
+        String test = jumpIf ? value.getCode() : "!" + booleanOllirType + SPACE + value.getCode();
+        code.append(IF + " (" + test + ") " + GOTO + SPACE + label + END_STMT);
+        return code.toString();
+    }
+
     private OllirExprResult visitBinExpr(JmmNode node, Void unused) {
         if (node.get("op").equals("&&")) return andOptimization(node);
 
@@ -119,7 +174,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         // code to compute self
         Type resType = TypeUtils.getExprType(node, table, node.getAncestor(METHOD_DECL).map(method -> method.get("name")).orElseThrow(), null);
         String resOllirType = OptUtils.toOllirType(resType);
-        String code = OptUtils.getTemp() + resOllirType;
+        String code = context.getTemp() + resOllirType;
 
         computation.append(code).append(SPACE)
                 .append(ASSIGN).append(resOllirType).append(SPACE)
@@ -140,7 +195,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         String ollirType = "";
         if (type != null) ollirType = OptUtils.toOllirType(type);
 
-        String temp = OptUtils.getTemp();
+        String temp = context.getTemp();
 
         computation.append(temp + ollirType + " " + ASSIGN + ollirType);
         computation.append(" getfield(this, " + node.get("id") + ollirType);
@@ -314,7 +369,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         OllirExprResult rhs = visit(node.getJmmChild(1));
         computation.append(rhs.getComputation());
 
-        String code = OptUtils.getTemp() + intOllirType;
+        String code = context.getTemp() + intOllirType;
 
         computation.append(code + SPACE + ASSIGN
                 + intOllirType + SPACE + lhs.getCode()
@@ -444,7 +499,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         if (type.equals(".V")) code.append(invocation);
         else {
-            String resultTemp = OptUtils.getTemp();
+            String resultTemp = context.getTemp();
             computation.append(resultTemp);
             computation.append(type + " " + ASSIGN + type + " ");
             computation.append(invocation + END_STMT);
@@ -465,11 +520,11 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         String intArrayOllirType = OptUtils.toOllirType(TypeUtils.getIntArrayType());
 
         OllirExprResult size = visit(node.getJmmChild(0));
-        String sizeTemp = OptUtils.getTemp() + intOllirType;
+        String sizeTemp = context.getTemp() + intOllirType;
         computation.append(size.getComputation());
         computation.append(sizeTemp + SPACE + ASSIGN + intOllirType + SPACE + size.getCode() + END_STMT);
 
-        String arrayTemp = OptUtils.getTemp() + intArrayOllirType;
+        String arrayTemp = context.getTemp() + intArrayOllirType;
         computation.append(arrayTemp + SPACE + ASSIGN + intArrayOllirType
         + " new(array, " + sizeTemp + ")" + intArrayOllirType + END_STMT);
 
@@ -480,7 +535,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         StringBuilder computation = new StringBuilder();
 
         String type = node.get("id");
-        String tempId = OptUtils.getTemp();
+        String tempId = context.getTemp();
 
         computation.append(tempId + "." + type + " " + ASSIGN + "." + type +
                 " new(" + type + ")." + type + END_STMT);
@@ -500,7 +555,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         String intOllirType = OptUtils.toOllirType(TypeUtils.getIntType());
 
-        String code = OptUtils.getTemp() + intOllirType;
+        String code = context.getTemp() + intOllirType;
         OllirExprResult id = visit(node.getJmmChild(0));
 
         System.out.println("ID AQUI: " + id);
@@ -520,7 +575,7 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
 
         computation.append(childVisit.getComputation());
 
-        String temp = OptUtils.getTemp();
+        String temp = context.getTemp();
         String type = OptUtils.toOllirType(TypeUtils.getBooleanType());
 
         computation.append(temp + type + SPACE + ASSIGN + type + SPACE);
@@ -536,8 +591,8 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         String intArrayOllirType = OptUtils.toOllirType(TypeUtils.getIntArrayType());
 
         String size = String.valueOf(node.getNumChildren()) + intOllirType;
-        String temp = OptUtils.getTemp() + intArrayOllirType;
-        String varArgsArray = OptUtils.getVarArgsArray() + intArrayOllirType;
+        String temp = context.getTemp() + intArrayOllirType;
+        String varArgsArray = context.getVarArgsArray() + intArrayOllirType;
 
         computation.append(temp + SPACE + ASSIGN + intArrayOllirType
         + " new(array, " + size + ")" + intArrayOllirType + END_STMT);
@@ -615,8 +670,8 @@ public class OllirExprGeneratorVisitor extends AJmmVisitor<Void, OllirExprResult
         String intArrayOllirType = OptUtils.toOllirType(TypeUtils.getIntArrayType());
 
         String size = args.size() - i + intOllirType;
-        String temp = OptUtils.getTemp() + intArrayOllirType;
-        String varArgsArray = OptUtils.getVarArgsArray() + intArrayOllirType;
+        String temp = context.getTemp() + intArrayOllirType;
+        String varArgsArray = context.getVarArgsArray() + intArrayOllirType;
 
         computation.append(temp + SPACE + ASSIGN + intArrayOllirType
                 + " new(array, " + size + ")" + intArrayOllirType + END_STMT);
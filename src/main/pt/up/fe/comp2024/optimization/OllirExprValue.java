@@ -0,0 +1,70 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.CallInstruction;
+import org.specs.comp.ollir.Element;
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.SingleOpInstruction;
+
+import java.util.function.Function;
+
+/**
+ * IR counterpart of {@link OllirExprResult}: the instructions that compute an expression and the element that
+ * holds its value. Calls whose value is not kept in a temporary (void calls and calls used as statements) have
+ * no element, only the call itself, which is built when it is used since a call on its own is marked as isolated.
+ */
+public class OllirExprValue {
+
+    private final Element element;
+    private final Function<Boolean, CallInstruction> call;
+    private final OllirCode computation;
+
+    private OllirExprValue(Element element, Function<Boolean, CallInstruction> call, OllirCode computation) {
+        this.element = element;
+        this.call = call;
+        this.computation = computation;
+    }
+
+    public OllirExprValue(Element element, OllirCode computation) {
+        this(element, null, computation);
+    }
+
+    public OllirExprValue(Element element) {
+        this(element, null, new OllirCode());
+    }
+
+    /**
+     * @param call builds the call, given whether it is a statement on its own
+     */
+    public static OllirExprValue ofCall(Function<Boolean, CallInstruction> call, OllirCode computation) {
+        return new OllirExprValue(null, call, computation);
+    }
+
+    public static OllirExprValue empty() {
+        return new OllirExprValue(null, null, new OllirCode());
+    }
+
+    public OllirCode getComputation() {
+        return computation;
+    }
+
+    public Element getElement() {
+        if (element == null) {
+            throw new RuntimeException("Expected an expression with a value, found " + (call != null ? call.apply(false) : "nothing"));
+        }
+        return element;
+    }
+
+    /**
+     * @return the instruction that gives the value, to be used as the right side of an assignment
+     */
+    public Instruction getInstruction() {
+        return call != null ? call.apply(false) : new SingleOpInstruction(getElement());
+    }
+
+    /**
+     * @return the call as a statement of its own, if the expression is a call whose value is not kept, or null
+     */
+    public CallInstruction getStatement() {
+        return call != null ? call.apply(true) : null;
+    }
+}
@@ -33,12 +33,18 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private final String END_LABEL = ":\n";
 
     private final SymbolTable table;
+    private final CompilationContext context;
 
     private final OllirExprGeneratorVisitor exprVisitor;
 
     public OllirGeneratorVisitor(SymbolTable table) {
+        this(table, new CompilationContext());
+    }
+
+    public OllirGeneratorVisitor(SymbolTable table, CompilationContext context) {
         this.table = table;
-        exprVisitor = new OllirExprGeneratorVisitor(table);
+        this.context = context;
+        exprVisitor = new OllirExprGeneratorVisitor(table, context);
     }
 
     @Override
@@ -226,16 +232,14 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private String visitIfStmt(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
 
-        OllirExprResult condition = exprVisitor.visit(node.getJmmChild(0));
-        code.append(condition.getComputation());
+        String ifThen = context.getIfThen();
+        String ifEnd = context.getIfEnd();
+
+        code.append(exprVisitor.visitCondition(node.getJmmChild(0), true, ifThen));
 
         String thenBody = visit(node.getJmmChild(1));
         String elseBody = visit(node.getJmmChild(2));
 
-        String ifThen = OptUtils.getIfThen();
-        String ifEnd = OptUtils.getIfEnd();
-
-        code.append(IF + " (" + condition.getCode() + ") " + GOTO + SPACE + ifThen + END_STMT);
         code.append(elseBody);
         code.append(GOTO + SPACE + ifEnd + END_STMT);
 
@@ -254,12 +258,12 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
     private String visitWhileStmt(JmmNode node, Void unused) {
         StringBuilder code = new StringBuilder();
 
-        OllirExprResult condition = exprVisitor.visit(node.getJmmChild(0));
+        String whileCond = context.getWhileCond();
+        String whileBody = context.getWhileBody();
 
-        String body = visit(node.getJmmChild(1));
+        String condition = exprVisitor.visitCondition(node.getJmmChild(0), true, whileBody);
 
-        String whileCond = OptUtils.getWhileCond();
-        String whileBody = OptUtils.getWhileBody();
+        String body = visit(node.getJmmChild(1));
 
         code.append(GOTO + SPACE + whileCond + END_STMT);
 
@@ -267,8 +271,7 @@ public class OllirGeneratorVisitor extends AJmmVisitor<Void, String> {
         code.append(body);
 
         code.append(whileCond + END_LABEL);
-        code.append(condition.getComputation());
-        code.append(IF + " (" + condition.getCode() + ") " + GOTO + SPACE + whileBody + END_STMT);
+        code.append(condition);
 
         return code.toString();
     }
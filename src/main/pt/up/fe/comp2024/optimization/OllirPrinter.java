@@ -0,0 +1,203 @@
+package pt.up.fe.comp2024.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Writes a ClassUnit as OLLIR code, in the layout of {@link OllirGeneratorVisitor}.
+ * <p>
+ * Only needed when the code is shown, since the compiler itself works on the ClassUnit. The result parses back
+ * into the same class, except for shifts, which the optimizations may introduce but OLLIR has no syntax for.
+ */
+public class OllirPrinter {
+
+    private static final String END_STMT = ";\n";
+    private static final String NL = "\n";
+
+    private final ClassUnit classUnit;
+
+    public OllirPrinter(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+    }
+
+    public String print() {
+        StringBuilder code = new StringBuilder();
+
+        for (String imp : classUnit.getImports()) {
+            code.append("import ").append(imp).append(END_STMT);
+        }
+
+        code.append(NL).append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) code.append(" extends ").append(classUnit.getSuperClass());
+        code.append(" {\n\n");
+
+        for (Field field : classUnit.getFields()) {
+            code.append(".field ");
+            if (field.getFieldAccessModifier() == AccessModifier.PUBLIC) code.append("public ");
+            code.append(field.getFieldName()).append(type(field.getFieldType())).append(END_STMT);
+        }
+        code.append(NL);
+
+        for (Method method : classUnit.getMethods()) {
+            code.append(method(method));
+        }
+
+        code.append("}\n");
+        return code.toString();
+    }
+
+    private String method(Method method) {
+        StringBuilder code = new StringBuilder();
+
+        if (method.isConstructMethod()) {
+            code.append(".construct ");
+        } else {
+            code.append(".method ");
+            if (method.getMethodAccessModifier() == AccessModifier.PUBLIC) code.append("public ");
+            if (method.isStaticMethod()) code.append("static ");
+        }
+
+        String params = method.getParams().stream().map(this::element).collect(Collectors.joining(", "));
+        code.append(method.getMethodName()).append("(").append(params).append(")")
+                .append(type(method.getReturnType())).append(" {\n");
+
+        // a label names the instruction that follows it
+        Map<Instruction, List<String>> labels = new IdentityHashMap<>();
+        for (var label : method.getLabels().entrySet()) {
+            labels.computeIfAbsent(label.getValue(), instruction -> new ArrayList<>()).add(label.getKey());
+        }
+
+        for (Instruction instruction : method.getInstructions()) {
+            for (String label : labels.getOrDefault(instruction, List.of())) {
+                code.append(label).append(":\n");
+            }
+            code.append(instruction(instruction)).append(END_STMT);
+        }
+
+        code.append("}\n\n");
+        return code.toString();
+    }
+
+    private String instruction(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            return element(assign.getDest()) + " :=" + type(assign.getTypeOfAssign()) + " "
+                    + instruction(assign.getRhs());
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            return element(singleOp.getSingleOperand());
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            return element(binaryOp.getLeftOperand()) + " " + operation(binaryOp.getOperation()) + " "
+                    + element(binaryOp.getRightOperand());
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return operation(unaryOp.getOperation()) + " " + element(unaryOp.getOperand());
+        } else if (instruction instanceof CallInstruction call) {
+            return call(call);
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            return "getfield(" + caller(getField.getObject()) + ", " + element(getField.getField()) + ")"
+                    + type(getField.getFieldType());
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            return "putfield(" + caller(putField.getObject()) + ", " + element(putField.getField()) + ", "
+                    + element(putField.getValue()) + ")" + type(putField.getFieldType());
+        } else if (instruction instanceof GotoInstruction gotoInstruction) {
+            return "goto " + gotoInstruction.getLabel();
+        } else if (instruction instanceof CondBranchInstruction branch) {
+            return "if (" + instruction(branch.getCondition()) + ") goto " + branch.getLabel();
+        } else if (instruction instanceof ReturnInstruction ret) {
+            return "ret" + type(ret.getReturnType()) + (ret.hasReturnValue() ? " " + element(ret.getOperand()) : "");
+        }
+        throw new RuntimeException("Cannot print instruction " + instruction.getInstType());
+    }
+
+    private String call(CallInstruction call) {
+        List<String> operands = new ArrayList<>();
+        operands.add(caller(call.getCaller()));
+        // the method name is a string literal, written as it is
+        call.getMethodNameTry().ifPresent(name -> operands.add(((LiteralElement) name).getLiteral()));
+        for (Element argument : call.getArguments()) {
+            operands.add(element(argument));
+        }
+
+        String invocation = call.getInvocationType() == CallType.NEW ? "new" : call.getInvocationType().name();
+        return invocation + "(" + String.join(", ", operands) + ")" + type(call.getReturnType());
+    }
+
+    /**
+     * The object of a call or field access: "this", or a class by its name alone.
+     */
+    private String caller(Element caller) {
+        if (caller instanceof Operand operand && caller.getType() != null) {
+            switch (caller.getType().getTypeOfElement()) {
+                case THIS:
+                    return "this";
+                case CLASS:
+                    return operand.getName();
+                case ARRAYREF:
+                    // the "array" of new(array, size)
+                    if (operand.getName().equals("array")) return "array";
+                    break;
+                case OBJECTREF:
+                    // the class of new(Class)
+                    if (operand.getName().equals(((ClassType) caller.getType()).getName())) return operand.getName();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return element(caller);
+    }
+
+    private String element(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + type(literal.getType());
+        } else if (element instanceof ArrayOperand arrayOperand) {
+            String indexes = arrayOperand.getIndexOperands().stream().map(this::element)
+                    .collect(Collectors.joining(", "));
+            return arrayOperand.getName() + "[" + indexes + "]" + type(arrayOperand.getType());
+        } else if (element instanceof Operand operand) {
+            // names without a type only appear as the class of a static call
+            return operand.getName() + (operand.getType() != null ? type(operand.getType()) : "");
+        }
+        throw new RuntimeException("Cannot print element " + element);
+    }
+
+    private String operation(Operation operation) {
+        String symbol = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case SHR -> ">>";
+            case SHL -> "<<";
+            case SHRR -> ">>>";
+            case XOR -> "^";
+            case AND -> "&";
+            case OR -> "|";
+            case LTH -> "<";
+            case GTH -> ">";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case LTE -> "<=";
+            case GTE -> ">=";
+            case ANDB -> "&&";
+            case ORB -> "||";
+            case NOTB -> "!";
+            case NOT -> "~";
+        };
+        return symbol + type(operation.getTypeInfo());
+    }
+
+    private static String type(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> ".i32";
+            case BOOLEAN -> ".bool";
+            case STRING -> ".String";
+            case VOID -> ".V";
+            case ARRAYREF -> ".array" + type(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS, THIS -> "." + ((ClassType) type).getName();
+        };
+    }
+}
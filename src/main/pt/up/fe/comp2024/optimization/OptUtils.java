@@ -1,5 +1,8 @@
 package pt.up.fe.comp2024.optimization;
 
+import org.specs.comp.ollir.ArrayType;
+import org.specs.comp.ollir.ClassType;
+import org.specs.comp.ollir.ElementType;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
@@ -7,86 +10,82 @@ import pt.up.fe.specs.util.exceptions.NotImplementedException;
 import static pt.up.fe.comp2024.ast.Kind.TYPE;
 
 public class OptUtils {
-    private static int tempNumber = -1;
-    private static int ifThenNumber = -1;
-    private static int ifEndNumber = -1;
-    private static int whileCondNumber = -1;
-    private static int whileBodyNumber = -1;
-    private static int varArgsNumber = -1;
 
-    public static String getTemp() {
+    public static String toOllirType(JmmNode typeNode) {
 
-        return getTemp("tmp");
-    }
+        TYPE.checkOrThrow(typeNode);
 
-    public static String getTemp(String prefix) {
+        String typeName = typeNode.getKind();
 
-        return prefix + getNextTempNum();
+        return toOllirType(typeName, typeName.contains("Array"));
     }
 
-    public static int getNextTempNum() {
-
-        tempNumber += 1;
-        return tempNumber;
+    public static String toOllirType(Type type) {
+        return toOllirType(type.getName(), type.isArray());
     }
 
-    public static String getIfThen() {
-        ifThenNumber++;
-        return "if_then_" + ifThenNumber;
+    public static String toOllirBoolean(String value) {
+        return switch (value) {
+            case "false" -> "0";
+            case "true" -> "1";
+            default -> throw new NotImplementedException(value);
+        };
     }
 
-    public static String getIfEnd() {
-        ifEndNumber++;
-        return "if_end_" + ifEndNumber;
-    }
+    private static String toOllirType(String typeName, boolean isArray) {
 
-    public static String getWhileCond() {
-        whileCondNumber++;
-        return "while_cond_" + whileCondNumber;
-    }
+        String type = (isArray? ".array." : ".") + toOllirTypeName(typeName);
 
-    public static String getWhileBody() {
-        whileBodyNumber++;
-        return "while_body_" + whileBodyNumber;
+        return type;
     }
 
-    public static String getVarArgsArray() {
-        varArgsNumber++;
-        return "__varargs_array_" + varArgsNumber;
+    private static String toOllirTypeName(String typeName) {
+        return switch (typeName) {
+            case "Int", "int", "IntArray" -> "i32";
+            case "Boolean", "boolean" -> "bool";
+            case "Void", "void" -> "V";
+            default -> typeName;
+        };
     }
 
-    public static String toOllirType(JmmNode typeNode) {
+    /**
+     * IR counterparts of {@link #toOllirType}: the types the OLLIR parser builds for the same type suffix.
+     */
+    public static org.specs.comp.ollir.Type toIrType(JmmNode typeNode) {
 
         TYPE.checkOrThrow(typeNode);
 
         String typeName = typeNode.getKind();
 
-        return toOllirType(typeName, typeName.contains("Array"));
+        return toIrType(typeName, typeName.contains("Array"));
     }
 
-    public static String toOllirType(Type type) {
-        return toOllirType(type.getName(), type.isArray());
+    public static org.specs.comp.ollir.Type toIrType(Type type) {
+        return toIrType(type.getName(), type.isArray());
     }
 
-    public static String toOllirBoolean(String value) {
-        return switch (value) {
-            case "false" -> "0";
-            case "true" -> "1";
-            default -> throw new NotImplementedException(value);
+    public static org.specs.comp.ollir.Type toIrType(String typeName, boolean isArray) {
+        String name = toOllirTypeName(typeName);
+        ElementType elementType = switch (name) {
+            case "i32" -> ElementType.INT32;
+            case "bool" -> ElementType.BOOLEAN;
+            case "V" -> ElementType.VOID;
+            case "String" -> ElementType.STRING;
+            default -> ElementType.OBJECTREF;
         };
-    }
 
-    private static String toOllirType(String typeName, boolean isArray) {
-
-        String type = (isArray? ".array." : ".")
-                + switch (typeName) {
-                    case "Int", "int", "IntArray" -> "i32";
-                    case "Boolean", "boolean" -> "bool";
-                    case "Void", "void" -> "V";
-                    default -> typeName;
-                };
-
-        return type;
+        if (!isArray) {
+            return elementType == ElementType.OBJECTREF ? new ClassType(elementType, name)
+                    : new org.specs.comp.ollir.Type(elementType);
+        }
+
+        ArrayType arrayType = new ArrayType();
+        arrayType.setNumDimensions(1);
+        arrayType.setTypeOfElements(elementType);
+        if (elementType == ElementType.OBJECTREF || elementType == ElementType.STRING) {
+            arrayType.setElementClass(name);
+        }
+        return arrayType;
     }
 
 
@@ -0,0 +1,164 @@
+package pt.up.fe.comp2024.optimization.ast;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.ast.ExprTypes;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Simplifies expressions with a neutral or absorbing operand, like x * 1, x + 0, b && true or x - x.
+ * An operand is only dropped if evaluating it has no effects: literals, variables, "this", !, parentheses and
+ * operators other than '/' (which may throw). Method calls are never dropped, since they may do anything.
+ * Nodes are visited after their operands, and the operations whose operands became literals are folded.
+ */
+public class AlgebraicSimplification {
+    private static final Set<Kind> PURE_KINDS = Set.of(Kind.INT_LITERAL_EXPR, Kind.BOOLEAN_LITERAL_EXPR,
+            Kind.ID_LITERAL_EXPR, Kind.THIS_EXPR, Kind.PAREN_EXPR, Kind.NOT_EXPR, Kind.BINARY_EXPR);
+
+    private final ExprTypes exprTypes;
+    private final ConstantFolding constantFolding;
+    private int simplifications = 0;
+
+    public AlgebraicSimplification(SymbolTable table) {
+        this.exprTypes = ExprTypes.of(table);
+        this.constantFolding = new ConstantFolding(exprTypes);
+    }
+
+    public int getSimplifications() {
+        return simplifications;
+    }
+
+    public void apply(JmmNode root) {
+        // in reverse preorder every node comes after its descendants
+        List<JmmNode> nodes = root.getDescendantsStream()
+                .filter(node -> Kind.BINARY_EXPR.check(node) || Kind.NOT_EXPR.check(node))
+                .toList();
+        for (int i = nodes.size() - 1; i >= 0; i--) {
+            JmmNode node = nodes.get(i);
+            if (node.getParent() == null) continue;
+            if (constantFolding.fold(node) != null) continue;
+            if (Kind.BINARY_EXPR.check(node) ? simplifyBinary(node) : simplifyNot(node)) {
+                simplifications++;
+            }
+        }
+    }
+
+    private boolean simplifyBinary(JmmNode node) {
+        JmmNode left = node.getJmmChild(0);
+        JmmNode right = node.getJmmChild(1);
+        Integer leftInt = intValue(left), rightInt = intValue(right);
+        Boolean leftBool = booleanValue(left), rightBool = booleanValue(right);
+
+        switch (node.get("op")) {
+            case "+" -> {
+                if (isInt(rightInt, 0)) return replaceBy(node, left);
+                if (isInt(leftInt, 0)) return replaceBy(node, right);
+            }
+            case "-" -> {
+                if (isInt(rightInt, 0)) return replaceBy(node, left);
+                if (isPure(left) && sameValue(left, right)) return replaceBy(node, NodeHelper.createNewIntLiteral(0));
+            }
+            case "*" -> {
+                if (isInt(rightInt, 1)) return replaceBy(node, left);
+                if (isInt(leftInt, 1)) return replaceBy(node, right);
+                if (isInt(rightInt, 0) && isPure(left) || isInt(leftInt, 0) && isPure(right)) {
+                    return replaceBy(node, NodeHelper.createNewIntLiteral(0));
+                }
+            }
+            case "/" -> {
+                if (isInt(rightInt, 1)) return replaceBy(node, left);
+            }
+            case "&&" -> {
+                if (Boolean.TRUE.equals(rightBool)) return replaceBy(node, left);
+                if (Boolean.TRUE.equals(leftBool)) return replaceBy(node, right);
+                // the right operand of a false && is never evaluated
+                if (Boolean.FALSE.equals(leftBool) || Boolean.FALSE.equals(rightBool) && isPure(left)) {
+                    return replaceBy(node, NodeHelper.createNewBooleanLiteral(false));
+                }
+                if (isPure(left) && sameValue(left, right)) return replaceBy(node, left);
+            }
+            case "<" -> {
+                if (isPure(left) && sameValue(left, right)) {
+                    return replaceBy(node, NodeHelper.createNewBooleanLiteral(false));
+                }
+            }
+            default -> {
+            }
+        }
+        return false;
+    }
+
+    /**
+     * !!x is x
+     */
+    private boolean simplifyNot(JmmNode node) {
+        JmmNode operand = unparen(node.getJmmChild(0));
+        if (Kind.NOT_EXPR.check(operand)) {
+            return replaceBy(node, operand.getJmmChild(0));
+        }
+        return false;
+    }
+
+    private boolean replaceBy(JmmNode node, JmmNode replacement) {
+        if (replacement.getParent() != null) {
+            replacement.removeParent();
+        }
+        node.replace(replacement);
+        exprTypes.invalidate(replacement);
+        return true;
+    }
+
+    private static boolean isInt(Integer value, int expected) {
+        return value != null && value == expected;
+    }
+
+    private static JmmNode unparen(JmmNode node) {
+        while (Kind.PAREN_EXPR.check(node)) {
+            node = node.getJmmChild(0);
+        }
+        return node;
+    }
+
+    private static Integer intValue(JmmNode node) {
+        node = unparen(node);
+        return Kind.INT_LITERAL_EXPR.check(node) ? Integer.parseInt(node.get("value")) : null;
+    }
+
+    private static Boolean booleanValue(JmmNode node) {
+        node = unparen(node);
+        return Kind.BOOLEAN_LITERAL_EXPR.check(node) ? node.get("value").equals("true") : null;
+    }
+
+    /**
+     * @return whether evaluating the expression cannot throw or have any other effect
+     */
+    private static boolean isPure(JmmNode node) {
+        return isPureNode(node) && node.getDescendantsStream().allMatch(AlgebraicSimplification::isPureNode);
+    }
+
+    private static boolean isPureNode(JmmNode node) {
+        Kind kind = Kind.fromString(node.getKind());
+        return PURE_KINDS.contains(kind) && !(kind == Kind.BINARY_EXPR && node.get("op").equals("/"));
+    }
+
+    /**
+     * @return whether both (pure) expressions are the same, and so have the same value
+     */
+    private static boolean sameValue(JmmNode a, JmmNode b) {
+        a = unparen(a);
+        b = unparen(b);
+        if (!a.getKind().equals(b.getKind())) return false;
+        return switch (Kind.fromString(a.getKind())) {
+            case INT_LITERAL_EXPR, BOOLEAN_LITERAL_EXPR -> a.get("value").equals(b.get("value"));
+            case ID_LITERAL_EXPR -> a.get("id").equals(b.get("id"));
+            case THIS_EXPR -> true;
+            case NOT_EXPR -> sameValue(a.getJmmChild(0), b.getJmmChild(0));
+            case BINARY_EXPR -> a.get("op").equals(b.get("op"))
+                    && sameValue(a.getJmmChild(0), b.getJmmChild(0)) && sameValue(a.getJmmChild(1), b.getJmmChild(1));
+            default -> false;
+        };
+    }
+}
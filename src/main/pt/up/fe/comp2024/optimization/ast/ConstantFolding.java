@@ -2,6 +2,7 @@ package pt.up.fe.comp2024.optimization.ast;
 
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ast.PostorderJmmVisitor;
+import pt.up.fe.comp2024.ast.ExprTypes;
 import pt.up.fe.comp2024.ast.Kind;
 
 import java.util.List;
@@ -12,7 +13,10 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
     protected BiFunction<Boolean, List<Boolean>, Boolean> getReduce() {
         return (a, b) -> a || b.stream().reduce(false, (x, y) -> x || y);
     }
-    public ConstantFolding() {
+    private final ExprTypes exprTypes;
+
+    public ConstantFolding(ExprTypes exprTypes) {
+        this.exprTypes = exprTypes;
         setDefaultValue(() -> false);
     }
     @Override
@@ -21,12 +25,31 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
         addVisit(Kind.PAREN_EXPR, this::visitParenExpr);
         addVisit(Kind.NOT_EXPR, this::visitNotExpr);
     }
+    /**
+     * Folds a single node whose operands may have become literals, without visiting its children.
+     *
+     * @return the literal that replaced the node, or null if it could not be folded
+     */
+    public JmmNode fold(JmmNode node) {
+        JmmNode parent = node.getParent();
+        if (parent == null) return null;
+        int index = node.getIndexOfSelf();
+
+        boolean folded = switch (Kind.fromString(node.getKind())) {
+            case BINARY_EXPR -> visitBinaryExpr(node, null);
+            case PAREN_EXPR -> visitParenExpr(node, null);
+            case NOT_EXPR -> visitNotExpr(node, null);
+            default -> false;
+        };
+        return folded ? parent.getJmmChild(index) : null;
+    }
+
     private Boolean visitParenExpr(JmmNode parenExpr, Void unused) {
         JmmNode expr = parenExpr.getJmmChild(0);
         var exprKind = Kind.fromString(expr.getKind());
         if (exprKind == Kind.INT_LITERAL_EXPR || exprKind == Kind.BOOLEAN_LITERAL_EXPR) {
             expr.removeParent();
-            parenExpr.replace(expr);
+            replace(parenExpr, expr);
             return true;
         }
         return false;
@@ -46,9 +69,14 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
             int leftValue = Integer.parseInt(left.get("value"));
             int rightValue = Integer.parseInt(right.get("value"));
 
+            // the division by zero has to happen at run time
+            if (operator.equals("/") && rightValue == 0) {
+                return false;
+            }
+
             if (operator.equals("<")) {
                 JmmNode newBooleanLiteral = NodeHelper.createNewBooleanLiteral(leftValue < rightValue);
-                binaryExpr.replace(newBooleanLiteral);
+                replace(binaryExpr, newBooleanLiteral);
                 return true;
             }
 
@@ -63,7 +91,7 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
             binaryExpr.removeChild(right);
 
             JmmNode newIntLiteral = NodeHelper.createNewIntLiteral(result);
-            binaryExpr.replace(newIntLiteral);
+            replace(binaryExpr, newIntLiteral);
 
             return true;
         } else if (leftKind == Kind.BOOLEAN_LITERAL_EXPR && rightKind == Kind.BOOLEAN_LITERAL_EXPR) {
@@ -75,7 +103,7 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
                 throw new IllegalStateException("Unexpected value: " + operator);
             }
             JmmNode newBooleanLiteral = NodeHelper.createNewBooleanLiteral(result);
-            binaryExpr.replace(newBooleanLiteral);
+            replace(binaryExpr, newBooleanLiteral);
             return true;
         }
         return false;
@@ -87,10 +115,15 @@ public class ConstantFolding extends PostorderJmmVisitor<Void, Boolean> {
         if (exprKind == Kind.BOOLEAN_LITERAL_EXPR) {
             boolean value = expr.get("value").equals("true");
             JmmNode newBooleanLiteral = NodeHelper.createNewBooleanLiteral(!value);
-            notExpr.replace(newBooleanLiteral);
+            replace(notExpr, newBooleanLiteral);
 
             return true;
         }
         return false;
     }
+
+    private void replace(JmmNode node, JmmNode replacement) {
+        node.replace(replacement);
+        exprTypes.invalidate(replacement);
+    }
 }
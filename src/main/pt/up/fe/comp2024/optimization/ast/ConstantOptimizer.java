@@ -0,0 +1,232 @@
+package pt.up.fe.comp2024.optimization.ast;
+
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.ExprTypes;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.*;
+
+/**
+ * Constant propagation and folding over the AST, driven by a worklist.
+ * <p>
+ * A single walk over each method finds, for every use of a local variable or parameter, the assignments that
+ * can reach it. Afterwards only the nodes affected by a replacement are revisited: the parent of a node that
+ * was folded into a literal, and the uses of a variable whose assignment became a literal.
+ * Fields are never propagated, since any method call can change them.
+ */
+public class ConstantOptimizer {
+    // stands for the value a variable has when the method starts (a parameter or a local not assigned yet)
+    private static final JmmNode ENTRY = new JmmNodeImpl("Entry");
+
+    private final SymbolTable table;
+    private final ExprTypes exprTypes;
+    private final ConstantFolding constantFolding;
+
+    private Set<String> variables;
+    private final Map<JmmNode, Set<JmmNode>> reachingDefinitions = new IdentityHashMap<>();    // use -> assignments
+    private final Map<JmmNode, List<JmmNode>> uses = new IdentityHashMap<>();     // assignment -> uses
+    private final Map<JmmNode, Map<String, Set<JmmNode>>> loopDefinitions = new IdentityHashMap<>();
+    private final ArrayDeque<JmmNode> worklist = new ArrayDeque<>();
+    private final Set<JmmNode> replaced = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private int nodesWalked = 0;
+    private int nodesRevisited = 0;
+    private int replacements = 0;
+
+    public ConstantOptimizer(SymbolTable table) {
+        this.table = table;
+        this.exprTypes = ExprTypes.of(table);
+        this.constantFolding = new ConstantFolding(exprTypes);
+    }
+
+    /**
+     * @return the number of nodes of the initial walk over the methods
+     */
+    public int getNodesWalked() {
+        return nodesWalked;
+    }
+
+    /**
+     * @return the number of nodes taken from the worklist
+     */
+    public int getNodesRevisited() {
+        return nodesRevisited;
+    }
+
+    public int getReplacements() {
+        return replacements;
+    }
+
+    /**
+     * @return true if the tree was modified
+     */
+    public boolean optimize(JmmNode root) {
+        int previousReplacements = replacements;
+        root.getDescendantsStream()
+                .filter(node -> Kind.check(node, Kind.METHOD_DECL, Kind.MAIN_METHOD))
+                .toList()
+                .forEach(this::optimizeMethod);
+        return replacements != previousReplacements;
+    }
+
+    private void optimizeMethod(JmmNode method) {
+        String methodName = method.get("name");
+        variables = new HashSet<>();
+        Optional.ofNullable(table.getParameters(methodName)).orElse(List.of())
+                .forEach(param -> variables.add(param.getName()));
+        Optional.ofNullable(table.getLocalVariables(methodName)).orElse(List.of())
+                .forEach(local -> variables.add(local.getName()));
+
+        reachingDefinitions.clear();
+        uses.clear();
+        loopDefinitions.clear();
+        replaced.clear();
+
+        collectLoopDefinitions(method);
+
+        Map<String, Set<JmmNode>> definitions = new HashMap<>();
+        for (String variable : variables) {
+            definitions.put(variable, Set.of(ENTRY));
+        }
+        for (JmmNode child : method.getChildren()) {
+            walk(child, definitions);
+        }
+
+        while (!worklist.isEmpty()) {
+            JmmNode node = worklist.poll();
+            nodesRevisited++;
+            if (replaced.contains(node)) continue;
+
+            JmmNode literal = Kind.ID_LITERAL_EXPR.check(node) ? propagate(node) : fold(node);
+            if (literal != null) {
+                replacements++;
+                enqueueAffected(literal);
+            }
+        }
+    }
+
+    /**
+     * Finds the assignments of each loop, which also reach the condition and the start of the body.
+     *
+     * @return the assignments inside the node
+     */
+    private List<JmmNode> collectLoopDefinitions(JmmNode node) {
+        List<JmmNode> assignments = new ArrayList<>();
+        if (Kind.ASSIGN_STMT.check(node) && variables.contains(node.get("id"))) {
+            assignments.add(node);
+        }
+        for (JmmNode child : node.getChildren()) {
+            assignments.addAll(collectLoopDefinitions(child));
+        }
+
+        if (Kind.WHILE_STMT.check(node)) {
+            Map<String, Set<JmmNode>> definitions = new HashMap<>();
+            for (JmmNode assignment : assignments) {
+                definitions.computeIfAbsent(assignment.get("id"), id -> new HashSet<>()).add(assignment);
+            }
+            loopDefinitions.put(node, definitions);
+        }
+        return assignments;
+    }
+
+    /**
+     * Walks the statements in execution order, keeping the assignments that reach each point.
+     * The sets of assignments are never modified, so maps can be copied shallowly at branches.
+     */
+    private void walk(JmmNode node, Map<String, Set<JmmNode>> definitions) {
+        nodesWalked++;
+        if (Kind.IF_STMT.check(node)) {
+            walk(node.getJmmChild(0), definitions);
+            var elseDefinitions = new HashMap<>(definitions);
+            walk(node.getJmmChild(1), definitions);
+            walk(node.getJmmChild(2), elseDefinitions);
+            elseDefinitions.forEach((id, defs) -> definitions.merge(id, defs, ConstantOptimizer::union));
+        } else if (Kind.WHILE_STMT.check(node)) {
+            // the assignments of the loop reach its start through the back edge
+            loopDefinitions.get(node).forEach((id, defs) -> definitions.merge(id, defs, ConstantOptimizer::union));
+            walk(node.getJmmChild(0), definitions);
+            // the loop is left after testing the condition, with the definitions that reach it
+            walk(node.getJmmChild(1), new HashMap<>(definitions));
+        } else if (Kind.ASSIGN_STMT.check(node)) {
+            walk(node.getJmmChild(0), definitions);
+            if (variables.contains(node.get("id"))) {
+                definitions.put(node.get("id"), Set.of(node));
+            }
+        } else if (Kind.ID_LITERAL_EXPR.check(node)) {
+            String id = node.get("id");
+            if (variables.contains(id)) {
+                Set<JmmNode> defs = definitions.get(id);
+                reachingDefinitions.put(node, defs);
+                for (JmmNode def : defs) {
+                    uses.computeIfAbsent(def, d -> new ArrayList<>()).add(node);
+                }
+                worklist.add(node);
+            }
+        } else if (!Kind.check(node, Kind.PARAM, Kind.VAR_DECL)) {
+            for (JmmNode child : node.getChildren()) {
+                walk(child, definitions);
+            }
+            if (Kind.check(node, Kind.BINARY_EXPR, Kind.PAREN_EXPR, Kind.NOT_EXPR)) {
+                worklist.add(node);
+            }
+        }
+    }
+
+    private static Set<JmmNode> union(Set<JmmNode> a, Set<JmmNode> b) {
+        if (a == b || a.containsAll(b)) return a;
+        if (b.containsAll(a)) return b;
+        Set<JmmNode> result = new HashSet<>(a);
+        result.addAll(b);
+        return result;
+    }
+
+    /**
+     * Replaces a use by a literal if every assignment that reaches it stores the same literal.
+     */
+    private JmmNode propagate(JmmNode use) {
+        JmmNode value = null;
+        for (JmmNode def : reachingDefinitions.get(use)) {
+            if (def == ENTRY) return null;
+            JmmNode assigned = def.getJmmChild(0);
+            if (!Kind.check(assigned, Kind.INT_LITERAL_EXPR, Kind.BOOLEAN_LITERAL_EXPR)) return null;
+            if (value != null && (!value.getKind().equals(assigned.getKind())
+                    || !value.get("value").equals(assigned.get("value")))) {
+                return null;
+            }
+            value = assigned;
+        }
+        if (value == null) return null;
+
+        JmmNode literal = Kind.INT_LITERAL_EXPR.check(value)
+                ? NodeHelper.createNewIntLiteral(Integer.parseInt(value.get("value")))
+                : NodeHelper.createNewBooleanLiteral(value.get("value").equals("true"));
+        use.replace(literal);
+        exprTypes.invalidate(literal);
+        replaced.add(use);
+        return literal;
+    }
+
+    private JmmNode fold(JmmNode node) {
+        JmmNode literal = constantFolding.fold(node);
+        if (literal != null) {
+            replaced.add(node);
+        }
+        return literal;
+    }
+
+    /**
+     * A new literal can make its parent foldable, and an assignment of a literal can make its uses constant.
+     */
+    private void enqueueAffected(JmmNode literal) {
+        JmmNode parent = literal.getParent();
+        if (parent == null) return;
+
+        if (Kind.ASSIGN_STMT.check(parent)) {
+            worklist.addAll(uses.getOrDefault(parent, List.of()));
+        } else if (Kind.check(parent, Kind.BINARY_EXPR, Kind.PAREN_EXPR, Kind.NOT_EXPR)) {
+            worklist.add(parent);
+        }
+    }
+}
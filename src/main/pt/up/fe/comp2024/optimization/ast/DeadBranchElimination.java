@@ -0,0 +1,58 @@
+package pt.up.fe.comp2024.optimization.ast;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2024.ast.Kind;
+
+import java.util.List;
+
+/**
+ * Removes the statements that can never run once the conditions are folded:
+ * an if with a literal condition is replaced by the arm that is taken, and a while(false) disappears.
+ */
+public class DeadBranchElimination {
+    private int statementsRemoved = 0;
+
+    public int getStatementsRemoved() {
+        return statementsRemoved;
+    }
+
+    /**
+     * @return true if the tree was modified
+     */
+    public boolean apply(JmmNode root) {
+        int previousRemoved = statementsRemoved;
+
+        // inner statements come after their ancestors in preorder, so going backwards simplifies them first
+        List<JmmNode> statements = root.getDescendantsStream()
+                .filter(node -> Kind.check(node, Kind.IF_STMT, Kind.WHILE_STMT))
+                .toList();
+        for (int i = statements.size() - 1; i >= 0; i--) {
+            JmmNode statement = statements.get(i);
+            JmmNode condition = statement.getJmmChild(0);
+            if (!Kind.BOOLEAN_LITERAL_EXPR.check(condition)) continue;
+            boolean value = condition.get("value").equals("true");
+
+            if (Kind.IF_STMT.check(statement)) {
+                JmmNode taken = statement.getJmmChild(value ? 1 : 2);
+                taken.removeParent();
+                statement.replace(taken);
+                statementsRemoved++;
+            } else if (!value) {
+                removeStatement(statement);
+                statementsRemoved++;
+            }
+        }
+        return statementsRemoved != previousRemoved;
+    }
+
+    private static void removeStatement(JmmNode statement) {
+        JmmNode parent = statement.getParent();
+        if (Kind.check(parent, Kind.IF_STMT, Kind.WHILE_STMT)) {
+            // the body of an if or while must still be a statement
+            statement.replace(new JmmNodeImpl(Kind.STMT_GROUP.toString()));
+        } else {
+            statement.detach();
+        }
+    }
+}
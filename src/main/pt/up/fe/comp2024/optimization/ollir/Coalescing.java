@@ -0,0 +1,104 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import java.util.*;
+
+/**
+ * Conservative coalescing of copy-related variables (x := y) in the interference graph.
+ * Two variables are merged only if they do not interfere and the merge cannot make the graph harder to color
+ * with k colors, by either the Briggs test (the merged node has fewer than k neighbors of significant degree)
+ * or the George test (every neighbor of one node already interferes with the other or has insignificant degree).
+ * Merged variables get the same register, so the copies between them can be removed afterwards.
+ */
+public class Coalescing {
+    // weight of a copy inside a loop, per level of nesting
+    private static final double LOOP_WEIGHT = 10;
+
+    private final int k;
+
+    public Coalescing(int k) {
+        this.k = k;
+    }
+
+    /**
+     * Merges the copy-related nodes of the graph, most frequently executed copies first.
+     *
+     * @return for each node, the node it was merged into (itself if it was not merged)
+     */
+    public int[] coalesce(Graph graph, LivenessAnalysisResult livenessAnalysisResult) {
+        ControlFlowGraph cfg = livenessAnalysisResult.getControlFlowGraph();
+
+        List<int[]> copies = new ArrayList<>();     // {dest, source, instrNr}
+        for (int i = 0; i < livenessAnalysisResult.getLiveOutSize(); i++) {
+            int source = livenessAnalysisResult.getCopySource(i);
+            if (source >= 0) {
+                int dest = livenessAnalysisResult.getDefinedBits(i).nextSetBit(0);
+                copies.add(new int[]{dest, source, i});
+            }
+        }
+        copies.sort(Comparator.comparingDouble(
+                copy -> -Math.pow(LOOP_WEIGHT, cfg.getLoopDepth(cfg.getBlockOf(copy[2])))));
+
+        int[] alias = new int[graph.getNumNodes()];
+        for (int node = 0; node < alias.length; node++) {
+            alias[node] = node;
+        }
+
+        for (int[] copy : copies) {
+            int dest = find(alias, copy[0]);
+            int source = find(alias, copy[1]);
+            if (dest == source || graph.hasEdge(dest, source)) continue;
+
+            if (briggs(graph, dest, source) || george(graph, source, dest)) {
+                graph.merge(dest, source);
+                alias[source] = dest;
+            } else if (george(graph, dest, source)) {
+                graph.merge(source, dest);
+                alias[dest] = source;
+            }
+        }
+
+        for (int node = 0; node < alias.length; node++) {
+            alias[node] = find(alias, node);
+        }
+        return alias;
+    }
+
+    private static int find(int[] alias, int node) {
+        while (alias[node] != node) {
+            alias[node] = alias[alias[node]];
+            node = alias[node];
+        }
+        return node;
+    }
+
+    /**
+     * Briggs: the merged node would have fewer than k neighbors of degree >= k.
+     */
+    private boolean briggs(Graph graph, int a, int b) {
+        int significant = 0;
+        for (int neighbor : graph.getAdjacentNodes(a)) {
+            if (graph.isRemoved(neighbor)) continue;
+            // a neighbor of both nodes loses one edge with the merge
+            int degree = graph.hasEdge(neighbor, b) ? graph.getDegree(neighbor) - 1 : graph.getDegree(neighbor);
+            if (degree >= k) significant++;
+        }
+        for (int neighbor : graph.getAdjacentNodes(b)) {
+            if (graph.isRemoved(neighbor) || graph.hasEdge(neighbor, a)) continue;
+            if (graph.getDegree(neighbor) >= k) significant++;
+        }
+        return significant < k;
+    }
+
+    /**
+     * George: every neighbor of the node being merged (drop) already interferes with keep or has degree < k.
+     */
+    private boolean george(Graph graph, int drop, int keep) {
+        for (int neighbor : graph.getAdjacentNodes(drop)) {
+            if (graph.isRemoved(neighbor)) continue;
+            if (graph.getDegree(neighbor) >= k && !graph.hasEdge(neighbor, keep)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
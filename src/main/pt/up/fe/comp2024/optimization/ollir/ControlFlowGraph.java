@@ -0,0 +1,269 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Basic-block control-flow graph of an OLLIR method, built directly from its instruction list.
+ * Unlike Method.buildCFG(), branch targets are resolved through a label -> index map and
+ * successors follow the real semantics of each terminator (goto has no fallthrough, ret has no successors).
+ */
+public class ControlFlowGraph {
+    private final List<Instruction> instructions;
+    private final Map<Instruction, Integer> instructionIndex;
+    private final Map<String, Integer> labelIndex;
+
+    private final int[] blockStart;     // first instruction of each block
+    private final int[] blockOf;        // block of each instruction
+    private final int[][] successors;
+    private final int[][] predecessors;
+    private final int[] reversePostorder;
+    private int[] loopDepth;
+
+    public ControlFlowGraph(Method method) {
+        this.instructions = method.getInstructions();
+        int nrInstructions = instructions.size();
+
+        this.instructionIndex = new IdentityHashMap<>();
+        for (int i = 0; i < nrInstructions; i++) {
+            instructionIndex.put(instructions.get(i), i);
+        }
+        this.labelIndex = new HashMap<>();
+        for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+            Integer index = instructionIndex.get(label.getValue());
+            if (index != null) {
+                labelIndex.put(label.getKey(), index);
+            }
+        }
+
+        // leaders: first instruction, branch targets and instructions following a terminator
+        boolean[] leader = new boolean[nrInstructions + 1];
+        if (nrInstructions > 0) leader[0] = true;
+        for (int index : labelIndex.values()) {
+            leader[index] = true;
+        }
+        for (int i = 0; i < nrInstructions; i++) {
+            if (isTerminator(instructions.get(i))) {
+                leader[i + 1] = true;
+            }
+        }
+
+        int nrBlocks = 0;
+        for (int i = 0; i < nrInstructions; i++) {
+            if (leader[i]) nrBlocks++;
+        }
+        this.blockStart = new int[nrBlocks + 1];
+        this.blockOf = new int[nrInstructions];
+        int block = -1;
+        for (int i = 0; i < nrInstructions; i++) {
+            if (leader[i]) blockStart[++block] = i;
+            blockOf[i] = block;
+        }
+        blockStart[nrBlocks] = nrInstructions;
+
+        this.successors = new int[nrBlocks][];
+        List<List<Integer>> preds = new ArrayList<>();
+        for (int b = 0; b < nrBlocks; b++) {
+            preds.add(new ArrayList<>());
+        }
+        for (int b = 0; b < nrBlocks; b++) {
+            successors[b] = computeSuccessors(b);
+            for (int s : successors[b]) {
+                preds.get(s).add(b);
+            }
+        }
+        this.predecessors = new int[nrBlocks][];
+        for (int b = 0; b < nrBlocks; b++) {
+            predecessors[b] = preds.get(b).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.reversePostorder = computeReversePostorder();
+    }
+
+    private static boolean isTerminator(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case GOTO, BRANCH, RETURN -> true;
+            default -> false;
+        };
+    }
+
+    private int[] computeSuccessors(int block) {
+        int last = getBlockEnd(block) - 1;
+        Instruction instruction = instructions.get(last);
+        int fallthrough = last + 1 < instructions.size() ? blockOf[last + 1] : -1;
+
+        return switch (instruction.getInstType()) {
+            case RETURN -> new int[0];
+            case GOTO -> new int[]{getLabelBlock(((GotoInstruction) instruction).getLabel())};
+            case BRANCH -> {
+                int target = getLabelBlock(((CondBranchInstruction) instruction).getLabel());
+                if (fallthrough < 0 || fallthrough == target) yield new int[]{target};
+                yield new int[]{target, fallthrough};
+            }
+            default -> fallthrough < 0 ? new int[0] : new int[]{fallthrough};
+        };
+    }
+
+    /**
+     * Depth-first reverse postorder from the entry block. Blocks that are unreachable from the entry
+     * are appended at the end, so every block appears exactly once.
+     */
+    private int[] computeReversePostorder() {
+        int nrBlocks = getNumBlocks();
+        int[] rpo = new int[nrBlocks];
+        int count = 0;
+        boolean[] visited = new boolean[nrBlocks];
+
+        // iterative DFS: stack of blocks and the index of the next successor to explore
+        int[] postorder = new int[nrBlocks];
+        int[] stack = new int[nrBlocks];
+        int[] next = new int[nrBlocks];
+        for (int root = 0; root < nrBlocks; root++) {
+            if (visited[root]) continue;
+            int nrVisited = 0;
+            int top = 0;
+            stack[0] = root;
+            next[0] = 0;
+            visited[root] = true;
+            while (top >= 0) {
+                int b = stack[top];
+                if (next[top] < successors[b].length) {
+                    int s = successors[b][next[top]++];
+                    if (!visited[s]) {
+                        visited[s] = true;
+                        stack[++top] = s;
+                        next[top] = 0;
+                    }
+                } else {
+                    postorder[nrVisited++] = b;
+                    top--;
+                }
+            }
+            for (int i = nrVisited - 1; i >= 0; i--) {
+                rpo[count++] = postorder[i];
+            }
+        }
+        return rpo;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    /**
+     * @return the index of the instruction in the method, or -1 if it does not belong to it
+     */
+    public int getInstructionIndex(Instruction instruction) {
+        return instructionIndex.getOrDefault(instruction, -1);
+    }
+
+    /**
+     * @return the index of the instruction with the given label, or -1 if the label does not exist
+     */
+    public int getLabelIndex(String label) {
+        return labelIndex.getOrDefault(label, -1);
+    }
+
+    public int getLabelBlock(String label) {
+        int index = getLabelIndex(label);
+        if (index < 0) {
+            throw new IllegalStateException("Unknown label '" + label + "'");
+        }
+        return blockOf[index];
+    }
+
+    public int getNumBlocks() {
+        return blockStart.length - 1;
+    }
+
+    public int getBlockStart(int block) {
+        return blockStart[block];
+    }
+
+    /**
+     * @return the index after the last instruction of the block (exclusive)
+     */
+    public int getBlockEnd(int block) {
+        return blockStart[block + 1];
+    }
+
+    public int getBlockOf(int instrNr) {
+        return blockOf[instrNr];
+    }
+
+    public int[] getSuccessors(int block) {
+        return successors[block];
+    }
+
+    public int[] getPredecessors(int block) {
+        return predecessors[block];
+    }
+
+    public int[] getReversePostorder() {
+        return reversePostorder;
+    }
+
+    /**
+     * @return the number of loops that contain the block (0 outside of any loop)
+     */
+    public int getLoopDepth(int block) {
+        if (loopDepth == null) {
+            loopDepth = computeLoopDepths();
+        }
+        return loopDepth[block];
+    }
+
+    /**
+     * Every edge that goes back in reverse postorder is taken as a loop back edge (the OLLIR we generate is
+     * structured, so its CFGs are reducible). The body of its natural loop is found by walking predecessors
+     * from the source of the edge until the header.
+     */
+    private int[] computeLoopDepths() {
+        int nrBlocks = getNumBlocks();
+        int[] rpoIndex = new int[nrBlocks];
+        for (int i = 0; i < nrBlocks; i++) {
+            rpoIndex[reversePostorder[i]] = i;
+        }
+
+        int[] depth = new int[nrBlocks];
+        boolean[] inLoop = new boolean[nrBlocks];
+        int[] stack = new int[nrBlocks];
+        for (int b = 0; b < nrBlocks; b++) {
+            for (int header : successors[b]) {
+                if (rpoIndex[header] > rpoIndex[b]) continue;
+
+                Arrays.fill(inLoop, false);
+                inLoop[header] = true;
+                int top = 0;
+                if (!inLoop[b]) {
+                    inLoop[b] = true;
+                    stack[top++] = b;
+                }
+                while (top > 0) {
+                    int block = stack[--top];
+                    for (int p : predecessors[block]) {
+                        if (!inLoop[p]) {
+                            inLoop[p] = true;
+                            stack[top++] = p;
+                        }
+                    }
+                }
+                for (int block = 0; block < nrBlocks; block++) {
+                    if (inLoop[block]) depth[block]++;
+                }
+            }
+        }
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < getNumBlocks(); b++) {
+            sb.append("B").append(b).append(" [").append(getBlockStart(b)).append(", ").append(getBlockEnd(b))
+                    .append(") -> ").append(Arrays.toString(successors[b])).append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,246 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import org.specs.comp.ollir.tree.TreeNode;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Removes the temporaries the OLLIR generator creates for every subexpression, when they are written and read
+ * exactly once:
+ * <ul>
+ *     <li>a temporary copied into a variable right after being computed is replaced by that variable
+ *     ({@code t := a + b; x := t} becomes {@code x := a + b});</li>
+ *     <li>a temporary that only holds a copy of a variable or literal is replaced by it where it is read,
+ *     if the copied variable does not change in between ({@code t := x; y := t * 2} becomes {@code y := x * 2});</li>
+ *     <li>assignments to locals that are never read are removed, if their value cannot throw.</li>
+ * </ul>
+ * The three are repeated until none applies.
+ */
+public class CopyPropagation {
+    private final OllirResult ollirResult;
+
+    private Method method;
+    private final Map<String, Integer> reads = new HashMap<>();
+    private final Map<String, Integer> definitions = new HashMap<>();
+    private final Map<String, int[]> instructionCounts = new LinkedHashMap<>();    // method -> {before, after}
+
+    public CopyPropagation(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    /**
+     * @return for each method, the number of instructions before and after the pass
+     */
+    public Map<String, int[]> getInstructionCounts() {
+        return instructionCounts;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            this.method = method;
+            int before = method.getInstructions().size();
+            boolean changed = true;
+            while (changed) {
+                countAccesses();
+                changed = forwardIntoCopies() | forwardCopies() | removeDeadAssignments();
+            }
+            instructionCounts.put(method.getMethodName(), new int[]{before, method.getInstructions().size()});
+        }
+        return ollirResult;
+    }
+
+    /**
+     * {@code t := expr; x := t} becomes {@code x := expr}.
+     */
+    private boolean forwardIntoCopies() {
+        List<Instruction> instructions = method.getInstructions();
+        boolean changed = false;
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof AssignInstruction definition)) continue;
+            String temp = singleUseLocal(definition);
+            if (temp == null) continue;
+
+            Instruction next = instructions.get(i + 1);
+            if (!(next instanceof AssignInstruction copy) || method.getLabels().containsValue(copy)
+                    || !(copy.getRhs() instanceof SingleOpInstruction singleOp)
+                    || singleOp.getSingleOperand() instanceof ArrayOperand
+                    || !(singleOp.getSingleOperand() instanceof Operand source) || !source.getName().equals(temp)
+                    || copy.getTypeOfAssign().getTypeOfElement() != definition.getTypeOfAssign().getTypeOfElement()) {
+                continue;
+            }
+
+            instructions.set(i + 1, new AssignInstruction(copy.getDest(), copy.getTypeOfAssign(), definition.getRhs()));
+            OllirMethodUtils.removeInstruction(method, i);
+            forget(temp);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * {@code t := x; ... y := t op z} becomes {@code y := x op z}, if the read is in the same basic block and x is
+     * not written in between.
+     */
+    private boolean forwardCopies() {
+        List<Instruction> instructions = method.getInstructions();
+        boolean changed = false;
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof AssignInstruction definition)
+                    || !(definition.getRhs() instanceof SingleOpInstruction singleOp)
+                    || singleOp.getSingleOperand() instanceof ArrayOperand) {
+                continue;
+            }
+            String temp = singleUseLocal(definition);
+            Element source = singleOp.getSingleOperand();
+            if (temp == null || source.getType().getTypeOfElement() != definition.getTypeOfAssign().getTypeOfElement()) {
+                continue;
+            }
+
+            int use = findUseInBlock(i + 1, temp, source);
+            if (use < 0) continue;
+            boolean[] replaced = {false};
+            OllirMethodUtils.mapOperands(instructions.get(use), element -> {
+                if (element instanceof Operand operand && operand.getName().equals(temp)) {
+                    replaced[0] = true;
+                    return source;
+                }
+                return element;
+            });
+            // reads the mapper cannot reach (the caller of a call or the array of an access) keep the temporary
+            if (!replaced[0]) continue;
+
+            OllirMethodUtils.removeInstruction(method, i);
+            forget(temp);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * @return the index of the instruction that reads the temporary, if it comes later in the same basic block
+     * and the copied variable is not written before it, or -1
+     */
+    private int findUseInBlock(int from, String temp, Element source) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int j = from; j < instructions.size(); j++) {
+            Instruction instruction = instructions.get(j);
+            if (method.getLabels().containsValue(instruction)) return -1;
+            if (countReads(instruction, temp) > 0) return j;
+            if (source instanceof Operand operand && writes(instruction, operand.getName())) return -1;
+            if (instruction instanceof GotoInstruction || instruction instanceof CondBranchInstruction
+                    || instruction instanceof ReturnInstruction) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Removes assignments to locals that are never read, when computing their value has no other effect.
+     */
+    private boolean removeDeadAssignments() {
+        List<Instruction> instructions = method.getInstructions();
+        boolean changed = false;
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)
+                    || assign.getDest() instanceof ArrayOperand || !(assign.getDest() instanceof Operand dest)
+                    || !isLocal(dest.getName()) || reads.getOrDefault(dest.getName(), 0) != 0
+                    || !cannotThrow(assign.getRhs())) {
+                continue;
+            }
+            OllirMethodUtils.removeInstruction(method, i);
+            definitions.merge(dest.getName(), -1, Integer::sum);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private static boolean cannotThrow(Instruction rhs) {
+        if (rhs instanceof SingleOpInstruction singleOp) {
+            return !(singleOp.getSingleOperand() instanceof ArrayOperand);
+        } else if (rhs instanceof BinaryOpInstruction binaryOp) {
+            return binaryOp.getOperation().getOpType() != OperationType.DIV;
+        }
+        // fields are only read from "this", which is never null
+        return rhs instanceof UnaryOpInstruction || rhs instanceof GetFieldInstruction;
+    }
+
+    /**
+     * @return the name of the local the instruction assigns, if it is its only assignment and it is read exactly
+     * once, or null
+     */
+    private String singleUseLocal(AssignInstruction assign) {
+        if (assign.getDest() instanceof ArrayOperand || !(assign.getDest() instanceof Operand dest)) return null;
+        String name = dest.getName();
+        if (!isLocal(name) || definitions.getOrDefault(name, 0) != 1 || reads.getOrDefault(name, 0) != 1) return null;
+        return name;
+    }
+
+    private boolean isLocal(String name) {
+        Descriptor descriptor = method.getVarTable().get(name);
+        return descriptor != null && descriptor.getScope() == VarScope.LOCAL && !name.equals("this");
+    }
+
+    /**
+     * The temporary is neither written nor read anymore, so later rewrites in this round must not consider it.
+     */
+    private void forget(String temp) {
+        definitions.put(temp, 0);
+        reads.put(temp, 0);
+    }
+
+    private void countAccesses() {
+        reads.clear();
+        definitions.clear();
+        for (Instruction instruction : method.getInstructions()) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                    && assign.getDest() instanceof Operand dest) {
+                definitions.merge(dest.getName(), 1, Integer::sum);
+            }
+            countReads(instruction, null);
+        }
+    }
+
+    /**
+     * Counts the reads of a variable in the instruction. If the name is null, the reads of every variable are
+     * added to the read counts instead.
+     */
+    private int countReads(TreeNode node, String name) {
+        if (node instanceof AssignInstruction assign) {
+            int count = countReads(assign.getRhs(), name);
+            if (assign.getDest() instanceof ArrayOperand arrayDest) count += countReads(arrayDest, name);
+            return count;
+        } else if (node instanceof ArrayOperand arrayOperand) {
+            int count = countRead(arrayOperand.getName(), name);
+            for (Element index : arrayOperand.getIndexOperands()) count += countReads(index, name);
+            return count;
+        } else if (node instanceof Operand operand) {
+            return countRead(operand.getName(), name);
+        } else if (node instanceof LiteralElement) {
+            return 0;
+        }
+        int count = 0;
+        for (TreeNode child : node.getChildren()) {
+            count += countReads(child, name);
+        }
+        return count;
+    }
+
+    private int countRead(String variable, String name) {
+        if (name == null) {
+            reads.merge(variable, 1, Integer::sum);
+            return 1;
+        }
+        return variable.equals(name) ? 1 : 0;
+    }
+
+    private static boolean writes(Instruction instruction, String name) {
+        return instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest && dest.getName().equals(name);
+    }
+}
@@ -0,0 +1,157 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Dominator tree and dominance frontiers of a ControlFlowGraph, computed with the iterative algorithm of
+ * Cooper, Harvey and Kennedy ("A Simple, Fast Dominance Algorithm").
+ * Only blocks reachable from the entry have an immediate dominator; the others get -1.
+ */
+public class DominatorTree {
+    private final ControlFlowGraph cfg;
+    private final int[] idom;
+    private final int[] rpoIndex;
+    private final int[][] children;
+    private final int[][] frontiers;
+
+    public DominatorTree(ControlFlowGraph cfg) {
+        this.cfg = cfg;
+        int nrBlocks = cfg.getNumBlocks();
+        int[] rpo = cfg.getReversePostorder();
+
+        // blocks unreachable from the entry come last in the reverse postorder, and are never processed
+        this.rpoIndex = new int[nrBlocks];
+        Arrays.fill(rpoIndex, -1);
+        boolean[] reachable = computeReachable();
+        for (int i = 0; i < nrBlocks; i++) {
+            if (reachable[rpo[i]]) rpoIndex[rpo[i]] = i;
+        }
+
+        this.idom = new int[nrBlocks];
+        Arrays.fill(idom, -1);
+        if (nrBlocks > 0) idom[0] = 0;
+
+        boolean changed = nrBlocks > 0;
+        while (changed) {
+            changed = false;
+            for (int b : rpo) {
+                if (b == 0 || rpoIndex[b] < 0) continue;
+                int newIdom = -1;
+                for (int p : cfg.getPredecessors(b)) {
+                    if (idom[p] < 0) continue;
+                    newIdom = newIdom < 0 ? p : intersect(p, newIdom);
+                }
+                if (newIdom != idom[b]) {
+                    idom[b] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+
+        List<List<Integer>> childLists = new ArrayList<>();
+        for (int b = 0; b < nrBlocks; b++) {
+            childLists.add(new ArrayList<>());
+        }
+        for (int b = 1; b < nrBlocks; b++) {
+            if (idom[b] >= 0) childLists.get(idom[b]).add(b);
+        }
+        this.children = new int[nrBlocks][];
+        for (int b = 0; b < nrBlocks; b++) {
+            children[b] = childLists.get(b).stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        this.frontiers = computeFrontiers();
+    }
+
+    private boolean[] computeReachable() {
+        boolean[] reachable = new boolean[cfg.getNumBlocks()];
+        if (reachable.length == 0) return reachable;
+        int[] stack = new int[reachable.length];
+        int top = 0;
+        stack[top++] = 0;
+        reachable[0] = true;
+        while (top > 0) {
+            int b = stack[--top];
+            for (int s : cfg.getSuccessors(b)) {
+                if (!reachable[s]) {
+                    reachable[s] = true;
+                    stack[top++] = s;
+                }
+            }
+        }
+        return reachable;
+    }
+
+    private int intersect(int b1, int b2) {
+        while (b1 != b2) {
+            while (rpoIndex[b1] > rpoIndex[b2]) b1 = idom[b1];
+            while (rpoIndex[b2] > rpoIndex[b1]) b2 = idom[b2];
+        }
+        return b1;
+    }
+
+    /**
+     * A join point is in the frontier of every block on the path from each of its predecessors
+     * up to (excluding) its immediate dominator.
+     */
+    private int[][] computeFrontiers() {
+        int nrBlocks = cfg.getNumBlocks();
+        List<List<Integer>> frontierLists = new ArrayList<>();
+        for (int b = 0; b < nrBlocks; b++) {
+            frontierLists.add(new ArrayList<>());
+        }
+        for (int b = 0; b < nrBlocks; b++) {
+            if (idom[b] < 0 || cfg.getPredecessors(b).length < 2) continue;
+            for (int p : cfg.getPredecessors(b)) {
+                int runner = p;
+                while (idom[runner] >= 0 && runner != idom[b]) {
+                    List<Integer> frontier = frontierLists.get(runner);
+                    if (frontier.isEmpty() || frontier.get(frontier.size() - 1) != b) {
+                        frontier.add(b);
+                    }
+                    if (runner == idom[runner]) break;  // the entry
+                    runner = idom[runner];
+                }
+            }
+        }
+        int[][] result = new int[nrBlocks][];
+        for (int b = 0; b < nrBlocks; b++) {
+            result[b] = frontierLists.get(b).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return result;
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public boolean isReachable(int block) {
+        return idom[block] >= 0;
+    }
+
+    /**
+     * @return the immediate dominator of the block (the entry is its own), or -1 if it is unreachable
+     */
+    public int getImmediateDominator(int block) {
+        return idom[block];
+    }
+
+    public int[] getChildren(int block) {
+        return children[block];
+    }
+
+    public int[] getDominanceFrontier(int block) {
+        return frontiers[block];
+    }
+
+    public boolean dominates(int dominator, int block) {
+        if (idom[block] < 0) return false;
+        while (block != dominator) {
+            if (block == idom[block]) return false;
+            block = idom[block];
+        }
+        return true;
+    }
+}
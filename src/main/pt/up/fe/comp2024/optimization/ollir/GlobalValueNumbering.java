@@ -0,0 +1,369 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.*;
+
+/**
+ * Dominator-based global value numbering over the SSA form of each method.
+ * <p>
+ * Walking the dominator tree, each assignment to a local gets the value number of its right-hand side:
+ * an operation over the value numbers of its operands. When an expression with the same number was already
+ * computed in a dominating instruction, and the variable it was stored in still holds it, the assignment
+ * becomes a copy of that variable.
+ * <p>
+ * Array loads and getfield also read memory, which is numbered like a pseudo-variable: a version for all arrays
+ * (any two arrays may alias) and one for each field. A store to an array or a field gives its version a new
+ * number, and a call (except for 'new' and arraylength) changes all of them, since it may write anything.
+ * At a join, the memory versions are kept only if no block between the immediate dominator and the join
+ * writes to that memory.
+ */
+public class GlobalValueNumbering {
+    private final OllirResult ollirResult;
+    private final LivenessAnalysis livenessAnalysis;
+
+    private SsaForm ssa;
+    private ControlFlowGraph cfg;
+    private List<Instruction> instructions;
+    private Method method;
+    private Set<String> assignedParameters;
+
+    private int nextNumber = 0;
+    private int[] valueNumbers;     // for each SSA value
+    private final Map<String, Integer> literalNumbers = new HashMap<>();
+    private final Map<String, Available> available = new HashMap<>();
+
+    private BlockWrites[] blockWrites;
+    private final Map<Integer, Instruction> replacements = new HashMap<>();
+
+    private int expressionsReused = 0;
+
+    private record Available(int number, int value, int variable) {
+    }
+
+    /**
+     * A block of the dominator tree walk, with what it made available (undone when leaving it).
+     */
+    private record Frame(int block, int[] current, Memory memory, List<String> added, int[] nextChild) {
+    }
+
+    /**
+     * Memory versions at some point of the method. Every version is a fresh number, so keys never clash.
+     */
+    private static class Memory {
+        int arrays;
+        int calls;      // fields not in the map have the version they had at the last call
+        final Map<String, Integer> fields;
+
+        Memory(int arrays, int calls, Map<String, Integer> fields) {
+            this.arrays = arrays;
+            this.calls = calls;
+            this.fields = fields;
+        }
+
+        Memory copy() {
+            return new Memory(arrays, calls, new HashMap<>(fields));
+        }
+
+        String fieldVersion(String field) {
+            return fields.containsKey(field) ? "f" + fields.get(field) : "c" + calls;
+        }
+    }
+
+    /**
+     * What the instructions of a block may write.
+     */
+    private static class BlockWrites {
+        boolean calls;
+        boolean arrays;
+        final Set<String> fields = new HashSet<>();
+    }
+
+    public GlobalValueNumbering(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.livenessAnalysis = new LivenessAnalysis(ollirResult);
+    }
+
+    public int getExpressionsReused() {
+        return expressionsReused;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            if (method.getInstructions().isEmpty()) continue;
+            this.method = method;
+            number(livenessAnalysis.obtainResult(method));
+            for (var replacement : replacements.entrySet()) {
+                OllirMethodUtils.replaceInstruction(method, replacement.getKey(), replacement.getValue());
+            }
+        }
+        return ollirResult;
+    }
+
+    private void number(LivenessAnalysisResult liveness) {
+        ssa = new SsaForm(liveness);
+        cfg = ssa.getControlFlowGraph();
+        instructions = cfg.getInstructions();
+        valueNumbers = new int[ssa.getNumValues()];
+        for (int value = 0; value < valueNumbers.length; value++) {
+            valueNumbers[value] = nextNumber++;     // phis and entry values are unique
+        }
+        available.clear();
+        replacements.clear();
+        assignedParameters = findAssignedParameters();
+        blockWrites = new BlockWrites[cfg.getNumBlocks()];
+        for (int b = 0; b < cfg.getNumBlocks(); b++) {
+            blockWrites[b] = findWrites(b);
+        }
+
+        DominatorTree dominatorTree = ssa.getDominatorTree();
+        int[] current = new int[liveness.getNumVariables()];
+        for (int var = 0; var < current.length; var++) {
+            current[var] = var;     // entry values come first
+        }
+
+        ArrayDeque<Frame> stack = new ArrayDeque<>();
+        stack.push(enterBlock(0, current, new Memory(nextNumber++, nextNumber++, new HashMap<>())));
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            int[] children = dominatorTree.getChildren(frame.block());
+            if (frame.nextChild()[0] < children.length) {
+                int child = children[frame.nextChild()[0]++];
+                Memory memory = memoryAtJoin(child, dominatorTree, frame.memory());
+                stack.push(enterBlock(child, frame.current(), memory));
+            } else {
+                stack.pop();
+                frame.added().forEach(available::remove);
+            }
+        }
+    }
+
+    private Frame enterBlock(int block, int[] parentCurrent, Memory parentMemory) {
+        int[] current = parentCurrent.clone();
+        Memory memory = parentMemory.copy();
+        List<String> added = new ArrayList<>();
+
+        for (SsaForm.Phi phi : ssa.getPhis(block)) {
+            current[phi.getVariable()] = phi.getValue();
+        }
+        for (int i = cfg.getBlockStart(block); i < cfg.getBlockEnd(block); i++) {
+            visitInstruction(i, current, memory, added);
+        }
+        return new Frame(block, current, memory, added, new int[]{0});
+    }
+
+    private void visitInstruction(int instrNr, int[] current, Memory memory, List<String> added) {
+        Instruction instruction = instructions.get(instrNr);
+        int definedValue = ssa.getDefinedValue(instrNr);
+
+        if (definedValue >= 0) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            int variable = ssa.getVariable(definedValue);
+            String key = getKey(instrNr, assign.getRhs(), memory);
+
+            if (key == null) {
+                valueNumbers[definedValue] = nextNumber++;
+            } else if (assign.getRhs() instanceof SingleOpInstruction singleOp
+                    && !(singleOp.getSingleOperand() instanceof ArrayOperand)) {
+                // copies and literals take the number of what they copy
+                valueNumbers[definedValue] = numberOf(key);
+            } else {
+                Available previous = available.get(key);
+                if (previous != null && current[previous.variable()] == previous.value()) {
+                    valueNumbers[definedValue] = previous.number();
+                    replacements.put(instrNr, copyOf(assign, previous.variable()));
+                    expressionsReused++;
+                } else {
+                    valueNumbers[definedValue] = nextNumber++;
+                    if (!available.containsKey(key)) added.add(key);
+                    available.put(key, new Available(valueNumbers[definedValue], definedValue, variable));
+                }
+            }
+            current[variable] = definedValue;
+        }
+
+        applyWrites(instruction, memory);
+    }
+
+    private AssignInstruction copyOf(AssignInstruction assign, int variable) {
+        String name = ssa.getLiveness().getVariable(variable);
+        Type type = method.getVarTable().get(name).getVarType();
+        return new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(),
+                new SingleOpInstruction(new Operand(name, type)));
+    }
+
+    private int numberOf(String key) {
+        if (key.startsWith("v")) {
+            return Integer.parseInt(key.substring(1));
+        }
+        return literalNumbers.computeIfAbsent(key, k -> nextNumber++);
+    }
+
+    /**
+     * @return a key that is equal for instructions computing the same value, or null if it cannot be numbered
+     */
+    private String getKey(int instrNr, Instruction rhs, Memory memory) {
+        if (rhs instanceof SingleOpInstruction singleOp) {
+            if (singleOp.getSingleOperand() instanceof ArrayOperand arrayOperand) {
+                if (arrayOperand.getIndexOperands().size() != 1) return null;
+                String array = getKey(instrNr, new Operand(arrayOperand.getName(), arrayOperand.getType()));
+                String index = getKey(instrNr, arrayOperand.getIndexOperands().get(0));
+                if (array == null || index == null) return null;
+                return "load(" + array + "," + index + ")@a" + memory.arrays + "c" + memory.calls;
+            }
+            return getKey(instrNr, singleOp.getSingleOperand());
+        }
+        if (rhs instanceof BinaryOpInstruction binaryOp) {
+            String left = getKey(instrNr, binaryOp.getLeftOperand());
+            String right = getKey(instrNr, binaryOp.getRightOperand());
+            if (left == null || right == null) return null;
+            OperationType operation = binaryOp.getOperation().getOpType();
+            if (isCommutative(operation) && left.compareTo(right) > 0) {
+                String swap = left;
+                left = right;
+                right = swap;
+            }
+            return operation + "(" + left + "," + right + ")";
+        }
+        if (rhs instanceof UnaryOpInstruction unaryOp) {
+            String operand = getKey(instrNr, unaryOp.getOperand());
+            return operand == null ? null : unaryOp.getOperation().getOpType() + "(" + operand + ")";
+        }
+        if (rhs instanceof GetFieldInstruction getField) {
+            String object = getKey(instrNr, getField.getObject());
+            String field = getField.getField().getName();
+            return object == null ? null : "getfield(" + object + "," + field + ")@" + memory.fieldVersion(field);
+        }
+        if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            // the length of an array never changes
+            String array = getKey(instrNr, call.getCaller());
+            return array == null ? null : "length(" + array + ")";
+        }
+        return null;
+    }
+
+    private String getKey(int instrNr, Element element) {
+        if (element instanceof LiteralElement literal) {
+            return "#" + literal.getLiteral() + "." + literal.getType().getTypeOfElement();
+        }
+        if (element instanceof ArrayOperand || !(element instanceof Operand operand)) {
+            return null;
+        }
+        String name = operand.getName();
+        int variable = ssa.getLiveness().getVariables().indexOf(name);
+        if (variable >= 0) {
+            Integer value = ssa.getUsedValues(instrNr).get(variable);
+            return value == null ? null : "v" + valueNumbers[value];
+        }
+        // "this" and parameters that are never assigned keep the same value in the whole method
+        Descriptor descriptor = method.getVarTable().get(name);
+        if (name.equals("this") || descriptor != null && descriptor.getScope() == VarScope.PARAMETER
+                && !assignedParameters.contains(name)) {
+            return "p:" + name;
+        }
+        return null;
+    }
+
+    private static boolean isCommutative(OperationType operation) {
+        return switch (operation) {
+            case ADD, MUL, AND, ANDB, OR, ORB, EQ, NEQ -> true;
+            default -> false;
+        };
+    }
+
+    private Set<String> findAssignedParameters() {
+        Set<String> assigned = new HashSet<>();
+        for (Instruction instruction : instructions) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                    && assign.getDest() instanceof Operand dest) {
+                Descriptor descriptor = method.getVarTable().get(dest.getName());
+                if (descriptor != null && descriptor.getScope() == VarScope.PARAMETER) {
+                    assigned.add(dest.getName());
+                }
+            }
+        }
+        return assigned;
+    }
+
+    private static boolean writesMemory(CallInstruction call) {
+        return call.getInvocationType() != CallType.arraylength && call.getInvocationType() != CallType.NEW;
+    }
+
+    private void applyWrites(Instruction instruction, Memory memory) {
+        if (instruction instanceof AssignInstruction assign) {
+            if (assign.getDest() instanceof ArrayOperand) {
+                memory.arrays = nextNumber++;
+            }
+            instruction = assign.getRhs();
+        }
+        if (instruction instanceof CallInstruction call && writesMemory(call)) {
+            memory.calls = nextNumber++;
+            memory.arrays = nextNumber++;
+            memory.fields.clear();
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            memory.fields.put(putField.getField().getName(), nextNumber++);
+        }
+    }
+
+    private BlockWrites findWrites(int block) {
+        BlockWrites writes = new BlockWrites();
+        for (int i = cfg.getBlockStart(block); i < cfg.getBlockEnd(block); i++) {
+            Instruction instruction = instructions.get(i);
+            if (instruction instanceof AssignInstruction assign) {
+                if (assign.getDest() instanceof ArrayOperand) writes.arrays = true;
+                instruction = assign.getRhs();
+            }
+            if (instruction instanceof CallInstruction call && writesMemory(call)) {
+                writes.calls = true;
+            } else if (instruction instanceof PutFieldInstruction putField) {
+                writes.fields.add(putField.getField().getName());
+            }
+        }
+        return writes;
+    }
+
+    /**
+     * The memory at the start of a block is the one at the end of its immediate dominator, except for what is
+     * written by the blocks on the paths between them (including loops back to the block itself).
+     */
+    private Memory memoryAtJoin(int block, DominatorTree dominatorTree, Memory dominatorMemory) {
+        int dominator = dominatorTree.getImmediateDominator(block);
+        int[] predecessors = cfg.getPredecessors(block);
+        if (predecessors.length == 1 && predecessors[0] == dominator) {
+            return dominatorMemory;
+        }
+
+        BlockWrites writes = new BlockWrites();
+        boolean[] visited = new boolean[cfg.getNumBlocks()];
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int p : predecessors) {
+            worklist.add(p);
+        }
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            if (b == dominator || visited[b] || !dominatorTree.isReachable(b)) continue;
+            visited[b] = true;
+            writes.calls |= blockWrites[b].calls;
+            writes.arrays |= blockWrites[b].arrays;
+            writes.fields.addAll(blockWrites[b].fields);
+            for (int p : cfg.getPredecessors(b)) {
+                worklist.add(p);
+            }
+        }
+
+        Memory memory = dominatorMemory.copy();
+        if (writes.calls) {
+            memory.calls = nextNumber++;
+            memory.arrays = nextNumber++;
+            memory.fields.clear();
+        }
+        if (writes.arrays) {
+            memory.arrays = nextNumber++;
+        }
+        for (String field : writes.fields) {
+            memory.fields.put(field, nextNumber++);
+        }
+        return memory;
+    }
+}
@@ -1,56 +1,165 @@
 package pt.up.fe.comp2024.optimization.ollir;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Undirected graph over dense int node ids (0 .. n-1).
+ * Membership is a triangular bit matrix, iteration uses int adjacency arrays.
+ * Nodes can be removed (and restored) without touching the edges, so removal is O(degree).
+ */
 public class Graph {
-    private final Map<String, Set<String>> edges;
-    public Graph() {
-        this.edges = new HashMap<>();
+    private final List<String> names;
+    private final long[] matrix;
+    private final int[][] adjacency;
+    private final int[] adjacencySize;
+
+    private final boolean[] removed;
+    private final boolean[] merged;     // nodes merged into another one, which stay removed
+    private final int[] degree;     // number of adjacent nodes that were not removed
+    private int numActiveNodes;
+
+    public Graph(List<String> names) {
+        int n = names.size();
+        this.names = names;
+        this.matrix = new long[(int) (((long) n * (n - 1) / 2 + 63) / 64)];
+        this.adjacency = new int[n][];
+        this.adjacencySize = new int[n];
+        this.removed = new boolean[n];
+        this.merged = new boolean[n];
+        this.degree = new int[n];
+        this.numActiveNodes = n;
+        for (int i = 0; i < n; i++) {
+            adjacency[i] = new int[4];
+        }
     }
-    public void addNode(String node) {
-        this.edges.put(node, new HashSet<>());
+
+    private static long bitIndex(int node1, int node2) {
+        int low = Math.min(node1, node2), high = Math.max(node1, node2);
+        return (long) high * (high - 1) / 2 + low;
     }
-    public Graph copy() {
-        Graph graphCopy = new Graph();
-        for (String node: this.edges.keySet()) {
-            graphCopy.addNode(node);
+
+    /**
+     * Add a bidirectional edge between two nodes. Self-edges and duplicates are ignored.
+     */
+    public void addBidirectionalEdge(int node1, int node2) {
+        if (node1 == node2 || hasEdge(node1, node2)) return;
+        long bit = bitIndex(node1, node2);
+        matrix[(int) (bit >>> 6)] |= 1L << bit;
+        addAdjacent(node1, node2);
+        addAdjacent(node2, node1);
+    }
+
+    private void addAdjacent(int node, int neighbor) {
+        if (adjacencySize[node] == adjacency[node].length) {
+            adjacency[node] = Arrays.copyOf(adjacency[node], Math.max(4, adjacency[node].length * 2));
         }
-        for (Map.Entry<String, Set<String>> edges: edges.entrySet()) {
-            for (String node: edges.getValue()) {
-                graphCopy.addBidirectionalEdge(edges.getKey(), node);    // Sets allow us to not worry about duplicates
-            }
+        adjacency[node][adjacencySize[node]++] = neighbor;
+        if (!removed[neighbor]) {
+            degree[node]++;
         }
-        return graphCopy;
+    }
+
+    public boolean hasEdge(int node1, int node2) {
+        if (node1 == node2) return false;
+        long bit = bitIndex(node1, node2);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * @return every node adjacent to the given one, including removed nodes. The array must not be modified.
+     */
+    public int[] getAdjacentNodes(int node) {
+        if (adjacency[node].length != adjacencySize[node]) {
+            adjacency[node] = Arrays.copyOf(adjacency[node], adjacencySize[node]);
+        }
+        return adjacency[node];
     }
 
     /**
-     * Add a bidirectional edge between two nodes. Does not check if nodes exist.
+     * @return the number of adjacent nodes that were not removed
      */
-    public void addBidirectionalEdge(String node1, String node2) {
-        this.addNode(node1);
-        this.addNode(node2);
-        this.edges.get(node1).add(node2);
-        this.edges.get(node2).add(node1);
+    public int getDegree(int node) {
+        return degree[node];
+    }
+
+    public int getNumNodes() {
+        return names.size();
+    }
+
+    public int getNumActiveNodes() {
+        return numActiveNodes;
     }
-    public Set<String> getAdjacentNodes(String node) {
-        return this.edges.get(node);
+
+    public String getName(int node) {
+        return names.get(node);
     }
-    public Set<String> getNodes() {
-        return this.edges.keySet();
+
+    public boolean isRemoved(int node) {
+        return removed[node];
     }
-    public void removeNode(String node) {
-        this.edges.remove(node);
-        for (String key: this.edges.keySet()) {
-            this.edges.get(key).remove(node);
+
+    public void removeNode(int node) {
+        if (removed[node]) return;
+        removed[node] = true;
+        numActiveNodes--;
+        for (int i = 0; i < adjacencySize[node]; i++) {
+            int neighbor = adjacency[node][i];
+            if (!removed[neighbor]) {
+                degree[neighbor]--;
+            }
         }
     }
+
+    /**
+     * Merges a node into another one: the kept node gets every edge of the merged node, which is removed for good.
+     */
+    public void merge(int keep, int drop) {
+        removeNode(drop);
+        merged[drop] = true;
+        for (int i = 0; i < adjacencySize[drop]; i++) {
+            int neighbor = adjacency[drop][i];
+            if (!merged[neighbor]) {
+                addBidirectionalEdge(keep, neighbor);
+            }
+        }
+    }
+
+    public boolean isMerged(int node) {
+        return merged[node];
+    }
+
+    /**
+     * Puts every removed node back in the graph, except for merged nodes.
+     */
+    public void restore() {
+        numActiveNodes = 0;
+        for (int node = 0; node < getNumNodes(); node++) {
+            removed[node] = merged[node];
+            if (!removed[node]) numActiveNodes++;
+        }
+        for (int node = 0; node < getNumNodes(); node++) {
+            degree[node] = 0;
+            for (int i = 0; i < adjacencySize[node]; i++) {
+                if (!removed[adjacency[node][i]]) degree[node]++;
+            }
+        }
+    }
+
     public String toString() {
         StringBuilder sb = new StringBuilder();
-        for (String node: this.edges.keySet()) {
-            sb.append(node).append("-> ").append(this.edges.get(node)).append('\n');
+        for (int node = 0; node < getNumNodes(); node++) {
+            if (removed[node]) continue;
+            sb.append(getName(node)).append("-> [");
+            boolean first = true;
+            for (int i = 0; i < adjacencySize[node]; i++) {
+                int neighbor = adjacency[node][i];
+                if (removed[neighbor]) continue;
+                if (!first) sb.append(", ");
+                sb.append(getName(neighbor));
+                first = false;
+            }
+            sb.append("]\n");
         }
         return sb.toString();
     }
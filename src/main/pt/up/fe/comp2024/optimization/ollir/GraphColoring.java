@@ -2,153 +2,247 @@ package pt.up.fe.comp2024.optimization.ollir;
 
 import java.util.*;
 
-public class GraphColoring {
+public class GraphColoring implements RegisterAllocator {
+    // weight of an access inside a loop, per level of nesting
+    private static final double LOOP_WEIGHT = 10;
+
     private Integer registerNumberLimit = null;
     private boolean isSpilled = false;
 
     public GraphColoring() {
         this.registerNumberLimit = null;
     }
-    public void setRegisterNumberLimit(int registerNumberLimit) {
+    /**
+     * @param registerNumberLimit maximum number of colors, or null to use as few colors as possible
+     */
+    @Override
+    public void setRegisterNumberLimit(Integer registerNumberLimit) {
         this.registerNumberLimit = registerNumberLimit;
     }
 
-    private Map<String, List<Integer>> getLiveInstructions(LivenessAnalysisResult livenessAnalysisResult) {
-        Map<String, List<Integer>> liveRanges = new HashMap<>();
-        for (int i = 0; i < livenessAnalysisResult.getLiveOutSize(); i++) {
-            for (String variable : livenessAnalysisResult.getLiveOut(i)) {
-                if (!liveRanges.containsKey(variable)) {    // initialize list if variable not in map
-                    liveRanges.put(variable, new ArrayList<>());
-                }
-                liveRanges.get(variable).add(i);    // add instruction number to variable's list
-            }
-        }
-        return liveRanges;
-    }
-
     private Graph getInterferenceGraph(LivenessAnalysisResult livenessAnalysisResult) {
         // each node corresponds to a variable
         // two nodes are connected if the variables "interfere"
         // Interference (liveness overlaps): variables are alive at the same time: cannot be assigned to the same register
 
-        // variable -> list of instruction numbers
-        Map<String, List<Integer>> variablesLiveInstructions = this.getLiveInstructions(livenessAnalysisResult);
-        Graph g = new Graph();
-        for (String varName: variablesLiveInstructions.keySet()) {
-            g.addNode(varName);
-        }
+        // every variable is a node, even if it is never live (e.g. dead stores still need a register)
+        Graph g = new Graph(livenessAnalysisResult.getVariables());
 
-        for (String first: variablesLiveInstructions.keySet()) {
-            for (String second: variablesLiveInstructions.keySet()) {
-                if (first.equals(second)
-                        || Collections.disjoint(    // no interference
-                                variablesLiveInstructions.get(first), variablesLiveInstructions.get(second))
-                ) continue;
+        // a definition interferes with everything that is live after it,
+        // except for the source of a copy (x := y), since both hold the same value
+        for (int i = 0; i < livenessAnalysisResult.getLiveOutSize(); i++) {
+            BitSet defined = livenessAnalysisResult.getDefinedBits(i);
+            BitSet liveOut = livenessAnalysisResult.getLiveOutBits(i);
+            int copySource = livenessAnalysisResult.getCopySource(i);
+            for (int def = defined.nextSetBit(0); def >= 0; def = defined.nextSetBit(def + 1)) {
+                for (int live = liveOut.nextSetBit(0); live >= 0; live = liveOut.nextSetBit(live + 1)) {
+                    if (live == copySource) continue;
+                    g.addBidirectionalEdge(def, live);
+                }
+            }
+        }
 
-                // add edge between them, since they can be alive at the same time
-                g.addBidirectionalEdge(first, second);
+        // variables live at the entry have no definition in the method, but still overlap with each other
+        if (livenessAnalysisResult.getLiveInSize() > 0) {
+            BitSet entry = livenessAnalysisResult.getLiveInBits(0);
+            for (int a = entry.nextSetBit(0); a >= 0; a = entry.nextSetBit(a + 1)) {
+                for (int b = entry.nextSetBit(a + 1); b >= 0; b = entry.nextSetBit(b + 1)) {
+                    g.addBidirectionalEdge(a, b);
+                }
             }
         }
         return g;
     }
-    private Map<String, Integer> colorGraph(Graph graph) {
-        // heuristic algorithm to color the graph (https://docs.google.com/document/d/1OscYt8qOFkfc3xaxdPf-jOsozejf4JvXF9Z1BsOU2x8/edit?usp=sharing)
-
-        // nodes: variables
-        // edges: variable -> list of variables that interfere with it
-        // registerNumberLimit: maximum number of registers available
-
-        // greedy coloring algorithm
-        // assign colors to nodes (variables) in order of degree (number of neighbors)
-        // if a node has a neighbor with a color, it cannot have that color
-        // if all colors are taken, add a new color
-
-        // select node with less than registerNumberLimit edges
-        // put on stack, remove from graph
-        // repeat until no nodes in the graph
-        // if there is no node with less than registerNumberLimit edges, then the algorithm fails (TODO: do the best coloring possible when -r = ...)
+    /**
+     * Chaitin's spill cost: every use and definition of the variable, weighted by the loop nesting of the instruction.
+     */
+    private double[] getSpillCosts(LivenessAnalysisResult livenessAnalysisResult) {
+        ControlFlowGraph cfg = livenessAnalysisResult.getControlFlowGraph();
+        double[] costs = new double[livenessAnalysisResult.getNumVariables()];
+        for (int i = 0; i < livenessAnalysisResult.getLiveOutSize(); i++) {
+            double weight = Math.pow(LOOP_WEIGHT, cfg.getLoopDepth(cfg.getBlockOf(i)));
+            BitSet used = livenessAnalysisResult.getUsedBits(i);
+            for (int var = used.nextSetBit(0); var >= 0; var = used.nextSetBit(var + 1)) {
+                costs[var] += weight;
+            }
+            BitSet defined = livenessAnalysisResult.getDefinedBits(i);
+            for (int var = defined.nextSetBit(0); var >= 0; var = defined.nextSetBit(var + 1)) {
+                costs[var] += weight;
+            }
+        }
+        return costs;
+    }
 
-        Graph graphCopy = graph.copy();
+    /**
+     * Any set of variables live at the same point is a clique, so it needs at least that many colors.
+     */
+    private static int getColorLowerBound(LivenessAnalysisResult livenessAnalysisResult) {
+        int bound = livenessAnalysisResult.getNumVariables() > 0 ? 1 : 0;
+        for (int i = 0; i < livenessAnalysisResult.getLiveOutSize(); i++) {
+            bound = Math.max(bound, livenessAnalysisResult.getLiveInBits(i).cardinality());
+            bound = Math.max(bound, livenessAnalysisResult.getLiveOutBits(i).cardinality());
+        }
+        return bound;
+    }
 
-        List<String> nodesSpilled = new ArrayList<>();
+    /**
+     * Simplify/select with optimistic (Briggs) spilling.
+     * Simplify repeatedly removes the node of lowest current degree, kept in buckets indexed by degree.
+     * When every remaining node has degree >= k, the node with the lowest cost/degree is pushed anyway as a
+     * spill candidate. Select pops the nodes and gives each the lowest color not used by its neighbors;
+     * only the candidates that find no color below k are actually spilled.
+     *
+     * @return the color of each node, or -1 for the nodes that were spilled
+     */
+    private int[] colorGraph(Graph graph, int k, double[] spillCosts) {
+        int numNodes = graph.getNumNodes();
+        graph.restore();
+
+        // bucket queue: doubly linked list of the active nodes with each degree
+        int maxDegree = 0;
+        for (int n = 0; n < numNodes; n++) {
+            maxDegree = Math.max(maxDegree, graph.getDegree(n));
+        }
+        int[] bucketHead = new int[maxDegree + 1];
+        int[] next = new int[numNodes];
+        int[] prev = new int[numNodes];
+        Arrays.fill(bucketHead, -1);
+        for (int n = 0; n < numNodes; n++) {
+            if (!graph.isMerged(n)) {
+                addToBucket(n, graph.getDegree(n), bucketHead, next, prev);
+            }
+        }
 
-        Stack<String> stack = new Stack<>();
-        while (!graph.getNodes().isEmpty()) {
-            String node = null;
-            for (String n: graph.getNodes()) {
-                if (graph.getAdjacentNodes(n).size() < registerNumberLimit) {   // if registerNumberLimit <= 0, it works as expected
-                    node = n;
-                    break;
-                }
+        int[] stack = new int[numNodes];
+        int top = 0;
+        int lowestBucket = 0;
+        while (graph.getNumActiveNodes() > 0) {
+            while (bucketHead[lowestBucket] < 0) {
+                lowestBucket++;
             }
 
-            if (node == null) { // no node with less than registerNumberLimit edges
-                // select node with the least edges
-                String nodeWithLeastEdges = null;
-                for (String n: graph.getNodes()) {
-                    if (nodeWithLeastEdges == null
-                            || graph.getAdjacentNodes(n).size() < graph.getAdjacentNodes(nodeWithLeastEdges).size()) {
-                        nodeWithLeastEdges = n;
+            int node;
+            if (lowestBucket < k) {
+                node = bucketHead[lowestBucket];
+            } else {
+                // every node is significant: pick the cheapest spill candidate
+                node = -1;
+                for (int degree = lowestBucket; degree <= maxDegree; degree++) {
+                    for (int n = bucketHead[degree]; n >= 0; n = next[n]) {
+                        if (node < 0 || spillCosts[n] * graph.getDegree(node) < spillCosts[node] * degree) {
+                            node = n;
+                        }
                     }
                 }
-
-                nodesSpilled.add(nodeWithLeastEdges);
-                graph.removeNode(nodeWithLeastEdges);
             }
-            else {
-                stack.push(node);
-                graph.removeNode(node);
+
+            removeFromBucket(node, graph.getDegree(node), bucketHead, next, prev);
+            for (int neighbor : graph.getAdjacentNodes(node)) {
+                if (graph.isRemoved(neighbor)) continue;
+                int degree = graph.getDegree(neighbor);
+                removeFromBucket(neighbor, degree, bucketHead, next, prev);
+                addToBucket(neighbor, degree - 1, bucketHead, next, prev);
+                lowestBucket = Math.min(lowestBucket, degree - 1);
             }
+            graph.removeNode(node);
+            stack[top++] = node;
         }
 
-        graph = graphCopy;
-
-        Map<String, Integer> colors = new HashMap<>();
-        while (!stack.isEmpty()) {
-            String node = stack.pop();
-            Set<Integer> adjacentNodeColors = new HashSet<>();  // list of colors of adjacent nodes
-            for (String neighbor: graph.getAdjacentNodes(node)) {
-                adjacentNodeColors.add(colors.get(neighbor));   // returns null for nodes without color
-            }
-            int color = 0;
-            while (color < registerNumberLimit && adjacentNodeColors.contains(color)) { // no nodes in stack if registerNumberLimit <= 0
-                color++;
+        int[] colors = new int[numNodes];
+        Arrays.fill(colors, -1);
+        while (top > 0) {
+            int node = stack[--top];
+            int color = lowestFreeColor(graph, node, colors);
+            if (color < k) {
+                colors[node] = color;
             }
+        }
+        return colors;
+    }
 
-            if (color >= registerNumberLimit) { // no more colors available
-                System.out.println("Suspicious place for the algorithm");
-                return null;
-            }
-            colors.put(node, color);
+    private static void addToBucket(int node, int degree, int[] bucketHead, int[] next, int[] prev) {
+        next[node] = bucketHead[degree];
+        prev[node] = -1;
+        if (bucketHead[degree] >= 0) {
+            prev[bucketHead[degree]] = node;
         }
+        bucketHead[degree] = node;
+    }
 
-        isSpilled = !nodesSpilled.isEmpty();
-        System.out.println("nodes spilled: " + nodesSpilled);
+    private static void removeFromBucket(int node, int degree, int[] bucketHead, int[] next, int[] prev) {
+        if (prev[node] >= 0) {
+            next[prev[node]] = next[node];
+        } else {
+            bucketHead[degree] = next[node];
+        }
+        if (next[node] >= 0) {
+            prev[next[node]] = prev[node];
+        }
+    }
 
-        for (String node: nodesSpilled) {
-            // find a color not used by neighbors or the smallest color not used
-            Set<Integer> adjacentNodeColors = new HashSet<>();  // list of colors of adjacent nodes
-            for (String neighbor : graph.getAdjacentNodes(node)) {
-                adjacentNodeColors.add(colors.get(neighbor));   // returns null for nodes without color
-            }
-            int color = 0;
-            while (adjacentNodeColors.contains(color)) {
-                color++;
-            }
-            colors.put(node, color);
+    private static boolean hasSpills(Graph graph, int[] colors) {
+        for (int node = 0; node < colors.length; node++) {
+            if (colors[node] < 0 && !graph.isMerged(node)) return true;
         }
+        return false;
+    }
 
-        // each color will be register
-        // start from the lowest register number (avoiding registers for "this" and parameters)
-        // reverse the removal of nodes from graph (stack)
-        // for each node, assign the lowest register already not attributed to popped nodes
-        return colors;
+    private static int lowestFreeColor(Graph graph, int node, int[] colors) {
+        BitSet adjacentNodeColors = new BitSet();   // colors of adjacent nodes
+        for (int neighbor: graph.getAdjacentNodes(node)) {
+            if (colors[neighbor] >= 0) {    // -1 for nodes without color
+                adjacentNodeColors.set(colors[neighbor]);
+            }
+        }
+        return adjacentNodeColors.nextClearBit(0);
     }
+    @Override
     public boolean isSpilled() {
         return isSpilled;
     }
+    @Override
     public Map<String, Integer> obtainResult(LivenessAnalysisResult livenessAnalysisResult) {
         Graph graph = this.getInterferenceGraph(livenessAnalysisResult);
-        return this.colorGraph(graph);
+        double[] spillCosts = this.getSpillCosts(livenessAnalysisResult);
+
+        // merge copy-related variables, so that the copies between them can be removed
+        int lowerBound = getColorLowerBound(livenessAnalysisResult);
+        int[] alias = new Coalescing(registerNumberLimit == null ? lowerBound : registerNumberLimit)
+                .coalesce(graph, livenessAnalysisResult);
+        for (int node = 0; node < alias.length; node++) {
+            if (alias[node] != node) {
+                spillCosts[alias[node]] += spillCosts[node];
+            }
+        }
+
+        int[] colors;
+        if (registerNumberLimit == null) {
+            // as few registers as possible: start from the lower bound and add colors until nothing spills
+            // (with k above the maximum degree simplify never gets stuck, so this always terminates)
+            int k = lowerBound;
+            colors = this.colorGraph(graph, k, spillCosts);
+            while (hasSpills(graph, colors)) {
+                colors = this.colorGraph(graph, ++k, spillCosts);
+            }
+        } else {
+            colors = this.colorGraph(graph, registerNumberLimit, spillCosts);
+        }
+
+        // nodes that did not fit in the limit still get the lowest color not used by their neighbors
+        List<String> nodesSpilled = new ArrayList<>();
+        for (int node = 0; node < colors.length; node++) {
+            if (colors[node] < 0 && !graph.isMerged(node)) {
+                colors[node] = lowestFreeColor(graph, node, colors);
+                nodesSpilled.add(graph.getName(node));
+            }
+        }
+        isSpilled = !nodesSpilled.isEmpty();
+        System.out.println("nodes spilled: " + nodesSpilled);
+
+        Map<String, Integer> result = new HashMap<>();
+        for (int node = 0; node < colors.length; node++) {
+            result.put(graph.getName(node), colors[alias[node]]);
+        }
+        return result;
     }
 }
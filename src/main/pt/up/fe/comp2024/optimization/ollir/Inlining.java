@@ -0,0 +1,299 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * Replaces calls to small methods of the class being compiled by a copy of their body.
+ * <p>
+ * Only invokevirtual calls whose receiver is "this", or a local that only ever holds objects created with
+ * 'new' (so it is never null), are inlined, and only if the class extends nothing: otherwise the receiver could
+ * be a subclass that overrides the method. The callee must have at most {@link #MAX_INSTRUCTIONS} instructions,
+ * a method is never inlined into itself, and the call must expect the type the callee returns.
+ * <p>
+ * The locals of the callee get fresh names in the caller, and its labels get a suffix. Parameters that the
+ * callee never assigns are replaced by the arguments, the others are copied into fresh locals first.
+ * Each return becomes an assignment to the destination of the call, followed by a jump to the end of the copy.
+ */
+public class Inlining {
+    public static final int MAX_INSTRUCTIONS = 12;
+
+    private final OllirResult ollirResult;
+    private final ClassUnit ollirClass;
+
+    private Method caller;
+    private int inlinedCalls = 0;
+    private int copies = 0;
+    private final Map<String, Integer> inlined = new LinkedHashMap<>();   // "callee into caller" -> number of calls
+
+    public Inlining(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.ollirClass = ollirResult.getOllirClass();
+    }
+
+    public int getInlinedCalls() {
+        return inlinedCalls;
+    }
+
+    /**
+     * @return for each pair "callee into caller", the number of calls that were inlined
+     */
+    public Map<String, Integer> getInlined() {
+        return inlined;
+    }
+
+    public OllirResult apply() {
+        if (ollirClass.getSuperClass() != null) return ollirResult;
+
+        for (Method method : ollirClass.getMethods()) {
+            caller = method;
+            Set<String> nonNullLocals = findNonNullLocals();
+            List<Instruction> instructions = method.getInstructions();
+            // backwards, so that inlined code is not inlined again
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                Instruction instruction = instructions.get(i);
+                CallInstruction call = instruction instanceof AssignInstruction assign
+                        && assign.getRhs() instanceof CallInstruction rhsCall ? rhsCall
+                        : instruction instanceof CallInstruction standalone ? standalone : null;
+                if (call == null) continue;
+
+                Method callee = findInlinableCallee(call, nonNullLocals);
+                if (callee != null) {
+                    inline(i, call, callee);
+                    inlinedCalls++;
+                    inlined.merge(callee.getMethodName() + " into " + method.getMethodName(), 1, Integer::sum);
+                }
+            }
+        }
+        return ollirResult;
+    }
+
+    private Method findInlinableCallee(CallInstruction call, Set<String> nonNullLocals) {
+        if (call.getInvocationType() != CallType.invokevirtual) return null;
+        if (!(call.getCaller() instanceof Operand receiver) || receiver instanceof ArrayOperand) return null;
+        boolean isThis = receiver.getName().equals("this") && !caller.isStaticMethod();
+        boolean isLocalOfClass = receiver.getType() instanceof ClassType type
+                && type.getName().equals(ollirClass.getClassName()) && nonNullLocals.contains(receiver.getName());
+        if (!isThis && !isLocalOfClass) return null;
+
+        String name = ((LiteralElement) call.getMethodName()).getLiteral().replace("\"", "");
+        for (Method method : ollirClass.getMethods()) {
+            if (method.getMethodName().equals(name) && method.getParams().size() == call.getArguments().size()
+                    && method != caller && !method.isStaticMethod() && !method.isConstructMethod()
+                    && !method.isVarargs() && method.getInstructions().size() <= MAX_INSTRUCTIONS
+                    && method.getReturnType().getTypeOfElement() == call.getReturnType().getTypeOfElement()) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the locals that are only assigned objects created with 'new', or copies of such locals
+     */
+    private Set<String> findNonNullLocals() {
+        Set<String> assigned = new HashSet<>();
+        Set<String> maybeNull = new HashSet<>();
+        List<String[]> copiesOf = new ArrayList<>();    // {source, destination}
+        for (Instruction instruction : caller.getInstructions()) {
+            if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                    || !(assign.getDest() instanceof Operand dest)) continue;
+            assigned.add(dest.getName());
+            if (assign.getRhs() instanceof CallInstruction call && call.getInvocationType() == CallType.NEW) continue;
+            if (assign.getRhs() instanceof SingleOpInstruction singleOp && singleOp.getSingleOperand() instanceof Operand source
+                    && !(source instanceof ArrayOperand)) {
+                copiesOf.add(new String[]{source.getName(), dest.getName()});
+            } else {
+                maybeNull.add(dest.getName());
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (String[] copy : copiesOf) {
+                if (!assigned.contains(copy[0]) || maybeNull.contains(copy[0])) {
+                    changed |= maybeNull.add(copy[1]);
+                }
+            }
+        }
+        assigned.removeAll(maybeNull);
+        return assigned;
+    }
+
+    private void inline(int index, CallInstruction call, Method callee) {
+        List<Instruction> instructions = caller.getInstructions();
+        Instruction site = instructions.get(index);
+        Instruction next = instructions.get(index + 1);     // a method always ends with a return
+        String suffix = "_inl" + copies++;
+        String endLabel = "inline_end" + suffix;
+
+        // names of the callee's variables in the caller
+        Map<String, Element> renamed = new HashMap<>();
+        renamed.put("this", call.getCaller());
+        List<Instruction> body = new ArrayList<>();
+        Set<String> assignedParameters = findAssignedVariables(callee);
+        for (int p = 0; p < callee.getParams().size(); p++) {
+            Operand param = (Operand) callee.getParams().get(p);
+            Element argument = call.getArguments().get(p);
+            if (!assignedParameters.contains(param.getName()) && !(argument instanceof ArrayOperand)) {
+                renamed.put(param.getName(), argument);
+            } else {
+                Operand local = newLocal(param.getName() + suffix, param.getType());
+                renamed.put(param.getName(), local);
+                body.add(new AssignInstruction(local, param.getType(), new SingleOpInstruction(argument)));
+            }
+        }
+        for (var variable : callee.getVarTable().entrySet()) {
+            if (!renamed.containsKey(variable.getKey()) && variable.getValue().getScope() != VarScope.FIELD) {
+                Type type = variable.getValue().getVarType();
+                renamed.put(variable.getKey(), newLocal(variable.getKey() + suffix, type));
+            }
+        }
+        UnaryOperator<Element> rename = element -> renameElement(element, renamed);
+        UnaryOperator<String> relabel = label -> label + suffix;
+
+        Element dest = site instanceof AssignInstruction assign ? assign.getDest() : null;
+        Type destType = site instanceof AssignInstruction assign ? assign.getTypeOfAssign() : null;
+        Map<Instruction, Integer> copyStart = new IdentityHashMap<>();
+        boolean jumpsToEnd = false;
+        List<Instruction> calleeInstructions = callee.getInstructions();
+        for (int i = 0; i < calleeInstructions.size(); i++) {
+            Instruction instruction = calleeInstructions.get(i);
+            copyStart.put(instruction, body.size());
+            if (instruction instanceof ReturnInstruction ret) {
+                if (dest != null && ret.hasReturnValue()) {
+                    body.add(new AssignInstruction(copyOf(dest), destType,
+                            new SingleOpInstruction(rename.apply(ret.getOperand()))));
+                }
+                if (i < calleeInstructions.size() - 1) {
+                    body.add(new GotoInstruction(endLabel));
+                    jumpsToEnd = true;
+                }
+            } else {
+                body.add(copy(instruction, rename, relabel));
+            }
+        }
+
+        instructions.remove(index);
+        instructions.addAll(index, body);
+        var labels = caller.getLabels();
+        for (var label : callee.getLabels().entrySet()) {
+            int start = copyStart.get(label.getValue());
+            labels.put(relabel.apply(label.getKey()), start < body.size() ? body.get(start) : next);
+        }
+        if (jumpsToEnd) {
+            labels.put(endLabel, next);
+        }
+        OllirMethodUtils.moveLabels(caller, site, body.isEmpty() ? next : body.get(0));
+    }
+
+    /**
+     * The destination of the call belongs to the caller, so it is copied without renaming.
+     */
+    private static Element copyOf(Element dest) {
+        if (dest instanceof ArrayOperand arrayDest) {
+            return new ArrayOperand(arrayDest.getName(), arrayDest.getType(), new ArrayList<>(arrayDest.getIndexOperands()));
+        }
+        Operand operand = (Operand) dest;
+        return new Operand(operand.getName(), operand.getType());
+    }
+
+    private static Set<String> findAssignedVariables(Method method) {
+        Set<String> assigned = new HashSet<>();
+        for (Instruction instruction : method.getInstructions()) {
+            if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                    && assign.getDest() instanceof Operand dest) {
+                assigned.add(dest.getName());
+            }
+        }
+        return assigned;
+    }
+
+    /**
+     * Adds a local to the caller, with a name it does not use yet and the next free register.
+     */
+    private Operand newLocal(String name, Type type) {
+        var varTable = caller.getVarTable();
+        int register = 0;
+        for (Descriptor descriptor : varTable.values()) {
+            register = Math.max(register, descriptor.getVirtualReg() + 1);
+        }
+        String unique = name;
+        for (int n = 1; varTable.containsKey(unique); n++) {
+            unique = name + "_" + n;
+        }
+        varTable.put(unique, new Descriptor(VarScope.LOCAL, register, type));
+        return new Operand(unique, type);
+    }
+
+    private static Element renameElement(Element element, Map<String, Element> renamed) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            Element array = renamed.get(arrayOperand.getName());
+            String name = array instanceof Operand operand ? operand.getName() : arrayOperand.getName();
+            List<Element> indexes = new ArrayList<>();
+            for (Element index : arrayOperand.getIndexOperands()) {
+                indexes.add(renameElement(index, renamed));
+            }
+            return new ArrayOperand(name, arrayOperand.getType(), indexes);
+        }
+        if (element instanceof Operand operand) {
+            Element replacement = renamed.get(operand.getName());
+            if (replacement instanceof Operand replacementOperand) {
+                return new Operand(replacementOperand.getName(), replacementOperand.getType());
+            }
+            if (replacement instanceof LiteralElement literal) {
+                return new LiteralElement(literal.getLiteral(), literal.getType());
+            }
+            return new Operand(operand.getName(), operand.getType());   // fields, classes of static calls
+        }
+        if (element instanceof LiteralElement literal) {
+            return new LiteralElement(literal.getLiteral(), literal.getType());
+        }
+        return element;
+    }
+
+    /**
+     * @return a copy of a (non-return) instruction of the callee, with its elements and labels renamed
+     */
+    private static Instruction copy(Instruction instruction, UnaryOperator<Element> rename, UnaryOperator<String> relabel) {
+        if (instruction instanceof AssignInstruction assign) {
+            return new AssignInstruction(rename.apply(assign.getDest()), assign.getTypeOfAssign(),
+                    copy(assign.getRhs(), rename, relabel));
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            return new SingleOpInstruction(rename.apply(singleOp.getSingleOperand()));
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            return new BinaryOpInstruction(rename.apply(binaryOp.getLeftOperand()), binaryOp.getOperation(),
+                    rename.apply(binaryOp.getRightOperand()));
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            return new UnaryOpInstruction(unaryOp.getOperation(), rename.apply(unaryOp.getOperand()));
+        } else if (instruction instanceof CallInstruction call) {
+            List<Element> arguments = new ArrayList<>();
+            for (Element argument : call.getArguments()) {
+                arguments.add(rename.apply(argument));
+            }
+            return new CallInstruction(call.getInvocationType(), rename.apply(call.getCaller()), call.getMethodNameTry().orElse(null),
+                    arguments, call.getReturnType(), call.isIsolated());
+        } else if (instruction instanceof GetFieldInstruction getField) {
+            return new GetFieldInstruction((Operand) rename.apply(getField.getObject()), getField.getField(),
+                    getField.getFieldType());
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            return new PutFieldInstruction((Operand) rename.apply(putField.getObject()), putField.getField(),
+                    rename.apply(putField.getValue()), putField.getFieldType());
+        } else if (instruction instanceof GotoInstruction gotoInstruction) {
+            return new GotoInstruction(relabel.apply(gotoInstruction.getLabel()));
+        } else if (instruction instanceof OpCondInstruction opCond) {
+            OpCondInstruction branch = new OpCondInstruction((OpInstruction) copy(opCond.getCondition(), rename, relabel));
+            branch.setLabel(relabel.apply(opCond.getLabel()));
+            return branch;
+        } else if (instruction instanceof SingleOpCondInstruction singleOpCond) {
+            SingleOpCondInstruction branch = new SingleOpCondInstruction(
+                    (SingleOpInstruction) copy(singleOpCond.getCondition(), rename, relabel));
+            branch.setLabel(relabel.apply(singleOpCond.getLabel()));
+            return branch;
+        }
+        throw new IllegalArgumentException("Cannot copy instruction " + instruction);
+    }
+}
@@ -0,0 +1,80 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import java.util.*;
+
+/**
+ * Linear-scan allocation (Poletto and Sarkar) over live intervals in instruction order.
+ * Each instruction i has two points: 2i (before it, liveIn) and 2i + 1 (after it, liveOut and definitions),
+ * and the interval of a variable goes from the first to the last point where it is live.
+ * Intervals are coarser than the interference graph, so this may use more registers than GraphColoring,
+ * but it runs in O(V log V + I * V / 64).
+ */
+public class LinearScan implements RegisterAllocator {
+    private Integer registerNumberLimit = null;
+    private boolean isSpilled = false;
+
+    @Override
+    public void setRegisterNumberLimit(Integer registerNumberLimit) {
+        this.registerNumberLimit = registerNumberLimit;
+    }
+
+    @Override
+    public boolean isSpilled() {
+        return isSpilled;
+    }
+
+    private static void extend(int[] start, int[] end, BitSet vars, int point) {
+        for (int var = vars.nextSetBit(0); var >= 0; var = vars.nextSetBit(var + 1)) {
+            if (start[var] < 0) start[var] = point;
+            end[var] = point;
+        }
+    }
+
+    @Override
+    public Map<String, Integer> obtainResult(LivenessAnalysisResult livenessAnalysisResult) {
+        int numVars = livenessAnalysisResult.getNumVariables();
+        int[] start = new int[numVars];
+        int[] end = new int[numVars];
+        Arrays.fill(start, -1);
+
+        for (int i = 0; i < livenessAnalysisResult.getLiveInSize(); i++) {
+            extend(start, end, livenessAnalysisResult.getLiveInBits(i), 2 * i);
+            extend(start, end, livenessAnalysisResult.getLiveOutBits(i), 2 * i + 1);
+            extend(start, end, livenessAnalysisResult.getDefinedBits(i), 2 * i + 1);
+        }
+
+        Integer[] byStart = new Integer[numVars];
+        for (int var = 0; var < numVars; var++) {
+            byStart[var] = var;
+            if (start[var] < 0) {   // never live nor defined, it still gets a register
+                start[var] = 0;
+                end[var] = 0;
+            }
+        }
+        Arrays.sort(byStart, Comparator.comparingInt(var -> start[var]));
+
+        // active intervals ordered by end, and the registers they released (lowest first)
+        PriorityQueue<Integer> active = new PriorityQueue<>(Comparator.comparingInt(var -> end[var]));
+        PriorityQueue<Integer> freeRegisters = new PriorityQueue<>();
+        int numRegisters = 0;
+
+        int[] registers = new int[numVars];
+        for (int var : byStart) {
+            while (!active.isEmpty() && end[active.peek()] < start[var]) {
+                freeRegisters.add(registers[active.poll()]);
+            }
+
+            registers[var] = freeRegisters.isEmpty() ? numRegisters++ : freeRegisters.poll();
+            active.add(var);
+        }
+
+        // there is no spill code, so going over the limit is only reported, like in GraphColoring
+        isSpilled = registerNumberLimit != null && numRegisters > Math.max(registerNumberLimit, 0);
+
+        Map<String, Integer> result = new HashMap<>();
+        for (int var = 0; var < numVars; var++) {
+            result.put(livenessAnalysisResult.getVariable(var), registers[var]);
+        }
+        return result;
+    }
+}
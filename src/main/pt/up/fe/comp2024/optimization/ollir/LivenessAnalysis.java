@@ -14,21 +14,21 @@ public class LivenessAnalysis {
     private final FunctionClassMap<TreeNode, Void> handlers;
     OllirResult ollirResult;
 
-    // using sets to prevent duplicates (e.g.: b = a + a)
-    private final List<Set<String>> usedVariables = new ArrayList<>();      // for each instruction, the variables used
-    private final List<Set<String>> definedVariables = new ArrayList<>();   // for each instr., the vars defined
-    private final List<Set<Integer>> successors = new ArrayList<>();        // for each instr., its successor instr.'s
+    // variables are numbered densely per method, so that every live set is a BitSet over those ids
+    private final List<String> variables = new ArrayList<>();
+    private final Map<String, Integer> variableIds = new HashMap<>();
+
+    private final List<BitSet> usedVariables = new ArrayList<>();      // for each instruction, the variables used
+    private final List<BitSet> definedVariables = new ArrayList<>();   // for each instr., the vars defined
+    private int[] copySources;      // for each instr., the variable copied if it is a copy between locals (x := y), or -1
 
-    Method currentMethod;
     int instructionNumber;
-    private Map<String, Descriptor> descriptors;
 
     public LivenessAnalysis(OllirResult ollirResult) {
         this.ollirResult = ollirResult;
         handlers = new FunctionClassMap<>();
         reports = new ArrayList<>();
 
-        handlers.put(Method.class, this::handleMethod);
         handlers.put(AssignInstruction.class, this::handleAssign);
         handlers.put(SingleOpInstruction.class, this::handleSingleOp);
         handlers.put(LiteralElement.class, this::handleLiteral);
@@ -43,23 +43,38 @@ public class LivenessAnalysis {
         handlers.put(GotoInstruction.class, this::handleGoto);
         handlers.put(CondBranchInstruction.class, this::handleCondBranch);
     }
+
+    /**
+     * Numbers the local variables of the method. Parameters, fields and "this" have their own registers
+     * and do not take part in the analysis.
+     */
+    private void numberVariables(Method method) {
+        variables.clear();
+        variableIds.clear();
+        for (Map.Entry<String, Descriptor> entry : method.getVarTable().entrySet()) {
+            String varName = entry.getKey();
+            VarScope scope = entry.getValue().getScope();
+            if (varName.equals("this") || scope == VarScope.PARAMETER || scope == VarScope.FIELD) {
+                continue;
+            }
+            variableIds.put(varName, variables.size());
+            variables.add(varName);
+        }
+    }
+
     private void addVariableToUse(String varName) {
-        Descriptor d = descriptors.get(varName);
-        if (d != null && d.getScope() != VarScope.PARAMETER) {
-            usedVariables.get(instructionNumber).add(varName);
+        Integer id = variableIds.get(varName);
+        if (id != null) {
+            usedVariables.get(instructionNumber).set(id);
         }
     }
 
     private Void handleGoto(GotoInstruction gotoInstruction) {
-        int successorIndex = currentMethod.getInstructions().indexOf(currentMethod.getLabels().get(gotoInstruction.getLabel()));
-        successors.get(instructionNumber).add(successorIndex);
+        // successors are resolved by the ControlFlowGraph
         return null;
     }
     private Void handleCondBranch(CondBranchInstruction condBranchInstruction) {
         handlers.apply(condBranchInstruction.getCondition());
-        Instruction successor = currentMethod.getLabels().get(condBranchInstruction.getLabel());
-        int successorNr = currentMethod.getInstructions().indexOf(successor);
-        successors.get(instructionNumber).add(successorNr);
         return null;
     }
     private Void handleArrayOperand(ArrayOperand arrayOperand) {
@@ -102,53 +117,27 @@ public class LivenessAnalysis {
         // no need to handle constants (e.g. 5 or true)
         return null;
     }
-    private Void handleMethod(Method method) {
-        method.buildCFG();
-        currentMethod = method;
-        descriptors = method.getVarTable();
-
-        List<Instruction> instructions = method.getInstructions();
-
-        usedVariables.clear();
-        definedVariables.clear();
-        successors.clear();
-
-        for (int i = 0; i < instructions.size(); i++) {
-            usedVariables.add(new HashSet<>());
-            definedVariables.add(new HashSet<>());
-            successors.add(new HashSet<>());
-        }
-
-        for (instructionNumber = 0; instructionNumber < instructions.size(); instructionNumber++) {
-            Instruction instruction = instructions.get(instructionNumber);
-
-            if (instructionNumber < instructions.size() - 1) {  // not last instruction
-                successors.get(instructionNumber).add(instructionNumber + 1);
-            }
-
-            handlers.apply(instruction);
-        }
-
-        return null;
-    }
     private Void handleAssign(AssignInstruction assignInstruction) {
         var lhs = assignInstruction.getDest();
-        Set<String> defined = definedVariables.get(instructionNumber);
         if (!(lhs instanceof Operand lhsOperand)) {
             // this should be impossible
             throw new NotImplementedException("AssignInstruction with non-Operand lhs");
         }
-        if (lhsOperand.isParameter()) { // parameters have their own registers
-            System.out.println("variable " + lhsOperand.getName() + " is a parameter");
-            return null;
-        }
 
-        defined.add(lhsOperand.getName());
-        if (lhsOperand instanceof ArrayOperand arrayOperand) {   // handle array assignments
-            // add array to defined variables (already done)
-            // add others in lhs to used variables
-            for (var indexOperand : arrayOperand.getIndexOperands()) {
-                handlers.apply(indexOperand);
+        if (lhsOperand instanceof ArrayOperand arrayOperand) {
+            // a[i] := x stores into the array referenced by a, so it reads a (and i) instead of defining it
+            handleArrayOperand(arrayOperand);
+        } else {
+            Integer id = variableIds.get(lhsOperand.getName());
+            if (id != null) {   // parameters have their own registers
+                definedVariables.get(instructionNumber).set(id);
+
+                if (assignInstruction.getRhs() instanceof SingleOpInstruction singleOp
+                        && singleOp.getSingleOperand() instanceof Operand source
+                        && !(source instanceof ArrayOperand)
+                        && variableIds.containsKey(source.getName())) {
+                    copySources[instructionNumber] = variableIds.get(source.getName());
+                }
             }
         }
 
@@ -159,7 +148,7 @@ public class LivenessAnalysis {
         Element left = binaryOpInstruction.getLeftOperand();
         Element right = binaryOpInstruction.getRightOperand();
 
-        handlers.apply(left);   // TODO: change this? (I don't remember why this TODO is here...)
+        handlers.apply(left);
         handlers.apply(right);
         return null;
     }
@@ -179,48 +168,94 @@ public class LivenessAnalysis {
         return null;
     }
 
+    private void computeUseDef(List<Instruction> instructions) {
+        usedVariables.clear();
+        definedVariables.clear();
+        copySources = new int[instructions.size()];
+        Arrays.fill(copySources, -1);
+        for (int i = 0; i < instructions.size(); i++) {
+            usedVariables.add(new BitSet(variables.size()));
+            definedVariables.add(new BitSet(variables.size()));
+        }
+        for (instructionNumber = 0; instructionNumber < instructions.size(); instructionNumber++) {
+            handlers.apply(instructions.get(instructionNumber));
+        }
+    }
+
     public LivenessAnalysisResult obtainResult(Method method) {
-        handlers.apply(method);
-        System.out.println("Method: " + method.getMethodName());
-        System.out.println("Used: " + usedVariables);
-        System.out.println("Defined: " + definedVariables);
-        System.out.println("Successors: " + successors);
-
-        List<Set<String>> liveIn = new ArrayList<>(), liveOut = new ArrayList<>();
-        int nrInstructions = successors.size();
-        for (int i = 0; i < nrInstructions; i++) {
-            liveIn.add(new HashSet<>());
-            liveOut.add(new HashSet<>());
+        ControlFlowGraph cfg = new ControlFlowGraph(method);
+        numberVariables(method);
+        computeUseDef(cfg.getInstructions());
+
+        int nrBlocks = cfg.getNumBlocks();
+
+        // summarize each block: liveIn[b] = use[b] U (liveOut[b] - def[b])
+        BitSet[] blockUse = new BitSet[nrBlocks];
+        BitSet[] blockDef = new BitSet[nrBlocks];
+        BitSet[] blockLiveIn = new BitSet[nrBlocks];
+        BitSet[] blockLiveOut = new BitSet[nrBlocks];
+        for (int b = 0; b < nrBlocks; b++) {
+            BitSet use = new BitSet(), def = new BitSet();
+            for (int i = cfg.getBlockEnd(b) - 1; i >= cfg.getBlockStart(b); i--) {
+                use.andNot(definedVariables.get(i));
+                def.or(definedVariables.get(i));
+                use.or(usedVariables.get(i));
+            }
+            blockUse[b] = use;
+            blockDef[b] = def;
+            blockLiveIn[b] = (BitSet) use.clone();
+            blockLiveOut[b] = new BitSet();
         }
-        List<Set<String>> prevLiveIn, prevLiveOut;
-        do {
-            prevLiveIn = new ArrayList<>();     // copy liveIn
-            prevLiveOut = new ArrayList<>();    // copy of liveOut
-            for (int i = 0; i < nrInstructions; i++) {
-                prevLiveIn.add(new HashSet<>(liveIn.get(i)));
-                prevLiveOut.add(new HashSet<>(liveOut.get(i)));
+
+        // backward problem: visit blocks in postorder so that successors are usually done first,
+        // and only revisit the predecessors of blocks whose liveIn changed
+        int[] rpo = cfg.getReversePostorder();
+        ArrayDeque<Integer> worklist = new ArrayDeque<>(nrBlocks);
+        boolean[] queued = new boolean[nrBlocks];
+        for (int i = rpo.length - 1; i >= 0; i--) {
+            worklist.add(rpo[i]);
+            queued[rpo[i]] = true;
+        }
+        BitSet newLiveIn = new BitSet();
+        while (!worklist.isEmpty()) {
+            int b = worklist.poll();
+            queued[b] = false;
+
+            BitSet liveOut = blockLiveOut[b];
+            for (int s : cfg.getSuccessors(b)) {
+                liveOut.or(blockLiveIn[s]);
             }
 
-            for (int i = 0; i < nrInstructions; i++) {
-                Set<String> instrLiveIn = liveIn.get(i);
-                Set<String> instrLiveOut = liveOut.get(i);
-                Set<String> instrUsed = usedVariables.get(i);
-                Set<String> instrDefined = definedVariables.get(i);
-                Set<Integer> instrSuccessors = successors.get(i);
-
-                // instrLiveIn = instrUsed U (instrLiveOut - instrDefined)
-                instrLiveIn.clear();
-                instrLiveIn.addAll(instrLiveOut);       // first subtract
-                instrLiveIn.removeAll(instrDefined);
-                instrLiveIn.addAll(instrUsed);          // union
-
-                // instrLiveOut = U { s in instrSuccessors } liveIn[s]
-                for (Integer successor : instrSuccessors) {
-                    instrLiveOut.addAll(liveIn.get(successor));
+            newLiveIn.clear();
+            newLiveIn.or(liveOut);
+            newLiveIn.andNot(blockDef[b]);
+            newLiveIn.or(blockUse[b]);
+            if (newLiveIn.equals(blockLiveIn[b])) continue;
+
+            blockLiveIn[b].or(newLiveIn);   // liveIn only grows
+            for (int p : cfg.getPredecessors(b)) {
+                if (!queued[p]) {
+                    queued[p] = true;
+                    worklist.add(p);
                 }
             }
-        } while(!liveIn.equals(prevLiveIn) || !liveOut.equals(prevLiveOut));    // repeat until liveIn and liveOut don't change
+        }
+
+        // expand the block sets into per-instruction sets
+        int nrInstructions = cfg.getInstructions().size();
+        BitSet[] liveIn = new BitSet[nrInstructions];
+        BitSet[] liveOut = new BitSet[nrInstructions];
+        for (int b = 0; b < nrBlocks; b++) {
+            BitSet live = (BitSet) blockLiveOut[b].clone();
+            for (int i = cfg.getBlockEnd(b) - 1; i >= cfg.getBlockStart(b); i--) {
+                liveOut[i] = (BitSet) live.clone();
+                live.andNot(definedVariables.get(i));
+                live.or(usedVariables.get(i));
+                liveIn[i] = (BitSet) live.clone();
+            }
+        }
 
-        return new LivenessAnalysisResult(liveIn, liveOut);
+        return new LivenessAnalysisResult(cfg, new ArrayList<>(variables), liveIn, liveOut,
+                usedVariables.toArray(new BitSet[0]), definedVariables.toArray(new BitSet[0]), copySources);
     }
 }
@@ -1,38 +1,95 @@
 package pt.up.fe.comp2024.optimization.ollir;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
+/**
+ * Liveness of the local variables of a method, per instruction.
+ * Sets are stored as BitSets over the dense variable ids; getLiveIn/getLiveOut return name-based views.
+ */
 public class LivenessAnalysisResult {
-    private final List<Set<String>> in;
-    private final List<Set<String>> out;
+    private final ControlFlowGraph cfg;
+    private final List<String> variables;
+    private final BitSet[] in;
+    private final BitSet[] out;
+    private final BitSet[] used;
+    private final BitSet[] defined;
+    private final int[] copySources;
 
-    public LivenessAnalysisResult(List<Set<String>> liveIn, List<Set<String>> liveOut) {
+    public LivenessAnalysisResult(ControlFlowGraph cfg, List<String> variables, BitSet[] liveIn, BitSet[] liveOut,
+                                  BitSet[] used, BitSet[] defined, int[] copySources) {
+        this.cfg = cfg;
+        this.copySources = copySources;
+        this.variables = variables;
         this.in = liveIn;
         this.out = liveOut;
+        this.used = used;
+        this.defined = defined;
     }
     public Set<String> getLiveIn(int instrNr) {
-        return in.get(instrNr);
+        return toNames(in[instrNr]);
     }
     public Set<String> getLiveOut(int instrNr) {
-        return out.get(instrNr);
+        return toNames(out[instrNr]);
     }
     public int getLiveOutSize() {
-        return out.size();
+        return out.length;
     }
     public int getLiveInSize() {
-        return in.size();
+        return in.length;
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+    public int getNumVariables() {
+        return variables.size();
+    }
+    public String getVariable(int id) {
+        return variables.get(id);
+    }
+    public List<String> getVariables() {
+        return Collections.unmodifiableList(variables);
+    }
+    /**
+     * The BitSet getters return the internal sets, which must not be modified.
+     */
+    public BitSet getLiveInBits(int instrNr) {
+        return in[instrNr];
+    }
+    public BitSet getLiveOutBits(int instrNr) {
+        return out[instrNr];
+    }
+    public BitSet getUsedBits(int instrNr) {
+        return used[instrNr];
+    }
+    public BitSet getDefinedBits(int instrNr) {
+        return defined[instrNr];
+    }
+
+    /**
+     * @return the id of the variable copied by the instruction, if it is a copy between locals (x := y), or -1
+     */
+    public int getCopySource(int instrNr) {
+        return copySources[instrNr];
+    }
+
+    private Set<String> toNames(BitSet bits) {
+        Set<String> names = new LinkedHashSet<>();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            names.add(variables.get(id));
+        }
+        return names;
     }
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("LiveIn:\n");
-        for (int i = 0; i < in.size(); i++) {
-            sb.append("\tInstruction ").append(i).append(": ").append(in.get(i)).append('\n');
+        for (int i = 0; i < in.length; i++) {
+            sb.append("\tInstruction ").append(i).append(": ").append(getLiveIn(i)).append('\n');
         }
         sb.append("LiveOut:\n");
-        for (int i = 0; i < out.size(); i++) {
-            sb.append("\tInstruction ").append(i).append(": ").append(out.get(i)).append('\n');
+        for (int i = 0; i < out.length; i++) {
+            sb.append("\tInstruction ").append(i).append(": ").append(getLiveOut(i)).append('\n');
         }
         return sb.toString();
     }
@@ -0,0 +1,386 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.*;
+
+/**
+ * Moves the assignments that compute the same value in every iteration of a loop to its preheader, the block
+ * that jumps into the loop ('goto while_cond_N' in the code we generate). Inner loops are handled first, so
+ * an instruction can move out of several loops.
+ * <p>
+ * An assignment 'x := e' is invariant if every local read by e is defined outside the loop (or by an
+ * invariant instruction), and the memory it reads is not written in the loop: no call (which may write
+ * anything), no putfield of a getfield's field, and no array store that may alias an array load.
+ * Two arrays can only be told apart if each comes from its own 'new' in the method.
+ * It is moved if x has no other definition in the loop and its value before the loop is never read.
+ * Instructions that may throw (array accesses, arraylength, division) only move if they are at the start of the
+ * loop header, which always runs before anything else in the loop.
+ */
+public class LoopInvariantCodeMotion {
+    private final OllirResult ollirResult;
+    private final LivenessAnalysis livenessAnalysis;
+
+    private Method method;
+    private SsaForm ssa;
+    private LivenessAnalysisResult liveness;
+    private ControlFlowGraph cfg;
+    private List<Instruction> instructions;
+
+    // allocation sites ('new' instructions) an array local may point to; arrays from anywhere else are unknown
+    private final Map<Integer, Set<Integer>> allocationSites = new HashMap<>();
+    private final Set<Integer> unknownArrays = new HashSet<>();
+
+    private int instructionsHoisted = 0;
+    private int loopsChanged = 0;
+
+    /**
+     * What the instructions of a loop may write.
+     */
+    private static class LoopWrites {
+        boolean calls;
+        final List<ArrayOperand> arrays = new ArrayList<>();
+        final Set<String> fields = new HashSet<>();
+        final Set<String> parameters = new HashSet<>();
+        final int[] definitions;    // number of definitions of each local
+
+        LoopWrites(int nrVariables) {
+            this.definitions = new int[nrVariables];
+        }
+    }
+
+    public LoopInvariantCodeMotion(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.livenessAnalysis = new LivenessAnalysis(ollirResult);
+    }
+
+    public int getInstructionsHoisted() {
+        return instructionsHoisted;
+    }
+
+    public int getLoopsChanged() {
+        return loopsChanged;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            if (method.getInstructions().isEmpty()) continue;
+            this.method = method;
+            // the analyses are redone after each loop, since moved instructions may now be invariant in outer loops
+            while (hoistFromSomeLoop()) ;
+        }
+        return ollirResult;
+    }
+
+    private boolean hoistFromSomeLoop() {
+        liveness = livenessAnalysis.obtainResult(method);
+        ssa = new SsaForm(liveness);
+        cfg = ssa.getControlFlowGraph();
+        instructions = cfg.getInstructions();
+        findAllocationSites();
+
+        List<boolean[]> loops = findLoops();
+        loops.sort(Comparator.comparingInt(LoopInvariantCodeMotion::size));     // inner loops first
+        for (boolean[] loop : loops) {
+            if (hoist(loop)) {
+                loopsChanged++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int size(boolean[] loop) {
+        int size = 0;
+        for (boolean inLoop : loop) {
+            if (inLoop) size++;
+        }
+        return size;
+    }
+
+    /**
+     * @return the blocks of each natural loop, with loops that share a header merged
+     */
+    private List<boolean[]> findLoops() {
+        DominatorTree dominatorTree = ssa.getDominatorTree();
+        Map<Integer, boolean[]> loops = new LinkedHashMap<>();
+        for (int b = 0; b < cfg.getNumBlocks(); b++) {
+            if (!dominatorTree.isReachable(b)) continue;
+            for (int header : cfg.getSuccessors(b)) {
+                if (!dominatorTree.dominates(header, b)) continue;
+
+                boolean[] loop = loops.computeIfAbsent(header, h -> new boolean[cfg.getNumBlocks()]);
+                loop[header] = true;
+                ArrayDeque<Integer> worklist = new ArrayDeque<>();
+                worklist.add(b);
+                while (!worklist.isEmpty()) {
+                    int block = worklist.poll();
+                    if (loop[block]) continue;
+                    loop[block] = true;
+                    for (int p : cfg.getPredecessors(block)) {
+                        worklist.add(p);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(loops.values());
+    }
+
+    private int findHeader(boolean[] loop) {
+        for (int b = 0; b < loop.length; b++) {
+            if (!loop[b]) continue;
+            for (int p : cfg.getPredecessors(b)) {
+                if (!loop[p]) return b;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the only block outside the loop that enters it, if it goes nowhere else; -1 otherwise
+     */
+    private int findPreheader(boolean[] loop, int header) {
+        int preheader = -1;
+        for (int p : cfg.getPredecessors(header)) {
+            if (loop[p]) continue;
+            if (preheader >= 0) return -1;
+            preheader = p;
+        }
+        if (preheader < 0 || cfg.getSuccessors(preheader).length != 1) return -1;
+        Instruction last = instructions.get(cfg.getBlockEnd(preheader) - 1);
+        return last instanceof CondBranchInstruction ? -1 : preheader;
+    }
+
+    private boolean hoist(boolean[] loop) {
+        int header = findHeader(loop);
+        if (header < 0) return false;
+        int preheader = findPreheader(loop, header);
+        if (preheader < 0) return false;
+
+        LoopWrites writes = findWrites(loop);
+        BitSet liveAtExits = new BitSet();
+        for (int b = 0; b < loop.length; b++) {
+            if (!loop[b]) continue;
+            for (int s : cfg.getSuccessors(b)) {
+                if (!loop[s]) liveAtExits.or(liveness.getLiveInBits(cfg.getBlockStart(s)));
+            }
+        }
+        BitSet liveAtHeader = liveness.getLiveInBits(cfg.getBlockStart(header));
+
+        // the order in which instructions are found respects their dependencies
+        List<Integer> hoisted = new ArrayList<>();
+        boolean[] isHoisted = new boolean[instructions.size()];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b : cfg.getReversePostorder()) {
+                if (!loop[b]) continue;
+                boolean headerPrefix = b == header;
+                for (int i = cfg.getBlockStart(b); i < cfg.getBlockEnd(b); i++) {
+                    if (!isHoisted[i] && canHoist(i, loop, headerPrefix, writes, liveAtHeader, liveAtExits, isHoisted)) {
+                        isHoisted[i] = true;
+                        hoisted.add(i);
+                        changed = true;
+                    }
+                    headerPrefix &= isHoisted[i];
+                }
+            }
+        }
+        if (hoisted.isEmpty()) return false;
+
+        List<Instruction> moved = new ArrayList<>();
+        for (int i : hoisted) {
+            moved.add(instructions.get(i));
+        }
+        // anchor: the jump that ends the preheader, or the header itself if the preheader falls through to it
+        Instruction last = instructions.get(cfg.getBlockEnd(preheader) - 1);
+        boolean jumps = last instanceof GotoInstruction;
+        Instruction anchor = jumps ? last : instructions.get(cfg.getBlockStart(header));
+
+        hoisted.sort(Comparator.reverseOrder());
+        for (int i : hoisted) {
+            OllirMethodUtils.removeInstruction(method, i);
+        }
+        OllirMethodUtils.insertInstructions(method, indexOf(anchor), moved);
+        if (jumps) {
+            OllirMethodUtils.moveLabels(method, anchor, moved.get(0));
+        }
+        instructionsHoisted += moved.size();
+        return true;
+    }
+
+    private int indexOf(Instruction instruction) {
+        List<Instruction> current = method.getInstructions();
+        for (int i = 0; i < current.size(); i++) {
+            if (current.get(i) == instruction) return i;
+        }
+        throw new IllegalStateException("Instruction is no longer in the method");
+    }
+
+    private boolean canHoist(int instrNr, boolean[] loop, boolean headerPrefix, LoopWrites writes,
+                             BitSet liveAtHeader, BitSet liveAtExits, boolean[] isHoisted) {
+        if (!(instructions.get(instrNr) instanceof AssignInstruction assign)) return false;
+        int value = ssa.getDefinedValue(instrNr);
+        if (value < 0) return false;
+        int variable = ssa.getVariable(value);
+
+        // the old value of x is never read and no other definition of x is moved past
+        if (writes.definitions[variable] != 1 || liveAtHeader.get(variable)) return false;
+        // if the loop may end before this instruction runs, x must not be read after it
+        if (!headerPrefix && liveAtExits.get(variable)) return false;
+
+        Instruction rhs = assign.getRhs();
+        boolean mayThrow;
+        if (rhs instanceof SingleOpInstruction singleOp) {
+            if (singleOp.getSingleOperand() instanceof ArrayOperand load) {
+                if (writes.calls || load.getIndexOperands().size() != 1) return false;
+                Element index = load.getIndexOperands().get(0);
+                if (!isInvariant(instrNr, arrayOf(load), loop, writes, isHoisted)
+                        || !isInvariant(instrNr, index, loop, writes, isHoisted)) return false;
+                for (ArrayOperand store : writes.arrays) {
+                    if (mayAlias(load, store)) return false;
+                }
+                mayThrow = true;
+            } else {
+                if (!isInvariant(instrNr, singleOp.getSingleOperand(), loop, writes, isHoisted)) return false;
+                mayThrow = false;
+            }
+        } else if (rhs instanceof BinaryOpInstruction binaryOp) {
+            if (!isInvariant(instrNr, binaryOp.getLeftOperand(), loop, writes, isHoisted)
+                    || !isInvariant(instrNr, binaryOp.getRightOperand(), loop, writes, isHoisted)) return false;
+            mayThrow = binaryOp.getOperation().getOpType() == OperationType.DIV;
+        } else if (rhs instanceof UnaryOpInstruction unaryOp) {
+            if (!isInvariant(instrNr, unaryOp.getOperand(), loop, writes, isHoisted)) return false;
+            mayThrow = false;
+        } else if (rhs instanceof GetFieldInstruction getField) {
+            // fields are only read from "this", which is never null
+            if (writes.calls || writes.fields.contains(getField.getField().getName())
+                    || !isInvariant(instrNr, getField.getObject(), loop, writes, isHoisted)) return false;
+            mayThrow = false;
+        } else if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.arraylength) {
+            if (!isInvariant(instrNr, call.getCaller(), loop, writes, isHoisted)) return false;
+            mayThrow = true;
+        } else {
+            return false;
+        }
+        return !mayThrow || headerPrefix;
+    }
+
+    private static Operand arrayOf(ArrayOperand arrayOperand) {
+        return new Operand(arrayOperand.getName(), arrayOperand.getType());
+    }
+
+    private boolean isInvariant(int instrNr, Element element, boolean[] loop, LoopWrites writes, boolean[] isHoisted) {
+        if (element instanceof LiteralElement) return true;
+        if (element instanceof ArrayOperand || !(element instanceof Operand operand)) return false;
+
+        String name = operand.getName();
+        int variable = liveness.getVariables().indexOf(name);
+        if (variable < 0) {
+            // "this" and parameters, which are invariant if the loop does not assign them
+            return name.equals("this") || isParameter(name) && !writes.parameters.contains(name);
+        }
+        Integer value = ssa.getUsedValues(instrNr).get(variable);
+        if (value == null) return false;
+        int definition = ssa.getDefiningInstruction(value);
+        if (definition >= 0) {
+            return !loop[cfg.getBlockOf(definition)] || isHoisted[definition];
+        }
+        SsaForm.Phi phi = ssa.getDefiningPhi(value);
+        return phi == null || !loop[phi.getBlock()];
+    }
+
+    private LoopWrites findWrites(boolean[] loop) {
+        LoopWrites writes = new LoopWrites(liveness.getNumVariables());
+        for (int b = 0; b < loop.length; b++) {
+            if (!loop[b]) continue;
+            for (int i = cfg.getBlockStart(b); i < cfg.getBlockEnd(b); i++) {
+                BitSet defined = liveness.getDefinedBits(i);
+                for (int var = defined.nextSetBit(0); var >= 0; var = defined.nextSetBit(var + 1)) {
+                    writes.definitions[var]++;
+                }
+
+                Instruction instruction = instructions.get(i);
+                if (instruction instanceof AssignInstruction assign) {
+                    if (assign.getDest() instanceof ArrayOperand store) {
+                        writes.arrays.add(store);
+                    } else if (assign.getDest() instanceof Operand dest && isParameter(dest.getName())) {
+                        writes.parameters.add(dest.getName());
+                    }
+                    instruction = assign.getRhs();
+                }
+                if (instruction instanceof CallInstruction call && call.getInvocationType() != CallType.arraylength
+                        && call.getInvocationType() != CallType.NEW) {
+                    writes.calls = true;
+                } else if (instruction instanceof PutFieldInstruction putField) {
+                    writes.fields.add(putField.getField().getName());
+                }
+            }
+        }
+        return writes;
+    }
+
+    private boolean isParameter(String name) {
+        Descriptor descriptor = method.getVarTable().get(name);
+        return descriptor != null && descriptor.getScope() == VarScope.PARAMETER;
+    }
+
+    /**
+     * Finds the 'new' instructions each array local may point to, following copies between locals.
+     */
+    private void findAllocationSites() {
+        allocationSites.clear();
+        unknownArrays.clear();
+        List<int[]> copies = new ArrayList<>();     // {source, destination}
+        for (int i = 0; i < instructions.size(); i++) {
+            BitSet defined = liveness.getDefinedBits(i);
+            if (defined.isEmpty()) continue;
+            int variable = defined.nextSetBit(0);
+            Instruction rhs = ((AssignInstruction) instructions.get(i)).getRhs();
+            int source = liveness.getCopySource(i);
+
+            if (rhs instanceof CallInstruction call && call.getInvocationType() == CallType.NEW) {
+                allocationSites.computeIfAbsent(variable, v -> new HashSet<>()).add(i);
+            } else if (source >= 0) {
+                copies.add(new int[]{source, variable});
+            } else {
+                unknownArrays.add(variable);
+            }
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] copy : copies) {
+                if (unknownArrays.contains(copy[0])) {
+                    changed |= unknownArrays.add(copy[1]);
+                } else if (allocationSites.containsKey(copy[0])) {
+                    changed |= allocationSites.computeIfAbsent(copy[1], v -> new HashSet<>())
+                            .addAll(allocationSites.get(copy[0]));
+                }
+            }
+        }
+    }
+
+    private boolean mayAlias(ArrayOperand load, ArrayOperand store) {
+        Element loadIndex = load.getIndexOperands().get(0);
+        Element storeIndex = store.getIndexOperands().size() == 1 ? store.getIndexOperands().get(0) : null;
+        if (loadIndex instanceof LiteralElement loadLiteral && storeIndex instanceof LiteralElement storeLiteral
+                && !loadLiteral.getLiteral().equals(storeLiteral.getLiteral())) {
+            return false;
+        }
+        Set<Integer> loadSites = getAllocationSites(load.getName());
+        Set<Integer> storeSites = getAllocationSites(store.getName());
+        return loadSites == null || storeSites == null || !Collections.disjoint(loadSites, storeSites);
+    }
+
+    /**
+     * @return the 'new' instructions the array may come from, or null if it may come from anywhere
+     */
+    private Set<Integer> getAllocationSites(String array) {
+        int variable = liveness.getVariables().indexOf(array);
+        if (variable < 0 || unknownArrays.contains(variable)) return null;
+        return allocationSites.get(variable);
+    }
+}
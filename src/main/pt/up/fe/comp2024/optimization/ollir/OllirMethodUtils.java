@@ -0,0 +1,112 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Helpers to edit the instruction list of a parsed OLLIR method while keeping its labels valid.
+ */
+public class OllirMethodUtils {
+
+    /**
+     * Removes the instruction at the given index. Its labels move to the instruction that follows it.
+     */
+    public static void removeInstruction(Method method, int index) {
+        List<Instruction> instructions = method.getInstructions();
+        Instruction removed = instructions.remove(index);
+        moveLabels(method, removed, index < instructions.size() ? instructions.get(index) : null);
+    }
+
+    /**
+     * Makes every label of an instruction point to another one instead.
+     * If there is no other instruction (null), the labels are dropped.
+     */
+    public static void moveLabels(Method method, Instruction from, Instruction to) {
+        var labels = method.getLabels();
+        List<String> moved = new ArrayList<>();
+        for (Map.Entry<String, Instruction> label : labels.entrySet()) {
+            if (label.getValue() == from) {
+                moved.add(label.getKey());
+            }
+        }
+        for (String label : moved) {
+            if (to != null) {
+                labels.put(label, to);
+            } else {
+                labels.remove(label);
+            }
+        }
+    }
+
+    /**
+     * Replaces the instruction at the given index by another one, which takes its labels.
+     */
+    public static void replaceInstruction(Method method, int index, Instruction replacement) {
+        Instruction replaced = method.getInstructions().set(index, replacement);
+        moveLabels(method, replaced, replacement);
+    }
+
+    /**
+     * Inserts instructions before the one at the given index. Labels are not moved, so jumps to that
+     * instruction skip the inserted ones.
+     */
+    public static void insertInstructions(Method method, int index, List<Instruction> inserted) {
+        method.getInstructions().addAll(index, inserted);
+    }
+
+    /**
+     * Applies the mapper to every element the instruction reads, replacing the element with its result.
+     * The destination of an assignment is not read (except for the indexes of an array destination),
+     * and the array of an array access is kept, only its indexes are mapped.
+     */
+    public static void mapOperands(Instruction instruction, UnaryOperator<Element> mapper) {
+        if (instruction instanceof AssignInstruction assign) {
+            if (assign.getDest() instanceof ArrayOperand arrayDest) {
+                mapIndexes(arrayDest, mapper);
+            }
+            mapOperands(assign.getRhs(), mapper);
+        } else if (instruction instanceof SingleOpInstruction singleOp) {
+            singleOp.setSingleOperand(map(singleOp.getSingleOperand(), mapper));
+        } else if (instruction instanceof BinaryOpInstruction binaryOp) {
+            binaryOp.setLeftOperand(map(binaryOp.getLeftOperand(), mapper));
+            binaryOp.setRightOperand(map(binaryOp.getRightOperand(), mapper));
+        } else if (instruction instanceof UnaryOpInstruction unaryOp) {
+            unaryOp.setOperand(map(unaryOp.getOperand(), mapper));
+        } else if (instruction instanceof CondBranchInstruction condBranch) {
+            mapOperands(condBranch.getCondition(), mapper);
+        } else if (instruction instanceof ReturnInstruction returnInst) {
+            if (returnInst.hasReturnValue()) {
+                returnInst.setOperand(map(returnInst.getOperand(), mapper));
+            }
+        } else if (instruction instanceof CallInstruction call) {
+            List<Element> arguments = call.getArguments();
+            for (int i = 0; i < arguments.size(); i++) {
+                Element mapped = map(arguments.get(i), mapper);
+                if (mapped != arguments.get(i)) {
+                    arguments.set(i, mapped);
+                }
+            }
+        } else if (instruction instanceof PutFieldInstruction putField) {
+            putField.setOperands(putField.getObject(), putField.getField(), map(putField.getValue(), mapper));
+        }
+    }
+
+    private static Element map(Element element, UnaryOperator<Element> mapper) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            mapIndexes(arrayOperand, mapper);
+            return element;
+        }
+        return mapper.apply(element);
+    }
+
+    private static void mapIndexes(ArrayOperand arrayOperand, UnaryOperator<Element> mapper) {
+        List<Element> indexes = arrayOperand.getIndexOperands();
+        for (int i = 0; i < indexes.size(); i++) {
+            indexes.set(i, map(indexes.get(i), mapper));
+        }
+    }
+}
@@ -1,24 +1,28 @@
 package pt.up.fe.comp2024.optimization.ollir;
 
-import org.specs.comp.ollir.Descriptor;
-import org.specs.comp.ollir.Method;
+import org.specs.comp.ollir.*;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2024.CompilerConfig;
 import pt.up.fe.comp2024.utils.ReportUtils;
 
+import java.util.List;
 import java.util.Map;
 
 public class RegisterAllocation {
     private final OllirResult ollirResult;
     private final LivenessAnalysis livenessAnalysis;
-    private final GraphColoring graphColoring;
+    private final RegisterAllocator allocator;
     private final int numReg;
     private Integer initialRegisterOffset;
 
     public RegisterAllocation(OllirResult ollirResult, int numReg) {
         this.ollirResult = ollirResult;
         this.livenessAnalysis = new LivenessAnalysis(ollirResult);
-        this.graphColoring = new GraphColoring();
+        this.allocator = switch (CompilerConfig.getAllocator(ollirResult.getConfig())) {
+            case CompilerConfig.ALLOCATOR_LINEAR -> new LinearScan();
+            default -> new GraphColoring();
+        };
         this.numReg = numReg;
         this.initialRegisterOffset = null;
     }
@@ -53,14 +57,18 @@ public class RegisterAllocation {
     public OllirResult apply() {
         for (Method method: this.ollirResult.getOllirClass().getMethods()) {
             this.initialRegisterOffset = this.getInitialRegisterOffset(method);
-            System.out.println("Actual register number to be used (numReg - initialRegisterOffset): " + (this.numReg - this.initialRegisterOffset));
-            this.graphColoring.setRegisterNumberLimit(this.numReg - this.initialRegisterOffset);
+            if (this.numReg == 0) { // as few registers as possible
+                this.allocator.setRegisterNumberLimit(null);
+            } else {
+                System.out.println("Actual register number to be used (numReg - initialRegisterOffset): " + (this.numReg - this.initialRegisterOffset));
+                this.allocator.setRegisterNumberLimit(this.numReg - this.initialRegisterOffset);
+            }
 
             LivenessAnalysisResult liveAnalysisResult = livenessAnalysis.obtainResult(method);
-            Map<String, Integer> colors = graphColoring.obtainResult(liveAnalysisResult);
+            Map<String, Integer> colors = allocator.obtainResult(liveAnalysisResult);
             System.out.println("Colors = " + colors);
 
-            if (graphColoring.isSpilled() && this.numReg != 0) {
+            if (allocator.isSpilled() && this.numReg != 0) {
                 this.ollirResult.getReports().add(ReportUtils.buildErrorReport(
                         Stage.OPTIMIZATION,
                         null,
@@ -69,7 +77,34 @@ public class RegisterAllocation {
                 System.out.println("Added error report");
             }
             assignRegisters(method, colors);
+            removeRedundantCopies(method);
         }
         return this.ollirResult;
     }
+
+    /**
+     * Removes the copies (x := y) whose source and destination ended up in the same register,
+     * which is the case for every pair of variables merged by coalescing.
+     */
+    private void removeRedundantCopies(Method method) {
+        Map<String, Descriptor> varTable = method.getVarTable();
+        List<Instruction> instructions = method.getInstructions();
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (instructions.get(i) instanceof AssignInstruction assign
+                    && !(assign.getDest() instanceof ArrayOperand)
+                    && assign.getDest() instanceof Operand dest
+                    && assign.getRhs() instanceof SingleOpInstruction rhs
+                    && !(rhs.getSingleOperand() instanceof ArrayOperand)
+                    && rhs.getSingleOperand() instanceof Operand source
+                    && isSameRegister(varTable.get(dest.getName()), varTable.get(source.getName()))) {
+                OllirMethodUtils.removeInstruction(method, i);
+            }
+        }
+    }
+
+    private static boolean isSameRegister(Descriptor dest, Descriptor source) {
+        return dest != null && source != null
+                && dest.getScope() != VarScope.FIELD && source.getScope() != VarScope.FIELD
+                && dest.getVirtualReg() == source.getVirtualReg();
+    }
 }
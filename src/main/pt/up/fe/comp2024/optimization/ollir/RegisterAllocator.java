@@ -0,0 +1,20 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import java.util.Map;
+
+/**
+ * Assigns a register (a color, starting from 0) to each local variable of a method, given its liveness.
+ */
+public interface RegisterAllocator {
+    /**
+     * @param registerNumberLimit maximum number of registers, or null to use as few registers as possible
+     */
+    void setRegisterNumberLimit(Integer registerNumberLimit);
+
+    Map<String, Integer> obtainResult(LivenessAnalysisResult livenessAnalysisResult);
+
+    /**
+     * @return true if the last method needed more registers than the limit
+     */
+    boolean isSpilled();
+}
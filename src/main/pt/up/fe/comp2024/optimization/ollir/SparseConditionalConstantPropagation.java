@@ -0,0 +1,395 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.*;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over the SSA form of each method.
+ * <p>
+ * Values start as undefined and only go down the lattice (undefined -> constant -> overdefined), and a block is
+ * only evaluated once an edge into it is found executable, so constants flow through branches whose conditions
+ * are themselves constant. Afterwards, reads of constant locals become literals, branches with a constant
+ * condition become a goto (or nothing), assignments of constants that no longer have readers are removed,
+ * and so are the blocks that were never executable.
+ */
+public class SparseConditionalConstantPropagation {
+    private static final int UNDEFINED = 0;
+    private static final int CONSTANT = 1;
+    private static final int OVERDEFINED = 2;
+
+    private final OllirResult ollirResult;
+    private final LivenessAnalysis livenessAnalysis;
+
+    private SsaForm ssa;
+    private ControlFlowGraph cfg;
+    private List<Instruction> instructions;
+
+    private int[] state;
+    private int[] constant;
+    private boolean[] executableBlock;
+    private boolean[][] executableEdge;     // for each block, for each of its successors
+    private List<List<Integer>> instructionUsers;   // for each value, the instructions that read it
+    private List<List<SsaForm.Phi>> phiUsers;       // for each value, the phis that read it
+
+    private final ArrayDeque<int[]> flowWorklist = new ArrayDeque<>();    // edges {from, to}, from = -1 for the entry
+    private final ArrayDeque<Integer> ssaWorklist = new ArrayDeque<>();
+
+    private int literalsPropagated = 0;
+    private int branchesFolded = 0;
+    private int instructionsRemoved = 0;
+
+    public SparseConditionalConstantPropagation(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+        this.livenessAnalysis = new LivenessAnalysis(ollirResult);
+    }
+
+    public int getLiteralsPropagated() {
+        return literalsPropagated;
+    }
+
+    public int getBranchesFolded() {
+        return branchesFolded;
+    }
+
+    public int getInstructionsRemoved() {
+        return instructionsRemoved;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            if (method.getInstructions().isEmpty()) continue;
+            propagate(livenessAnalysis.obtainResult(method));
+            rewrite(method);
+        }
+        return ollirResult;
+    }
+
+    private void propagate(LivenessAnalysisResult liveness) {
+        ssa = new SsaForm(liveness);
+        cfg = ssa.getControlFlowGraph();
+        instructions = cfg.getInstructions();
+
+        int nrValues = ssa.getNumValues();
+        state = new int[nrValues];
+        constant = new int[nrValues];
+        instructionUsers = new ArrayList<>();
+        phiUsers = new ArrayList<>();
+        for (int value = 0; value < nrValues; value++) {
+            instructionUsers.add(new ArrayList<>());
+            phiUsers.add(new ArrayList<>());
+            // parameters and locals read before being assigned could hold anything
+            if (ssa.isEntryValue(value)) state[value] = OVERDEFINED;
+        }
+        for (int i = 0; i < instructions.size(); i++) {
+            for (int value : ssa.getUsedValues(i).values()) {
+                instructionUsers.get(value).add(i);
+            }
+        }
+        int nrBlocks = cfg.getNumBlocks();
+        for (int b = 0; b < nrBlocks; b++) {
+            for (SsaForm.Phi phi : ssa.getPhis(b)) {
+                for (int k = 0; k < phi.getNumOperands(); k++) {
+                    if (phi.getOperand(k) >= 0) phiUsers.get(phi.getOperand(k)).add(phi);
+                }
+            }
+        }
+
+        executableBlock = new boolean[nrBlocks];
+        executableEdge = new boolean[nrBlocks][];
+        for (int b = 0; b < nrBlocks; b++) {
+            executableEdge[b] = new boolean[cfg.getSuccessors(b).length];
+        }
+
+        flowWorklist.add(new int[]{-1, 0});
+        while (!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+            while (!flowWorklist.isEmpty()) {
+                int[] edge = flowWorklist.poll();
+                visitEdge(edge[0], edge[1]);
+            }
+            while (!ssaWorklist.isEmpty()) {
+                int value = ssaWorklist.poll();
+                for (SsaForm.Phi phi : phiUsers.get(value)) {
+                    if (executableBlock[phi.getBlock()]) visitPhi(phi);
+                }
+                for (int instrNr : instructionUsers.get(value)) {
+                    if (executableBlock[cfg.getBlockOf(instrNr)]) visitInstruction(instrNr);
+                }
+            }
+        }
+    }
+
+    private void visitEdge(int from, int to) {
+        if (from >= 0) {
+            int[] successors = cfg.getSuccessors(from);
+            for (int k = 0; k < successors.length; k++) {
+                if (successors[k] != to) continue;
+                if (executableEdge[from][k]) return;
+                executableEdge[from][k] = true;
+            }
+        }
+
+        for (SsaForm.Phi phi : ssa.getPhis(to)) {
+            visitPhi(phi);
+        }
+        if (executableBlock[to]) return;
+        executableBlock[to] = true;
+
+        for (int i = cfg.getBlockStart(to); i < cfg.getBlockEnd(to); i++) {
+            visitInstruction(i);
+        }
+        // a conditional branch decides which of its successors are executable
+        Instruction last = instructions.get(cfg.getBlockEnd(to) - 1);
+        if (last.getInstType() != InstructionType.BRANCH) {
+            for (int s : cfg.getSuccessors(to)) {
+                flowWorklist.add(new int[]{to, s});
+            }
+        }
+    }
+
+    private void visitPhi(SsaForm.Phi phi) {
+        int block = phi.getBlock();
+        if (block == 0) {
+            // the entry also receives the initial values, which are not phi operands
+            setOverdefined(phi.getValue());
+            return;
+        }
+
+        int[] predecessors = cfg.getPredecessors(block);
+        int newState = UNDEFINED;
+        int newConstant = 0;
+        for (int k = 0; k < predecessors.length; k++) {
+            if (!isExecutableEdge(predecessors[k], block)) continue;
+            int operand = phi.getOperand(k);
+            if (operand < 0 || state[operand] == OVERDEFINED) {
+                newState = OVERDEFINED;
+                break;
+            }
+            if (state[operand] == CONSTANT) {
+                if (newState == CONSTANT && newConstant != constant[operand]) {
+                    newState = OVERDEFINED;
+                    break;
+                }
+                newState = CONSTANT;
+                newConstant = constant[operand];
+            }
+        }
+        update(phi.getValue(), newState, newConstant);
+    }
+
+    private boolean isExecutableEdge(int from, int to) {
+        int[] successors = cfg.getSuccessors(from);
+        for (int k = 0; k < successors.length; k++) {
+            if (successors[k] == to) return executableEdge[from][k];
+        }
+        return false;
+    }
+
+    private void visitInstruction(int instrNr) {
+        Instruction instruction = instructions.get(instrNr);
+
+        int definedValue = ssa.getDefinedValue(instrNr);
+        if (definedValue >= 0) {
+            AssignInstruction assign = (AssignInstruction) instruction;
+            ElementType type = assign.getDest().getType().getTypeOfElement();
+            if (type != ElementType.INT32 && type != ElementType.BOOLEAN) {
+                setOverdefined(definedValue);
+                return;
+            }
+            long result = evaluate(instrNr, assign.getRhs());
+            update(definedValue, stateOf(result), (int) result);
+            return;
+        }
+
+        if (instruction instanceof CondBranchInstruction branch) {
+            int block = cfg.getBlockOf(instrNr);
+            long result = evaluate(instrNr, branch.getCondition());
+            int target = cfg.getLabelBlock(branch.getLabel());
+            if (stateOf(result) == OVERDEFINED) {
+                for (int s : cfg.getSuccessors(block)) {
+                    flowWorklist.add(new int[]{block, s});
+                }
+            } else if (stateOf(result) == CONSTANT) {
+                int next = (int) result != 0 ? target : getFallthrough(block, target);
+                if (next >= 0) flowWorklist.add(new int[]{block, next});
+            }
+        }
+    }
+
+    private int getFallthrough(int block, int target) {
+        for (int s : cfg.getSuccessors(block)) {
+            if (s != target) return s;
+        }
+        // the branch target is also the next block
+        return cfg.getSuccessors(block).length > 0 ? target : -1;
+    }
+
+    // evaluation results: a constant int, or one of these two markers
+    private static final long UNDEFINED_RESULT = Long.MAX_VALUE;
+    private static final long OVERDEFINED_RESULT = Long.MIN_VALUE;
+
+    private static int stateOf(long result) {
+        if (result == UNDEFINED_RESULT) return UNDEFINED;
+        if (result == OVERDEFINED_RESULT) return OVERDEFINED;
+        return CONSTANT;
+    }
+
+    private long evaluate(int instrNr, Instruction instruction) {
+        if (instruction instanceof SingleOpInstruction singleOp) {
+            return evaluate(instrNr, singleOp.getSingleOperand());
+        }
+        if (instruction instanceof UnaryOpInstruction unaryOp) {
+            long operand = evaluate(instrNr, unaryOp.getOperand());
+            if (stateOf(operand) != CONSTANT) return operand;
+            return switch (unaryOp.getOperation().getOpType()) {
+                case NOT, NOTB -> operand == 0 ? 1 : 0;
+                default -> OVERDEFINED_RESULT;
+            };
+        }
+        if (instruction instanceof BinaryOpInstruction binaryOp) {
+            long left = evaluate(instrNr, binaryOp.getLeftOperand());
+            long right = evaluate(instrNr, binaryOp.getRightOperand());
+            if (left == OVERDEFINED_RESULT || right == OVERDEFINED_RESULT) return OVERDEFINED_RESULT;
+            if (left == UNDEFINED_RESULT || right == UNDEFINED_RESULT) return UNDEFINED_RESULT;
+            return evaluate(binaryOp.getOperation().getOpType(), (int) left, (int) right);
+        }
+        // calls, field and array accesses
+        return OVERDEFINED_RESULT;
+    }
+
+    private long evaluate(int instrNr, Element element) {
+        if (element instanceof LiteralElement literal) {
+            try {
+                return Integer.parseInt(literal.getLiteral());
+            } catch (NumberFormatException e) {
+                return OVERDEFINED_RESULT;
+            }
+        }
+        if (element instanceof ArrayOperand || !(element instanceof Operand operand)) {
+            return OVERDEFINED_RESULT;
+        }
+        int variable = ssa.getLiveness().getVariables().indexOf(operand.getName());
+        Integer value = variable < 0 ? null : ssa.getUsedValues(instrNr).get(variable);
+        if (value == null) return OVERDEFINED_RESULT;     // parameters, fields and "this"
+        return switch (state[value]) {
+            case UNDEFINED -> UNDEFINED_RESULT;
+            case CONSTANT -> constant[value];
+            default -> OVERDEFINED_RESULT;
+        };
+    }
+
+    private static long evaluate(OperationType operation, int left, int right) {
+        return switch (operation) {
+            case ADD -> left + right;
+            case SUB -> left - right;
+            case MUL -> left * right;
+            case DIV -> right == 0 ? OVERDEFINED_RESULT : left / right;   // the exception happens at run time
+            case AND, ANDB -> (left != 0 && right != 0) ? 1 : 0;
+            case OR, ORB -> (left != 0 || right != 0) ? 1 : 0;
+            case LTH -> left < right ? 1 : 0;
+            case GTH -> left > right ? 1 : 0;
+            case LTE -> left <= right ? 1 : 0;
+            case GTE -> left >= right ? 1 : 0;
+            case EQ -> left == right ? 1 : 0;
+            case NEQ -> left != right ? 1 : 0;
+            default -> OVERDEFINED_RESULT;
+        };
+    }
+
+    private void setOverdefined(int value) {
+        update(value, OVERDEFINED, 0);
+    }
+
+    /**
+     * Moves the value down the lattice, queueing its readers if it changed.
+     */
+    private void update(int value, int newState, int newConstant) {
+        if (newState == CONSTANT && state[value] == CONSTANT && constant[value] != newConstant) {
+            newState = OVERDEFINED;
+        }
+        if (newState <= state[value]) return;
+        state[value] = newState;
+        constant[value] = newConstant;
+        ssaWorklist.add(value);
+    }
+
+    private void rewrite(Method method) {
+        List<String> variables = ssa.getLiveness().getVariables();
+        boolean[] needed = findNeededValues();
+
+        Instruction[] replacement = new Instruction[instructions.size()];
+        boolean[] removed = new boolean[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            if (!executableBlock[cfg.getBlockOf(i)]) {
+                removed[i] = true;
+                continue;
+            }
+
+            Instruction instruction = instructions.get(i);
+            int definedValue = ssa.getDefinedValue(i);
+            if (definedValue >= 0 && state[definedValue] == CONSTANT && !needed[definedValue]) {
+                removed[i] = true;
+                continue;
+            }
+
+            if (instruction instanceof CondBranchInstruction branch) {
+                long condition = evaluate(i, branch.getCondition());
+                if (stateOf(condition) == CONSTANT) {
+                    branchesFolded++;
+                    if (condition != 0) {
+                        replacement[i] = new GotoInstruction(branch.getLabel());
+                    } else {
+                        removed[i] = true;
+                    }
+                    continue;
+                }
+            }
+
+            Map<Integer, Integer> usedValues = ssa.getUsedValues(i);
+            OllirMethodUtils.mapOperands(instruction, element -> {
+                if (!(element instanceof Operand operand)) return element;
+                Integer value = usedValues.get(variables.indexOf(operand.getName()));
+                if (value == null || state[value] != CONSTANT) return element;
+                literalsPropagated++;
+                return new LiteralElement(String.valueOf(constant[value]), operand.getType());
+            });
+        }
+
+        for (int i = instructions.size() - 1; i >= 0; i--) {
+            if (removed[i]) {
+                OllirMethodUtils.removeInstruction(method, i);
+                instructionsRemoved++;
+            } else if (replacement[i] != null) {
+                OllirMethodUtils.replaceInstruction(method, i, replacement[i]);
+            }
+        }
+    }
+
+    /**
+     * A value must still be stored if it is not constant or if a phi that is not constant reads it, since the
+     * variable then holds different values depending on the path.
+     */
+    private boolean[] findNeededValues() {
+        boolean[] needed = new boolean[ssa.getNumValues()];
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int value = 0; value < needed.length; value++) {
+            if (state[value] != CONSTANT) {
+                needed[value] = true;
+                worklist.add(value);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            SsaForm.Phi phi = ssa.getDefiningPhi(worklist.poll());
+            if (phi == null || !executableBlock[phi.getBlock()]) continue;
+            for (int k = 0; k < phi.getNumOperands(); k++) {
+                int operand = phi.getOperand(k);
+                if (operand >= 0 && !needed[operand]) {
+                    needed[operand] = true;
+                    worklist.add(operand);
+                }
+            }
+        }
+        return needed;
+    }
+}
@@ -0,0 +1,267 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import java.util.*;
+
+/**
+ * Static single assignment view of an OLLIR method, built over its liveness analysis.
+ * <p>
+ * The instructions are not rewritten: every definition of a local (and every phi) becomes a numbered value,
+ * and each use of a local in an instruction is mapped to the value that reaches it. Phis are placed at the
+ * iterated dominance frontier of the definitions, only for variables that are live at the join (pruned SSA).
+ * Each variable also has an entry value, for what it holds when the method starts.
+ */
+public class SsaForm {
+
+    public static class Phi {
+        private final int variable;
+        private final int block;
+        private final int value;
+        private final int[] operands;   // value coming from each predecessor of the block, -1 if unknown
+
+        private Phi(int variable, int block, int value, int nrPredecessors) {
+            this.variable = variable;
+            this.block = block;
+            this.value = value;
+            this.operands = new int[nrPredecessors];
+            Arrays.fill(operands, -1);
+        }
+
+        public int getVariable() {
+            return variable;
+        }
+
+        public int getBlock() {
+            return block;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        /**
+         * @return the value that comes from the i-th predecessor of the block
+         */
+        public int getOperand(int predecessorIndex) {
+            return operands[predecessorIndex];
+        }
+
+        public int getNumOperands() {
+            return operands.length;
+        }
+    }
+
+    private final LivenessAnalysisResult liveness;
+    private final ControlFlowGraph cfg;
+    private final DominatorTree dominatorTree;
+
+    private final List<List<Phi>> phis = new ArrayList<>();     // for each block
+    private final List<Integer> valueVariable = new ArrayList<>();
+    private final List<Integer> valueInstruction = new ArrayList<>();     // -1 for phis and entry values
+    private final List<Phi> valuePhi = new ArrayList<>();
+    private final int[] entryValues;
+    private final int[] definedValue;       // value defined by each instruction, or -1
+    private final List<Map<Integer, Integer>> usedValues;   // for each instruction, variable -> value it reads
+
+    public SsaForm(LivenessAnalysisResult liveness) {
+        this.liveness = liveness;
+        this.cfg = liveness.getControlFlowGraph();
+        this.dominatorTree = new DominatorTree(cfg);
+
+        int nrVariables = liveness.getNumVariables();
+        int nrInstructions = cfg.getInstructions().size();
+        this.entryValues = new int[nrVariables];
+        for (int var = 0; var < nrVariables; var++) {
+            entryValues[var] = newValue(var, -1, null);
+        }
+        this.definedValue = new int[nrInstructions];
+        Arrays.fill(definedValue, -1);
+        this.usedValues = new ArrayList<>(Collections.nCopies(nrInstructions, null));
+
+        placePhis();
+        rename();
+    }
+
+    private int newValue(int variable, int instruction, Phi phi) {
+        valueVariable.add(variable);
+        valueInstruction.add(instruction);
+        valuePhi.add(phi);
+        return valueVariable.size() - 1;
+    }
+
+    private void placePhis() {
+        int nrBlocks = cfg.getNumBlocks();
+        for (int b = 0; b < nrBlocks; b++) {
+            phis.add(new ArrayList<>());
+        }
+
+        // blocks that define each variable
+        List<List<Integer>> defBlocks = new ArrayList<>();
+        for (int var = 0; var < liveness.getNumVariables(); var++) {
+            defBlocks.add(new ArrayList<>());
+        }
+        for (int b = 0; b < nrBlocks; b++) {
+            if (!dominatorTree.isReachable(b)) continue;
+            for (int i = cfg.getBlockStart(b); i < cfg.getBlockEnd(b); i++) {
+                BitSet defined = liveness.getDefinedBits(i);
+                for (int var = defined.nextSetBit(0); var >= 0; var = defined.nextSetBit(var + 1)) {
+                    List<Integer> blocks = defBlocks.get(var);
+                    if (blocks.isEmpty() || blocks.get(blocks.size() - 1) != b) blocks.add(b);
+                }
+            }
+        }
+
+        int[] hasPhi = new int[nrBlocks];
+        int[] inWorklist = new int[nrBlocks];
+        Arrays.fill(hasPhi, -1);
+        Arrays.fill(inWorklist, -1);
+        ArrayDeque<Integer> worklist = new ArrayDeque<>();
+        for (int var = 0; var < liveness.getNumVariables(); var++) {
+            for (int b : defBlocks.get(var)) {
+                inWorklist[b] = var;
+                worklist.add(b);
+            }
+            while (!worklist.isEmpty()) {
+                int b = worklist.poll();
+                for (int join : dominatorTree.getDominanceFrontier(b)) {
+                    if (hasPhi[join] == var) continue;
+                    hasPhi[join] = var;
+                    // pruned: a variable that is dead at the join needs no phi
+                    if (!liveness.getLiveInBits(cfg.getBlockStart(join)).get(var)) continue;
+
+                    Phi phi = new Phi(var, join, valueVariable.size(), cfg.getPredecessors(join).length);
+                    newValue(var, -1, phi);
+                    phis.get(join).add(phi);
+                    if (inWorklist[join] != var) {
+                        inWorklist[join] = var;
+                        worklist.add(join);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks the dominator tree keeping, for each variable, the value of its closest dominating definition.
+     */
+    private void rename() {
+        if (cfg.getNumBlocks() == 0) return;
+
+        int[] current = entryValues.clone();
+        // each frame saves the values that were current before entering the block
+        ArrayDeque<int[]> saved = new ArrayDeque<>();
+        ArrayDeque<int[]> stack = new ArrayDeque<>();   // {block, next child index}
+        stack.push(new int[]{0, -1});
+        while (!stack.isEmpty()) {
+            int[] frame = stack.peek();
+            int b = frame[0];
+            if (frame[1] < 0) {
+                saved.push(current.clone());
+                renameBlock(b, current);
+                frame[1] = 0;
+            }
+            int[] children = dominatorTree.getChildren(b);
+            if (frame[1] < children.length) {
+                stack.push(new int[]{children[frame[1]++], -1});
+            } else {
+                stack.pop();
+                current = saved.pop();
+            }
+        }
+    }
+
+    private void renameBlock(int b, int[] current) {
+        for (Phi phi : phis.get(b)) {
+            current[phi.getVariable()] = phi.getValue();
+        }
+
+        for (int i = cfg.getBlockStart(b); i < cfg.getBlockEnd(b); i++) {
+            BitSet used = liveness.getUsedBits(i);
+            Map<Integer, Integer> values = new HashMap<>();
+            for (int var = used.nextSetBit(0); var >= 0; var = used.nextSetBit(var + 1)) {
+                values.put(var, current[var]);
+            }
+            usedValues.set(i, values);
+
+            BitSet defined = liveness.getDefinedBits(i);
+            for (int var = defined.nextSetBit(0); var >= 0; var = defined.nextSetBit(var + 1)) {
+                definedValue[i] = newValue(var, i, null);
+                current[var] = definedValue[i];
+            }
+        }
+
+        for (int s : cfg.getSuccessors(b)) {
+            int predecessorIndex = getPredecessorIndex(s, b);
+            for (Phi phi : phis.get(s)) {
+                phi.operands[predecessorIndex] = current[phi.getVariable()];
+            }
+        }
+    }
+
+    /**
+     * @return the position of the predecessor in the predecessors of the block
+     */
+    public int getPredecessorIndex(int block, int predecessor) {
+        int[] predecessors = cfg.getPredecessors(block);
+        for (int i = 0; i < predecessors.length; i++) {
+            if (predecessors[i] == predecessor) return i;
+        }
+        throw new IllegalArgumentException("Block " + predecessor + " is not a predecessor of block " + block);
+    }
+
+    public LivenessAnalysisResult getLiveness() {
+        return liveness;
+    }
+
+    public ControlFlowGraph getControlFlowGraph() {
+        return cfg;
+    }
+
+    public DominatorTree getDominatorTree() {
+        return dominatorTree;
+    }
+
+    public int getNumValues() {
+        return valueVariable.size();
+    }
+
+    public int getVariable(int value) {
+        return valueVariable.get(value);
+    }
+
+    /**
+     * @return the instruction that defines the value, or -1 for phis and entry values
+     */
+    public int getDefiningInstruction(int value) {
+        return valueInstruction.get(value);
+    }
+
+    /**
+     * @return the phi that defines the value, or null
+     */
+    public Phi getDefiningPhi(int value) {
+        return valuePhi.get(value);
+    }
+
+    public boolean isEntryValue(int value) {
+        return value < entryValues.length;
+    }
+
+    public List<Phi> getPhis(int block) {
+        return phis.get(block);
+    }
+
+    /**
+     * @return the value defined by the instruction, or -1 if it does not define a local
+     */
+    public int getDefinedValue(int instrNr) {
+        return definedValue[instrNr];
+    }
+
+    /**
+     * @return variable -> value for every local read by the instruction (empty if the instruction is unreachable)
+     */
+    public Map<Integer, Integer> getUsedValues(int instrNr) {
+        var values = usedValues.get(instrNr);
+        return values == null ? Map.of() : values;
+    }
+}
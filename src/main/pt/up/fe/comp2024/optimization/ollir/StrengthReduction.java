@@ -0,0 +1,207 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Algebraic simplification and strength reduction of the assignments of each method.
+ * <p>
+ * Operations with a neutral or absorbing literal (x + 0, x * 1, x * 0, x / 1, b &&.bool 1, ...) and between
+ * a variable and itself (x - x, x < x) become copies. Multiplications by a power of two become left shifts,
+ * and divisions by a power of two become an arithmetic shift, after adding 2^k - 1 to negative dividends
+ * so that the result is still rounded towards zero:
+ * <pre>
+ *     x / 2^k  =  (x + ((x >> 31) >>> (32 - k))) >> k
+ * </pre>
+ * OLLIR operands are variables, literals or array elements, and only the last (which may throw) are never dropped.
+ */
+public class StrengthReduction {
+    private static final Type INT_TYPE = new Type(ElementType.INT32);
+    private static final Type BOOLEAN_TYPE = new Type(ElementType.BOOLEAN);
+
+    private final OllirResult ollirResult;
+
+    private Method method;
+    private int simplifications = 0;
+    private int shifts = 0;
+
+    public StrengthReduction(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    public int getSimplifications() {
+        return simplifications;
+    }
+
+    public int getShifts() {
+        return shifts;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            this.method = method;
+            List<Instruction> instructions = method.getInstructions();
+            // backwards, so that inserted instructions are not visited
+            for (int i = instructions.size() - 1; i >= 0; i--) {
+                if (instructions.get(i) instanceof AssignInstruction assign
+                        && assign.getRhs() instanceof BinaryOpInstruction binaryOp) {
+                    reduce(i, assign, binaryOp);
+                }
+            }
+        }
+        return ollirResult;
+    }
+
+    private void reduce(int index, AssignInstruction assign, BinaryOpInstruction binaryOp) {
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+        Integer leftInt = intValue(left), rightInt = intValue(right);
+
+        Element copy = switch (binaryOp.getOperation().getOpType()) {
+            case ADD -> isInt(rightInt, 0) ? left : isInt(leftInt, 0) ? right : null;
+            case SUB -> isInt(rightInt, 0) ? left : sameOperand(left, right) ? intLiteral(0) : null;
+            case MUL -> isInt(rightInt, 1) ? left : isInt(leftInt, 1) ? right
+                    : isInt(rightInt, 0) && !isArrayElement(left) || isInt(leftInt, 0) && !isArrayElement(right)
+                    ? intLiteral(0) : null;
+            case DIV -> isInt(rightInt, 1) ? left : null;
+            case ANDB -> isTrue(right) ? left : isTrue(left) ? right
+                    : isFalse(left) && !isArrayElement(right) || isFalse(right) && !isArrayElement(left)
+                    ? booleanLiteral(false) : sameOperand(left, right) ? left : null;
+            case LTH -> sameOperand(left, right) ? booleanLiteral(false) : null;
+            default -> null;
+        };
+        if (copy != null) {
+            replaceRhs(index, assign, new SingleOpInstruction(copy));
+            simplifications++;
+            return;
+        }
+
+        OperationType opType = binaryOp.getOperation().getOpType();
+        if (opType == OperationType.MUL) {
+            int exponent = log2(rightInt);
+            Element factor = left;
+            if (exponent < 0) {
+                exponent = log2(leftInt);
+                factor = right;
+            }
+            if (exponent > 0) {
+                replaceRhs(index, assign, binary(factor, OperationType.SHL, intLiteral(exponent)));
+                shifts++;
+            }
+        } else if (opType == OperationType.DIV) {
+            int exponent = log2(rightInt);
+            if (exponent > 0) {
+                divideByPowerOfTwo(index, assign, left, exponent);
+                shifts++;
+            }
+        }
+    }
+
+    /**
+     * Rounds towards zero like idiv: a negative dividend is first increased by 2^k - 1.
+     */
+    private void divideByPowerOfTwo(int index, AssignInstruction assign, Element dividend, int exponent) {
+        List<Instruction> inserted = new ArrayList<>();
+        Element sign;
+        if (exponent == 1) {
+            // (x >>> 31) is already 1 for negative dividends
+            sign = dividend;
+        } else {
+            Operand signMask = newTemp();
+            inserted.add(assignTo(signMask, binary(dividend, OperationType.SHR, intLiteral(31))));
+            sign = signMask;
+        }
+        Operand bias = newTemp();
+        inserted.add(assignTo(bias, binary(sign, OperationType.SHRR, intLiteral(32 - exponent))));
+        Operand biased = newTemp();
+        inserted.add(assignTo(biased, binary(dividend, OperationType.ADD, bias)));
+
+        AssignInstruction reduced = replaceRhs(index, assign, binary(biased, OperationType.SHR, intLiteral(exponent)));
+        OllirMethodUtils.insertInstructions(method, index, inserted);
+        OllirMethodUtils.moveLabels(method, reduced, inserted.get(0));
+    }
+
+    private AssignInstruction replaceRhs(int index, AssignInstruction assign, Instruction rhs) {
+        AssignInstruction replacement = new AssignInstruction(assign.getDest(), assign.getTypeOfAssign(), rhs);
+        OllirMethodUtils.replaceInstruction(method, index, replacement);
+        return replacement;
+    }
+
+    private static AssignInstruction assignTo(Operand dest, Instruction rhs) {
+        return new AssignInstruction(dest, INT_TYPE, rhs);
+    }
+
+    private static BinaryOpInstruction binary(Element left, OperationType opType, Element right) {
+        return new BinaryOpInstruction(left, new Operation(opType, INT_TYPE), right);
+    }
+
+    /**
+     * Adds a new int local to the method, with the next free register.
+     */
+    private Operand newTemp() {
+        var varTable = method.getVarTable();
+        int register = 0;
+        for (Descriptor descriptor : varTable.values()) {
+            register = Math.max(register, descriptor.getVirtualReg() + 1);
+        }
+        int number = varTable.size();
+        while (varTable.containsKey("sr" + number)) {
+            number++;
+        }
+        String name = "sr" + number;
+        varTable.put(name, new Descriptor(VarScope.LOCAL, register, INT_TYPE));
+        return new Operand(name, INT_TYPE);
+    }
+
+    private static LiteralElement intLiteral(int value) {
+        return new LiteralElement(String.valueOf(value), INT_TYPE);
+    }
+
+    private static LiteralElement booleanLiteral(boolean value) {
+        return new LiteralElement(value ? "1" : "0", BOOLEAN_TYPE);
+    }
+
+    private static boolean isInt(Integer value, int expected) {
+        return value != null && value == expected;
+    }
+
+    private static Integer intValue(Element element) {
+        if (element instanceof LiteralElement literal && literal.getType().getTypeOfElement() == ElementType.INT32) {
+            return Integer.parseInt(literal.getLiteral());
+        }
+        return null;
+    }
+
+    private static boolean isTrue(Element element) {
+        return element instanceof LiteralElement literal && literal.getType().getTypeOfElement() == ElementType.BOOLEAN
+                && literal.getLiteral().equals("1");
+    }
+
+    private static boolean isFalse(Element element) {
+        return element instanceof LiteralElement literal && literal.getType().getTypeOfElement() == ElementType.BOOLEAN
+                && literal.getLiteral().equals("0");
+    }
+
+    private static boolean isArrayElement(Element element) {
+        return element instanceof ArrayOperand;
+    }
+
+    /**
+     * @return whether both operands are the same variable (array elements may differ between reads)
+     */
+    private static boolean sameOperand(Element left, Element right) {
+        return left instanceof Operand l && right instanceof Operand r && !isArrayElement(l) && !isArrayElement(r)
+                && l.getName().equals(r.getName());
+    }
+
+    /**
+     * @return k if the value is 2^k (with 0 < k < 31), or -1
+     */
+    private static int log2(Integer value) {
+        if (value == null || value <= 1 || Integer.bitCount(value) != 1) return -1;
+        return Integer.numberOfTrailingZeros(value);
+    }
+}
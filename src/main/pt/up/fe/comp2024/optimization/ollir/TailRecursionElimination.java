@@ -0,0 +1,197 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns recursive calls in tail position into a loop: the arguments are assigned to the parameters and the
+ * method jumps back to its first instruction.
+ * <p>
+ * A call is in tail position if its result is returned unchanged: only copies of it and jumps may come between
+ * the call and the return (for void methods, only jumps). Only calls that would run the same method on the
+ * same object are rewritten: invokevirtual on "this" (if the class extends nothing, so no subclass can
+ * override the method) and invokestatic of a static method on its own class.
+ * Every local is written before it is read, so reusing the frame is the same as starting a new one.
+ */
+public class TailRecursionElimination {
+    private static final String ENTRY_LABEL = "tail_call_entry";
+
+    private final OllirResult ollirResult;
+
+    private Method method;
+    private int tailCallsEliminated = 0;
+
+    public TailRecursionElimination(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    public int getTailCallsEliminated() {
+        return tailCallsEliminated;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            if (method.isConstructMethod() || method.getInstructions().isEmpty()) continue;
+            this.method = method;
+            ControlFlowGraph cfg = new ControlFlowGraph(method);
+            List<Instruction> instructions = method.getInstructions();
+
+            List<Integer> tailCalls = new ArrayList<>();
+            for (int i = 0; i < instructions.size(); i++) {
+                if (isTailRecursiveCall(i, cfg)) tailCalls.add(i);
+            }
+            // backwards, so that the indexes of the remaining calls do not change
+            for (int t = tailCalls.size() - 1; t >= 0; t--) {
+                replaceByJump(tailCalls.get(t));
+                tailCallsEliminated++;
+            }
+        }
+        return ollirResult;
+    }
+
+    private boolean isTailRecursiveCall(int index, ControlFlowGraph cfg) {
+        Instruction instruction = method.getInstructions().get(index);
+        CallInstruction call;
+        String holder = null;       // variable that holds the result of the call
+        if (instruction instanceof AssignInstruction assign && assign.getRhs() instanceof CallInstruction rhsCall) {
+            if (assign.getDest() instanceof ArrayOperand || !(assign.getDest() instanceof Operand dest)) return false;
+            call = rhsCall;
+            holder = dest.getName();
+        } else if (instruction instanceof CallInstruction standalone) {
+            call = standalone;
+        } else {
+            return false;
+        }
+        return isSelfCall(call) && returnsResult(index + 1, holder, cfg);
+    }
+
+    private boolean isSelfCall(CallInstruction call) {
+        if (!(call.getMethodNameTry().orElse(null) instanceof LiteralElement name)
+                || !name.getLiteral().replace("\"", "").equals(method.getMethodName())
+                || call.getArguments().size() != method.getParams().size()) {
+            return false;
+        }
+        if (!(call.getCaller() instanceof Operand receiver)) return false;
+        ClassUnit ollirClass = method.getOllirClass();
+        if (call.getInvocationType() == CallType.invokevirtual) {
+            return !method.isStaticMethod() && receiver.getName().equals("this") && ollirClass.getSuperClass() == null;
+        }
+        return call.getInvocationType() == CallType.invokestatic && method.isStaticMethod()
+                && receiver.getName().equals(ollirClass.getClassName());
+    }
+
+    /**
+     * @return whether the method returns the holder (or nothing, if it is null) from the given instruction,
+     * following only copies of the holder and jumps
+     */
+    private boolean returnsResult(int index, String holder, ControlFlowGraph cfg) {
+        List<Instruction> instructions = method.getInstructions();
+        // a chain of jumps longer than the method would be an endless loop
+        for (int steps = 0; steps < instructions.size() && index < instructions.size(); steps++) {
+            Instruction instruction = instructions.get(index);
+            if (instruction instanceof ReturnInstruction ret) {
+                if (!ret.hasReturnValue()) return holder == null;
+                return holder != null && ret.getOperand() instanceof Operand operand
+                        && !(operand instanceof ArrayOperand) && operand.getName().equals(holder);
+            } else if (instruction instanceof GotoInstruction gotoInstruction) {
+                index = cfg.getLabelIndex(gotoInstruction.getLabel());
+            } else if (holder != null && instruction instanceof AssignInstruction assign
+                    && !(assign.getDest() instanceof ArrayOperand) && assign.getDest() instanceof Operand dest
+                    && assign.getRhs() instanceof SingleOpInstruction singleOp
+                    && singleOp.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                    && source.getName().equals(holder)) {
+                holder = dest.getName();
+                index++;
+            } else {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the call by the assignment of its arguments to the parameters and a jump to the start of the method.
+     */
+    private void replaceByJump(int index) {
+        List<Instruction> instructions = method.getInstructions();
+        Instruction site = instructions.get(index);
+        CallInstruction call = site instanceof AssignInstruction assign ? (CallInstruction) assign.getRhs()
+                : (CallInstruction) site;
+
+        List<Operand> params = new ArrayList<>();
+        List<Element> arguments = new ArrayList<>();
+        for (int p = 0; p < method.getParams().size(); p++) {
+            Operand param = (Operand) method.getParams().get(p);
+            Element argument = call.getArguments().get(p);
+            // passing a parameter to itself needs no assignment
+            if (argument instanceof Operand operand && !(operand instanceof ArrayOperand)
+                    && operand.getName().equals(param.getName())) continue;
+            params.add(param);
+            arguments.add(argument);
+        }
+
+        // if an argument reads a parameter that was already assigned, all arguments go through temporaries first
+        boolean needsTemps = false;
+        for (int a = 0; a < arguments.size() && !needsTemps; a++) {
+            for (int p = 0; p < a; p++) {
+                if (reads(arguments.get(a), params.get(p).getName())) needsTemps = true;
+            }
+        }
+
+        List<Instruction> replacement = new ArrayList<>();
+        if (needsTemps) {
+            List<Operand> temps = new ArrayList<>();
+            for (int a = 0; a < arguments.size(); a++) {
+                Operand temp = newTemp(params.get(a).getType());
+                temps.add(temp);
+                replacement.add(assign(temp, arguments.get(a)));
+            }
+            arguments = new ArrayList<>(temps);
+        }
+        for (int a = 0; a < arguments.size(); a++) {
+            Operand param = params.get(a);
+            replacement.add(assign(new Operand(param.getName(), param.getType()), arguments.get(a)));
+        }
+        replacement.add(new GotoInstruction(ENTRY_LABEL));
+
+        if (!method.getLabels().containsKey(ENTRY_LABEL)) {
+            method.getLabels().put(ENTRY_LABEL, instructions.get(0));
+        }
+        instructions.remove(index);
+        instructions.addAll(index, replacement);
+        OllirMethodUtils.moveLabels(method, site, replacement.get(0));
+    }
+
+    private static boolean reads(Element element, String name) {
+        if (element instanceof ArrayOperand arrayOperand) {
+            return arrayOperand.getName().equals(name)
+                    || arrayOperand.getIndexOperands().stream().anyMatch(index -> reads(index, name));
+        }
+        return element instanceof Operand operand && operand.getName().equals(name);
+    }
+
+    private static AssignInstruction assign(Operand dest, Element value) {
+        return new AssignInstruction(dest, dest.getType(), new SingleOpInstruction(value));
+    }
+
+    /**
+     * Adds a new local to the method, with the next free register.
+     */
+    private Operand newTemp(Type type) {
+        var varTable = method.getVarTable();
+        int register = 0;
+        for (Descriptor descriptor : varTable.values()) {
+            register = Math.max(register, descriptor.getVirtualReg() + 1);
+        }
+        int number = varTable.size();
+        while (varTable.containsKey("tail" + number)) {
+            number++;
+        }
+        String name = "tail" + number;
+        varTable.put(name, new Descriptor(VarScope.LOCAL, register, type));
+        return new Operand(name, type);
+    }
+}
@@ -0,0 +1,90 @@
+package pt.up.fe.comp2024.optimization.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+
+import java.util.*;
+
+/**
+ * Removes the code of a method that can never run or does nothing: the blocks that cannot be reached from the
+ * entry (e.g. after a return or an unconditional jump), jumps to the instruction that follows them anyway,
+ * and labels that are no longer the target of any jump.
+ */
+public class UnreachableCodeElimination {
+    private final OllirResult ollirResult;
+
+    private int instructionsRemoved = 0;
+    private int labelsRemoved = 0;
+
+    public UnreachableCodeElimination(OllirResult ollirResult) {
+        this.ollirResult = ollirResult;
+    }
+
+    public int getInstructionsRemoved() {
+        return instructionsRemoved;
+    }
+
+    public int getLabelsRemoved() {
+        return labelsRemoved;
+    }
+
+    public OllirResult apply() {
+        for (Method method : ollirResult.getOllirClass().getMethods()) {
+            if (method.getInstructions().isEmpty()) continue;
+            removeUnreachableBlocks(method);
+            removeJumpsToNext(method);
+            removeUnusedLabels(method);
+        }
+        return ollirResult;
+    }
+
+    private void removeUnreachableBlocks(Method method) {
+        ControlFlowGraph cfg = new ControlFlowGraph(method);
+        DominatorTree dominatorTree = new DominatorTree(cfg);
+        for (int b = cfg.getNumBlocks() - 1; b >= 0; b--) {
+            if (dominatorTree.isReachable(b)) continue;
+            for (int i = cfg.getBlockEnd(b) - 1; i >= cfg.getBlockStart(b); i--) {
+                OllirMethodUtils.removeInstruction(method, i);
+                instructionsRemoved++;
+            }
+        }
+    }
+
+    /**
+     * Removes 'goto L' and 'if (...) goto L' when L labels the next instruction (conditions have no side effects).
+     */
+    private void removeJumpsToNext(Method method) {
+        List<Instruction> instructions = method.getInstructions();
+        var labels = method.getLabels();
+        for (int i = instructions.size() - 2; i >= 0; i--) {
+            Instruction instruction = instructions.get(i);
+            String target;
+            if (instruction instanceof GotoInstruction gotoInstruction) {
+                target = gotoInstruction.getLabel();
+            } else if (instruction instanceof CondBranchInstruction branch) {
+                target = branch.getLabel();
+            } else {
+                continue;
+            }
+            if (labels.get(target) == instructions.get(i + 1)) {
+                OllirMethodUtils.removeInstruction(method, i);
+                instructionsRemoved++;
+            }
+        }
+    }
+
+    private void removeUnusedLabels(Method method) {
+        Set<String> targets = new HashSet<>();
+        for (Instruction instruction : method.getInstructions()) {
+            if (instruction instanceof GotoInstruction gotoInstruction) {
+                targets.add(gotoInstruction.getLabel());
+            } else if (instruction instanceof CondBranchInstruction branch) {
+                targets.add(branch.getLabel());
+            }
+        }
+        var labels = method.getLabels();
+        int before = labels.size();
+        labels.keySet().retainAll(targets);
+        labelsRemoved += before - labels.size();
+    }
+}
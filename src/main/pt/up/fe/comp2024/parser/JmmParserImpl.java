@@ -8,8 +8,12 @@ import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
 import pt.up.fe.comp.jmm.report.Stage;
 
+import pt.up.fe.specs.util.SpecsSystem;
+
 import java.util.Collections;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Copyright 2022 SPeCS.
@@ -26,6 +30,10 @@ import java.util.Map;
 
 public class JmmParserImpl implements JmmParser {
 
+    // AntlrParser finds the starting rule through a reflection cache that is not thread-safe. Resolving each rule
+    // once, under a lock, means that concurrent parses only read from that cache.
+    private static final Set<String> resolvedRules = ConcurrentHashMap.newKeySet();
+
     @Override
     public String getDefaultRule() {
         return "program";
@@ -43,6 +51,7 @@ public class JmmParserImpl implements JmmParser {
             var tokens = new CommonTokenStream(lex);
             // Transforms tokens into a parse tree
             var parser = new pt.up.fe.comp2024.JavammParser(tokens);
+            resolveRule(startingRule);
 
 
             // Convert ANTLR CST to JmmNode AST
@@ -53,4 +62,15 @@ public class JmmParserImpl implements JmmParser {
             return JmmParserResult.newError(Report.newError(Stage.SYNTATIC, -1, -1, "Exception during parsing", e), config);
         }
     }
+
+    private static void resolveRule(String rule) {
+        if (resolvedRules.contains(rule)) {
+            return;
+        }
+
+        synchronized (resolvedRules) {
+            SpecsSystem.getMethod(pt.up.fe.comp2024.JavammParser.class, rule);
+            resolvedRules.add(rule);
+        }
+    }
 }
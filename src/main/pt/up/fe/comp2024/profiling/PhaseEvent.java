@@ -0,0 +1,32 @@
+package pt.up.fe.comp2024.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event emitted for each compiler phase measured by {@link PhaseProfiler}. The duration of the event is the wall
+ * time of the phase.
+ */
+@Name("pt.up.fe.comp2024.Phase")
+@Label("Compiler Phase")
+@Category("Java-- Compiler")
+@Description("A phase of the compilation of a Java-- file")
+class PhaseEvent extends jdk.jfr.Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("File")
+    String file;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+
+    @Label("Allocated")
+    @DataAmount
+    long allocated;
+}
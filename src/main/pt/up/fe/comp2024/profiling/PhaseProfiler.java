@@ -0,0 +1,177 @@
+package pt.up.fe.comp2024.profiling;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records the wall time, CPU time and allocated bytes of the phases of a compilation, and emits a matching JFR event
+ * for each one.
+ * <p>
+ * A profiler is bound to the thread that runs the compilation, so the stages only have to wrap their phases in
+ * {@link #time(String, Supplier)}, which does nothing else when no profiler was started. Phases can be nested, in
+ * which case their names are joined with '/', e.g. "analysis/UndeclaredVariable".
+ */
+public class PhaseProfiler {
+    private static final ThreadLocal<PhaseProfiler> current = new ThreadLocal<>();
+    private static final com.sun.management.ThreadMXBean threadBean =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final String file;
+    private final Deque<String> phases = new ArrayDeque<>();
+    private final Map<String, PhaseTiming> timings = new LinkedHashMap<>();
+
+    private PhaseProfiler(String file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts profiling the compilation of the given file, in the current thread.
+     */
+    public static PhaseProfiler start(String file) {
+        var profiler = new PhaseProfiler(file);
+        current.set(profiler);
+        return profiler;
+    }
+
+    /**
+     * Stops profiling, returning the timings of each phase in the order they started.
+     */
+    public FileTimings stop() {
+        if (current.get() == this) {
+            current.remove();
+        }
+        return new FileTimings(file, new ArrayList<>(timings.values()));
+    }
+
+    public static void time(String phase, Runnable body) {
+        time(phase, () -> {
+            body.run();
+            return null;
+        });
+    }
+
+    public static <T> T time(String phase, Supplier<T> body) {
+        var profiler = current.get();
+        if (profiler == null) {
+            return body.get();
+        }
+
+        return profiler.measure(phase, body);
+    }
+
+    /**
+     * Starts measuring a phase that does not run in one piece, but in many small pieces interleaved with other phases
+     * (e.g. an analysis pass that shares an AST traversal with other passes). Each piece is wrapped in
+     * {@link Interleaved#time(Runnable)}, and {@link Interleaved#end()} adds them up as a single run of the phase. No JFR
+     * event is emitted for these phases, since their time is not contiguous.
+     */
+    public static Interleaved interleaved(String phase) {
+        var profiler = current.get();
+        if (profiler == null) {
+            return new Interleaved(null);
+        }
+
+        return new Interleaved(profiler.timings.computeIfAbsent(profiler.fullPhase(phase), PhaseTiming::new));
+    }
+
+    private String fullPhase(String phase) {
+        return phases.isEmpty() ? phase : phases.peek() + "/" + phase;
+    }
+
+    private <T> T measure(String phase, Supplier<T> body) {
+        String fullPhase = fullPhase(phase);
+        phases.push(fullPhase);
+        var timing = timings.computeIfAbsent(fullPhase, PhaseTiming::new);
+
+        var event = new PhaseEvent();
+        event.begin();
+        long allocatedStart = threadBean.getCurrentThreadAllocatedBytes();
+        long cpuStart = threadBean.getCurrentThreadCpuTime();
+        long wallStart = System.nanoTime();
+        try {
+            return body.get();
+        } finally {
+            long wall = System.nanoTime() - wallStart;
+            long cpu = threadBean.getCurrentThreadCpuTime() - cpuStart;
+            long allocated = threadBean.getCurrentThreadAllocatedBytes() - allocatedStart;
+            phases.pop();
+
+            timing.add(wall, cpu, allocated);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = fullPhase;
+                event.file = file;
+                event.cpuTime = cpu;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * A phase measured in pieces, see {@link #interleaved(String)}.
+     */
+    public static class Interleaved {
+        // null when there is no profiler, in which case nothing is measured
+        private final PhaseTiming timing;
+        private long wallNanos = 0;
+        private long cpuNanos = 0;
+        private long allocatedBytes = 0;
+
+        private Interleaved(PhaseTiming timing) {
+            this.timing = timing;
+        }
+
+        public void time(Runnable body) {
+            if (timing == null) {
+                body.run();
+                return;
+            }
+
+            long allocatedStart = threadBean.getCurrentThreadAllocatedBytes();
+            long cpuStart = threadBean.getCurrentThreadCpuTime();
+            long wallStart = System.nanoTime();
+            try {
+                body.run();
+            } finally {
+                wallNanos += System.nanoTime() - wallStart;
+                cpuNanos += threadBean.getCurrentThreadCpuTime() - cpuStart;
+                allocatedBytes += threadBean.getCurrentThreadAllocatedBytes() - allocatedStart;
+            }
+        }
+
+        public void end() {
+            if (timing != null) {
+                timing.add(wallNanos, cpuNanos, allocatedBytes);
+            }
+        }
+    }
+
+    /**
+     * Timings of every phase of the compilation of a file.
+     */
+    public static class FileTimings {
+        private final String file;
+        private final List<PhaseTiming> phases;
+
+        FileTimings(String file, List<PhaseTiming> phases) {
+            this.file = file;
+            this.phases = phases;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public List<PhaseTiming> getPhases() {
+            return phases;
+        }
+    }
+}
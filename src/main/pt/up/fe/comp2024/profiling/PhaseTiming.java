@@ -0,0 +1,44 @@
+package pt.up.fe.comp2024.profiling;
+
+/**
+ * Time and memory spent in a compiler phase. A phase that runs several times (e.g. in a fixpoint) accumulates the
+ * measurements of every run.
+ */
+public class PhaseTiming {
+    private final String phase;
+    private int count = 0;
+    private long wallNanos = 0;
+    private long cpuNanos = 0;
+    private long allocatedBytes = 0;
+
+    PhaseTiming(String phase) {
+        this.phase = phase;
+    }
+
+    void add(long wallNanos, long cpuNanos, long allocatedBytes) {
+        this.count++;
+        this.wallNanos += wallNanos;
+        this.cpuNanos += cpuNanos;
+        this.allocatedBytes += allocatedBytes;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    public long getCpuNanos() {
+        return cpuNanos;
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+}
@@ -0,0 +1,44 @@
+package pt.up.fe.comp2024.profiling;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Writes the timings of one or more compilations as a JSON report.
+ */
+public class TimingReport {
+
+    public static String toJson(List<PhaseProfiler.FileTimings> fileTimings) {
+        var files = new JsonArray();
+        for (var timings : fileTimings) {
+            var phases = new JsonArray();
+            for (var phase : timings.getPhases()) {
+                var phaseJson = new JsonObject();
+                phaseJson.addProperty("phase", phase.getPhase());
+                phaseJson.addProperty("count", phase.getCount());
+                phaseJson.addProperty("wallNanos", phase.getWallNanos());
+                phaseJson.addProperty("cpuNanos", phase.getCpuNanos());
+                phaseJson.addProperty("allocatedBytes", phase.getAllocatedBytes());
+                phases.add(phaseJson);
+            }
+
+            var fileJson = new JsonObject();
+            fileJson.addProperty("file", timings.getFile());
+            fileJson.add("phases", phases);
+            files.add(fileJson);
+        }
+
+        var report = new JsonObject();
+        report.add("files", files);
+        return new GsonBuilder().setPrettyPrinting().create().toJson(report);
+    }
+
+    public static void write(File reportFile, List<PhaseProfiler.FileTimings> fileTimings) {
+        SpecsIo.write(reportFile, toJson(fileTimings));
+    }
+}
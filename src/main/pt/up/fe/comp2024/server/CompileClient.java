@@ -0,0 +1,65 @@
+package pt.up.fe.comp2024.server;
+
+import pt.up.fe.comp2024.CompilerConfig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Thin client for a {@link CompileServer}.
+ * <p>
+ * A request is a command line ({@code COMPILE} or {@code STATS}), followed by the compiler config as
+ * {@code key=value} lines, ended by an empty line. The response starts with {@code EXIT <code>}, followed by the
+ * output of the compilation.
+ */
+public class CompileClient {
+
+    /**
+     * Forwards the given config to the server and prints its output. If the config has no input file, asks the
+     * server for its latency statistics instead.
+     *
+     * @return the exit code of the compilation
+     */
+    public static int forward(int port, Map<String, String> config, PrintStream out) {
+        Map<String, String> requestConfig = new HashMap<>(config);
+        CompilerConfig.removeClientPort(requestConfig);
+        String command = CompilerConfig.getInputFile(requestConfig).isPresent() ? CompileServer.COMPILE : CompileServer.STATS;
+
+        long start = System.nanoTime();
+        try (var socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            writer.write(command + "\n");
+            for (var entry : requestConfig.entrySet()) {
+                writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+            writer.write("\n");
+            writer.flush();
+
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String status = in.readLine();
+            if (status == null || !status.startsWith(CompileServer.EXIT_CODE)) {
+                throw new RuntimeException("Unexpected response from compile server: " + status);
+            }
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                out.println(line);
+            }
+
+            System.err.printf("Request served in %.2f ms%n", (System.nanoTime() - start) / 1e6);
+            return Integer.parseInt(status.substring(CompileServer.EXIT_CODE.length()).trim());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not connect to compile server on port " + port, e);
+        }
+    }
+}
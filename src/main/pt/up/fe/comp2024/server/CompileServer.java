@@ -0,0 +1,129 @@
+package pt.up.fe.comp2024.server;
+
+import pt.up.fe.comp2024.CompilationPipeline;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.Launcher;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long-lived compile server, listening on a loopback port.
+ * <p>
+ * The compiler stages are created once and kept warm (loaded classes, JIT-compiled code, ANTLR caches) across
+ * requests, which are served concurrently. See {@link CompileClient} for the protocol.
+ */
+public class CompileServer {
+    static final String COMPILE = "COMPILE";
+    static final String STATS = "STATS";
+    static final String EXIT_CODE = "EXIT ";
+
+    private final int port;
+    private final CompilationPipeline pipeline;
+    private final LatencyStats stats = new LatencyStats();
+
+    public CompileServer(int port, CompilationPipeline pipeline) {
+        this.port = port;
+        this.pipeline = pipeline;
+    }
+
+    public LatencyStats getStats() {
+        return stats;
+    }
+
+    public void run() {
+        ExecutorService workers = Executors.newCachedThreadPool();
+
+        try (var serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Compile server listening on " + serverSocket.getLocalSocketAddress());
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Socket socket = serverSocket.accept();
+                workers.submit(() -> serve(socket));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Compile server stopped", e);
+        } finally {
+            workers.shutdownNow();
+            System.out.print(getStatsLines());
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            var in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String command = in.readLine();
+
+            // read config, as 'key=value' lines ended by an empty line
+            Map<String, String> config = new HashMap<>();
+            String line;
+            OutputStream out = socket.getOutputStream();
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                int equals = line.indexOf('=');
+                if (equals <= 0) {
+                    respond(out, 1, "Invalid config line '" + line + "', expected 'key=value'\n");
+                    return;
+                }
+                config.put(line.substring(0, equals), line.substring(equals + 1));
+            }
+
+            if (STATS.equals(command)) {
+                respond(out, 0, getStatsLines());
+            } else if (COMPILE.equals(command)) {
+                compile(config, out);
+            } else {
+                respond(out, 1, "Unknown command '" + command + "'\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Could not serve compile request: " + e.getMessage());
+        }
+    }
+
+    private void compile(Map<String, String> config, OutputStream out) throws IOException {
+        long start = System.nanoTime();
+
+        var output = new ByteArrayOutputStream();
+        int exitCode;
+        try (var printStream = new PrintStream(output, true, StandardCharsets.UTF_8)) {
+            try {
+                exitCode = Launcher.compile(pipeline, config, printStream) ? 0 : 1;
+            } catch (Exception e) {
+                e.printStackTrace(printStream);
+                exitCode = 1;
+            }
+        }
+
+        long latency = System.nanoTime() - start;
+        stats.record(latency);
+        // the percentiles are only computed when asked for, with the STATS command or when the server stops
+        System.out.printf("Compiled %s in %.2f ms%n",
+                CompilerConfig.getInputFile(config).map(Object::toString).orElse("<no input>"), latency / 1e6);
+        pipeline.getCache().ifPresent(cache -> System.out.println(cache.getStats()));
+
+        respond(out, exitCode, output.toString(StandardCharsets.UTF_8));
+    }
+
+    private String getStatsLines() {
+        StringBuilder lines = new StringBuilder("Compile server latency: " + stats + "\n");
+        pipeline.getCache().ifPresent(cache -> lines.append(cache.getStats()).append("\n"));
+        return lines.toString();
+    }
+
+    private static void respond(OutputStream out, int exitCode, String body) throws IOException {
+        out.write((EXIT_CODE + exitCode + "\n").getBytes(StandardCharsets.UTF_8));
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+}
@@ -0,0 +1,81 @@
+package pt.up.fe.comp2024.server;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Collects request latencies and reports their percentiles.
+ * <p>
+ * Only a uniform sample of at most {@link #SAMPLE_SIZE} latencies is kept (reservoir sampling), so the memory used and
+ * the cost of a summary do not grow with the number of requests. The count, the first and the maximum latency are
+ * exact, the percentiles are estimated from the sample.
+ */
+public class LatencyStats {
+    static final int SAMPLE_SIZE = 1024;
+
+    private final long[] sample = new long[SAMPLE_SIZE];
+    private final Random random = new Random();
+    private long count = 0;
+    private long firstNanos = 0;
+    private long maxNanos = 0;
+
+    public synchronized void record(long nanos) {
+        if (count == 0) {
+            firstNanos = nanos;
+        }
+        maxNanos = Math.max(maxNanos, nanos);
+
+        if (count < SAMPLE_SIZE) {
+            sample[(int) count] = nanos;
+        } else {
+            // the new latency replaces a random one with probability SAMPLE_SIZE / (count + 1)
+            long index = random.nextLong(count + 1);
+            if (index < SAMPLE_SIZE) {
+                sample[(int) index] = nanos;
+            }
+        }
+        count++;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Latency, in milliseconds, below which the given percentage of the requests was served (nearest-rank method).
+     */
+    public synchronized double getPercentileMillis(double percentile) {
+        return percentileMillis(sortedSample(), percentile);
+    }
+
+    private long[] sortedSample() {
+        long[] sorted = Arrays.copyOf(sample, (int) Math.min(count, SAMPLE_SIZE));
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1] / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (count == 0) {
+            return "no requests served";
+        }
+
+        long[] sorted = sortedSample();
+        return String.format("%d requests: first %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                count,
+                firstNanos / 1e6,
+                percentileMillis(sorted, 50),
+                percentileMillis(sorted, 90),
+                percentileMillis(sorted, 99),
+                maxNanos / 1e6);
+    }
+}
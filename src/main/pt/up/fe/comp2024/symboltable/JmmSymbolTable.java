@@ -3,6 +3,7 @@ package pt.up.fe.comp2024.symboltable;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
 import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
+import pt.up.fe.comp2024.ast.ExprTypes;
 import pt.up.fe.comp2024.ast.TypeUtils;
 import pt.up.fe.specs.util.exceptions.NotImplementedException;
 
@@ -20,6 +21,8 @@ public class JmmSymbolTable implements SymbolTable {
     private final Map<String, Type> returnTypes;
     private final Map<String, List<Symbol>> params;
     private final Map<String, List<Symbol>> locals;
+    private final boolean mainIsStatic;
+    private final ExprTypes exprTypes = new ExprTypes();
 
     public JmmSymbolTable(String className,
                           String superName,
@@ -28,7 +31,8 @@ public class JmmSymbolTable implements SymbolTable {
                           List<Symbol> fields,
                           Map<String, Type> returnTypes,
                           Map<String, List<Symbol>> params,
-                          Map<String, List<Symbol>> locals) {
+                          Map<String, List<Symbol>> locals,
+                          boolean mainIsStatic) {
         this.className = className;
         this.superName = superName;
         this.imports = imports;
@@ -37,6 +41,14 @@ public class JmmSymbolTable implements SymbolTable {
         this.returnTypes = returnTypes;
         this.params = params;
         this.locals = locals;
+        this.mainIsStatic = mainIsStatic;
+    }
+
+    /**
+     * @return the types of the expressions of the AST of this table, as they are computed
+     */
+    public ExprTypes getExprTypes() {
+        return exprTypes;
     }
 
     @Override
@@ -79,6 +91,10 @@ public class JmmSymbolTable implements SymbolTable {
         return Collections.unmodifiableList(locals.get(methodSignature));
     }
 
+    public boolean isMainStatic() {
+        return this.mainIsStatic;
+    }
+
     @Override
     public String toString() {
         return "JmmSymbolTable{" +
@@ -31,8 +31,9 @@ public class JmmSymbolTableBuilder {
         var returnTypes = buildReturnTypes(classDecl, className, superName);
         var params = buildParams(classDecl, className, superName, reports);
         var locals = buildLocals(classDecl, className, superName, reports);
+        var mainIsStatic = buildMainIsStatic(classDecl);
 
-        return new JmmSymbolTable(className, superName, imports, methods, fields, returnTypes, params, locals);
+        return new JmmSymbolTable(className, superName, imports, methods, fields, returnTypes, params, locals, mainIsStatic);
     }
     private static List<String> buildImports(JmmNode root, List<Report> reports) {
         List<List<String>> importsList = root.getChildren(Kind.IMPORT_DECL).stream()
@@ -137,17 +138,18 @@ public class JmmSymbolTableBuilder {
 
         return map;
     }
+    private static boolean buildMainIsStatic(JmmNode classDecl) {
+        List<JmmNode> mainMethodNodes = classDecl.getChildren(Kind.MAIN_METHOD);
+        if (mainMethodNodes.isEmpty()) {
+            return false;
+        }
+        return mainMethodNodes.get(0).getObject("isStatic", Boolean.class);
+    }
     private static List<String> buildMethods(JmmNode classDecl, List<Report> reports) {
-        TypeUtils.setMainIsStatic(false);
-
         List<JmmNode> mainMethodNodes = classDecl.getChildren(Kind.MAIN_METHOD);
         List<String> mainMethod = mainMethodNodes.stream()
                 .map(method -> "main")
                 .toList();
-        if (!mainMethodNodes.isEmpty()) {
-            JmmNode mainMethodNode = mainMethodNodes.get(0);
-            TypeUtils.setMainIsStatic(mainMethodNode.getObject("isStatic", Boolean.class));
-        }
 
         List<String> methods = classDecl.getChildren(Kind.OTHER_METHOD).stream()
                 .map(method -> method.get("name"))
@@ -40,6 +40,9 @@ public class SymbolTableUtils {
         return table.getFields().stream()
                 .anyMatch(f -> f.getName().equals(name));
     }
+    public static boolean isMainStatic(SymbolTable table) {
+        return table instanceof JmmSymbolTable jmmTable && jmmTable.isMainStatic();
+    }
     public static Symbol getField(String name, SymbolTable table) {
         return table.getFields().stream()
                 .filter(f -> f.getName().equals(name))
@@ -0,0 +1,154 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2024.backend.ClassFileResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Differential tests of the class file backend ('--backend=classfile'), with the Jasmin backend as the reference: the
+ * class files must pass the verifier (which checks the max stack, max locals and StackMapTable) and the programs must
+ * behave the same as the ones assembled from Jasmin.
+ */
+public class ClassFileBackendTest {
+
+    private static final List<Map<String, String>> CONFIGS = List.of(
+            Map.of(),
+            Map.of("optimize", "true"),
+            Map.of("registerAllocation", "0"),
+            Map.of("optimize", "true", "registerAllocation", "0"));
+
+    @Test
+    public void apps() {
+        testPrograms("pt/up/fe/comp/cp2/apps/HelloWorld.jmm",
+                "pt/up/fe/comp/cp2/apps/Simple.jmm");
+    }
+
+    @Test
+    public void jasmin() {
+        testPrograms("pt/up/fe/comp/cp2/jasmin/OllirToJasminArithmetics.jmm",
+                "pt/up/fe/comp/cp2/jasmin/OllirToJasminBasic.jmm",
+                "pt/up/fe/comp/cp2/jasmin/OllirToJasminFields.jmm",
+                "pt/up/fe/comp/cp2/jasmin/OllirToJasminInvoke.jmm");
+    }
+
+    @Test
+    public void ollir() {
+        testPrograms("pt/up/fe/comp/cp2/ollir/CompileArithmetic.jmm",
+                "pt/up/fe/comp/cp2/ollir/CompileAssignment.jmm",
+                "pt/up/fe/comp/cp2/ollir/CompileBasic.jmm",
+                "pt/up/fe/comp/cp2/ollir/CompileMethodInvocation.jmm");
+    }
+
+    @Test
+    public void arithmetic() {
+        testPrograms("pt/up/fe/comp/cpf/4_jasmin/arithmetic/Arithmetic_and.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arithmetic/Arithmetic_less.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arithmetic/Arithmetic_not.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arithmetic/ByteCodeIndexes1.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arithmetic/ByteCodeIndexes2.jmm");
+    }
+
+    // ArrayVarArgs and VarargsAndArrayInit are left out: the OLLIR generation does not lower varargs parameters, so
+    // neither backend makes a class that verifies
+    @Test
+    public void arrays() {
+        testPrograms("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayAccess.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayAsArg.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayAsArgCode.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInitialization.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayNew.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/arrays/ComplexArrayAccess.jmm");
+    }
+
+    // BasicMethodsArray is left out, since it extends a class that does not exist
+    @Test
+    public void calls() {
+        testPrograms("pt/up/fe/comp/cpf/4_jasmin/calls/ConditionArgsFuncCall.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/limits/LocalLimits.jmm");
+    }
+
+    @Test
+    public void controlFlow() {
+        testPrograms("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfElseInMain.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleControlFlow.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleIfElseNot.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleIfElseStat.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/SwitchStat.jmm");
+    }
+
+    @Test
+    public void optimizations() {
+        testPrograms("pt/up/fe/comp/cpf/5_optimizations/const_prop/PropSimple.jmm",
+                "pt/up/fe/comp/cpf/5_optimizations/const_prop/PropWithLoop.jmm",
+                "pt/up/fe/comp/cpf/5_optimizations/reg_alloc/regalloc.jmm");
+    }
+
+    // 0 - x and n - x, with the destination in the register of x
+    @Test
+    public void registerAllocation() {
+        testPrograms("pt/up/fe/comp/cp2/regalloc/Loops.jmm",
+                "pt/up/fe/comp/cp2/regalloc/Negation.jmm");
+    }
+
+    private static void testPrograms(String... resources) {
+        for (var resource : resources) {
+            for (var config : CONFIGS) {
+                testProgram(resource, config);
+            }
+        }
+    }
+
+    private static void testProgram(String resource, Map<String, String> config) {
+        var code = SpecsIo.getResource(resource);
+        var name = new File(resource).getName() + " " + config;
+
+        JasminResult reference = TestUtils.backend(code, config);
+
+        var classFileConfig = new HashMap<>(config);
+        classFileConfig.put("backend", "classfile");
+        JasminResult result = TestUtils.backend(code, classFileConfig);
+        assertTrue(name + ": expected a class file", result instanceof ClassFileResult);
+
+        assertVerifies(name, (ClassFileResult) result);
+
+        var expected = reference.runWithFullOutput();
+        var actual = result.runWithFullOutput();
+        assertEquals(name + ": exit code", expected.getReturnValue(), actual.getReturnValue());
+        assertEquals(name + ": output", expected.getOutput(), actual.getOutput());
+    }
+
+    /**
+     * Loads and initializes the class, which runs the verifier on it.
+     */
+    private static void assertVerifies(String name, ClassFileResult result) {
+        try {
+            var outputDir = Files.createTempDirectory("jmm-classfile").toFile();
+            var classFile = result.compile(outputDir);
+            var urls = new URL[]{outputDir.toURI().toURL(), new File(TestUtils.getLibsClasspath()).toURI().toURL()};
+            try (var loader = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+                Class.forName(SpecsIo.removeExtension(classFile.getName()), true, loader);
+            } finally {
+                SpecsIo.deleteFolder(outputDir);
+            }
+        } catch (VerifyError e) {
+            fail(name + ": class file does not verify: " + e.getMessage());
+        } catch (Exception e) {
+            throw new RuntimeException(name + ": could not load class file", e);
+        }
+    }
+}
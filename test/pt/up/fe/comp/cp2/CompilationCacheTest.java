@@ -0,0 +1,130 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp2024.CompilationPipeline;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.cache.CompilationCache;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the on-disk compilation cache: entries must only be used for the same code and the same config keys that
+ * change the generated code, and the least recently used ones are evicted first.
+ */
+public class CompilationCacheTest {
+
+    private static final String WHILE = "pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm";
+    private static final String NESTED = "pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm";
+    private static final String SIMPLE = "pt/up/fe/comp/cp2/apps/Simple.jmm";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void hitsOnTheSameCode() throws Exception {
+        var cache = new CompilationCache(folder.newFolder(), CompilationCache.DEFAULT_MAX_BYTES);
+        var pipeline = new CompilationPipeline(cache);
+        var code = SpecsIo.getResource(NESTED);
+        var config = CompilerConfig.getDefault();
+
+        var miss = pipeline.compile(code, config);
+        assertFalse(miss.isCacheHit());
+
+        var hit = pipeline.compile(code, config);
+        assertTrue(hit.isCacheHit());
+        assertEquals(miss.getJasminCode(), hit.getJasminCode());
+        assertEquals(miss.getOllirCode(), hit.getOllirCode());
+        assertEquals(miss.getJasminResult().orElseThrow().run(), hit.getJasminResult().orElseThrow().run());
+
+        // any change to the code is another entry
+        assertFalse(pipeline.compile(code + "\n", config).isCacheHit());
+        assertTrue(cache.getStats().startsWith("Compilation cache: 1 hits, 2 misses, 2 entries"));
+    }
+
+    @Test
+    public void keyHasTheConfigThatChangesTheCode() {
+        var code = SpecsIo.getResource(NESTED);
+        var config = CompilerConfig.getDefault();
+        var key = CompilationCache.getKey(code, config);
+
+        // options that do not change the generated code share the entry
+        var bypassed = new HashMap<>(config);
+        bypassed.put("timing", "true");
+        bypassed.put("run", "inprocess");
+        assertEquals(key, CompilationCache.getKey(code, bypassed));
+
+        for (var option : List.of(Map.entry("optimize", "true"), Map.entry("registerAllocation", "0"),
+                Map.entry("allocator", "linear"), Map.entry("ollir", "text"), Map.entry("backend", "classfile"))) {
+            var changed = new HashMap<>(config);
+            changed.put(option.getKey(), option.getValue());
+            assertNotEquals(option.toString(), key, CompilationCache.getKey(code, changed));
+        }
+    }
+
+    @Test
+    public void changingTheConfigMisses() throws Exception {
+        var pipeline = new CompilationPipeline(new CompilationCache(folder.newFolder(), CompilationCache.DEFAULT_MAX_BYTES));
+        var code = SpecsIo.getResource(WHILE);
+        var config = CompilerConfig.getDefault();
+        pipeline.compile(code, config);
+
+        var optimized = new HashMap<>(config);
+        optimized.put("optimize", "true");
+        optimized.put("registerAllocation", "0");
+        var result = pipeline.compile(code, optimized);
+        assertFalse(result.isCacheHit());
+        assertTrue(pipeline.compile(code, optimized).isCacheHit());
+
+        // the class file backend stores the class file instead of Jasmin code
+        var classFile = new HashMap<>(config);
+        classFile.put("backend", "classfile");
+        assertFalse(pipeline.compile(code, classFile).isCacheHit());
+        var cached = pipeline.compile(code, classFile);
+        assertTrue(cached.isCacheHit());
+        assertEquals(result.getJasminResult().orElseThrow().run(), cached.getJasminResult().orElseThrow().run());
+    }
+
+    @Test
+    public void evictsTheLeastRecentlyUsedEntry() throws Exception {
+        var config = CompilerConfig.getDefault();
+        var codes = List.of(SpecsIo.getResource(NESTED), SpecsIo.getResource(WHILE), SpecsIo.getResource(SIMPLE));
+
+        // sizes of the entries, from a cache that keeps them all
+        var sizingDirectory = folder.newFolder();
+        var sizingPipeline = new CompilationPipeline(new CompilationCache(sizingDirectory, CompilationCache.DEFAULT_MAX_BYTES));
+        long totalBytes = 0;
+        for (var code : codes) {
+            sizingPipeline.compile(code, config);
+            totalBytes += getEntry(sizingDirectory, code, config).length();
+        }
+
+        // room for all but one of them
+        var directory = folder.newFolder();
+        var pipeline = new CompilationPipeline(new CompilationCache(directory, totalBytes - 1));
+        pipeline.compile(codes.get(0), config);
+        pipeline.compile(codes.get(1), config);
+        assertTrue(pipeline.compile(codes.get(0), config).isCacheHit());
+        pipeline.compile(codes.get(2), config);
+
+        assertTrue(getEntry(directory, codes.get(0), config).isFile());
+        assertFalse(getEntry(directory, codes.get(1), config).isFile());
+        assertTrue(getEntry(directory, codes.get(2), config).isFile());
+        assertFalse(pipeline.compile(codes.get(1), config).isCacheHit());
+
+        // a new cache on the same directory knows the entries already there
+        var reopened = new CompilationCache(directory, totalBytes - 1);
+        assertTrue(reopened.get(codes.get(1), config).isPresent());
+    }
+
+    private static File getEntry(File directory, String code, Map<String, String> config) {
+        return new File(directory, CompilationCache.getKey(code, config) + ".json");
+    }
+}
@@ -0,0 +1,110 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import pt.up.fe.comp2024.CompilationPipeline;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.Launcher;
+import pt.up.fe.comp2024.server.CompileClient;
+import pt.up.fe.comp2024.server.CompileServer;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the compile server ('-s') and its client ('-c'), on a loopback port.
+ */
+public class CompileServerTest {
+
+    private static int port;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+
+        var server = new Thread(() -> new CompileServer(port, new CompilationPipeline()).run());
+        server.setDaemon(true);
+        server.start();
+    }
+
+    @Test
+    public void compilesAsTheLauncher() throws IOException {
+        var file = folder.newFile("IfWhileNested.jmm");
+        SpecsIo.write(file, SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm"));
+
+        for (var optimize : new String[]{"false", "true"}) {
+            var config = CompilerConfig.getDefault();
+            config.put("optimize", optimize);
+            CompilerConfig.putFile(config, file.getPath());
+
+            var direct = new ByteArrayOutputStream();
+            assertTrue(Launcher.compile(new CompilationPipeline(), config, new PrintStream(direct, true, StandardCharsets.UTF_8)));
+            var expectedJasmin = new CompilationPipeline().compile(SpecsIo.read(file), config).getJasminResult().orElseThrow()
+                    .getJasminCode();
+
+            var served = new ByteArrayOutputStream();
+            assertEquals(0, forward(config, served));
+            assertEquals(direct.toString(StandardCharsets.UTF_8), served.toString(StandardCharsets.UTF_8));
+            assertTrue(served.toString(StandardCharsets.UTF_8).contains(expectedJasmin));
+        }
+    }
+
+    @Test
+    public void reportsErrorsWithTheExitCode() throws IOException {
+        var file = folder.newFile("Undeclared.jmm");
+        SpecsIo.write(file, "class Undeclared { public int foo() { return a; } }");
+        var config = CompilerConfig.getDefault();
+        CompilerConfig.putFile(config, file.getPath());
+
+        var served = new ByteArrayOutputStream();
+        assertEquals(1, forward(config, served));
+        assertTrue(served.toString(StandardCharsets.UTF_8).contains("ERROR"));
+    }
+
+    @Test
+    public void answersStatsWithoutInputFile() {
+        var served = new ByteArrayOutputStream();
+        assertEquals(0, forward(CompilerConfig.getDefault(), served));
+        assertTrue(served.toString(StandardCharsets.UTF_8).startsWith("Compile server latency: "));
+    }
+
+    /**
+     * Sends the request to the server, waiting for it to start listening.
+     */
+    private static int forward(Map<String, String> config, ByteArrayOutputStream output) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (true) {
+            try {
+                return CompileClient.forward(port, config, new PrintStream(output, true, StandardCharsets.UTF_8));
+            } catch (UncheckedIOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw e;
+                }
+                sleep();
+            }
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
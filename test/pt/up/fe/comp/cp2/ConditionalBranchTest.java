@@ -0,0 +1,59 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import org.specs.comp.ollir.OperationType;
+import pt.up.fe.comp.CpUtils;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the conditions of branches: comparisons fused with the branch in the backend, and the conditions of if and
+ * while lowered into jumps.
+ */
+public class ConditionalBranchTest {
+
+    private static final String RESOURCES = "pt/up/fe/comp/cp2/branches/";
+
+    @Test
+    public void fusesComparisonWithBranch() {
+        var ollirResult = new OllirResult(SpecsIo.getResource(RESOURCES + "FusedCompare.ollir"), Collections.emptyMap());
+        var result = TestUtils.backend(ollirResult);
+        System.out.println(result.getJasminCode());
+
+        // tmp0 := a < b; if (tmp0) goto then;
+        var min = CpUtils.getJasminMethod(result, "min");
+        assertTrue(min, min.contains("if_icmplt then"));
+        assertFalse(min, min.contains("ifne"));
+        assertFalse(min, min.contains("iconst_1"));
+
+        // tmp0 is also printed, so it must be stored
+        var minAndLess = CpUtils.getJasminMethod(result, "minAndLess");
+        assertTrue(minAndLess, minAndLess.contains("ifne then"));
+        assertFalse(minAndLess, minAndLess.contains("if_icmplt then"));
+
+        assertEquals("3\n3\ntrue\n3\nfalse\n3\n", result.run());
+    }
+
+    @Test
+    public void conditionsShortCircuit() {
+        var code = SpecsIo.getResource(RESOURCES + "ShortCircuitCondition.jmm");
+        for (var optimize : List.of("false", "true")) {
+            var ollirResult = TestUtils.optimize(code, Map.of("optimize", optimize));
+            System.out.println(ollirResult.getOllirCode());
+
+            // && is lowered into jumps, so there is no boolean to test
+            var count = CpUtils.getMethod(ollirResult, "count");
+            CpUtils.assertNumberOfOperations(OperationType.ANDB, 0, count, ollirResult);
+            assertTrue(ollirResult.getOllirCode().contains("if (a.i32 >=.bool b.i32) goto and_end_"));
+
+            assertEquals("200\n104\n", TestUtils.backend(code, Map.of("optimize", optimize)).run());
+        }
+    }
+}
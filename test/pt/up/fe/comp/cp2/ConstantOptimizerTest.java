@@ -0,0 +1,78 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2024.optimization.ast.ConstantOptimizer;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests of the constant propagation and folding on the AST. The expected trees are the ones the ConstantPropagation
+ * and ConstantFolding visitors it replaced produced, by repeating both until neither changed the tree.
+ */
+public class ConstantOptimizerTest {
+
+    private static final String INPUTS = "pt/up/fe/comp/cpf/5_optimizations/";
+    private static final String EXPECTED = "pt/up/fe/comp/cp2/constprop/";
+
+    @Test
+    public void constantPropagation() {
+        testConstantOptimizer("const_prop/PropSimple.jmm");
+        testConstantOptimizer("const_prop/PropWithLoop.jmm");
+    }
+
+    @Test
+    public void instructionSelection() {
+        for (var name : List.of("InstSelection_bipush_6", "InstSelection_iconst_0", "InstSelection_if_lt",
+                "InstSelection_iinc", "InstSelection_ldc_32768", "InstSelection_load_1", "InstSelection_sipush_32767",
+                "InstSelection_store_1")) {
+            testConstantOptimizer("inst_selection/" + name + ".jmm");
+        }
+    }
+
+    @Test
+    public void registerAllocation() {
+        testConstantOptimizer("reg_alloc/regalloc.jmm");
+    }
+
+    private static void testConstantOptimizer(String input) {
+        var semantics = TestUtils.analyse(SpecsIo.getResource(INPUTS + input), Map.of("optimize", "true"));
+        TestUtils.noErrors(semantics);
+
+        var optimizer = new ConstantOptimizer(semantics.getSymbolTable());
+        optimizer.optimize(semantics.getRootNode());
+        // a second run has nothing left to do
+        assertFalse(input, optimizer.optimize(semantics.getRootNode()));
+
+        var expected = SpecsIo.getResource(EXPECTED + SpecsIo.removeExtension(input.substring(input.indexOf('/') + 1)) + ".txt");
+        assertEquals(input, expected, toTree(semantics.getRootNode()));
+    }
+
+    /**
+     * Kind of each node with the attributes that identify it, without the ones that other passes add.
+     */
+    private static String toTree(JmmNode root) {
+        var tree = new StringBuilder();
+        appendTree(root, "", tree);
+        return tree.toString();
+    }
+
+    private static void appendTree(JmmNode node, String indent, StringBuilder tree) {
+        tree.append(indent).append(node.getKind());
+        for (var attribute : List.of("name", "id", "op", "value")) {
+            // the value of a statement is the node it had when parsed, only literals have their own
+            if (attribute.equals("value") && !node.getChildren().isEmpty()) continue;
+            if (node.hasAttribute(attribute)) tree.append(" ").append(attribute).append("=").append(node.get(attribute));
+        }
+        tree.append("\n");
+        for (var child : node.getChildren()) {
+            appendTree(child, indent + "  ", tree);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp2024.backend.InProcessRunner;
+import pt.up.fe.comp2024.backend.RunnableJasminResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of running programs in the JVM of the compiler ('--run=inprocess'), which must behave as a new 'java' process.
+ */
+public class InProcessRunnerTest {
+
+    private static final String RESOURCES = "pt/up/fe/comp/cp2/inprocess/";
+
+    private static final Map<String, String> IN_PROCESS = Map.of("run", "inprocess");
+
+    @Test
+    public void capturesOutput() {
+        var code = SpecsIo.getResource(RESOURCES + "Output.jmm");
+        var result = TestUtils.backend(code, IN_PROCESS).runWithFullOutput();
+        assertEquals(0, result.getReturnValue());
+        assertEquals(String.join(System.lineSeparator(), "0", "10", "20", "7", ""), result.getOutput());
+        assertEquals(TestUtils.backend(code).runWithFullOutput().getOutput(), result.getOutput());
+    }
+
+    @Test
+    public void givesInputLineByLine() {
+        // io.read makes a new reader for each line, which would otherwise take all the input at once
+        var result = TestUtils.backend(SpecsIo.getResource(RESOURCES + "Input.jmm"), IN_PROCESS);
+        assertEquals("14", result.run("2\n3\n4\n").trim());
+        assertEquals("14", result.run("2 3\n4").trim());
+    }
+
+    @Test
+    public void reportsClassesThatDoNotVerify() {
+        var jasmin = SpecsIo.getResource(RESOURCES + "NotVerifiable.j");
+        var inProcess = new RunnableJasminResult("NotVerifiable", jasmin, List.of(), IN_PROCESS).runWithFullOutput();
+        var forked = new RunnableJasminResult("NotVerifiable", jasmin, List.of(), Map.of()).runWithFullOutput();
+
+        assertEquals(1, inProcess.getReturnValue());
+        assertEquals(forked.getReturnValue(), inProcess.getReturnValue());
+        assertTrue(inProcess.getStdErr().startsWith("Error: Unable to initialize main class NotVerifiable"));
+        assertTrue(inProcess.getStdErr().contains("java.lang.VerifyError"));
+        assertEquals(firstLine(forked.getStdErr()), firstLine(inProcess.getStdErr()));
+    }
+
+    @Test
+    public void stopsProgramsAfterTheTimeout() {
+        var classFile = TestUtils.backend(SpecsIo.getResource(RESOURCES + "Loop.jmm"), IN_PROCESS).compile();
+        var result = InProcessRunner.run(classFile, List.of(), List.of(TestUtils.getLibsClasspath()), null, 500);
+        assertEquals(-1, result.getReturnValue());
+    }
+
+    private static String firstLine(String text) {
+        return text.lines().findFirst().orElse("");
+    }
+}
@@ -0,0 +1,303 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.CpUtils;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2024.ast.Kind;
+import pt.up.fe.comp2024.optimization.OllirPrinter;
+import pt.up.fe.comp2024.optimization.ast.AlgebraicSimplification;
+import pt.up.fe.comp2024.optimization.ast.DeadBranchElimination;
+import pt.up.fe.comp2024.optimization.ollir.*;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the optimizations of '-o'. Each pass is applied alone to the OLLIR of a program, to check what it changed,
+ * and the transformed program must print the same as the unoptimized one, also when compiled with every optimization.
+ */
+public class OptimizationsTest {
+
+    private static final String RESOURCES = "pt/up/fe/comp/cp2/optimizations/";
+
+    @Test
+    public void sccpFoldsConstantBranches() {
+        var ollir = getOllirResult("SccpBranches.jmm");
+        new SparseConditionalConstantPropagation(ollir).apply();
+
+        var folded = CpUtils.getMethod(ollir, "constantThroughBranches");
+        assertTrue(CpUtils.getInstructions(CondBranchInstruction.class, folded).isEmpty());
+        assertTrue(getMethodCode(ollir, "constantThroughBranches").contains("ret.i32 7.i32;"));
+
+        // the value assigned in the loop is the one it had before it
+        assertTrue(getMethodCode(ollir, "constantAfterLoop").contains("ret.i32 40.i32;"));
+
+        // x is 1 or 2, depending on n
+        var notConstant = CpUtils.getMethod(ollir, "notConstant");
+        assertEquals(1, CpUtils.getInstructions(CondBranchInstruction.class, notConstant).size());
+        assertTrue(getMethodCode(ollir, "notConstant").contains("ret.i32 x.i32;"));
+
+        assertOutput("SccpBranches.jmm", ollir, "7\n40\n1\n2\n");
+    }
+
+    @Test
+    public void deadBranchEliminationRemovesLiteralConditions() {
+        var semantics = TestUtils.analyse(getCode("DeadBranches.jmm"));
+        var deadBranchElimination = new DeadBranchElimination();
+        assertTrue(deadBranchElimination.apply(semantics.getRootNode()));
+        assertEquals(3, deadBranchElimination.getStatementsRemoved());
+
+        var method = semantics.getRootNode().getDescendants(Kind.METHOD_DECL).stream()
+                .filter(node -> node.get("name").equals("literalConditions"))
+                .findFirst().orElseThrow();
+        assertTrue(method.getDescendants(Kind.IF_STMT).isEmpty());
+        assertTrue(method.getDescendants(Kind.WHILE_STMT).isEmpty());
+        // the arms that are taken stay
+        assertEquals(2, method.getDescendants(Kind.BINARY_EXPR).size());
+
+        assertOutput("DeadBranches.jmm", TestUtils.optimize(semantics), "18\n9\n");
+    }
+
+    @Test
+    public void unreachableCodeEliminationRemovesFoldedBranches() {
+        var ollir = getOllirResult("DeadBranches.jmm");
+        new SparseConditionalConstantPropagation(ollir).apply();
+        var unreachableCodeElimination = new UnreachableCodeElimination(ollir);
+        unreachableCodeElimination.apply();
+        assertTrue(unreachableCodeElimination.getInstructionsRemoved() > 0);
+
+        var method = CpUtils.getMethod(ollir, "foldedCondition");
+        assertTrue(CpUtils.getInstructions(CondBranchInstruction.class, method).isEmpty());
+        assertTrue(CpUtils.getInstructions(GotoInstruction.class, method).isEmpty());
+        assertTrue(CpUtils.getInstructions(CallInstruction.class, method).isEmpty());
+        assertTrue(method.getLabels().isEmpty());
+
+        assertOutput("DeadBranches.jmm", ollir, "18\n9\n");
+    }
+
+    @Test
+    public void gvnReusesExpressionsUntilMemoryChanges() {
+        var ollir = getOllirResult("GvnMemory.jmm");
+        var globalValueNumbering = new GlobalValueNumbering(ollir);
+        globalValueNumbering.apply();
+        assertEquals(4, globalValueNumbering.getExpressionsReused());
+
+        CpUtils.assertNumberOfOperations(OperationType.MUL, 1, CpUtils.getMethod(ollir, "reuse"), ollir);
+
+        // nothing writes to memory between the loads
+        var sameLoads = getMethodCode(ollir, "sameLoads");
+        assertEquals(1, count(sameLoads, "arr[i.i32]"));
+        assertEquals(1, count(sameLoads, "getfield("));
+
+        // the store may go to the same array, and a new value is put in the field, by a store or by the call
+        assertEquals(2, count(getMethodCode(ollir, "afterArrayStore"), "arr[i.i32]"));
+        assertEquals(2, count(getMethodCode(ollir, "afterFieldStore"), "getfield("));
+        assertEquals(2, count(getMethodCode(ollir, "afterCall"), "getfield("));
+
+        assertOutput("GvnMemory.jmm", ollir, "42\n4\n7\n1\n12\n");
+    }
+
+    @Test
+    public void licmKeepsDivisionsThatMayNotRun() {
+        var ollir = getOllirResult("LicmDivisions.jmm");
+        var loopInvariantCodeMotion = new LoopInvariantCodeMotion(ollir);
+        loopInvariantCodeMotion.apply();
+        assertEquals(1, loopInvariantCodeMotion.getInstructionsHoisted());
+
+        assertFalse(isInLoop(getMethodCode(ollir, "hoisted"), "a.i32 *.i32 b.i32"));
+
+        // hoisting the division would throw when the loop runs no iteration, or when d is not positive
+        assertTrue(isInLoop(getMethodCode(ollir, "zeroTrip"), "100.i32 /.i32 d.i32"));
+        assertTrue(isInLoop(getMethodCode(ollir, "guarded"), "100.i32 /.i32 d.i32"));
+
+        assertOutput("LicmDivisions.jmm", ollir, "60\n0\n40\n0\n60\n");
+    }
+
+    @Test
+    public void strengthReductionKeepsNegativeDivisors() {
+        var ollir = getOllirResult("StrengthDivisions.jmm");
+        // makes the divisors and factors literals
+        new SparseConditionalConstantPropagation(ollir).apply();
+        var strengthReduction = new StrengthReduction(ollir);
+        strengthReduction.apply();
+        assertEquals(3, strengthReduction.getShifts());
+
+        // neither is 2^k: -MIN_VALUE overflows, and a shift rounds x / -8 the wrong way
+        assertTrue(getMethodCode(ollir, "byMinValue").contains("x.i32 /.i32 -2147483648.i32"));
+        assertTrue(getMethodCode(ollir, "byMinusEight").contains("x.i32 /.i32 -8.i32"));
+        assertTrue(getMethodCode(ollir, "timesMinValue").contains("x.i32 *.i32 -2147483648.i32"));
+
+        assertFalse(getMethodCode(ollir, "byEight").contains("/.i32"));
+        assertFalse(getMethodCode(ollir, "byTwo").contains("/.i32"));
+        assertTrue(getMethodCode(ollir, "timesFour").contains("x.i32 <<.i32 2.i32"));
+
+        assertOutput("StrengthDivisions.jmm", ollir, String.join("\n",
+                "0", "0", "0", "3", "28", "-2147483648",
+                "0", "0", "0", "-3", "-28", "-2147483648",
+                "0", "1", "-1", "-4", "-36", "-2147483648",
+                "0", "-268435455", "268435455", "1073741823", "-4", "-2147483648",
+                "1", "268435456", "-268435456", "-1073741824", "0", "0") + "\n");
+    }
+
+    @Test
+    public void algebraicSimplificationKeepsSideEffects() {
+        var semantics = TestUtils.analyse(getCode("ShortCircuit.jmm"));
+        var algebraicSimplification = new AlgebraicSimplification(semantics.getSymbolTable());
+        algebraicSimplification.apply(semantics.getRootNode());
+        // false && s.mark(true) and s.mark(true) && true
+        assertEquals(2, algebraicSimplification.getSimplifications());
+
+        // only the call after 'false &&', which never runs, is dropped
+        var calls = semantics.getRootNode().getDescendants(Kind.METHOD_CALL_EXPR).stream()
+                .filter(call -> call.get("method").equals("mark"))
+                .count();
+        assertEquals(7, calls);
+
+        assertOutput("ShortCircuit.jmm", TestUtils.optimize(semantics), "10\n10\n0\n11\n21\n31\n");
+    }
+
+    @Test
+    public void inliningCopiesSmallMethods() {
+        var ollir = getOllirResult("Inline.jmm");
+        var inlining = new Inlining(ollir);
+        inlining.apply();
+        assertEquals(Integer.valueOf(2), inlining.getInlined().get("square into sumOfSquares"));
+        assertEquals(Integer.valueOf(2), inlining.getInlined().get("clamp into main"));
+        assertNull(inlining.getInlined().get("fact into fact"));
+
+        assertFalse(getMethodCode(ollir, "sumOfSquares").contains("invokevirtual"));
+
+        // clamp assigns its parameter, so each copy gets its own local and labels
+        var main = getMethodCode(ollir, "main");
+        assertFalse(main.contains("\"clamp\""));
+        assertEquals(2, Pattern.compile("(?m)^if_then_0_inl\\d+:$").matcher(main).results().count());
+
+        // the receiver may be null, and a method is not inlined into itself
+        assertTrue(getMethodCode(ollir, "viaParameter").contains("invokevirtual(other.Inline, \"square\""));
+        assertTrue(getMethodCode(ollir, "fact").contains("invokevirtual(this, \"fact\""));
+
+        assertOutput("Inline.jmm", ollir, "25\n0\n7\n3628800\n9\n");
+    }
+
+    @Test
+    public void tailRecursionEliminationRunsDeepRecursion() {
+        var ollir = getOllirResult("TailRecursion.jmm");
+        var tailRecursionElimination = new TailRecursionElimination(ollir);
+        tailRecursionElimination.apply();
+        assertEquals(1, tailRecursionElimination.getTailCallsEliminated());
+
+        assertFalse(getMethodCode(ollir, "count").contains("invokevirtual"));
+        // the product is computed after the call returns
+        assertTrue(getMethodCode(ollir, "fact").contains("invokevirtual(this, \"fact\""));
+
+        // a million nested calls do not fit in the stack
+        var code = getCode("TailRecursion.jmm");
+        assertNotEquals(0, TestUtils.backend(code).runWithFullOutput().getReturnValue());
+
+        var expected = "1000000\n3628800\n";
+        assertEquals(expected, run(ollir));
+        assertEquals(expected, TestUtils.backend(code, Map.of("optimize", "true")).run());
+    }
+
+    @Test
+    public void copyPropagationRemovesTemporaries() {
+        var ollir = getOllirResult("Copies.jmm");
+        var copyPropagation = new CopyPropagation(ollir);
+        copyPropagation.apply();
+        var counts = copyPropagation.getInstructionCounts();
+        assertArrayEquals(new int[]{4, 3}, counts.get("forward"));
+        assertArrayEquals(new int[]{7, 5}, counts.get("changed"));
+        assertArrayEquals(new int[]{5, 2}, counts.get("unused"));
+
+        assertTrue(getMethodCode(ollir, "forward").contains("x.i32 :=.i32 a.i32 +.i32 b.i32;"));
+
+        // c is the value b had before it changed
+        var changed = getMethodCode(ollir, "changed");
+        assertTrue(changed.contains("a.i32 *.i32 10.i32"));
+        assertFalse(changed.contains("b.i32 *.i32 10.i32"));
+
+        // x is never read, but the division may throw
+        var unused = getMethodCode(ollir, "unused");
+        assertFalse(unused.contains("*.i32 3.i32"));
+        assertTrue(unused.contains("100.i32 /.i32 d.i32"));
+
+        assertOutput("Copies.jmm", ollir, "14\n56\n2\n");
+    }
+
+    @Test
+    public void typesAfterConstantFolding() {
+        var semantics = TestUtils.analyse(getCode("FoldedTypes.jmm"), Map.of("optimize", "true"));
+        var optimization = TestUtils.getJmmOptimization();
+        var ollir = optimization.toOllir(optimization.optimize(semantics));
+
+        // the types of the folded expressions are the ones the replaced expressions had
+        var main = getMethodCode(ollir, "main");
+        assertTrue(main.contains("arr[2.i32].i32 :=.i32 9.i32;"));
+        assertTrue(main.contains("c.bool :=.bool 1.bool;"));
+        assertTrue(main.contains("\"pick\", 1.bool, "));
+        assertTrue(main.contains("\"pick\", 0.bool, 12.i32)"));
+
+        assertOutput("FoldedTypes.jmm", ollir, "9\n-12\n4\n");
+    }
+
+    private static String getCode(String filename) {
+        return SpecsIo.getResource(RESOURCES + filename);
+    }
+
+    /**
+     * The OLLIR of the program, without optimizations.
+     */
+    private static OllirResult getOllirResult(String filename) {
+        return TestUtils.optimize(getCode(filename));
+    }
+
+    private static String print(OllirResult ollir) {
+        return new OllirPrinter(ollir.getOllirClass()).print();
+    }
+
+    /**
+     * The OLLIR code of a method, from its header to the closing brace.
+     */
+    private static String getMethodCode(OllirResult ollir, String methodName) {
+        var code = print(ollir);
+        int start = code.indexOf(" " + methodName + "(");
+        assertTrue("method " + methodName + " not found:\n" + code, start >= 0);
+        int end = code.indexOf("\n}", start);
+        return code.substring(code.lastIndexOf('\n', start) + 1, end + 2);
+    }
+
+    /**
+     * If the code is after the first label of the body of a while loop.
+     */
+    private static boolean isInLoop(String methodCode, String code) {
+        int index = methodCode.indexOf(code);
+        assertTrue(code + " not found in:\n" + methodCode, index >= 0);
+        return index > methodCode.indexOf("while_body_");
+    }
+
+    private static int count(String code, String text) {
+        return code.split(Pattern.quote(text), -1).length - 1;
+    }
+
+    private static String run(OllirResult ollir) {
+        var result = TestUtils.backend(ollir).runWithFullOutput();
+        assertEquals("exit code of:\n" + print(ollir), 0, result.getReturnValue());
+        return result.getOutput();
+    }
+
+    /**
+     * Checks that the program prints the expected output without optimizations, with the given pass alone and with
+     * every optimization.
+     */
+    private static void assertOutput(String filename, OllirResult transformed, String expected) {
+        var code = getCode(filename);
+        assertEquals("output without optimizations", expected, TestUtils.backend(code).run());
+        assertEquals("output after the pass:\n" + print(transformed), expected, run(transformed));
+        assertEquals("output with -o", expected, TestUtils.backend(code, Map.of("optimize", "true")).run());
+    }
+}
@@ -0,0 +1,103 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import pt.up.fe.comp2024.CompilationPipeline;
+import pt.up.fe.comp2024.CompilerConfig;
+import pt.up.fe.comp2024.profiling.PhaseProfiler;
+import pt.up.fe.comp2024.profiling.PhaseTiming;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the timings of the compilation phases ('-t').
+ */
+public class PhaseProfilerTest {
+
+    @Test
+    public void nestedPhasesHaveTheNameOfTheirParent() {
+        var profiler = PhaseProfiler.start("nested");
+        PhaseProfiler.time("analysis", () -> {
+            PhaseProfiler.time("UndeclaredVariable", () -> sleep(5));
+            PhaseProfiler.time("UndeclaredVariable", () -> sleep(5));
+        });
+        PhaseProfiler.time("backend", () -> sleep(1));
+        var timings = profiler.stop();
+
+        assertEquals("nested", timings.getFile());
+        assertEquals(List.of("analysis", "analysis/UndeclaredVariable", "backend"),
+                timings.getPhases().stream().map(PhaseTiming::getPhase).toList());
+
+        var phases = byName(timings.getPhases());
+        assertEquals(1, phases.get("analysis").getCount());
+        assertEquals(2, phases.get("analysis/UndeclaredVariable").getCount());
+        assertTrue(phases.get("analysis/UndeclaredVariable").getWallNanos() >= 10_000_000);
+        assertTrue(phases.get("analysis").getWallNanos() >= phases.get("analysis/UndeclaredVariable").getWallNanos());
+    }
+
+    @Test
+    public void interleavedPhasesAddUpTheirPieces() {
+        var profiler = PhaseProfiler.start("interleaved");
+        PhaseProfiler.time("analysis", () -> {
+            var first = PhaseProfiler.interleaved("First");
+            var second = PhaseProfiler.interleaved("Second");
+            for (int i = 0; i < 3; i++) {
+                first.time(() -> sleep(4));
+                second.time(() -> sleep(2));
+            }
+            first.end();
+            second.end();
+        });
+        var phases = byName(profiler.stop().getPhases());
+
+        // each one is a single run, with only the time of its own pieces
+        var first = phases.get("analysis/First");
+        var second = phases.get("analysis/Second");
+        assertEquals(1, first.getCount());
+        assertEquals(1, second.getCount());
+        assertTrue(first.getWallNanos() >= 12_000_000);
+        assertTrue(second.getWallNanos() >= 6_000_000);
+        assertTrue(first.getWallNanos() + second.getWallNanos() <= phases.get("analysis").getWallNanos());
+    }
+
+    @Test
+    public void nothingIsMeasuredWithoutProfiler() {
+        assertEquals("value", PhaseProfiler.time("analysis", () -> "value"));
+        var interleaved = PhaseProfiler.interleaved("First");
+        interleaved.time(() -> sleep(1));
+        interleaved.end();
+
+        assertTrue(PhaseProfiler.start("empty").stop().getPhases().isEmpty());
+    }
+
+    @Test
+    public void timesTheStagesOfACompilation() {
+        var config = CompilerConfig.getDefault();
+        config.put("timing", "true");
+        var code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm");
+        var result = new CompilationPipeline().compile(code, config);
+        var phases = byName(result.getTimings().orElseThrow().getPhases());
+
+        for (var phase : List.of("parse", "analysis", "analysis/UndeclaredVariable", "toOllir", "backend")) {
+            assertTrue(phase, phases.containsKey(phase));
+        }
+        assertEquals(1, phases.get("analysis/UndeclaredVariable").getCount());
+    }
+
+    private static Map<String, PhaseTiming> byName(List<PhaseTiming> timings) {
+        return timings.stream().collect(Collectors.toMap(PhaseTiming::getPhase, Function.identity()));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
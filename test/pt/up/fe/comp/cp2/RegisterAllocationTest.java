@@ -0,0 +1,220 @@
+package pt.up.fe.comp.cp2;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.CpUtils;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp2024.optimization.ollir.*;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the register allocation ('-r'): the liveness it is based on, the allocators and the removal of the copies
+ * between variables that got the same register. The programs must print the same as without register allocation.
+ */
+public class RegisterAllocationTest {
+
+    private static final String RESOURCES = "pt/up/fe/comp/cp2/regalloc/";
+
+    @Test
+    public void livenessOnLoop() {
+        var ollir = getOllirResult("Loops.jmm");
+        var method = CpUtils.getMethod(ollir, "sum");
+        var liveness = new LivenessAnalysis(ollir).obtainResult(method);
+
+        // the parameter n has its own register, so it is not analysed
+        assertEquals(Set.of(), liveness.getLiveIn(0));
+
+        // s and i are live around the whole loop, through the back edge
+        int condition = indexOf(method, CondBranchInstruction.class);
+        assertTrue(liveness.getLiveIn(condition).containsAll(Set.of("s", "i")));
+        assertEquals(Set.of("s", "i"), liveness.getLiveOut(condition));
+
+        // tmp := s + i, and s is only read again after it gets tmp
+        int body = indexOf(method, GotoInstruction.class) + 1;
+        assertEquals(Set.of("s", "i"), liveness.getLiveIn(body));
+        assertEquals(Set.of("i", getDest(method, body)), liveness.getLiveOut(body));
+
+        assertEquals(Set.of("s"), liveness.getLiveIn(indexOf(method, ReturnInstruction.class)));
+    }
+
+    @Test
+    public void interferingVariablesGetDifferentRegisters() {
+        var ollir = getOllirResult("Loops.jmm");
+        var livenessAnalysis = new LivenessAnalysis(ollir);
+
+        var sum = livenessAnalysis.obtainResult(CpUtils.getMethod(ollir, "sum"));
+        var sumColors = colorWithoutLimit(sum);
+        assertNoInterference(sum, sumColors);
+        assertEquals(getMaxLive(sum), new HashSet<>(sumColors.values()).size());
+
+        // a, b, c, i, s and a * b are live at once in the loop
+        var pressure = livenessAnalysis.obtainResult(CpUtils.getMethod(ollir, "pressure"));
+        var pressureColors = colorWithoutLimit(pressure);
+        assertNoInterference(pressure, pressureColors);
+        assertEquals(getMaxLive(pressure), new HashSet<>(pressureColors.values()).size());
+    }
+
+    @Test
+    public void spillsTheCheapestVariable() {
+        var ollir = getOllirResult("Loops.jmm");
+        var method = CpUtils.getMethod(ollir, "pressure");
+        var pressure = new LivenessAnalysis(ollir).obtainResult(method);
+        var graphColoring = new GraphColoring();
+        graphColoring.setRegisterNumberLimit(5);
+        var colors = graphColoring.obtainResult(pressure);
+        assertTrue(graphColoring.isSpilled());
+        assertNoInterference(pressure, colors);
+
+        // c is only read after the loop, the other variables live in the loop are read in every iteration
+        assertTrue(colors.get("c") >= 5);
+        var product = getDest(method, indexOf(method, GotoInstruction.class) + 1);
+        for (var variable : List.of("a", "b", "i", "s", product)) {
+            assertTrue(variable + " was spilled", colors.get(variable) < 5);
+        }
+    }
+
+    @Test
+    public void reportsMethodsThatNeedMoreRegisters() {
+        // "this", n and the 6 variables live at once in the loop of pressure
+        var ollir = TestUtils.optimize(getCode("Loops.jmm"), Map.of("registerAllocation", "7"));
+        var errors = ollir.getReports().stream().filter(report -> report.getType() == ReportType.ERROR).toList();
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getMessage().contains("pressure"));
+
+        TestUtils.noErrors(TestUtils.optimize(getCode("Loops.jmm"), Map.of("registerAllocation", "8")));
+        assertEquals("45\n127\n", run(RESOURCES + "Loops.jmm", Map.of("registerAllocation", "8")));
+    }
+
+    @Test
+    public void linearScanAgreesWithGraphColoring() {
+        var ollir = getOllirResult("Loops.jmm");
+        var livenessAnalysis = new LivenessAnalysis(ollir);
+        for (var method : List.of("sum", "pressure")) {
+            var liveness = livenessAnalysis.obtainResult(CpUtils.getMethod(ollir, method));
+            assertNoInterference(liveness, new LinearScan().obtainResult(liveness));
+        }
+
+        for (var resource : List.of(RESOURCES + "Loops.jmm",
+                "pt/up/fe/comp/cpf/5_optimizations/reg_alloc/regalloc.jmm",
+                "pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm",
+                "pt/up/fe/comp/cp2/jasmin/OllirToJasminArithmetics.jmm")) {
+            for (var optimize : List.of("false", "true")) {
+                var linear = run(resource, Map.of("registerAllocation", "0", "optimize", optimize, "allocator", "linear"));
+                var graph = run(resource, Map.of("registerAllocation", "0", "optimize", optimize, "allocator", "graph"));
+                assertEquals(resource, graph, linear);
+            }
+        }
+    }
+
+    @Test
+    public void removesCoalescedCopies() {
+        var ollir = getOllirResult("Loops.jmm");
+        var sum = CpUtils.getMethod(ollir, "sum");
+        int instructions = sum.getInstructions().size();
+
+        // tmp := s + i; s := tmp; tmp' := i + 1; i := tmp';
+        int body = indexOf(sum, GotoInstruction.class) + 1;
+        var sumTemp = getDest(sum, body);
+        var incrementTemp = getDest(sum, body + 2);
+        new RegisterAllocation(ollir, 0).apply();
+
+        var varTable = sum.getVarTable();
+        assertEquals(varTable.get("s").getVirtualReg(), varTable.get(sumTemp).getVirtualReg());
+        assertEquals(varTable.get("i").getVirtualReg(), varTable.get(incrementTemp).getVirtualReg());
+        assertEquals(instructions - 2, sum.getInstructions().size());
+
+        assertEquals("45\n127\n", TestUtils.backend(ollir).run());
+        run(RESOURCES + "Loops.jmm", Map.of("registerAllocation", "0"));
+    }
+
+    @Test
+    public void subtractionFromLiteralIsNotAnIncrement() {
+        for (var optimize : List.of("false", "true")) {
+            var config = Map.of("registerAllocation", "0", "optimize", optimize);
+            assertEquals("-5\n4\n7\n14\n", run(RESOURCES + "Negation.jmm", config));
+
+            // r := 0 - y, with r and y in the same register
+            var jasmin = TestUtils.backend(getCode("Negation.jmm"), config);
+            assertFalse(CpUtils.getJasminMethod(jasmin, "neg").contains("iinc"));
+        }
+    }
+
+    private static OllirResult getOllirResult(String filename) {
+        return TestUtils.optimize(getCode(filename));
+    }
+
+    private static String getCode(String filename) {
+        return SpecsIo.getResource(RESOURCES + filename);
+    }
+
+    private static Map<String, Integer> colorWithoutLimit(LivenessAnalysisResult liveness) {
+        var graphColoring = new GraphColoring();
+        // more registers than any of the methods has variables
+        graphColoring.setRegisterNumberLimit(64);
+        var colors = graphColoring.obtainResult(liveness);
+        assertFalse(graphColoring.isSpilled());
+        return colors;
+    }
+
+    /**
+     * Number of variables live at once at the busiest point, the fewest registers any allocation can use.
+     */
+    private static int getMaxLive(LivenessAnalysisResult liveness) {
+        int maxLive = 0;
+        for (int i = 0; i < liveness.getLiveOutSize(); i++) {
+            maxLive = Math.max(maxLive, liveness.getLiveOut(i).size());
+        }
+        return maxLive;
+    }
+
+    /**
+     * Checks that the variables live at the same point have different registers.
+     */
+    private static void assertNoInterference(LivenessAnalysisResult liveness, Map<String, Integer> colors) {
+        for (int i = 0; i < liveness.getLiveOutSize(); i++) {
+            var live = new ArrayList<>(liveness.getLiveOut(i));
+            for (int a = 0; a < live.size(); a++) {
+                for (int b = a + 1; b < live.size(); b++) {
+                    assertNotEquals(live.get(a) + " and " + live.get(b) + " are live after instruction " + i,
+                            colors.get(live.get(a)), colors.get(live.get(b)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the program with the given config, which must print the same as without it.
+     */
+    private static String run(String resource, Map<String, String> config) {
+        var code = SpecsIo.getResource(resource);
+        var expected = TestUtils.backend(code).run();
+        var result = TestUtils.backend(code, config).runWithFullOutput();
+        assertEquals(resource + " " + config + ": exit code", 0, result.getReturnValue());
+        assertEquals(resource + " " + config + ": output", expected, result.getOutput());
+        return result.getOutput();
+    }
+
+    private static String getDest(Method method, int index) {
+        return ((Operand) ((AssignInstruction) method.getInstructions().get(index)).getDest()).getName();
+    }
+
+    private static int indexOf(Method method, Class<? extends Instruction> instructionClass) {
+        var instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructionClass.isInstance(instructions.get(i))) {
+                return i;
+            }
+        }
+        throw new AssertionError("no " + instructionClass.getSimpleName() + " in " + method.getMethodName());
+    }
+}